@@ -0,0 +1,187 @@
+package com.butterfill.sqlrunner.maven;
+
+import com.butterfill.sqlrunner.SqlRunnerException;
+import com.butterfill.sqlrunner.util.DefaultFileReader;
+import com.butterfill.sqlrunner.util.FileSystemScriptSource;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Handler;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+import java.util.logging.Logger;
+import org.apache.maven.plugin.AbstractMojo;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.MojoFailureException;
+import org.apache.maven.project.MavenProject;
+
+/**
+ * Compiles SQL script files into a Java class that implements
+ * {@link com.butterfill.sqlrunner.SqlRunnerFileReader}.
+ *
+ * <p>
+ * Files are parsed using the same rules as {@link DefaultFileReader}, so problems with the
+ * files (such as a statement that is not terminated) are reported when the project is built
+ * rather than when the files are run.
+ * File names used by the generated class are relative to sqlDirectory and always use "/" as
+ * the separator - which matches the names used to read the same files from the class path.
+ * </p>
+ *
+ * @goal compile
+ * @phase generate-sources
+ * @requiresProject true
+ *
+ * @author Peter Butterfill
+ */
+public class CompileSqlMojo extends AbstractMojo {
+
+    /**
+     * The project being built.
+     *
+     * @parameter default-value="${project}"
+     * @required
+     * @readonly
+     */
+    private MavenProject project;
+
+    /**
+     * The directory containing the SQL script files to compile.
+     *
+     * @parameter default-value="${basedir}/src/main/resources"
+     */
+    private File sqlDirectory;
+
+    /**
+     * Only files with names ending with this suffix are compiled.
+     *
+     * @parameter default-value=".sql"
+     */
+    private String fileNameSuffix;
+
+    /**
+     * The generated source is written to this directory,
+     * which is added to the compile source roots of the project.
+     *
+     * @parameter default-value="${project.build.directory}/generated-sources/sql-runner"
+     */
+    private File outputDirectory;
+
+    /**
+     * Fully qualified name of the class to generate.
+     *
+     * @parameter
+     * @required
+     */
+    private String className;
+
+    /**
+     * Character set of the SQL script files.
+     *
+     * @parameter default-value="${project.build.sourceEncoding}"
+     */
+    private String encoding;
+
+    /**
+     * Lines with this prefix will be treated as single line comments.
+     *
+     * @parameter default-value="--"
+     */
+    private String singleLineCommentPrefix;
+
+    /**
+     * Set to false to let the build continue when warnings are logged while parsing files.
+     *
+     * @parameter default-value="true"
+     */
+    private boolean failOnWarning;
+
+    /**
+     * Compiles the SQL script files.
+     * @throws MojoExecutionException
+     *   If the generated source can not be written.
+     * @throws MojoFailureException
+     *   If a file can not be read or parsing a file logs a warning (and failOnWarning is true).
+     */
+    public void execute() throws MojoExecutionException, MojoFailureException {
+        final FileSystemScriptSource scriptSource = new FileSystemScriptSource(
+                sqlDirectory, (encoding == null) ? "UTF-8" : encoding);
+
+        final List<String> fileNames = new ArrayList<String>();
+        if (sqlDirectory.isDirectory()) {
+            try {
+                for (String fileName : scriptSource.listScripts()) {
+                    if (fileName.endsWith(fileNameSuffix)) {
+                        fileNames.add(fileName);
+                    }
+                }
+
+            } catch (IOException ex) {
+                throw new MojoFailureException("failed to list SQL files in " + sqlDirectory
+                        + ". " + ex.getMessage());
+
+            }
+        }
+
+        getLog().info("compiling " + fileNames.size() + " SQL files from " + sqlDirectory
+                + " into " + className);
+
+        final DefaultFileReader fileReader =
+                new DefaultFileReader(scriptSource, singleLineCommentPrefix);
+
+        final SqlRunnerSourceGenerator generator = new SqlRunnerSourceGenerator(className);
+
+        // the file reader logs (rather than throws) when it finds problems with a file
+        final Logger sqlRunnerLogger = Logger.getLogger("com.butterfill.sqlrunner");
+        final List<String> warnings = new ArrayList<String>();
+        final Handler warningHandler = new Handler() {
+            @Override
+            public void publish(final LogRecord record) {
+                if (record.getLevel().intValue() >= Level.WARNING.intValue()) {
+                    warnings.add(record.getMessage());
+                }
+            }
+            @Override
+            public void flush() {
+            }
+            @Override
+            public void close() {
+            }
+        };
+
+        sqlRunnerLogger.addHandler(warningHandler);
+
+        try {
+            for (String fileName : fileNames) {
+                warnings.clear();
+                generator.addFile(fileName, fileReader.readFile(fileName));
+                for (String warning : warnings) {
+                    getLog().warn(fileName + ": " + warning);
+                }
+                if (failOnWarning && !warnings.isEmpty()) {
+                    throw new MojoFailureException("problems found in SQL file " + fileName);
+                }
+            }
+
+        } catch (SqlRunnerException ex) {
+            throw new MojoFailureException(ex.getMessage());
+
+        } finally {
+            sqlRunnerLogger.removeHandler(warningHandler);
+
+        }
+
+        try {
+            generator.write(outputDirectory);
+
+        } catch (IOException ex) {
+            throw new MojoExecutionException("failed to write generated source to "
+                    + outputDirectory, ex);
+
+        }
+
+        project.addCompileSourceRoot(outputDirectory.getPath());
+
+    }
+
+}
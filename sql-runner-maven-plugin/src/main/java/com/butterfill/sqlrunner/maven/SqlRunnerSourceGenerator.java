@@ -0,0 +1,474 @@
+package com.butterfill.sqlrunner.maven;
+
+import com.butterfill.sqlrunner.SqlRunnerStatement;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Generates the source of a Java class that holds the statements read from SQL script files.
+ *
+ * <p>
+ * The generated class implements {@link com.butterfill.sqlrunner.SqlRunnerFileReader} and
+ * returns new statements, built from string literals, every time a file is read - so no I/O
+ * or parsing is needed at runtime.
+ * </p>
+ *
+ * <p>
+ * The statements of each file are built by methods of the generated class that add a few
+ * hundred statements each - so large files don't run into the 64KB limit on the size of a
+ * Java method. Every distinct string literal takes two entries in the
+ * constant pool of the generated class, which is limited to 65535 entries.
+ * </p>
+ *
+ * @author Peter Butterfill
+ */
+public class SqlRunnerSourceGenerator {
+
+    /**
+     * The longest string literal we generate.
+     * A literal is limited to 65535 bytes of (modified) UTF-8 - which is at least 21845 chars.
+     */
+    private static final int MAX_LITERAL_LENGTH = 16384;
+
+    /**
+     * The most statements added by one generated method.
+     * Each statement needs less than 100 bytes of byte code (plus a few bytes for each literal
+     * of a long string) so this keeps methods well below the 64KB limit.
+     */
+    static final int STATEMENTS_PER_METHOD = 200;
+
+    /**
+     * The first char that does not need to be escaped.
+     */
+    private static final char FIRST_PRINTABLE_CHAR = ' ';
+
+    /**
+     * The last char that does not need to be escaped.
+     */
+    private static final char LAST_PRINTABLE_CHAR = '~';
+
+    /**
+     * Package of the generated class - which will be empty for the default package.
+     */
+    private final String packageName;
+
+    /**
+     * Simple name of the generated class.
+     */
+    private final String simpleClassName;
+
+    /**
+     * The files to be held by the generated class, sorted by file name.
+     * Key is file name, value is the statements from the file.
+     */
+    private final Map<String, List<SqlRunnerStatement>> files =
+            new TreeMap<String, List<SqlRunnerStatement>>();
+
+    /**
+     * Creates a new generator.
+     * @param className
+     *   Fully qualified name of the class to generate.
+     */
+    public SqlRunnerSourceGenerator(final String className) {
+        if (className == null) {
+            throw new NullPointerException("className must not be null");
+        }
+        final int lastDot = className.lastIndexOf('.');
+        this.packageName = (lastDot == -1) ? "" : className.substring(0, lastDot);
+        this.simpleClassName = className.substring(lastDot + 1);
+        if (simpleClassName.length() == 0) {
+            throw new IllegalArgumentException("className must not end with '.'");
+        }
+    }
+
+    /**
+     * Adds a file to the class to be generated.
+     * @param fileName
+     *   Name of the file - used by sql-runner to read the file.
+     * @param statements
+     *   The statements from the file.
+     * @return
+     *   this instance.
+     */
+    public SqlRunnerSourceGenerator addFile(
+            final String fileName, final List<SqlRunnerStatement> statements) {
+        if (fileName == null) {
+            throw new NullPointerException("fileName must not be null");
+        }
+        if (statements == null) {
+            throw new NullPointerException("statements must not be null");
+        }
+        files.put(fileName, new ArrayList<SqlRunnerStatement>(statements));
+        return this;
+    }
+
+    /**
+     * Writes the source of the generated class to a directory.
+     * Package directories are created as needed.
+     * @param outputDirectory
+     *   The source root directory.
+     * @return
+     *   The source file.
+     * @throws IOException
+     *   If the file can not be written.
+     */
+    public File write(final File outputDirectory) throws IOException {
+        if (outputDirectory == null) {
+            throw new NullPointerException("outputDirectory must not be null");
+        }
+
+        final File packageDirectory = new File(outputDirectory,
+                packageName.replace('.', File.separatorChar));
+        if (!packageDirectory.isDirectory() && !packageDirectory.mkdirs()) {
+            throw new IOException("failed to create directory " + packageDirectory);
+        }
+
+        final File sourceFile = new File(packageDirectory, simpleClassName + ".java");
+        final Writer out = new OutputStreamWriter(new FileOutputStream(sourceFile), "UTF-8");
+        try {
+            write(out);
+        } finally {
+            out.close();
+        }
+
+        return sourceFile;
+
+    }
+
+    /**
+     * Writes the source of the generated class.
+     * @param out
+     *   Where to write the source.
+     * @throws IOException
+     *   If writing fails.
+     */
+    public void write(final Writer out) throws IOException {
+        if (out == null) {
+            throw new NullPointerException("out must not be null");
+        }
+
+        final StringBuilder sb = new StringBuilder();
+
+        if (packageName.length() > 0) {
+            sb.append("package ").append(packageName).append(";\n\n");
+        }
+
+        sb.append("import com.butterfill.sqlrunner.SqlRunnerException;\n")
+                .append("import com.butterfill.sqlrunner.SqlRunnerFileReader;\n")
+                .append("import com.butterfill.sqlrunner.SqlRunnerStatement;\n")
+                .append("import java.io.FileNotFoundException;\n")
+                .append("import java.util.ArrayList;\n")
+                .append("import java.util.Arrays;\n")
+                .append("import java.util.Collections;\n")
+                .append("import java.util.List;\n\n")
+                .append("/**\n")
+                .append(" * Holds the statements read from SQL script files at build time.\n")
+                .append(" * Generated by sql-runner-maven-plugin - do not edit.\n")
+                .append(" */\n")
+                .append("public class ").append(simpleClassName)
+                .append(" implements SqlRunnerFileReader {\n\n")
+                .append("    /**\n")
+                .append("     * Names of the files held by this class, in sorted order.\n")
+                .append("     */\n")
+                .append("    private static final String[] FILE_NAMES = {\n");
+
+        for (String fileName : files.keySet()) {
+            sb.append("        ").append(literal(fileName)).append(",\n");
+        }
+
+        sb.append("    };\n\n")
+                .append("    /**\n")
+                .append("     * Returns the names of the files held by this class.\n")
+                .append("     * @return\n")
+                .append("     *   The names of the files held by this class, in sorted order.\n")
+                .append("     */\n")
+                .append("    public static List<String> getFileNames() {\n")
+                .append("        return Collections.unmodifiableList(Arrays.asList(FILE_NAMES));\n")
+                .append("    }\n\n")
+                .append("    /**\n")
+                .append("     * Returns new statements for a file held by this class.\n")
+                .append("     * @param fileName\n")
+                .append("     *   Name of the file to read.\n")
+                .append("     * @return\n")
+                .append("     *   A list of SqlRunnerStatements.\n")
+                .append("     */\n")
+                .append("    public List<SqlRunnerStatement> readFile(final String fileName) {\n")
+                .append("        if (fileName == null) {\n")
+                .append("            throw new NullPointerException(")
+                .append("\"fileName must not be null\");\n")
+                .append("        }\n")
+                .append("        switch (Arrays.binarySearch(FILE_NAMES, fileName)) {\n");
+
+        for (int i = 0; i < files.size(); i++) {
+            sb.append("            case ").append(i).append(":\n")
+                    .append("                return file").append(i).append("();\n");
+        }
+
+        sb.append("            default:\n")
+                .append("                throw new SqlRunnerException(\"failed to read file [\"")
+                .append(" + fileName\n")
+                .append("                        + \"]. using ").append(simpleClassName)
+                .append("\",\n")
+                .append("                        new FileNotFoundException(fileName));\n")
+                .append("        }\n")
+                .append("    }\n");
+
+        boolean hasParallelStatements = false;
+        boolean hasHintedStatements = false;
+        boolean hasCommitStatements = false;
+        int fileIndex = 0;
+        for (Map.Entry<String, List<SqlRunnerStatement>> file : files.entrySet()) {
+            final List<SqlRunnerStatement> statements = file.getValue();
+            final int partCount =
+                    (statements.size() + STATEMENTS_PER_METHOD - 1) / STATEMENTS_PER_METHOD;
+
+            sb.append("\n")
+                    .append("    /**\n")
+                    .append("     * Returns new statements for ")
+                    .append(escapeComment(file.getKey())).append(".\n")
+                    .append("     * @return\n")
+                    .append("     *   A list of SqlRunnerStatements.\n")
+                    .append("     */\n")
+                    .append("    private static List<SqlRunnerStatement> file").append(fileIndex)
+                    .append("() {\n")
+                    .append("        final List<SqlRunnerStatement> result =\n")
+                    .append("                new ArrayList<SqlRunnerStatement>(")
+                    .append(statements.size()).append(");\n");
+
+            for (int part = 0; part < partCount; part++) {
+                sb.append("        file").append(fileIndex).append("Part").append(part)
+                        .append("(result);\n");
+            }
+
+            sb.append("        return result;\n")
+                    .append("    }\n");
+
+            for (int part = 0; part < partCount; part++) {
+                final int start = part * STATEMENTS_PER_METHOD;
+                final int end = Math.min(start + STATEMENTS_PER_METHOD, statements.size());
+
+                sb.append("\n")
+                        .append("    /**\n")
+                        .append("     * Adds statements ").append(start + 1).append(" to ")
+                        .append(end).append(" of ")
+                        .append(escapeComment(file.getKey())).append(" to a list.\n")
+                        .append("     * @param result\n")
+                        .append("     *   The list to add the statements to.\n")
+                        .append("     */\n")
+                        .append("    private static void file").append(fileIndex)
+                        .append("Part").append(part)
+                        .append("(final List<SqlRunnerStatement> result) {\n");
+
+                for (SqlRunnerStatement statement : statements.subList(start, end)) {
+                    final boolean parallel = statement.getParallelBlock() != 0;
+                    final boolean hinted = statement.getFetchSize() != 0
+                            || statement.getMaxRows() != 0 || statement.getForwardOnly();
+                    final boolean committing = statement.getCommitEvery() != 0
+                            || statement.getCommitEveryRows() != 0
+                            || statement.getAutoCommit();
+                    sb.append("        result.add(")
+                            .append(committing ? "commit(" : "")
+                            .append(hinted ? "hints(" : "")
+                            .append(parallel ? "parallel(" : "")
+                            .append("new SqlRunnerStatement(\n")
+                            .append("                ").append(literal(statement.getName()))
+                            .append(",\n")
+                            .append("                ").append(literal(statement.getSql()))
+                            .append(",\n")
+                            .append("                ").append(statement.getFailFast())
+                            .append(")");
+                    if (parallel) {
+                        sb.append(", ").append(statement.getParallelBlock())
+                                .append(", ").append(statement.getParallelism()).append(")");
+                        hasParallelStatements = true;
+                    }
+                    if (hinted) {
+                        sb.append(", ").append(statement.getFetchSize())
+                                .append(", ").append(statement.getMaxRows())
+                                .append(", ").append(statement.getForwardOnly()).append(")");
+                        hasHintedStatements = true;
+                    }
+                    if (committing) {
+                        sb.append(", ").append(statement.getCommitEvery())
+                                .append(", ").append(statement.getCommitEveryRows())
+                                .append(", ").append(statement.getAutoCommit()).append(")");
+                        hasCommitStatements = true;
+                    }
+                    sb.append(");\n");
+                }
+
+                sb.append("    }\n");
+            }
+
+            fileIndex++;
+        }
+
+        if (hasParallelStatements) {
+            sb.append("\n")
+                    .append("    /**\n")
+                    .append("     * Puts a statement in a parallel block.\n")
+                    .append("     * @param statement\n")
+                    .append("     *   The statement.\n")
+                    .append("     * @param parallelBlock\n")
+                    .append("     *   Identifies the parallel block.\n")
+                    .append("     * @param parallelism\n")
+                    .append("     *   The maximum number of connections used to run the block.\n")
+                    .append("     * @return\n")
+                    .append("     *   The statement.\n")
+                    .append("     */\n")
+                    .append("    private static SqlRunnerStatement parallel(")
+                    .append("final SqlRunnerStatement statement,\n")
+                    .append("            final int parallelBlock, final int parallelism) {\n")
+                    .append("        statement.setParallel(parallelBlock, parallelism);\n")
+                    .append("        return statement;\n")
+                    .append("    }\n");
+        }
+
+        if (hasHintedStatements) {
+            sb.append("\n")
+                    .append("    /**\n")
+                    .append("     * Sets the JDBC hints of a statement.\n")
+                    .append("     * @param statement\n")
+                    .append("     *   The statement.\n")
+                    .append("     * @param fetchSize\n")
+                    .append("     *   The fetch size - 0 for the driver default.\n")
+                    .append("     * @param maxRows\n")
+                    .append("     *   The maximum number of rows - 0 for no limit.\n")
+                    .append("     * @param forwardOnly\n")
+                    .append("     *   True if results are read forward only.\n")
+                    .append("     * @return\n")
+                    .append("     *   The statement.\n")
+                    .append("     */\n")
+                    .append("    private static SqlRunnerStatement hints(")
+                    .append("final SqlRunnerStatement statement,\n")
+                    .append("            final int fetchSize, final int maxRows, ")
+                    .append("final boolean forwardOnly) {\n")
+                    .append("        statement.setFetchSize(fetchSize);\n")
+                    .append("        statement.setMaxRows(maxRows);\n")
+                    .append("        statement.setForwardOnly(forwardOnly);\n")
+                    .append("        return statement;\n")
+                    .append("    }\n");
+        }
+
+        if (hasCommitStatements) {
+            sb.append("\n")
+                    .append("    /**\n")
+                    .append("     * Sets the commit options of a statement.\n")
+                    .append("     * @param statement\n")
+                    .append("     *   The statement.\n")
+                    .append("     * @param commitEvery\n")
+                    .append("     *   The number of statements to run between commits.\n")
+                    .append("     * @param commitEveryRows\n")
+                    .append("     *   The number of rows to change between commits.\n")
+                    .append("     * @param autoCommit\n")
+                    .append("     *   True if the statement is run with auto commit enabled.\n")
+                    .append("     * @return\n")
+                    .append("     *   The statement.\n")
+                    .append("     */\n")
+                    .append("    private static SqlRunnerStatement commit(")
+                    .append("final SqlRunnerStatement statement,\n")
+                    .append("            final int commitEvery, final int commitEveryRows, ")
+                    .append("final boolean autoCommit) {\n")
+                    .append("        statement.setCommitEvery(commitEvery, commitEveryRows);\n")
+                    .append("        statement.setAutoCommit(autoCommit);\n")
+                    .append("        return statement;\n")
+                    .append("    }\n");
+        }
+
+        sb.append("\n}\n");
+
+        out.write(sb.toString());
+
+    }
+
+    /**
+     * Returns a Java expression for a string.
+     * Long strings are split into several literals that are joined at runtime.
+     * @param string
+     *   The string, which may be null.
+     * @return
+     *   A Java expression for the string.
+     */
+    String literal(final String string) {
+        if (string == null) {
+            return "null";
+        }
+
+        if (string.length() <= MAX_LITERAL_LENGTH) {
+            return quote(string, 0, string.length());
+        }
+
+        final StringBuilder sb = new StringBuilder("new StringBuilder(")
+                .append(string.length()).append(')');
+        for (int start = 0; start < string.length(); start += MAX_LITERAL_LENGTH) {
+            final int end = Math.min(start + MAX_LITERAL_LENGTH, string.length());
+            sb.append("\n                        .append(").append(quote(string, start, end))
+                    .append(')');
+        }
+        return sb.append(".toString()").toString();
+
+    }
+
+    /**
+     * Returns part of a string as a Java string literal.
+     * @param string
+     *   The string.
+     * @param start
+     *   Index of the first char to quote.
+     * @param end
+     *   Index after the last char to quote.
+     * @return
+     *   A Java string literal.
+     */
+    private String quote(final String string, final int start, final int end) {
+        final StringBuilder sb = new StringBuilder(end - start + 2).append('"');
+        for (int i = start; i < end; i++) {
+            final char c = string.charAt(i);
+            switch (c) {
+                case '"':
+                    sb.append("\\\"");
+                    break;
+                case '\\':
+                    sb.append("\\\\");
+                    break;
+                case '\n':
+                    sb.append("\\n");
+                    break;
+                case '\r':
+                    sb.append("\\r");
+                    break;
+                case '\t':
+                    sb.append("\\t");
+                    break;
+                default:
+                    if (c < FIRST_PRINTABLE_CHAR || c > LAST_PRINTABLE_CHAR) {
+                        sb.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        sb.append(c);
+                    }
+                    break;
+            }
+        }
+        return sb.append('"').toString();
+    }
+
+    /**
+     * Makes a file name safe to use in a javadoc comment.
+     * @param fileName
+     *   The file name.
+     * @return
+     *   The file name, with anything that could end the comment or start a unicode escape
+     *   replaced.
+     */
+    private String escapeComment(final String fileName) {
+        return fileName.replace("*/", "*&#47;").replace("\\", "&#92;");
+    }
+
+}
@@ -0,0 +1,31 @@
+/**
+ * Provides a maven plugin that compiles SQL script files into Java classes at build time.
+ *
+ * <p>
+ * Add the plugin to a project to generate a
+ * {@link com.butterfill.sqlrunner.SqlRunnerFileReader} that holds the statements from every
+ * SQL file in src/main/resources. e.g.
+ * </p>
+ * <pre>
+ *   &lt;plugin&gt;
+ *       &lt;groupId&gt;com.butterfill&lt;/groupId&gt;
+ *       &lt;artifactId&gt;sql-runner-maven-plugin&lt;/artifactId&gt;
+ *       &lt;version&gt;1.1.0-SNAPSHOT&lt;/version&gt;
+ *       &lt;configuration&gt;
+ *           &lt;className&gt;com.example.SqlScripts&lt;/className&gt;
+ *       &lt;/configuration&gt;
+ *       &lt;executions&gt;
+ *           &lt;execution&gt;
+ *               &lt;goals&gt;
+ *                   &lt;goal&gt;compile&lt;/goal&gt;
+ *               &lt;/goals&gt;
+ *           &lt;/execution&gt;
+ *       &lt;/executions&gt;
+ *   &lt;/plugin&gt;
+ * </pre>
+ * <p>
+ * and set an instance of the generated class as the file reader of the SqlRunnerFactory.
+ * </p>
+ */
+
+package com.butterfill.sqlrunner.maven;
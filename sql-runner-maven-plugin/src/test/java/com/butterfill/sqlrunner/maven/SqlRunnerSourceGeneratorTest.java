@@ -0,0 +1,188 @@
+package com.butterfill.sqlrunner.maven;
+
+import com.butterfill.sqlrunner.SqlRunnerStatement;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Peter Butterfill
+ */
+public class SqlRunnerSourceGeneratorTest {
+
+    public SqlRunnerSourceGeneratorTest() {
+    }
+
+    @BeforeClass
+    public static void setUpClass() {
+    }
+
+    @AfterClass
+    public static void tearDownClass() {
+    }
+
+    @Before
+    public void setUp() {
+    }
+
+    @After
+    public void tearDown() {
+    }
+
+    private String generate(SqlRunnerSourceGenerator generator) throws IOException {
+        StringWriter out = new StringWriter();
+        generator.write(out);
+        return out.toString();
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void testConstructor_nullClassName() {
+        new SqlRunnerSourceGenerator(null);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testConstructor_noSimpleName() {
+        new SqlRunnerSourceGenerator("com.example.");
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void testAddFile_nullFileName() {
+        new SqlRunnerSourceGenerator("A").addFile(null, new ArrayList<SqlRunnerStatement>());
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void testAddFile_nullStatements() {
+        new SqlRunnerSourceGenerator("A").addFile("a.sql", null);
+    }
+
+    @Test
+    public void testWrite() throws IOException {
+        String source = generate(new SqlRunnerSourceGenerator("com.example.SqlScripts")
+                .addFile("z/b.sql", Arrays.asList(
+                new SqlRunnerStatement("x", "select 'a\"b\\c'\nfrom dual", false),
+                new SqlRunnerStatement(null, "select 1 from dual")))
+                .addFile("a.sql", new ArrayList<SqlRunnerStatement>()));
+
+        assertTrue(source.startsWith("package com.example;\n"));
+        assertTrue(source.contains(
+                "public class SqlScripts implements SqlRunnerFileReader {"));
+        // files are sorted by name so they can be found using a binary search
+        assertTrue(source.contains("FILE_NAMES = {\n        \"a.sql\",\n        \"z/b.sql\",\n"));
+        assertTrue(source.contains("case 0:\n                return file0();"));
+        assertTrue(source.contains("case 1:\n                return file1();"));
+        assertTrue(source.contains("                \"x\",\n"
+                + "                \"select 'a\\\"b\\\\c'\\nfrom dual\",\n"
+                + "                false));"));
+        assertTrue(source.contains("                null,\n"
+                + "                \"select 1 from dual\",\n"
+                + "                true));"));
+        assertFalse(source.contains("parallel("));
+        assertFalse(source.contains("hints("));
+        assertFalse(source.contains("commit("));
+    }
+
+    @Test
+    public void testWrite_manyStatements() throws IOException {
+        List<SqlRunnerStatement> statements = new ArrayList<SqlRunnerStatement>();
+        for (int i = 0; i < SqlRunnerSourceGenerator.STATEMENTS_PER_METHOD * 2 + 1; i++) {
+            statements.add(new SqlRunnerStatement(null, "select " + i + " from dual"));
+        }
+        String source = generate(new SqlRunnerSourceGenerator("SqlScripts")
+                .addFile("a.sql", statements));
+
+        // statements are split across methods so no method is too large to compile
+        assertTrue(source.contains("        file0Part0(result);\n"
+                + "        file0Part1(result);\n"
+                + "        file0Part2(result);\n"
+                + "        return result;\n"));
+        assertFalse(source.contains("file0Part3"));
+        String part1 = source.substring(source.indexOf("void file0Part1("),
+                source.indexOf("void file0Part2("));
+        assertEquals(SqlRunnerSourceGenerator.STATEMENTS_PER_METHOD,
+                part1.split("result\\.add\\(").length - 1);
+        assertTrue(part1.contains("\"select " + SqlRunnerSourceGenerator.STATEMENTS_PER_METHOD
+                + " from dual\""));
+    }
+
+    @Test
+    public void testWrite_parallel() throws IOException {
+        SqlRunnerStatement statement = new SqlRunnerStatement(null, "create index i on t (c)");
+        statement.setParallel(2, 4);
+        String source = generate(new SqlRunnerSourceGenerator("SqlScripts")
+                .addFile("a.sql", Arrays.asList(statement)));
+        assertTrue(source.contains("        result.add(parallel(new SqlRunnerStatement(\n"
+                + "                null,\n"
+                + "                \"create index i on t (c)\",\n"
+                + "                true), 2, 4));"));
+        assertTrue(source.contains("statement.setParallel(parallelBlock, parallelism);"));
+    }
+
+    @Test
+    public void testWrite_hints() throws IOException {
+        SqlRunnerStatement statement = new SqlRunnerStatement(null, "select * from t");
+        statement.setFetchSize(500);
+        statement.setMaxRows(10);
+        statement.setForwardOnly(true);
+        String source = generate(new SqlRunnerSourceGenerator("SqlScripts")
+                .addFile("a.sql", Arrays.asList(statement)));
+        assertTrue(source.contains("        result.add(hints(new SqlRunnerStatement(\n"
+                + "                null,\n"
+                + "                \"select * from t\",\n"
+                + "                true), 500, 10, true));"));
+        assertTrue(source.contains("statement.setFetchSize(fetchSize);"));
+        assertFalse(source.contains("parallel("));
+    }
+
+    @Test
+    public void testWrite_commit() throws IOException {
+        SqlRunnerStatement statement = new SqlRunnerStatement(null, "insert into t values (1)");
+        statement.setCommitEvery(100, 5000);
+        statement.setParallel(1, 2);
+        String source = generate(new SqlRunnerSourceGenerator("SqlScripts")
+                .addFile("a.sql", Arrays.asList(statement)));
+        assertTrue(source.contains("        result.add(commit(parallel(new SqlRunnerStatement(\n"
+                + "                null,\n"
+                + "                \"insert into t values (1)\",\n"
+                + "                true), 1, 2), 100, 5000, false));"));
+        assertTrue(source.contains("statement.setCommitEvery(commitEvery, commitEveryRows);"));
+        assertFalse(source.contains("hints("));
+    }
+
+    @Test
+    public void testWrite_defaultPackage() throws IOException {
+        String source = generate(new SqlRunnerSourceGenerator("SqlScripts"));
+        assertTrue(source.startsWith("import "));
+        assertTrue(source.contains("public class SqlScripts "));
+    }
+
+    @Test
+    public void testLiteral() {
+        SqlRunnerSourceGenerator generator = new SqlRunnerSourceGenerator("A");
+        assertEquals("null", generator.literal(null));
+        assertEquals("\"\"", generator.literal(""));
+        assertEquals("\"\\t\\r\\n\\u00e9\\u0000\"", generator.literal("\t\r\n\u00e9\u0000"));
+    }
+
+    @Test
+    public void testLiteral_long() {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 40000; i++) {
+            sb.append('x');
+        }
+        String literal = new SqlRunnerSourceGenerator("A").literal(sb.toString());
+        assertTrue(literal.startsWith("new StringBuilder(40000)"));
+        assertTrue(literal.endsWith(".toString()"));
+        // 16384 + 16384 + 7232
+        assertEquals(3, literal.split("\\.append\\(").length - 1);
+    }
+
+}
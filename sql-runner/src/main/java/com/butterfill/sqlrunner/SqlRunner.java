@@ -1,15 +1,40 @@
 
 package com.butterfill.sqlrunner;
 
+import com.butterfill.sqlrunner.util.DefaultAttributeFormatterImpl;
+import com.butterfill.sqlrunner.util.SqlNameToJavaNameHelper;
+import java.sql.BatchUpdateException;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.sql.Types;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import javax.sql.DataSource;
@@ -19,7 +44,13 @@ import javax.sql.DataSource;
  * the statements can be read from a file (which can contain any number of statements) or
  * single statements can be passed as strings.
  *
- * <p>This class is not thread safe.</p>
+ * <p>
+ * This class is thread safe - one configured instance can be shared by many threads.
+ * Each call to a run method keeps its own state (such as the auto commit setting of its
+ * connection and the values supplied by attribute suppliers) but attributes set by one run,
+ * e.g. by SELECT statements, are seen by other runs. Callback handlers and file readers used by
+ * a shared instance must also be thread safe.
+ * </p>
  *
  * <p>Please see {@link com.butterfill.sqlrunner} description for usage details.</p>
  *
@@ -34,11 +65,28 @@ public final class SqlRunner {
      */
     public static final String CLASS_NAME = SqlRunner.class.getName();
 
+    /**
+     * The default maximum number of rows that load runs in a JDBC batch.
+     */
+    public static final int DEFAULT_LOAD_BATCH_SIZE = 1000;
+
     /**
      * The logger for this class.
      */
     private static final Logger logger = Logger.getLogger(CLASS_NAME);
 
+    /**
+     * Source of attribute versions - shared by all instances so that a version identifies the
+     * attributes of one instance.
+     */
+    private static final AtomicLong ATTRIBUTE_VERSIONS = new AtomicLong();
+
+    /**
+     * Converts column names to the java names used as the keys of published rows.
+     */
+    private static final SqlNameToJavaNameHelper SQL_NAME_TO_JAVA_NAME_HELPER =
+            new SqlNameToJavaNameHelper();
+
     /**
      * The data source to use when executing scripts.
      */
@@ -62,36 +110,81 @@ public final class SqlRunner {
     /**
      * The attribute name prefix.
      */
-    private String attributePrefix = "#{";
+    private volatile String attributePrefix = "#{";
 
     /**
      * The attribute name postfix.
      */
-    private String attributePostfix = "}";
+    private volatile String attributePostfix = "}";
 
     /**
      * Attributes that may be used in the SQL file.
+     * Values are kept as they were set and only formatted when they are put into SQL.
+     * Guarded by the lock of this instance.
      */
-    private final Map<String, String> attributeMap = new HashMap<String, String>();
+    private final Map<String, Object> attributeMap;
 
     /**
-     * Map of callback handlers.
-     * Key is a statement name (set via a sql-runner comment or null).
+     * Used to format attribute values that are put into SQL.
      */
-    private final Map<String, SqlRunnerCallbackHandler> callbackHandlerMap =
-            new HashMap<String, SqlRunnerCallbackHandler>();
+    private volatile SqlRunnerAttributeFormatter attributeFormatter =
+            new DefaultAttributeFormatterImpl();
 
     /**
-     * Map of result set next row callback handlers.
+     * The version of the attributes (and the options used to replace them) of this instance -
+     * which changes whenever they change.
+     * Statements keep the SQL they were rendered to, by attribute version, so they don't need to
+     * be rendered again if they are run again before the attributes change.
+     */
+    private volatile long attributeVersion = ATTRIBUTE_VERSIONS.incrementAndGet();
+
+    /**
+     * Set to true to bind attribute values to JDBC parameters rather than put them in the SQL.
+     */
+    private volatile boolean bindAttributes;
+
+    /**
+     * The maximum number of statements to run in a JDBC batch - batching is off if this is less
+     * than 2.
+     */
+    private volatile int batchSize;
+
+    /**
+     * The maximum number of rows that load runs in a JDBC batch - batching is off if this is less
+     * than 2.
+     */
+    private volatile int loadBatchSize = DEFAULT_LOAD_BATCH_SIZE;
+
+    /**
+     * The number of statements to run between commits - or 0 if commits do not depend on the
+     * number of statements.
+     */
+    private volatile int commitEvery;
+
+    /**
+     * The number of rows to change between commits - or 0 if commits do not depend on the
+     * number of rows changed.
+     */
+    private volatile int commitEveryRows;
+
+    /**
+     * The executor used to run statements asynchronously - or null to use the default executor.
+     */
+    private volatile ExecutorService asyncExecutor;
+
+    /**
+     * Map of callback handlers.
      * Key is a statement name (set via a sql-runner comment or null).
+     * Guarded by the lock of the map.
      */
-    private final Map<String, SqlRunnerResultSetNextRowCallbackHandler> rsnrCallbackHandlerMap =
-            new HashMap<String, SqlRunnerResultSetNextRowCallbackHandler>();
+    private final Map<String, SqlRunnerCallbackHandler> callbackHandlerMap;
 
     /**
-     * The auto commit setting of a connection before getConnection is called.
+     * Map of result set next row callback handlers.
+     * Key is a statement name (set via a sql-runner comment or null).
+     * Guarded by the lock of the map.
      */
-    private boolean oldAutoCommitSetting;
+    private final Map<String, SqlRunnerResultSetNextRowCallbackHandler> rsnrCallbackHandlerMap;
 
     /**
      * Creates a new SqlScriptRunner that will use the specified data source and default handlers.
@@ -107,6 +200,40 @@ public final class SqlRunner {
     public SqlRunner(final DataSource dataSource, final SqlRunnerCallbackHandler callbackHandler,
             final SqlRunnerResultSetNextRowCallbackHandler resultSetNextRowCallbackHandler,
             final SqlRunnerFileReader fileReader) {
+        this(dataSource, callbackHandler, resultSetNextRowCallbackHandler, fileReader,
+                Collections.<String, Object>emptyMap(),
+                Collections.<String, SqlRunnerCallbackHandler>emptyMap(),
+                Collections.<String, SqlRunnerResultSetNextRowCallbackHandler>emptyMap());
+    }
+
+    /**
+     * Creates a new SqlScriptRunner that will use the specified data source and default handlers
+     * and starts with the specified attributes and handlers.
+     * The maps passed to this constructor are not copied - they are used as the base layer of
+     * the attributes and handlers of this instance, so they can be shared by many instances and
+     * must not be changed.
+     * @param dataSource
+     *   The data source to use when executing scripts.
+     * @param callbackHandler
+     *   The callback handler to use when no handler has been set by statement name.
+     * @param resultSetNextRowCallbackHandler
+     *   The result set callback handler to use when no handler has been set by statement name.
+     * @param fileReader
+     *   The file reader to use.
+     * @param baseAttributeMap
+     *   The attributes this instance starts with.
+     * @param baseCallbackHandlerMap
+     *   The callback handlers this instance starts with.
+     * @param baseRsnrCallbackHandlerMap
+     *   The result set callback handlers this instance starts with.
+     */
+    SqlRunner(final DataSource dataSource, final SqlRunnerCallbackHandler callbackHandler,
+            final SqlRunnerResultSetNextRowCallbackHandler resultSetNextRowCallbackHandler,
+            final SqlRunnerFileReader fileReader,
+            final Map<String, Object> baseAttributeMap,
+            final Map<String, SqlRunnerCallbackHandler> baseCallbackHandlerMap,
+            final Map<String, SqlRunnerResultSetNextRowCallbackHandler>
+                    baseRsnrCallbackHandlerMap) {
         if (dataSource == null) {
             throw new NullPointerException("dataSource must not be null");
         }
@@ -123,6 +250,12 @@ public final class SqlRunner {
         this.defaultCallbackHandler = callbackHandler;
         this.defaultResultSetNextRowCallbackHandler = resultSetNextRowCallbackHandler;
         this.fileReader = fileReader;
+        this.attributeMap = new SqlRunnerLayeredMap<String, Object>(baseAttributeMap);
+        this.callbackHandlerMap =
+                new SqlRunnerLayeredMap<String, SqlRunnerCallbackHandler>(baseCallbackHandlerMap);
+        this.rsnrCallbackHandlerMap =
+                new SqlRunnerLayeredMap<String, SqlRunnerResultSetNextRowCallbackHandler>(
+                baseRsnrCallbackHandlerMap);
     }
 
     /**
@@ -134,10 +267,168 @@ public final class SqlRunner {
      * @return
      *   this instance.
      */
-    public SqlRunner setAttributePrefixAndPostfix(
+    public synchronized SqlRunner setAttributePrefixAndPostfix(
             final String attributePrefix, final String attributePostfix) {
         this.attributePrefix = (attributePrefix == null) ? "" : attributePrefix;
         this.attributePostfix = (attributePostfix == null) ? "" : attributePostfix;
+        attributesChanged();
+        return this;
+    }
+
+    /**
+     * Sets the bind attributes option of this instance.
+     * <p>
+     * By default, attribute values are put into the SQL - so the SQL is different for every
+     * attribute value and the database has to parse every statement that is run.
+     * If bind attributes is set to true, the placeholders of attributes that have been set are
+     * replaced by JDBC parameter markers (?) and the attribute values are bound to the
+     * parameters, using {@link PreparedStatement#setObject(int, java.lang.Object)}, after the
+     * callback handler has prepared the statement.
+     * The SQL then stays the same whatever the attribute values are, so the database (and the
+     * driver) can re-use the statement.
+     * </p>
+     * <p>
+     * Attributes can then only be used where a SQL parameter is allowed - e.g. they can not be
+     * used for table names and must not be quoted (use <code>#{ename}</code> rather than
+     * <code>'#{ename}'</code>).
+     * Placeholders in comments and quotes are not bound - their attribute values are put into
+     * the SQL.
+     * Placeholders of attributes that have not been set are left as they are.
+     * This option is ignored if the attribute prefix or postfix is empty.
+     * </p>
+     * @param bindAttributes
+     *   Pass true to bind attribute values, false to put attribute values into the SQL.
+     * @return
+     *   this instance.
+     */
+    public synchronized SqlRunner setBindAttributes(final boolean bindAttributes) {
+        this.bindAttributes = bindAttributes;
+        attributesChanged();
+        return this;
+    }
+
+    /**
+     * Sets the attribute formatter of this instance.
+     * The attribute formatter is used to format attribute values, that are not strings, when
+     * they are put into SQL.
+     * @param attributeFormatter
+     *   The attribute formatter.
+     * @return
+     *   this instance.
+     */
+    public synchronized SqlRunner setAttributeFormatter(
+            final SqlRunnerAttributeFormatter attributeFormatter) {
+        if (attributeFormatter == null) {
+            throw new NullPointerException("attributeFormatter must not be null");
+        }
+        this.attributeFormatter = attributeFormatter;
+        attributesChanged();
+        return this;
+    }
+
+    /**
+     * Sets the batch size of this instance.
+     * <p>
+     * If the batch size is 2 or more, consecutive INSERT, UPDATE, DELETE and MERGE statements
+     * that have the same name, fail fast option and SQL (after attributes have been replaced)
+     * are run as JDBC batches of up to batch size statements - using
+     * {@link PreparedStatement#addBatch()} and {@link PreparedStatement#executeBatch()}.
+     * This is most useful with {@link #setBindAttributes(boolean)}, as the SQL of statements that
+     * only differ by attribute values will then be the same.
+     * </p>
+     * <p>
+     * The update count of each statement is set from the result of executeBatch - which may be
+     * {@link java.sql.Statement#SUCCESS_NO_INFO} if the driver does not know the update count.
+     * The callback handler is asked to prepare one statement per batch, using the first
+     * statement of the batch.
+     * If a batch fails, the exception is set on the statement that failed (or on all statements
+     * of the batch if the driver does not say which statement failed).
+     * Statements of a non-"fail fast" batch that the driver did not run, because an earlier
+     * statement failed, are run one at a time.
+     * </p>
+     * @param batchSize
+     *   The maximum number of statements to run in a batch. Pass 0 to turn batching off.
+     * @return
+     *   this instance.
+     */
+    public SqlRunner setBatchSize(final int batchSize) {
+        if (batchSize < 0) {
+            throw new IllegalArgumentException("batchSize must not be negative");
+        }
+        this.batchSize = batchSize;
+        return this;
+    }
+
+    /**
+     * Sets the load batch size of this instance - the maximum number of rows that the load
+     * methods run in a JDBC batch. The default is {@link #DEFAULT_LOAD_BATCH_SIZE}.
+     * This is separate from the batch size used by the run methods (see
+     * {@link #setBatchSize(int)}) as loads always run the same statement, so batching them is
+     * safe - and is the main reason for using load.
+     * @param loadBatchSize
+     *   The maximum number of rows to run in a batch. Pass 0 (or 1) to run rows one at a time.
+     * @return
+     *   this instance.
+     */
+    public SqlRunner setLoadBatchSize(final int loadBatchSize) {
+        if (loadBatchSize < 0) {
+            throw new IllegalArgumentException("loadBatchSize must not be negative");
+        }
+        this.loadBatchSize = loadBatchSize;
+        return this;
+    }
+
+    /**
+     * Sets how often runs commit - the transaction is committed once statementCount statements
+     * have been run, or rowCount rows changed, since the last commit.
+     * <p>
+     * By default, a run holds one transaction until all statements have been run. Committing
+     * as a long script runs keeps the undo and locks held by the transaction small - but if a
+     * "fail fast" statement fails, only the work done since the last commit is rolled back.
+     * Statements read from a file after a <code>--sqlrunner.commitevery:</code> comment use the
+     * setting of the comment instead - see {@link com.butterfill.sqlrunner.util.DefaultFileReader}.
+     * </p>
+     * <p>
+     * This setting is ignored by methods that are passed a connection, as they never commit.
+     * Rows run by {@link #load(String, String, Iterator, int) } are committed every rowCount
+     * rows when neither the commit interval passed to load nor the statement say otherwise.
+     * </p>
+     * @param statementCount
+     *   The number of statements to run between commits - pass 0 if commits should not depend on
+     *   the number of statements.
+     * @param rowCount
+     *   The number of rows to change between commits - pass 0 if commits should not depend on
+     *   the number of rows changed.
+     * @return
+     *   this instance.
+     */
+    public SqlRunner setCommitEvery(final int statementCount, final int rowCount) {
+        if (statementCount < 0) {
+            throw new IllegalArgumentException("statementCount must not be negative");
+        }
+        if (rowCount < 0) {
+            throw new IllegalArgumentException("rowCount must not be negative");
+        }
+        this.commitEvery = statementCount;
+        this.commitEveryRows = rowCount;
+        return this;
+    }
+
+    /**
+     * Sets the executor used by {@link #runAsync(java.util.List) } and
+     * {@link #runFileAsync(java.lang.String) }.
+     * <p>
+     * The default executor creates daemon threads as they are needed and re-uses idle threads.
+     * Each run holds a thread (and a connection) until it finishes, so use an executor with a
+     * bounded number of threads if you need to limit the number of runs in progress.
+     * </p>
+     * @param asyncExecutor
+     *   The executor to use - or null to use the default executor.
+     * @return
+     *   this instance.
+     */
+    public SqlRunner setAsyncExecutor(final ExecutorService asyncExecutor) {
+        this.asyncExecutor = asyncExecutor;
         return this;
     }
 
@@ -146,7 +437,8 @@ public final class SqlRunner {
      * @param attribute
      *   Name of the attribute.
      * @param attributeValue
-     *   Value of the attribute - which will be converted to a String.
+     *   Value of the attribute - which is kept as it is and formatted, using the attribute
+     *   formatter of this instance, only when it is put into SQL.
      *   This method will use an empty string for the attribute value, if attributeValue is null.
      * @return
      *   this instance.
@@ -161,29 +453,52 @@ public final class SqlRunner {
      * @param attribute
      *   Name of the attribute.
      * @param attributeValue
-     *   Value of the attribute - which will be converted to a String.
+     *   Value of the attribute - which is kept as it is and formatted, using the attribute
+     *   formatter of this instance, only when it is put into SQL.
      * @param valueIfNull
      *   Value to use if attributeValue is null.
      * @return
      *   this instance.
      */
-    public SqlRunner setAttribute(
+    public synchronized SqlRunner setAttribute(
             final String attribute, final Object attributeValue, final String valueIfNull) {
-        final String stringAttributeValue;
-        if (attributeValue == null) {
-            stringAttributeValue = valueIfNull;
-        } else if (attributeValue instanceof String) {
-            stringAttributeValue = (String) attributeValue;
-        } else {
-            stringAttributeValue = attributeValue.toString();
-        }
-
-        attributeMap.put(attribute, stringAttributeValue);
+        attributeMap.put(attribute, (attributeValue == null) ? valueIfNull : attributeValue);
+        attributesChanged();
 
         return this;
 
     }
 
+    /**
+     * Sets an attribute supplier on this instance.
+     * The supplier is only called when a statement being run uses the attribute - and is called
+     * at most once each time one of the run methods of this instance is called.
+     * @param attribute
+     *   Name of the attribute.
+     * @param attributeSupplier
+     *   Supplies the value of the attribute - which is kept as it is and formatted, using the
+     *   attribute formatter of this instance, only when it is put into SQL.
+     * @return
+     *   this instance.
+     */
+    public SqlRunner setAttribute(
+            final String attribute, final SqlRunnerAttributeSupplier<?> attributeSupplier) {
+        return setAttribute(attribute, (Object) attributeSupplier, "");
+
+    }
+
+    /**
+     * Returns the value of an attribute of this instance.
+     * @param attribute
+     *   Name of the attribute.
+     * @return
+     *   The value of the attribute, as it was set (which may be an attribute supplier), or null
+     *   if the attribute has not been set.
+     */
+    public synchronized Object getAttribute(final String attribute) {
+        return attributeMap.get(attribute);
+    }
+
     /**
      * Sets a handler for a statement.
      * @param statementName
@@ -198,7 +513,9 @@ public final class SqlRunner {
      */
     public SqlRunner setCallbackHandler(
             final String statementName, final SqlRunnerCallbackHandler handler) {
-        callbackHandlerMap.put(statementName, handler);
+        synchronized (callbackHandlerMap) {
+            callbackHandlerMap.put(statementName, handler);
+        }
         return this;
     }
 
@@ -216,7 +533,9 @@ public final class SqlRunner {
      */
     public SqlRunner setResultSetNextRowCallbackHandler(final String statementName,
             final SqlRunnerResultSetNextRowCallbackHandler handler) {
-        rsnrCallbackHandlerMap.put(statementName, handler);
+        synchronized (rsnrCallbackHandlerMap) {
+            rsnrCallbackHandlerMap.put(statementName, handler);
+        }
         return this;
     }
 
@@ -266,6 +585,48 @@ public final class SqlRunner {
 
     }
 
+    /**
+     * Runs all SQL statements read from the specified file - reading one statement at a time.
+     * This method does the same as {@link #runFile(java.lang.String) } but the next statement is
+     * only read from the file once the previous statement has been run and executed statements
+     * are not kept, so memory use does not grow with the size of the file.
+     * <p>
+     * If the file reader used by this instance is not a {@link SqlRunnerStreamingFileReader},
+     * the whole file will be read before the first statement is run.
+     * </p>
+     * <p>
+     * Use callback handlers if you need to see the results of running each statement.
+     * </p>
+     * @param fileName
+     *   The name of the file (containing any number of SQL DML statements) that you want to run.
+     * @return
+     *   The number of statements executed.
+     */
+    public int runFileStreaming(final String fileName) {
+        final SqlRunnerStatementCursor cursor = openFile(fileName);
+
+        try {
+            final Connection connection = getConnection();
+            final boolean autoCommit = disableAutoCommit(connection);
+
+            try {
+                return runStatements(cursor, connection, true, null);
+
+            } catch (SqlRunnerException ex) {
+                throw rollbackOnError(connection, ex);
+
+            } finally {
+                close(connection, autoCommit);
+
+            }
+
+        } finally {
+            cursor.close();
+
+        }
+
+    }
+
     /**
      * Runs a list of SqlRunnerStatements.
      * This method will;
@@ -313,22 +674,16 @@ public final class SqlRunner {
         final List<SqlRunnerStatement> result = new ArrayList<SqlRunnerStatement>();
 
         final Connection connection = getConnection();
+        final boolean autoCommit = disableAutoCommit(connection);
 
         try {
-            for (SqlRunnerStatement sqlRunnerStatement : sqlRunnerStatements) {
-                final SqlRunnerStatement statementToExecute = new SqlRunnerStatement(
-                        sqlRunnerStatement.getName(),
-                        replaceAttributes(sqlRunnerStatement.getSql()),
-                        sqlRunnerStatement.getFailFast());
-                result.add(statementToExecute);
-                execute(connection, statementToExecute);
-            }
+            runStatements(sqlRunnerStatements.iterator(), connection, true, result);
 
         } catch (SqlRunnerException ex) {
             throw rollbackOnError(connection, ex);
 
         } finally {
-            close(connection);
+            close(connection, autoCommit);
 
         }
 
@@ -373,149 +728,1428 @@ public final class SqlRunner {
         }
 
         final Connection connection = getConnection();
+        final boolean autoCommit = disableAutoCommit(connection);
 
         try {
-            return execute(connection, new SqlRunnerStatement(null, replaceAttributes(sql)));
+            return execute(connection,
+                    newStatementToExecute(new SqlRunnerStatement(null, sql), startRun()));
 
         } catch (SqlRunnerException ex) {
             throw rollbackOnError(connection, ex);
 
         } finally {
-            close(connection);
+            close(connection, autoCommit);
 
         }
 
     }
 
     /**
-     * Runs all SQL statements read from the specified file.
-     * This method does the same as {@link #runFile(java.lang.String) } but uses the specified
-     * connection, rather than getting a connection from the datasource and does not commit the
-     * transaction.
+     * Runs all SQL statements read from the specified file using another thread.
+     * This method does the same as {@link #runFile(java.lang.String) } but returns as soon as
+     * the run has been submitted to the async executor of this instance - see
+     * {@link #setAsyncExecutor(java.util.concurrent.ExecutorService) }.
      * <p>
-     * This method might be useful if you needed to use SqlRunner and Hibernate to access a DB in
-     * the same transaction. Maybe using Hibernates Session#doWork(Work) method.
+     * This instance can be used, and changed, by other threads while the run is in progress.
+     * Each statement of the run uses the attributes and settings of this instance as they are
+     * when the statement is run - so changes made by other threads (or by result set handlers
+     * of other runs) are seen by the statements that follow them. Callback handlers used by the
+     * run must be thread safe.
      * </p>
      * @param fileName
      *   The name of the file (containing any number of SQL DML statements) that you want to run.
-     * @param connection
-     *   The connection this method will use to run the SQL.
      * @return
-     *   One SqlRunnerResult for each statement executed.
+     *   A future which gives one SqlRunnerStatement for each statement executed - or throws an
+     *   ExecutionException caused by the SqlRunnerException if the run fails.
      */
-    public List<SqlRunnerStatement> runFile(final String fileName, final Connection connection) {
-        return run(fileReader.readFile(fileName), connection);
+    public Future<List<SqlRunnerStatement>> runFileAsync(final String fileName) {
+        if (fileName == null) {
+            throw new NullPointerException("fileName must not be null");
+        }
+
+        return getAsyncExecutor().submit(new Callable<List<SqlRunnerStatement>>() {
+            public List<SqlRunnerStatement> call() {
+                return runFile(fileName);
+            }
+        });
 
     }
 
     /**
-     * Runs a list of SqlRunnerStatements using the specified connection.
-     * This method does the same as {@link #run(java.util.List) } but uses the specified
-     * connection, rather than getting a connection from the datasource and does not commit the
-     * transaction.
+     * Runs a list of SqlRunnerStatements using another thread.
+     * This method does the same as {@link #run(java.util.List) } but returns as soon as the run
+     * has been submitted to the async executor of this instance - see
+     * {@link #setAsyncExecutor(java.util.concurrent.ExecutorService) }.
      * <p>
-     * This method might be useful if you needed to use SqlRunner and Hibernate to access a DB in
-     * the same transaction. Maybe using Hibernates Session#doWork(Work) method.
+     * This instance can be used, and changed, by other threads while the run is in progress.
+     * Each statement of the run uses the attributes and settings of this instance as they are
+     * when the statement is run - so changes made by other threads (or by result set handlers
+     * of other runs) are seen by the statements that follow them. Callback handlers used by the
+     * run must be thread safe.
      * </p>
      * @param sqlRunnerStatements
-     *   A list of SqlRunnerStatements that you want to run.
-     * @param connection
-     *   The connection this method will use to run the SQL.
+     *   A list of SqlRunnerStatements that you want to run - which is copied before this method
+     *   returns.
      * @return
-     *   A new list of SqlRunnerStatements, which will have been updated as they are executed.
+     *   A future which gives a new list of SqlRunnerStatements, which will have been updated as
+     *   they were executed - or throws an ExecutionException caused by the SqlRunnerException if
+     *   the run fails.
      */
-    public List<SqlRunnerStatement> run(
-            final List<SqlRunnerStatement> sqlRunnerStatements, final Connection connection) {
+    public Future<List<SqlRunnerStatement>> runAsync(
+            final List<SqlRunnerStatement> sqlRunnerStatements) {
         if (sqlRunnerStatements == null) {
             throw new NullPointerException("sqlRunnerStatements must not be null");
         }
 
-        if (connection == null) {
-            throw new NullPointerException("connection must not be null");
-        }
-
-        final List<SqlRunnerStatement> result = new ArrayList<SqlRunnerStatement>();
-
-        for (SqlRunnerStatement sqlRunnerStatement : sqlRunnerStatements) {
-            final SqlRunnerStatement statementToExecute = new SqlRunnerStatement(
-                    sqlRunnerStatement.getName(),
-                    replaceAttributes(sqlRunnerStatement.getSql()),
-                    sqlRunnerStatement.getFailFast());
-            result.add(statementToExecute);
-            execute(connection, statementToExecute);
-        }
+        final List<SqlRunnerStatement> statements =
+                new ArrayList<SqlRunnerStatement>(sqlRunnerStatements);
 
-        return result;
+        return getAsyncExecutor().submit(new Callable<List<SqlRunnerStatement>>() {
+            public List<SqlRunnerStatement> call() {
+                return run(statements);
+            }
+        });
 
     }
 
     /**
-     * Runs a single SQL statement.
-     * This method does the same as {@link #run(java.lang.String) } but uses the specified
-     * connection, rather than getting a connection from the datasource and does not commit the
-     * transaction.
-     * <p>
-     * This method might be useful if you needed to use SqlRunner and Hibernate to access a DB in
-     * the same transaction. Maybe using Hibernates Session#doWork(Work) method.
-     * </p>
-     * @param sql
-     *   A SQL statement to execute.
-     * @param connection
-     *   The connection this method will use to run the SQL.
+     * Returns the executor used to run statements asynchronously.
      * @return
-     *   A SqlRunnerStatement for the executed statement.
+     *   The executor set on this instance or the default executor.
      */
-    public SqlRunnerStatement run(final String sql, final Connection connection) {
-        if (sql == null) {
-            throw new NullPointerException("sql must not be null");
-        }
-
-        if (connection == null) {
-            throw new NullPointerException("connection must not be null");
-        }
-
-        return execute(connection, new SqlRunnerStatement(null, replaceAttributes(sql)));
-
+    private ExecutorService getAsyncExecutor() {
+        return (asyncExecutor == null) ? DefaultAsyncExecutorHolder.EXECUTOR : asyncExecutor;
     }
 
     /**
-     * Replaces all attributes with their values.
-     * @param string
-     *   A string containing attribute names.
+     * Runs all SQL statements read from the specified file - running statements that do not
+     * depend on each other at the same time.
+     * This method does the same as {@link #runScheduled(java.util.List, int, boolean) } for the
+     * statements of the file - so, unlike {@link #runFile(java.lang.String) }, each statement
+     * is committed on its own.
+     * @param fileName
+     *   The name of the file (containing any number of SQL DML statements) that you want to run.
+     * @param maxConnections
+     *   The maximum number of connections to use - which must be at least 1.
+     * @param commitEachStatement
+     *   Pass true to accept that each statement is committed on its own - which must be true
+     *   if the file contains any "fail fast" statements.
      * @return
-     *   A string containing attribute values.
+     *   A report of the run.
      */
-    private String replaceAttributes(String string) {
-        for (Map.Entry<String, String> entry : attributeMap.entrySet()) {
-            string = string.replace(
-                    attributePrefix + entry.getKey() + attributePostfix,
-                    entry.getValue());
-        }
-        return string;
+    public SqlRunnerScheduleReport runFileScheduled(final String fileName,
+            final int maxConnections, final boolean commitEachStatement) {
+        return runScheduled(fileReader.readFile(fileName), maxConnections, commitEachStatement);
+
     }
 
     /**
-     * Executes the statement.
-     * @param connection
-     *   The connection to use.
-     * @param sqlRunnerStatement
-     *   The statement to execute.
+     * Runs a list of SqlRunnerStatements - running statements that do not depend on each other
+     * at the same time, using up to maxConnections connections from the data source.
+     * <p>
+     * The objects that each statement reads and writes are found by scanning its SQL and a
+     * statement is only started once all earlier statements that it depends on have finished.
+     * Statements that can not be analysed (such as PL/SQL blocks) are run after all earlier
+     * statements have finished and before any later statements start.
+     * Please see the package description for details.
+     * </p>
+     * <p>
+     * Unlike {@link #run(java.util.List) }, the statements are not run in one transaction.
+     * Each statement is committed on its own connection as soon as it has run, so if a
+     * "fail fast" statement fails, only that statement is rolled back - statements that
+     * finished before the failure stay committed.
+     * Callers must pass commitEachStatement as true to accept this when any statement is
+     * "fail fast" (which is the default for statements read from files).
+     * No new statements are started after a failure and the SqlRunnerException is thrown once
+     * running statements have finished.
+     * Batching and parallel block comments are ignored when statements are scheduled.
+     * </p>
+     * @param sqlRunnerStatements
+     *   A list of SqlRunnerStatements that you want to run.
+     * @param maxConnections
+     *   The maximum number of connections to use - which must be at least 1.
+     * @param commitEachStatement
+     *   Pass true to accept that each statement is committed on its own - which must be true
+     *   if any of the statements are "fail fast".
      * @return
-     *   statement, after setting resultOfExecutionWasResultSet and updateCount.
+     *   A report of the run, which includes the executed statements.
+     * @throws SqlRunnerException
+     *   If any of the statements are "fail fast" and commitEachStatement is false - or if a
+     *   "fail fast" statement fails.
      */
-    private SqlRunnerStatement execute(
-            final Connection connection, final SqlRunnerStatement sqlRunnerStatement) {
-        final String method = "execute(Connection, SqlRunnerStatement)";
+    public SqlRunnerScheduleReport runScheduled(final List<SqlRunnerStatement> sqlRunnerStatements,
+            final int maxConnections, final boolean commitEachStatement) {
+        final String method = "runScheduled(List, int, boolean)";
 
-        SqlRunnerCallbackHandler handler = callbackHandlerMap.get(sqlRunnerStatement.getName());
-        if (handler == null) {
-            handler = defaultCallbackHandler;
+        if (sqlRunnerStatements == null) {
+            throw new NullPointerException("sqlRunnerStatements must not be null");
+        }
+        if (maxConnections < 1) {
+            throw new IllegalArgumentException("maxConnections must be at least 1");
+        }
+        if (!commitEachStatement) {
+            for (SqlRunnerStatement sqlRunnerStatement : sqlRunnerStatements) {
+                if (sqlRunnerStatement.getFailFast()) {
+                    throw new SqlRunnerException("scheduled statements are committed one at a "
+                            + "time, so statements that finish before a fail fast statement "
+                            + "fails are not rolled back. pass commitEachStatement as true to "
+                            + "schedule " + sqlRunnerStatement, null);
+                }
+            }
         }
 
-        PreparedStatement preparedStatement = null;
+        final long startTime = System.nanoTime();
+        final int size = sqlRunnerStatements.size();
+        final SqlRunnerDependencyGraph graph = SqlRunnerDependencyGraph.build(
+                sqlRunnerStatements, attributePrefix, attributePostfix);
+
+        // the number of unfinished dependencies of each statement and the statements that
+        // depend on each statement
+        final int[] waitCounts = new int[size];
+        final List<List<Integer>> dependents = new ArrayList<List<Integer>>(size);
+        final PriorityQueue<Integer> ready = new PriorityQueue<Integer>();
+        for (int i = 0; i < size; i++) {
+            dependents.add(new ArrayList<Integer>());
+            final int[] dependencies = graph.getDependencies(i);
+            waitCounts[i] = dependencies.length;
+            for (int dependency : dependencies) {
+                dependents.get(dependency).add(i);
+            }
+            if (dependencies.length == 0) {
+                ready.add(i);
+            }
+        }
 
-        try {
-            preparedStatement = handler.prepareStatement(connection, sqlRunnerStatement);
+        final int connectionCount = Math.min(maxConnections, size);
+        final Connection[] connections = new Connection[connectionCount];
+        final boolean[] autoCommits = new boolean[connectionCount];
+        final BlockingQueue<Connection> idleConnections = new LinkedBlockingQueue<Connection>();
+        final SqlRunnerStatement[] executed = new SqlRunnerStatement[size];
+        final long[] statementTimes = new long[size];
+
+        final RunAttributes attributes = startRun();
+
+        ExecutorService executor = null;
+
+        try {
+            for (int i = 0; i < connectionCount; i++) {
+                final Connection connection = getConnection();
+                autoCommits[i] = disableAutoCommit(connection);
+                connections[i] = connection;
+                idleConnections.add(connection);
+            }
+
+            // threads are only created when statements are submitted
+            executor = Executors.newFixedThreadPool(Math.max(connectionCount, 1));
+
+            final CompletionService<Integer> completionService =
+                    new ExecutorCompletionService<Integer>(executor);
+
+            SqlRunnerException failure = null;
+            int runningCount = 0;
+            int finishedCount = 0;
+
+            while (finishedCount < size) {
+                while (failure == null && !ready.isEmpty() && runningCount < connectionCount) {
+                    final int index = ready.poll();
+                    executed[index] =
+                            newStatementToExecute(sqlRunnerStatements.get(index), attributes);
+                    completionService.submit(new Callable<Integer>() {
+                        public Integer call() throws InterruptedException {
+                            statementTimes[index] =
+                                    runScheduledStatement(idleConnections, executed[index]);
+                            return index;
+                        }
+                    });
+                    runningCount++;
+                }
+
+                if (runningCount == 0) {
+                    break;
+                }
+
+                try {
+                    final int index = completionService.take().get();
+                    finishedCount++;
+                    for (int dependent : dependents.get(index)) {
+                        if (--waitCounts[dependent] == 0) {
+                            ready.add(dependent);
+                        }
+                    }
+
+                } catch (ExecutionException ex) {
+                    if (failure == null) {
+                        failure = (ex.getCause() instanceof SqlRunnerException)
+                                ? (SqlRunnerException) ex.getCause()
+                                : new SqlRunnerException(
+                                        "failed to run scheduled statement", ex.getCause());
+                    }
+
+                }
+                runningCount--;
+            }
+
+            if (failure != null) {
+                throw failure;
+            }
+
+        } catch (InterruptedException ex) {
+            executor.shutdownNow();
+            Thread.currentThread().interrupt();
+            throw new SqlRunnerException("interrupted while running scheduled statements", ex);
+
+        } finally {
+            if (executor != null) {
+                executor.shutdown();
+            }
+            for (int i = 0; i < connectionCount; i++) {
+                close(connections[i], autoCommits[i]);
+            }
+
+        }
+
+        final SqlRunnerScheduleReport result = new SqlRunnerScheduleReport(
+                Arrays.asList(executed), graph, statementTimes, connectionCount,
+                System.nanoTime() - startTime);
+
+        logger.logp(Level.FINE, CLASS_NAME, method, "{0}", result);
+
+        return result;
+
+    }
+
+    /**
+     * Runs a scheduled statement, using an idle connection, and commits.
+     * If the statement fails, the transaction is rolled back.
+     * @param idleConnections
+     *   The connections that are not running statements - the connection used is put back
+     *   when the statement has finished.
+     * @param statementToExecute
+     *   The statement to run.
+     * @return
+     *   The time taken to run the statement, in nanoseconds.
+     * @throws InterruptedException
+     *   If interrupted while waiting for an idle connection.
+     */
+    private long runScheduledStatement(final BlockingQueue<Connection> idleConnections,
+            final SqlRunnerStatement statementToExecute) throws InterruptedException {
+        final Connection connection = idleConnections.take();
+
+        try {
+            final long startTime = System.nanoTime();
+            try {
+                execute(connection, statementToExecute);
+                connection.commit();
+
+            } catch (SQLException ex) {
+                throw rollbackOnError(connection,
+                        new SqlRunnerException("failed to commit. " + statementToExecute, ex));
+
+            } catch (SqlRunnerException ex) {
+                throw rollbackOnError(connection, ex);
+
+            }
+            return System.nanoTime() - startTime;
+
+        } finally {
+            idleConnections.add(connection);
+
+        }
+
+    }
+
+    /**
+     * Runs all SQL statements read from the specified file.
+     * This method does the same as {@link #runFile(java.lang.String) } but uses the specified
+     * connection, rather than getting a connection from the datasource and does not commit the
+     * transaction.
+     * <p>
+     * This method might be useful if you needed to use SqlRunner and Hibernate to access a DB in
+     * the same transaction. Maybe using Hibernates Session#doWork(Work) method.
+     * </p>
+     * @param fileName
+     *   The name of the file (containing any number of SQL DML statements) that you want to run.
+     * @param connection
+     *   The connection this method will use to run the SQL.
+     * @return
+     *   One SqlRunnerResult for each statement executed.
+     */
+    public List<SqlRunnerStatement> runFile(final String fileName, final Connection connection) {
+        return run(fileReader.readFile(fileName), connection);
+
+    }
+
+    /**
+     * Runs all SQL statements read from the specified file - reading one statement at a time.
+     * This method does the same as {@link #runFileStreaming(java.lang.String) } but uses the
+     * specified connection, rather than getting a connection from the datasource and does not
+     * commit the transaction.
+     * @param fileName
+     *   The name of the file (containing any number of SQL DML statements) that you want to run.
+     * @param connection
+     *   The connection this method will use to run the SQL.
+     * @return
+     *   The number of statements executed.
+     */
+    public int runFileStreaming(final String fileName, final Connection connection) {
+        if (connection == null) {
+            throw new NullPointerException("connection must not be null");
+        }
+
+        final SqlRunnerStatementCursor cursor = openFile(fileName);
+
+        try {
+            return runStatements(cursor, connection, false, null);
+
+        } finally {
+            cursor.close();
+
+        }
+
+    }
+
+    /**
+     * Runs a list of SqlRunnerStatements using the specified connection.
+     * This method does the same as {@link #run(java.util.List) } but uses the specified
+     * connection, rather than getting a connection from the datasource and does not commit the
+     * transaction.
+     * <p>
+     * This method might be useful if you needed to use SqlRunner and Hibernate to access a DB in
+     * the same transaction. Maybe using Hibernates Session#doWork(Work) method.
+     * </p>
+     * @param sqlRunnerStatements
+     *   A list of SqlRunnerStatements that you want to run.
+     * @param connection
+     *   The connection this method will use to run the SQL.
+     * @return
+     *   A new list of SqlRunnerStatements, which will have been updated as they are executed.
+     */
+    public List<SqlRunnerStatement> run(
+            final List<SqlRunnerStatement> sqlRunnerStatements, final Connection connection) {
+        if (sqlRunnerStatements == null) {
+            throw new NullPointerException("sqlRunnerStatements must not be null");
+        }
+
+        if (connection == null) {
+            throw new NullPointerException("connection must not be null");
+        }
+
+        final List<SqlRunnerStatement> result = new ArrayList<SqlRunnerStatement>();
+
+        runStatements(sqlRunnerStatements.iterator(), connection, false, result);
+
+        return result;
+
+    }
+
+    /**
+     * Runs a single SQL statement.
+     * This method does the same as {@link #run(java.lang.String) } but uses the specified
+     * connection, rather than getting a connection from the datasource and does not commit the
+     * transaction.
+     * <p>
+     * This method might be useful if you needed to use SqlRunner and Hibernate to access a DB in
+     * the same transaction. Maybe using Hibernates Session#doWork(Work) method.
+     * </p>
+     * @param sql
+     *   A SQL statement to execute.
+     * @param connection
+     *   The connection this method will use to run the SQL.
+     * @return
+     *   A SqlRunnerStatement for the executed statement.
+     */
+    public SqlRunnerStatement run(final String sql, final Connection connection) {
+        if (sql == null) {
+            throw new NullPointerException("sql must not be null");
+        }
+
+        if (connection == null) {
+            throw new NullPointerException("connection must not be null");
+        }
+
+        return execute(connection,
+                newStatementToExecute(new SqlRunnerStatement(null, sql), startRun()));
+
+    }
+
+    /**
+     * Runs a named statement, read from the specified file, once for each row returned by the
+     * specified iterator - binding the values of the row to the statement.
+     * <p>
+     * Each placeholder of the statement whose attribute has not been set on this instance is
+     * replaced by a JDBC parameter marker and the value of the row with the same name is bound
+     * to it (or null if the row has no value with that name).
+     * Placeholders of attributes that have been set are replaced as they are by the run methods.
+     * The statement is prepared once and rows are run in JDBC batches of up to load batch size
+     * rows - {@link #DEFAULT_LOAD_BATCH_SIZE} unless it has been changed by
+     * {@link #setLoadBatchSize(int)}. e.g.
+     * </p>
+     * <code>INSERT INTO emp (empno, ename) VALUES (#{empno}, #{ename});</code>
+     * <p>
+     * This method gets a connection from the data source, commits every commitInterval rows and
+     * commits once all rows have been loaded.
+     * If commitInterval is 0, rows are committed as often as a
+     * <code>--sqlrunner.commitevery:</code> comment on the statement, or
+     * {@link #setCommitEvery(int, int)}, asks for rows to be committed - which, by default, is
+     * only once all rows have been loaded.
+     * If loading a row fails, the rows loaded since the last commit are rolled back.
+     * The statement is always treated as a "fail fast" statement.
+     * </p>
+     * @param fileName
+     *   The name of the file that contains the statement.
+     * @param statementName
+     *   The name of the statement - which is set in the file via a sql-runner comment.
+     * @param rows
+     *   The rows to load. Key is attribute name.
+     * @param commitInterval
+     *   The number of rows to load between commits - pass 0 to use the commit options of the
+     *   statement or this instance.
+     * @return
+     *   The number of rows loaded.
+     */
+    public int load(final String fileName, final String statementName,
+            final Iterator<? extends Map<String, ?>> rows, final int commitInterval) {
+        return loadCommitting(fileName, statementName, null, rows, commitInterval);
+
+    }
+
+    /**
+     * Runs a named statement, read from the specified file, once for each row returned by the
+     * specified iterator - binding the values of the row to the statement.
+     * This method does the same as
+     * {@link #load(java.lang.String, java.lang.String, java.util.Iterator, int) } but each row is
+     * an array - whose values are named by columnNames.
+     * @param fileName
+     *   The name of the file that contains the statement.
+     * @param statementName
+     *   The name of the statement - which is set in the file via a sql-runner comment.
+     * @param columnNames
+     *   The attribute names of the values in each row.
+     * @param rows
+     *   The rows to load.
+     * @param commitInterval
+     *   The number of rows to load between commits - pass 0 to use the commit options of the
+     *   statement or this instance.
+     * @return
+     *   The number of rows loaded.
+     */
+    public int load(final String fileName, final String statementName,
+            final String[] columnNames, final Iterator<Object[]> rows, final int commitInterval) {
+        if (columnNames == null) {
+            throw new NullPointerException("columnNames must not be null");
+        }
+
+        return loadCommitting(fileName, statementName, columnNames, rows, commitInterval);
+
+    }
+
+    /**
+     * Runs a named statement once for each row returned by an iterator, using a connection from
+     * the data source and committing every commitInterval rows.
+     * @param fileName
+     *   The name of the file that contains the statement.
+     * @param statementName
+     *   The name of the statement.
+     * @param columnNames
+     *   The attribute names of the values of array rows - or null if rows are maps.
+     * @param rows
+     *   The rows to load.
+     * @param commitInterval
+     *   The number of rows to load between commits - or 0 to use the commit options of the
+     *   statement or this instance.
+     * @return
+     *   The number of rows loaded.
+     */
+    private int loadCommitting(final String fileName, final String statementName,
+            final String[] columnNames, final Iterator<?> rows, final int commitInterval) {
+        if (rows == null) {
+            throw new NullPointerException("rows must not be null");
+        }
+        if (commitInterval < 0) {
+            throw new IllegalArgumentException("commitInterval must not be negative");
+        }
+
+        final SqlRunnerStatement sqlRunnerStatement = readStatement(fileName, statementName);
+
+        final Connection connection = getConnection();
+        final boolean autoCommit = disableAutoCommit(connection);
+
+        try {
+            return loadRows(
+                    sqlRunnerStatement, columnNames, rows, connection, true, commitInterval);
+
+        } catch (SqlRunnerException ex) {
+            throw rollbackOnError(connection, ex);
+
+        } finally {
+            close(connection, autoCommit);
+
+        }
+
+    }
+
+    /**
+     * Runs a named statement, read from the specified file, once for each row returned by the
+     * specified iterator.
+     * This method does the same as
+     * {@link #load(java.lang.String, java.lang.String, java.util.Iterator, int) } but uses the
+     * specified connection, rather than getting a connection from the datasource, and does not
+     * commit the transaction.
+     * @param fileName
+     *   The name of the file that contains the statement.
+     * @param statementName
+     *   The name of the statement - which is set in the file via a sql-runner comment.
+     * @param rows
+     *   The rows to load. Key is attribute name.
+     * @param connection
+     *   The connection this method will use to run the SQL.
+     * @return
+     *   The number of rows loaded.
+     */
+    public int load(final String fileName, final String statementName,
+            final Iterator<? extends Map<String, ?>> rows, final Connection connection) {
+        if (rows == null) {
+            throw new NullPointerException("rows must not be null");
+        }
+        if (connection == null) {
+            throw new NullPointerException("connection must not be null");
+        }
+
+        return loadRows(
+                readStatement(fileName, statementName), null, rows, connection, false, 0);
+
+    }
+
+    /**
+     * Runs a named statement, read from the specified file, once for each row returned by the
+     * specified iterator.
+     * This method does the same as
+     * {@link #load(java.lang.String, java.lang.String, java.lang.String[], java.util.Iterator,
+     * int) } but uses the specified connection, rather than getting a connection from the
+     * datasource, and does not commit the transaction.
+     * @param fileName
+     *   The name of the file that contains the statement.
+     * @param statementName
+     *   The name of the statement - which is set in the file via a sql-runner comment.
+     * @param columnNames
+     *   The attribute names of the values in each row.
+     * @param rows
+     *   The rows to load.
+     * @param connection
+     *   The connection this method will use to run the SQL.
+     * @return
+     *   The number of rows loaded.
+     */
+    public int load(final String fileName, final String statementName,
+            final String[] columnNames, final Iterator<Object[]> rows,
+            final Connection connection) {
+        if (columnNames == null) {
+            throw new NullPointerException("columnNames must not be null");
+        }
+        if (rows == null) {
+            throw new NullPointerException("rows must not be null");
+        }
+        if (connection == null) {
+            throw new NullPointerException("connection must not be null");
+        }
+
+        return loadRows(readStatement(fileName, statementName), columnNames, rows, connection,
+                false, 0);
+
+    }
+
+    /**
+     * Returns a publisher of the rows returned by a named SELECT statement, read from the
+     * specified file.
+     * <p>
+     * The statement is run, using a connection from the data source, when a subscriber first
+     * requests rows - with attributes replaced as they are at that time.
+     * Rows are read from the result set only as they are requested, so the driver fetches
+     * fetchSize rows at a time as the subscriber asks for them - rather than the whole result
+     * being pushed through a result set callback handler.
+     * The connection is held until the subscriber has received all rows or cancels.
+     * </p>
+     * @param fileName
+     *   The name of the file that contains the statement.
+     * @param statementName
+     *   The name of the statement.
+     * @param fetchSize
+     *   The number of rows the driver should fetch at a time - or 0 to use the driver default.
+     * @return
+     *   A publisher that runs the statement once for each subscriber.
+     */
+    public SqlRunnerRowPublisher publishRows(
+            final String fileName, final String statementName, final int fetchSize) {
+        if (fetchSize < 0) {
+            throw new IllegalArgumentException("fetchSize must not be negative");
+        }
+
+        final SqlRunnerStatement sqlRunnerStatement = readStatement(fileName, statementName);
+
+        return new SqlRunnerRowPublisher() {
+            public void subscribe(final SqlRunnerRowSubscriber subscriber) {
+                if (subscriber == null) {
+                    throw new NullPointerException("subscriber must not be null");
+                }
+                subscriber.onSubscribe(
+                        new RowSubscription(sqlRunnerStatement, fetchSize, subscriber));
+            }
+        };
+
+    }
+
+    /**
+     * Returns a named statement read from a file.
+     * @param fileName
+     *   The name of the file that contains the statement.
+     * @param statementName
+     *   The name of the statement.
+     * @return
+     *   The first statement of the file with the specified name.
+     */
+    private SqlRunnerStatement readStatement(final String fileName, final String statementName) {
+        if (statementName == null) {
+            throw new NullPointerException("statementName must not be null");
+        }
+
+        for (SqlRunnerStatement sqlRunnerStatement : fileReader.readFile(fileName)) {
+            if (statementName.equals(sqlRunnerStatement.getName())) {
+                return sqlRunnerStatement;
+            }
+        }
+
+        throw new IllegalArgumentException(
+                "statement [" + statementName + "] not found in file [" + fileName + "]");
+
+    }
+
+    /**
+     * Runs a statement once for each row returned by an iterator.
+     * @param sqlRunnerStatement
+     *   The statement to run.
+     * @param columnNames
+     *   The attribute names of the values of array rows - or null if rows are maps.
+     * @param rows
+     *   The rows to load.
+     * @param connection
+     *   The connection to use.
+     * @param ownConnection
+     *   Pass true if the connection came from the data source - rows are never committed
+     *   otherwise.
+     * @param commitInterval
+     *   The number of rows to load between commits - or 0 to use the commit options of the
+     *   statement or this instance.
+     * @return
+     *   The number of rows loaded.
+     */
+    private int loadRows(final SqlRunnerStatement sqlRunnerStatement, final String[] columnNames,
+            final Iterator<?> rows, final Connection connection, final boolean ownConnection,
+            final int commitInterval) {
+        final String method =
+                "loadRows(SqlRunnerStatement, String[], Iterator, Connection, boolean, int)";
+
+        final SqlRunnerTemplate template;
+        final Map<String, Object> values;
+        final SqlRunnerAttributeFormatter formatter;
+        final boolean bind;
+        synchronized (this) {
+            if (attributePrefix.length() == 0 || attributePostfix.length() == 0) {
+                throw new IllegalStateException(
+                        "the attribute prefix and postfix must be set to load rows");
+            }
+            template = sqlRunnerStatement.getTemplate(attributePrefix, attributePostfix);
+            values = template.copyAttributes(attributeMap);
+            formatter = attributeFormatter;
+            bind = bindAttributes;
+        }
+
+        final List<Object> parameterValues = new ArrayList<Object>();
+        final List<String> parameterNames = new ArrayList<String>();
+        startRun().supply(values);
+        final String sql = template.renderParameters(
+                values, formatter, bind, parameterValues, parameterNames);
+        final SqlRunnerStatement statementToExecute =
+                new SqlRunnerStatement(sqlRunnerStatement.getName(), sql, true);
+        if (commitInterval > 0) {
+            statementToExecute.setCommitEvery(0, commitInterval);
+        } else {
+            statementToExecute.setCommitEvery(sqlRunnerStatement.getCommitEvery(),
+                    sqlRunnerStatement.getCommitEveryRows());
+        }
+
+        final CommitTracker commitTracker = new CommitTracker(connection, ownConnection);
+
+        // index of the row value of each parameter - or -1 for bound attributes
+        final int[] columnIndexes = new int[parameterNames.size()];
+        if (columnNames != null) {
+            final List<String> columnNameList = Arrays.asList(columnNames);
+            for (int i = 0; i < columnIndexes.length; i++) {
+                columnIndexes[i] = (parameterNames.get(i) == null)
+                        ? -1 : columnNameList.indexOf(parameterNames.get(i));
+            }
+        }
+
+        final SqlRunnerCallbackHandler handler = getCallbackHandler(statementToExecute.getName());
+
+        final int rowsPerBatch = loadBatchSize;
+        int rowCount = 0;
+        int batchCount = 0;
+
+        PreparedStatement preparedStatement = null;
+
+        try {
+            preparedStatement = handler.prepareStatement(connection, statementToExecute);
+
+            while (rows.hasNext()) {
+                final Object row = rows.next();
+                for (int i = 0; i < columnIndexes.length; i++) {
+                    final Object value;
+                    if (parameterNames.get(i) == null) {
+                        value = parameterValues.get(i);
+                    } else if (columnNames == null) {
+                        value = ((Map<?, ?>) row).get(parameterNames.get(i));
+                    } else {
+                        value = (columnIndexes[i] == -1) ? null
+                                : ((Object[]) row)[columnIndexes[i]];
+                    }
+                    if (value == null) {
+                        preparedStatement.setNull(i + 1, Types.NULL);
+                    } else {
+                        preparedStatement.setObject(i + 1, value);
+                    }
+                }
+
+                if (rowsPerBatch > 1) {
+                    preparedStatement.addBatch();
+                    batchCount++;
+                    if (batchCount == rowsPerBatch) {
+                        preparedStatement.executeBatch();
+                        batchCount = 0;
+                    }
+                } else {
+                    preparedStatement.execute();
+                }
+
+                rowCount++;
+
+                if (commitTracker.rowLoaded(statementToExecute)) {
+                    if (batchCount > 0) {
+                        preparedStatement.executeBatch();
+                        batchCount = 0;
+                    }
+                    commitTracker.commit();
+                }
+            }
+
+            if (batchCount > 0) {
+                preparedStatement.executeBatch();
+            }
+
+            statementToExecute.setResultOfExecutionWasResultSet(false);
+            statementToExecute.setUpdateCount(rowCount);
+            handler.executeComplete(preparedStatement, statementToExecute);
+
+        } catch (SQLException ex) {
+            statementToExecute.setException(ex);
+            throw new SqlRunnerException("failed to load row " + (rowCount + 1)
+                    + ". " + statementToExecute, ex);
+
+        } catch (RuntimeException ex) {
+            // e.g. the iterator failed or a row is not a map or array - we must not commit
+            throw new SqlRunnerException("failed to load row " + (rowCount + 1)
+                    + ". " + statementToExecute, ex);
+
+        } finally {
+            release(handler, preparedStatement);
+
+        }
+
+        logger.logp(Level.FINER, CLASS_NAME, method, "loaded {0} rows. {1}",
+                new Object[] {rowCount, statementToExecute});
+        return rowCount;
+
+    }
+
+    /**
+     * Runs statements, one at a time, as they are returned by the specified iterator -
+     * except for the statements of parallel blocks, which may be run at the same time.
+     * @param sqlRunnerStatements
+     *   The statements to run.
+     * @param connection
+     *   The connection to use.
+     * @param ownConnection
+     *   Pass true if this instance got the connection from its data source - in which case it
+     *   may commit and use other connections to run parallel blocks.
+     * @param result
+     *   Executed statements are added to this list - pass null if they should not be kept.
+     * @return
+     *   The number of statements executed.
+     */
+    private int runStatements(final Iterator<SqlRunnerStatement> sqlRunnerStatements,
+            final Connection connection, final boolean ownConnection,
+            final List<SqlRunnerStatement> result) {
+        final RunAttributes attributes = startRun();
+
+        final CommitTracker commitTracker = new CommitTracker(connection, ownConnection);
+
+        final List<SqlRunnerStatement> batch = new ArrayList<SqlRunnerStatement>();
+
+        int statementCount = 0;
+
+        try {
+            SqlRunnerStatement sqlRunnerStatement = next(sqlRunnerStatements);
+
+            while (sqlRunnerStatement != null) {
+                if (sqlRunnerStatement.getParallelBlock() != 0) {
+                    executeBatch(connection, batch, commitTracker);
+                    // parallel blocks commit before they start, so must not use auto commit
+                    commitTracker.setAutoCommit(false);
+
+                    final List<SqlRunnerStatement> block = new ArrayList<SqlRunnerStatement>();
+                    final int parallelBlock = sqlRunnerStatement.getParallelBlock();
+                    while (sqlRunnerStatement != null
+                            && sqlRunnerStatement.getParallelBlock() == parallelBlock) {
+                        block.add(sqlRunnerStatement);
+                        sqlRunnerStatement = next(sqlRunnerStatements);
+                    }
+
+                    runParallelBlock(block, connection, ownConnection, result, attributes);
+                    commitTracker.executed(block);
+                    statementCount += block.size();
+                    continue;
+                }
+
+                if (commitTracker.changesAutoCommit(sqlRunnerStatement)) {
+                    executeBatch(connection, batch, commitTracker);
+                    commitTracker.setAutoCommit(sqlRunnerStatement.getAutoCommit());
+                }
+
+                final long renderedAttributeVersion = attributeVersion;
+                SqlRunnerStatement statementToExecute =
+                        newStatementToExecute(sqlRunnerStatement, attributes);
+
+                if (!batch.isEmpty() && !isSameBatch(batch.get(0), statementToExecute)) {
+                    executeBatch(connection, batch, commitTracker);
+                    if (renderedAttributeVersion != attributeVersion) {
+                        // running the batch changed attributes that this statement may use
+                        statementToExecute = newStatementToExecute(sqlRunnerStatement, attributes);
+                    }
+                }
+
+                if (result != null) {
+                    result.add(statementToExecute);
+                }
+
+                if (batchSize > 1 && isBatchable(statementToExecute)) {
+                    batch.add(statementToExecute);
+                    if (batch.size() == batchSize) {
+                        executeBatch(connection, batch, commitTracker);
+                    }
+                } else {
+                    execute(connection, statementToExecute);
+                    commitTracker.executed(Collections.singletonList(statementToExecute));
+                }
+
+                statementCount++;
+                sqlRunnerStatement = next(sqlRunnerStatements);
+            }
+
+            executeBatch(connection, batch, commitTracker);
+
+        } finally {
+            commitTracker.finish();
+
+        }
+
+        return statementCount;
+
+    }
+
+    /**
+     * Executes the statements of a batch (if there are any), tells the commit tracker that they
+     * have been run and clears the batch.
+     * @param connection
+     *   The connection to use.
+     * @param batch
+     *   The statements to execute.
+     * @param commitTracker
+     *   The commit tracker of the run.
+     */
+    private void executeBatch(final Connection connection, final List<SqlRunnerStatement> batch,
+            final CommitTracker commitTracker) {
+        if (!batch.isEmpty()) {
+            executeBatch(connection, batch);
+            commitTracker.executed(batch);
+            batch.clear();
+        }
+    }
+
+    /**
+     * Returns the next statement from an iterator.
+     * @param sqlRunnerStatements
+     *   The iterator.
+     * @return
+     *   The next statement - or null if there are no more statements.
+     */
+    private static SqlRunnerStatement next(final Iterator<SqlRunnerStatement> sqlRunnerStatements) {
+        return sqlRunnerStatements.hasNext() ? sqlRunnerStatements.next() : null;
+    }
+
+    /**
+     * Runs the statements of a parallel block and waits for them all to finish.
+     * <p>
+     * Attributes are replaced in all statements of the block before any of them are run.
+     * If this instance got the connection from its data source, the transaction is committed
+     * and the statements are run by up to parallelism threads - each using its own connection
+     * from the data source.
+     * The work of all connections is committed once every statement of the block has finished -
+     * or rolled back if a "fail fast" statement fails.
+     * Otherwise, the statements are run one at a time using the connection.
+     * </p>
+     * @param block
+     *   The statements of the block.
+     * @param connection
+     *   The connection used to run the statements before the block.
+     * @param ownConnection
+     *   Pass true if this instance got the connection from its data source.
+     * @param result
+     *   Executed statements are added to this list - pass null if they should not be kept.
+     * @param attributes
+     *   The attributes of the run.
+     */
+    private void runParallelBlock(final List<SqlRunnerStatement> block,
+            final Connection connection, final boolean ownConnection,
+            final List<SqlRunnerStatement> result, final RunAttributes attributes) {
+        final String method = "runParallelBlock(List, Connection, boolean, List, "
+                + "RunAttributes)";
+
+        final List<SqlRunnerStatement> statementsToExecute =
+                new ArrayList<SqlRunnerStatement>(block.size());
+        for (SqlRunnerStatement sqlRunnerStatement : block) {
+            statementsToExecute.add(newStatementToExecute(sqlRunnerStatement, attributes));
+        }
+
+        if (result != null) {
+            result.addAll(statementsToExecute);
+        }
+
+        final int threadCount = Math.min(block.get(0).getParallelism(), block.size());
+
+        if (!ownConnection || threadCount == 1) {
+            // we must not commit (or use other connections) if we don't own the transaction
+            for (SqlRunnerStatement statementToExecute : statementsToExecute) {
+                execute(connection, statementToExecute);
+            }
+            return;
+        }
+
+        try {
+            // the statements of the block must see the work done before the block
+            connection.commit();
+        } catch (SQLException ex) {
+            throw new SqlRunnerException("failed to commit before parallel block", ex);
+        }
+
+        logger.logp(Level.FINE, CLASS_NAME, method,
+                "running {0} statements using {1} connections",
+                new Object[] {statementsToExecute.size(), threadCount});
+
+        final Iterator<SqlRunnerStatement> queue = statementsToExecute.iterator();
+        final AtomicBoolean failed = new AtomicBoolean();
+        final List<WorkerConnection> workerConnections = new ArrayList<WorkerConnection>();
+        final ExecutorService executor = Executors.newFixedThreadPool(threadCount);
+        final List<Future<?>> futures = new ArrayList<Future<?>>(threadCount);
+
+        SqlRunnerException failure = null;
+        boolean interrupted = false;
+
+        try {
+            for (int i = 0; i < threadCount; i++) {
+                futures.add(executor.submit(new Runnable() {
+                    public void run() {
+                        runParallelStatements(queue, failed, workerConnections);
+                    }
+                }));
+            }
+
+            // wait for all workers - even if we're interrupted - as they hold connections that we
+            // must roll back
+            for (Future<?> future : futures) {
+                while (true) {
+                    try {
+                        future.get();
+                        break;
+
+                    } catch (InterruptedException ex) {
+                        failed.set(true);
+                        executor.shutdownNow();
+                        if (!interrupted) {
+                            interrupted = true;
+                            failure = new SqlRunnerException(
+                                    "interrupted while running parallel block", ex);
+                        }
+
+                    } catch (ExecutionException ex) {
+                        if (failure == null) {
+                            failure = (ex.getCause() instanceof SqlRunnerException)
+                                    ? (SqlRunnerException) ex.getCause()
+                                    : new SqlRunnerException(
+                                            "failed to run parallel block", ex.getCause());
+                        }
+                        break;
+
+                    }
+                }
+            }
+
+        } finally {
+            executor.shutdown();
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+
+        }
+
+        final SqlRunnerException endFailure =
+                endParallelBlock(workerConnections, failure == null);
+
+        if (failure != null) {
+            throw failure;
+        }
+        if (endFailure != null) {
+            throw endFailure;
+        }
+
+    }
+
+    /**
+     * Runs statements of a parallel block, taken from a shared iterator, using a connection from
+     * the data source - until there are no statements left or a statement fails.
+     * The connection is added to workerConnections, without committing, so that the work of all
+     * threads running the block can be committed (or rolled back) together.
+     * @param queue
+     *   The statements of the block - which must only be used while holding its lock.
+     * @param failed
+     *   Set to true when a "fail fast" statement fails - which stops all threads running the
+     *   block.
+     * @param workerConnections
+     *   The connections used to run the block - which must only be used while holding its lock.
+     */
+    private void runParallelStatements(final Iterator<SqlRunnerStatement> queue,
+            final AtomicBoolean failed, final List<WorkerConnection> workerConnections) {
+        final Connection workerConnection;
+
+        try {
+            workerConnection = getConnection();
+            final boolean workerAutoCommit = disableAutoCommit(workerConnection);
+            synchronized (workerConnections) {
+                workerConnections.add(new WorkerConnection(workerConnection, workerAutoCommit));
+            }
+        } catch (SqlRunnerException ex) {
+            failed.set(true);
+            throw ex;
+        }
+
+        try {
+            while (!failed.get()) {
+                final SqlRunnerStatement statementToExecute;
+                synchronized (queue) {
+                    if (!queue.hasNext()) {
+                        break;
+                    }
+                    statementToExecute = queue.next();
+                }
+                execute(workerConnection, statementToExecute);
+            }
+
+        } catch (RuntimeException ex) {
+            failed.set(true);
+            throw ex;
+
+        }
+
+    }
+
+    /**
+     * Commits (or rolls back) and closes the connections used to run a parallel block.
+     * If a commit fails, the work of the connections that have not yet been committed is
+     * rolled back.
+     * @param workerConnections
+     *   The connections used to run the block.
+     * @param commit
+     *   Pass true to commit the work of the block, false to roll it back.
+     * @return
+     *   The exception thrown when committing or closing a connection failed - or null if all
+     *   connections were committed (or rolled back) and closed.
+     */
+    private SqlRunnerException endParallelBlock(
+            final List<WorkerConnection> workerConnections, final boolean commit) {
+        final String method = "endParallelBlock(List, boolean)";
+
+        SqlRunnerException result = null;
+
+        synchronized (workerConnections) {
+            for (WorkerConnection workerConnection : workerConnections) {
+                final Connection connection = workerConnection.connection;
+                if (commit && result == null) {
+                    try {
+                        connection.commit();
+                    } catch (SQLException ex) {
+                        result = new SqlRunnerException("failed to commit parallel block", ex);
+                    }
+                }
+                if (!commit || result != null) {
+                    try {
+                        connection.rollback();
+                    } catch (SQLException ex) {
+                        logger.logp(Level.WARNING, CLASS_NAME, method, "failed to rollback", ex);
+                    }
+                }
+                try {
+                    close(connection, workerConnection.autoCommit);
+                } catch (SqlRunnerException ex) {
+                    if (result == null) {
+                        result = ex;
+                    } else {
+                        logger.logp(Level.WARNING, CLASS_NAME, method,
+                                "failed to close connection", ex);
+                    }
+                }
+            }
+        }
+
+        return result;
+
+    }
+
+    /**
+     * Opens a file using the file reader of this instance.
+     * If the file reader can not read files one statement at a time, the whole file is read.
+     * @param fileName
+     *   Name of the file to open.
+     * @return
+     *   A cursor over the statements of the file.
+     */
+    private SqlRunnerStatementCursor openFile(final String fileName) {
+        if (fileReader instanceof SqlRunnerStreamingFileReader) {
+            return ((SqlRunnerStreamingFileReader) fileReader).openFile(fileName);
+        }
+
+        final Iterator<SqlRunnerStatement> iterator = fileReader.readFile(fileName).iterator();
+
+        return new SqlRunnerStatementCursor() {
+
+            public boolean hasNext() {
+                return iterator.hasNext();
+            }
+
+            public SqlRunnerStatement next() {
+                return iterator.next();
+            }
+
+            public void remove() {
+                throw new UnsupportedOperationException("remove is not supported");
+            }
+
+            public void close() {
+                // nothing to close
+            }
+
+        };
+
+    }
+
+    /**
+     * Returns a new statement, with the same name and fail fast option as the specified
+     * statement, that is ready to be executed - i.e. all attributes in the SQL have been replaced
+     * with their values (or parameter markers if we bind attributes).
+     * The compiled template held by the specified statement is used, if it has one, and SQL the
+     * statement holds for the current version of attributes is re-used - unless it was rendered
+     * using values supplied by attribute suppliers, as they are only kept for one run.
+     * @param sqlRunnerStatement
+     *   A statement whose SQL contains attribute names.
+     * @param attributes
+     *   The attributes of the run.
+     * @return
+     *   A new statement to execute.
+     */
+    private SqlRunnerStatement newStatementToExecute(
+            final SqlRunnerStatement sqlRunnerStatement, final RunAttributes attributes) {
+        final String prefix;
+        final String postfix;
+        final SqlRunnerAttributeFormatter formatter;
+        final boolean bind;
+        final long version;
+        SqlRunnerRenderedSql renderedSql = null;
+        SqlRunnerTemplate template = null;
+        Map<String, Object> values = null;
+
+        // copy what we need while holding the lock - suppliers are called and SQL is rendered
+        // without it, so other threads can use this instance in the meantime
+        synchronized (this) {
+            prefix = attributePrefix;
+            postfix = attributePostfix;
+            formatter = attributeFormatter;
+            bind = bindAttributes;
+            version = attributeVersion;
+            if (prefix.length() == 0 || postfix.length() == 0) {
+                values = new HashMap<String, Object>(attributeMap);
+            } else {
+                renderedSql = sqlRunnerStatement.getRenderedSql(version);
+                if (renderedSql == null) {
+                    template = sqlRunnerStatement.getTemplate(prefix, postfix);
+                    values = template.copyAttributes(attributeMap);
+                }
+            }
+        }
+
+        if (template == null && renderedSql == null) {
+            final SqlRunnerStatement result = new SqlRunnerStatement(sqlRunnerStatement.getName(),
+                    replaceAttributesOneByOne(sqlRunnerStatement.getSql(), values, attributes,
+                            prefix, postfix, formatter),
+                    sqlRunnerStatement.getFailFast());
+            copyOptions(sqlRunnerStatement, result);
+            return result;
+        }
+
+        if (renderedSql == null) {
+            final List<Object> bindValues = new ArrayList<Object>();
+            final boolean supplied = attributes.supply(values);
+            renderedSql = new SqlRunnerRenderedSql(sqlRunnerStatement.getSql(), version,
+                    template.render(values, formatter, bind ? bindValues : null),
+                    bindValues);
+            if (!supplied) {
+                sqlRunnerStatement.setRenderedSql(renderedSql);
+            }
+        }
+
+        final SqlRunnerStatement result = new SqlRunnerStatement(sqlRunnerStatement.getName(),
+                renderedSql.getSql(),
+                sqlRunnerStatement.getFailFast());
+        result.setBindValues(renderedSql.getBindValues());
+        copyOptions(sqlRunnerStatement, result);
+        return result;
+
+    }
+
+    /**
+     * Copies the parallel block, JDBC hints and commit options of a statement to the statement
+     * that will be executed.
+     * @param from
+     *   The statement read from a file.
+     * @param to
+     *   The statement to execute.
+     */
+    private static void copyOptions(final SqlRunnerStatement from, final SqlRunnerStatement to) {
+        to.setParallel(from.getParallelBlock(), from.getParallelism());
+        to.setFetchSize(from.getFetchSize());
+        to.setMaxRows(from.getMaxRows());
+        to.setForwardOnly(from.getForwardOnly());
+        to.setCommitEvery(from.getCommitEvery(), from.getCommitEveryRows());
+        to.setAutoCommit(from.getAutoCommit());
+    }
+
+    /**
+     * Passes the fetch size, max rows and forward only hints of a statement to a prepared
+     * statement - options that have not been set are left as the driver defaults.
+     * Statements re-used by {@link StatementCachingCallbackHandlerImpl} have the driver
+     * defaults put back before they are handed out again.
+     * @param preparedStatement
+     *   The prepared statement.
+     * @param sqlRunnerStatement
+     *   The statement that holds the hints.
+     * @throws SQLException
+     *   If the driver rejects a hint.
+     */
+    private static void applyHints(final PreparedStatement preparedStatement,
+            final SqlRunnerStatement sqlRunnerStatement) throws SQLException {
+        if (sqlRunnerStatement.getFetchSize() > 0) {
+            preparedStatement.setFetchSize(sqlRunnerStatement.getFetchSize());
+        }
+        if (sqlRunnerStatement.getMaxRows() > 0) {
+            preparedStatement.setMaxRows(sqlRunnerStatement.getMaxRows());
+        }
+        if (sqlRunnerStatement.getForwardOnly()) {
+            preparedStatement.setFetchDirection(ResultSet.FETCH_FORWARD);
+        }
+    }
+
+    /**
+     * Starts a run - each call to a run method has its own run attributes, so values supplied
+     * by attribute suppliers are kept for one run and runs on different threads don't share them.
+     * @return
+     *   The attributes for a new run.
+     */
+    private RunAttributes startRun() {
+        return new RunAttributes();
+    }
+
+    /**
+     * Gives the attributes of this instance a new version - so that SQL rendered for the old
+     * version is not re-used.
+     */
+    private void attributesChanged() {
+        attributeVersion = ATTRIBUTE_VERSIONS.incrementAndGet();
+    }
+
+    /**
+     * Replaces all attributes with their values, one attribute at a time -
+     * which is needed when the prefix or postfix is empty, as we can't tell where attribute
+     * names start or end.
+     * @param string
+     *   A string containing attribute names.
+     * @param values
+     *   A copy of the attributes of this instance.
+     * @param attributes
+     *   The attributes of the run - which supply the values of attribute suppliers.
+     * @param prefix
+     *   The attribute prefix.
+     * @param postfix
+     *   The attribute postfix.
+     * @param formatter
+     *   Used to format attribute values that are not strings.
+     * @return
+     *   A string containing attribute values.
+     */
+    private static String replaceAttributesOneByOne(final String string,
+            final Map<String, Object> values, final RunAttributes attributes,
+            final String prefix, final String postfix,
+            final SqlRunnerAttributeFormatter formatter) {
+        String result = string;
+        for (Map.Entry<String, Object> entry : values.entrySet()) {
+            final String placeholder = prefix + entry.getKey() + postfix;
+            if (result.contains(placeholder)) {
+                final Object value = attributes.supply(entry.getKey(), entry.getValue());
+                if (value != null) {
+                    result = result.replace(placeholder, (value instanceof String)
+                            ? (String) value : formatter.format(value));
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Executes the statement.
+     * @param connection
+     *   The connection to use.
+     * @param sqlRunnerStatement
+     *   The statement to execute.
+     * @return
+     *   statement, after setting resultOfExecutionWasResultSet and updateCount.
+     */
+    private SqlRunnerStatement execute(
+            final Connection connection, final SqlRunnerStatement sqlRunnerStatement) {
+        final String method = "execute(Connection, SqlRunnerStatement)";
+
+        final SqlRunnerCallbackHandler handler = getCallbackHandler(sqlRunnerStatement.getName());
+
+        PreparedStatement preparedStatement = null;
+
+        try {
+            preparedStatement = handler.prepareStatement(connection, sqlRunnerStatement);
+            applyHints(preparedStatement, sqlRunnerStatement);
+            bind(preparedStatement, sqlRunnerStatement);
             if (preparedStatement.execute()) {
                 sqlRunnerStatement.setResultOfExecutionWasResultSet(true);
                 processResultSet(preparedStatement.getResultSet(), sqlRunnerStatement);
@@ -532,7 +2166,7 @@ public final class SqlRunner {
             }
 
         } finally {
-            close(preparedStatement);
+            release(handler, preparedStatement);
 
         }
 
@@ -541,6 +2175,169 @@ public final class SqlRunner {
 
     }
 
+    /**
+     * Returns true if a statement can be run in a batch - i.e. it is a DML statement that does
+     * not return a result set.
+     * @param sqlRunnerStatement
+     *   The statement.
+     * @return
+     *   true if the statement can be run in a batch.
+     */
+    private static boolean isBatchable(final SqlRunnerStatement sqlRunnerStatement) {
+        final String sql = sqlRunnerStatement.getSql();
+
+        int start = 0;
+        while (start < sql.length() && Character.isWhitespace(sql.charAt(start))) {
+            start++;
+        }
+        int end = start;
+        while (end < sql.length() && Character.isLetter(sql.charAt(end))) {
+            end++;
+        }
+
+        final String keyword = sql.substring(start, end);
+        return "insert".equalsIgnoreCase(keyword)
+                || "update".equalsIgnoreCase(keyword)
+                || "delete".equalsIgnoreCase(keyword)
+                || "merge".equalsIgnoreCase(keyword);
+
+    }
+
+    /**
+     * Returns true if a statement can be run in the same batch as another statement.
+     * @param batchStatement
+     *   A statement of the batch.
+     * @param sqlRunnerStatement
+     *   The statement that we'd like to add to the batch.
+     * @return
+     *   true if the statements have the same SQL, name and fail fast option.
+     */
+    private static boolean isSameBatch(
+            final SqlRunnerStatement batchStatement, final SqlRunnerStatement sqlRunnerStatement) {
+        final String name = batchStatement.getName();
+        return batchStatement.getSql().equals(sqlRunnerStatement.getSql())
+                && ((name == null) ? sqlRunnerStatement.getName() == null
+                        : name.equals(sqlRunnerStatement.getName()))
+                && batchStatement.getFailFast() == sqlRunnerStatement.getFailFast();
+    }
+
+    /**
+     * Executes statements, that have the same SQL, as a JDBC batch.
+     * A batch of one statement is executed on its own.
+     * @param connection
+     *   The connection to use.
+     * @param batch
+     *   The statements to execute.
+     */
+    private void executeBatch(final Connection connection, final List<SqlRunnerStatement> batch) {
+        final String method = "executeBatch(Connection, List)";
+
+        if (batch.size() == 1) {
+            execute(connection, batch.get(0));
+            return;
+        }
+
+        final SqlRunnerStatement firstStatement = batch.get(0);
+        final SqlRunnerCallbackHandler handler = getCallbackHandler(firstStatement.getName());
+
+        List<SqlRunnerStatement> notRun = Collections.emptyList();
+
+        PreparedStatement preparedStatement = null;
+
+        try {
+            preparedStatement = handler.prepareStatement(connection, firstStatement);
+            for (SqlRunnerStatement sqlRunnerStatement : batch) {
+                bind(preparedStatement, sqlRunnerStatement);
+                preparedStatement.addBatch();
+            }
+            final int[] updateCounts = preparedStatement.executeBatch();
+            for (int i = 0; i < batch.size(); i++) {
+                batch.get(i).setResultOfExecutionWasResultSet(false);
+                batch.get(i).setUpdateCount(updateCounts[i]);
+                handler.executeComplete(preparedStatement, batch.get(i));
+            }
+
+        } catch (BatchUpdateException ex) {
+            final int[] updateCounts =
+                    (ex.getUpdateCounts() == null) ? new int[0] : ex.getUpdateCounts();
+            SqlRunnerStatement failedStatement = null;
+            for (int i = 0; i < updateCounts.length && i < batch.size(); i++) {
+                if (updateCounts[i] == Statement.EXECUTE_FAILED) {
+                    batch.get(i).setException(ex);
+                    if (failedStatement == null) {
+                        failedStatement = batch.get(i);
+                    }
+                } else {
+                    batch.get(i).setResultOfExecutionWasResultSet(false);
+                    batch.get(i).setUpdateCount(updateCounts[i]);
+                }
+            }
+            if (updateCounts.length < batch.size()) {
+                // the driver stopped at the first statement that failed
+                failedStatement = batch.get(updateCounts.length);
+                failedStatement.setException(ex);
+                notRun = batch.subList(updateCounts.length + 1, batch.size());
+            }
+            if (firstStatement.getFailFast()) {
+                throw new SqlRunnerException(
+                        "failed to execute batch. " + failedStatement, ex);
+            }
+
+        } catch (SQLException ex) {
+            for (SqlRunnerStatement sqlRunnerStatement : batch) {
+                sqlRunnerStatement.setException(ex);
+            }
+            if (firstStatement.getFailFast()) {
+                throw new SqlRunnerException("failed to execute batch. " + firstStatement, ex);
+            }
+
+        } finally {
+            release(handler, preparedStatement);
+
+        }
+
+        logger.logp(Level.FINER, CLASS_NAME, method,
+                "executed batch of {0} statements. {1}",
+                new Object[] {batch.size(), firstStatement});
+
+        for (SqlRunnerStatement sqlRunnerStatement : notRun) {
+            execute(connection, sqlRunnerStatement);
+        }
+
+    }
+
+    /**
+     * Returns the callback handler for a statement.
+     * @param statementName
+     *   The name of the statement.
+     * @return
+     *   The handler set for the statement name, or the default handler.
+     */
+    private SqlRunnerCallbackHandler getCallbackHandler(final String statementName) {
+        final SqlRunnerCallbackHandler result;
+        synchronized (callbackHandlerMap) {
+            result = callbackHandlerMap.get(statementName);
+        }
+        return (result == null) ? defaultCallbackHandler : result;
+    }
+
+    /**
+     * Binds the bind values of a statement to the parameters of a prepared statement.
+     * @param preparedStatement
+     *   The prepared statement.
+     * @param sqlRunnerStatement
+     *   The statement that holds the bind values.
+     * @throws SQLException
+     *   If binding a value throws an exception.
+     */
+    private void bind(final PreparedStatement preparedStatement,
+            final SqlRunnerStatement sqlRunnerStatement) throws SQLException {
+        final List<Object> bindValues = sqlRunnerStatement.getBindValues();
+        for (int i = 0; i < bindValues.size(); i++) {
+            preparedStatement.setObject(i + 1, bindValues.get(i));
+        }
+    }
+
     /**
      * Processes a result set, calling {@link SqlRunnerResultSetNextRowCallbackHandler#nextRow(
      * com.butterfill.sqlrunner.SqlRunner, com.butterfill.sqlrunner.SqlRunnerStatement,
@@ -554,12 +2351,16 @@ public final class SqlRunner {
     private void processResultSet(
             final ResultSet resultSet, final SqlRunnerStatement sqlRunnerStatement) {
         try {
-            SqlRunnerResultSetNextRowCallbackHandler handler =
-                    rsnrCallbackHandlerMap.get(sqlRunnerStatement.getName());
+            SqlRunnerResultSetNextRowCallbackHandler handler;
+            synchronized (rsnrCallbackHandlerMap) {
+                handler = rsnrCallbackHandlerMap.get(sqlRunnerStatement.getName());
+            }
             if (handler == null) {
                 handler = defaultResultSetNextRowCallbackHandler;
             }
 
+            // rows are fetched without holding the lock of this instance - statements of a
+            // parallel block (or runs on other threads) may process result sets at the same time
             int rowNumber = 1;
             while (resultSet.next()) {
                 handler.nextRow(this, sqlRunnerStatement, resultSet, rowNumber++);
@@ -589,34 +2390,93 @@ public final class SqlRunner {
     }
 
     /**
-     * Returns a connection from the data source - after disabling auto commit.
+     * Closes a statement - or gives it back to the handler that prepared it, if the handler
+     * caches statements.
+     * @param handler
+     *   The handler that prepared the statement.
+     * @param preparedStatement
+     *   The statement to release - which may be null.
+     */
+    private void release(final SqlRunnerCallbackHandler handler,
+            final PreparedStatement preparedStatement) {
+        if (preparedStatement != null
+                && handler instanceof SqlRunnerStatementCachingCallbackHandler) {
+            ((SqlRunnerStatementCachingCallbackHandler) handler)
+                    .releaseStatement(preparedStatement);
+        } else {
+            close(preparedStatement);
+        }
+    }
+
+    /**
+     * Tells the handlers of this instance that cache statements that a connection is about to be
+     * closed.
+     * @param connection
+     *   The connection that is about to be closed.
+     */
+    private void releaseConnection(final Connection connection) {
+        final Set<SqlRunnerCallbackHandler> handlers;
+        synchronized (callbackHandlerMap) {
+            handlers = new HashSet<SqlRunnerCallbackHandler>(callbackHandlerMap.values());
+        }
+        handlers.add(defaultCallbackHandler);
+        for (SqlRunnerCallbackHandler handler : handlers) {
+            if (handler instanceof SqlRunnerStatementCachingCallbackHandler) {
+                ((SqlRunnerStatementCachingCallbackHandler) handler).releaseConnection(connection);
+            }
+        }
+    }
+
+    /**
+     * Returns a connection from the data source.
      * @return
      *   A SQL connection.
      */
     private Connection getConnection() {
         try {
-            final Connection result = dataSource.getConnection();
-            oldAutoCommitSetting = result.getAutoCommit();
-            if (oldAutoCommitSetting) {
+            return dataSource.getConnection();
+
+        } catch (SQLException ex) {
+            throw new SqlRunnerException("failed to get connection", ex);
+
+        }
+
+    }
+
+    /**
+     * Disables auto commit of a connection - the connection is closed if this fails.
+     * The setting is returned, rather than kept by this instance, so that runs on different
+     * threads can't put back the wrong setting.
+     * @param connection
+     *   The connection.
+     * @return
+     *   The auto commit setting of the connection before this call.
+     */
+    private boolean disableAutoCommit(final Connection connection) {
+        try {
+            final boolean result = connection.getAutoCommit();
+            if (result) {
                 // set auto-commit off
-                result.setAutoCommit(false);
+                connection.setAutoCommit(false);
             }
             return result;
 
         } catch (SQLException ex) {
-            throw new SqlRunnerException("failed to get connection", ex);
+            close(connection, true);
+            throw new SqlRunnerException("failed to disable auto commit", ex);
 
         }
 
     }
 
     /**
-     * Closes a connection after committing and putting auto commit back to how it was before
-     * getConnection was called.
+     * Closes a connection after committing and setting auto commit.
      * @param connection
      *   The connection to close.
+     * @param autoCommit
+     *   The auto commit setting of the connection before auto commit was disabled.
      */
-    private void close(final Connection connection) {
+    private void close(final Connection connection, final boolean autoCommit) {
         if (connection != null) {
             try {
                 try {
@@ -630,22 +2490,24 @@ public final class SqlRunner {
                 }
 
                 try {
-                    if (oldAutoCommitSetting != connection.getAutoCommit()) {
+                    if (autoCommit != connection.getAutoCommit()) {
                         // if we changed auto commit, put it back to how it was
-                        connection.setAutoCommit(oldAutoCommitSetting);
+                        connection.setAutoCommit(autoCommit);
                     }
 
                 } catch (SQLException ex) {
                     throw new SqlRunnerException(
-                            "failed to set auto commit back to " + oldAutoCommitSetting, ex);
+                            "failed to set auto commit back to " + autoCommit, ex);
                 }
 
             } finally {
                 // no matter what happens, we'll still close the connection
+                // (after closing any statements that handlers have kept open)
+                releaseConnection(connection);
                 try {
                     connection.close();
                 }  catch (SQLException ex) {
-                    logger.logp(Level.WARNING, CLASS_NAME, "close(java.sql.Connection)",
+                    logger.logp(Level.WARNING, CLASS_NAME, "close(java.sql.Connection, boolean)",
                             "failed to close connection", ex);
                 }
 
@@ -675,4 +2537,624 @@ public final class SqlRunner {
         throw ex;
     }
 
+    /**
+     * Commits the work of a run, or the rows of a load, as often as its statements (or this
+     * instance) ask and switches auto commit on for statements that should be run with auto
+     * commit enabled.
+     * A tracker that does not own its connection never commits or changes auto commit.
+     */
+    private final class CommitTracker {
+
+        /**
+         * The connection of the run.
+         */
+        private final Connection connection;
+
+        /**
+         * true if the run got its connection from the data source - and so may commit.
+         */
+        private final boolean enabled;
+
+        /**
+         * The number of statements to run between commits when statements do not say.
+         */
+        private final int defaultCommitEvery = commitEvery;
+
+        /**
+         * The number of rows to change between commits when statements do not say.
+         */
+        private final int defaultCommitEveryRows = commitEveryRows;
+
+        /**
+         * true while auto commit is enabled on the connection.
+         */
+        private boolean autoCommit;
+
+        /**
+         * The number of statements run since the last commit.
+         */
+        private int statementCount;
+
+        /**
+         * The number of rows changed since the last commit.
+         */
+        private long rowCount;
+
+        /**
+         * Creates a new tracker.
+         * @param connection
+         *   The connection of the run - on which auto commit must be disabled.
+         * @param enabled
+         *   Pass true if the run got its connection from the data source.
+         */
+        private CommitTracker(final Connection connection, final boolean enabled) {
+            this.connection = connection;
+            this.enabled = enabled;
+        }
+
+        /**
+         * Returns true if auto commit must be enabled or disabled to run a statement.
+         * @param statement
+         *   The next statement of the run.
+         * @return
+         *   true if this tracker owns the connection and the auto commit option of the statement
+         *   is not the current auto commit setting of the connection.
+         */
+        private boolean changesAutoCommit(final SqlRunnerStatement statement) {
+            return enabled && statement.getAutoCommit() != autoCommit;
+        }
+
+        /**
+         * Enables or disables auto commit on the connection - work not yet committed is
+         * committed before auto commit is enabled. Does nothing if this tracker does not own the
+         * connection.
+         * @param value
+         *   true to enable auto commit.
+         */
+        private void setAutoCommit(final boolean value) {
+            if (!enabled || value == autoCommit) {
+                return;
+            }
+
+            if (value) {
+                commit();
+            }
+
+            try {
+                connection.setAutoCommit(value);
+            } catch (SQLException ex) {
+                throw new SqlRunnerException("failed to set auto commit to " + value, ex);
+            }
+
+            autoCommit = value;
+        }
+
+        /**
+         * Called after statements have been run - commits if the statements run, or rows
+         * changed, since the last commit reach the commit options of the last statement.
+         * @param statements
+         *   The statements that have been run.
+         */
+        private void executed(final List<SqlRunnerStatement> statements) {
+            if (!enabled || autoCommit || statements.isEmpty()) {
+                return;
+            }
+
+            for (SqlRunnerStatement statement : statements) {
+                statementCount++;
+                final Integer updateCount = statement.getUpdateCount();
+                if (updateCount != null && updateCount > 0) {
+                    rowCount += updateCount;
+                }
+            }
+
+            final SqlRunnerStatement lastStatement = statements.get(statements.size() - 1);
+            final int every = hasCommitOptions(lastStatement)
+                    ? lastStatement.getCommitEvery() : defaultCommitEvery;
+            final int everyRows = getCommitEveryRows(lastStatement);
+
+            if ((every > 0 && statementCount >= every)
+                    || (everyRows > 0 && rowCount >= everyRows)) {
+                commit();
+            }
+        }
+
+        /**
+         * Called after a statement has loaded a row - returns true if the rows loaded since the
+         * last commit reach the commit options of the statement, in which case the caller must
+         * send any batched rows to the database and call {@link #commit()}.
+         * @param statement
+         *   The statement that loaded the row.
+         * @return
+         *   true if a commit is due.
+         */
+        private boolean rowLoaded(final SqlRunnerStatement statement) {
+            if (!enabled || autoCommit) {
+                return false;
+            }
+
+            rowCount++;
+
+            final int everyRows = getCommitEveryRows(statement);
+            return everyRows > 0 && rowCount >= everyRows;
+        }
+
+        /**
+         * Returns true if a statement has its own commit options.
+         * @param statement
+         *   The statement.
+         * @return
+         *   true if the statement sets commit every or commit every rows.
+         */
+        private boolean hasCommitOptions(final SqlRunnerStatement statement) {
+            return statement.getCommitEvery() != 0 || statement.getCommitEveryRows() != 0;
+        }
+
+        /**
+         * Returns the number of rows to change between commits after a statement has run.
+         * @param statement
+         *   The statement.
+         * @return
+         *   The commit every rows option of the statement - or of this instance if the statement
+         *   has no commit options.
+         */
+        private int getCommitEveryRows(final SqlRunnerStatement statement) {
+            return hasCommitOptions(statement)
+                    ? statement.getCommitEveryRows() : defaultCommitEveryRows;
+        }
+
+        /**
+         * Commits the work done since the last commit.
+         */
+        private void commit() {
+            try {
+                connection.commit();
+            } catch (SQLException ex) {
+                throw new SqlRunnerException("failed to commit", ex);
+            }
+
+            logger.logp(Level.FINE, CLASS_NAME, "CommitTracker.commit()",
+                    "committed {0} statements changing {1} rows",
+                    new Object[] {statementCount, rowCount});
+            statementCount = 0;
+            rowCount = 0;
+        }
+
+        /**
+         * Called at the end of a run - disables auto commit if this tracker enabled it, so the
+         * connection can be committed (or rolled back) and closed as usual.
+         * A failure is logged rather than thrown, so that it does not hide the exception that
+         * ended a failed run.
+         */
+        private void finish() {
+            if (autoCommit) {
+                try {
+                    connection.setAutoCommit(false);
+                    autoCommit = false;
+                } catch (SQLException ex) {
+                    logger.logp(Level.WARNING, CLASS_NAME, "CommitTracker.finish()",
+                            "failed to disable auto commit", ex);
+                }
+            }
+        }
+
+    }
+
+    /**
+     * A subscription to the rows of a statement - which runs the statement when rows are first
+     * requested and reads rows from the result set only as they are requested.
+     * The thread that makes a request (or cancels) when no other thread is sending rows sends
+     * the rows, so calls to the subscriber are never made at the same time.
+     */
+    private final class RowSubscription implements SqlRunnerRowSubscription {
+
+        /**
+         * The statement to run.
+         */
+        private final SqlRunnerStatement sqlRunnerStatement;
+
+        /**
+         * The fetch size to set on the prepared statement - or 0 for the driver default.
+         */
+        private final int fetchSize;
+
+        /**
+         * The subscriber that rows are sent to.
+         */
+        private final SqlRunnerRowSubscriber subscriber;
+
+        /**
+         * The number of rows requested but not yet sent. Guarded by the lock of this instance.
+         */
+        private long demand;
+
+        /**
+         * true while a thread is sending rows. Guarded by the lock of this instance.
+         */
+        private boolean emitting;
+
+        /**
+         * true once the subscription has been cancelled. Guarded by the lock of this instance.
+         */
+        private boolean cancelled;
+
+        /**
+         * The error to send instead of rows - or null. Guarded by the lock of this instance.
+         */
+        private Throwable pendingError;
+
+        /**
+         * true once the resources of the subscription have been closed - after which no more
+         * calls are made to the subscriber. Guarded by the lock of this instance.
+         */
+        private boolean done;
+
+        /**
+         * The connection used to run the statement - or null before the statement is run.
+         */
+        private Connection connection;
+
+        /**
+         * The auto commit setting of the connection before it was disabled.
+         */
+        private boolean autoCommit;
+
+        /**
+         * The handler that prepared the statement.
+         */
+        private SqlRunnerCallbackHandler handler;
+
+        /**
+         * The prepared statement.
+         */
+        private PreparedStatement preparedStatement;
+
+        /**
+         * The result set of the statement.
+         */
+        private ResultSet resultSet;
+
+        /**
+         * The java names of the columns of the result set.
+         */
+        private String[] columnNames;
+
+        /**
+         * Creates a new subscription.
+         * @param sqlRunnerStatement
+         *   The statement to run.
+         * @param fetchSize
+         *   The fetch size to set on the prepared statement - or 0 for the driver default.
+         * @param subscriber
+         *   The subscriber that rows are sent to.
+         */
+        private RowSubscription(final SqlRunnerStatement sqlRunnerStatement, final int fetchSize,
+                final SqlRunnerRowSubscriber subscriber) {
+            this.sqlRunnerStatement = sqlRunnerStatement;
+            this.fetchSize = fetchSize;
+            this.subscriber = subscriber;
+        }
+
+        /**
+         * Requests rows - see {@link SqlRunnerRowSubscription#request(long) }.
+         * @param n
+         *   The number of rows to request.
+         */
+        public void request(final long n) {
+            synchronized (this) {
+                if (cancelled) {
+                    return;
+                }
+                if (n <= 0) {
+                    cancelled = true;
+                    pendingError = new IllegalArgumentException(
+                            "the number of rows requested must be positive but was " + n);
+                } else {
+                    demand += n;
+                    if (demand < 0) {
+                        // treat overflow as an unbounded request
+                        demand = Long.MAX_VALUE;
+                    }
+                }
+                if (emitting) {
+                    return;
+                }
+                emitting = true;
+            }
+            drain();
+        }
+
+        /**
+         * Cancels this subscription - see {@link SqlRunnerRowSubscription#cancel() }.
+         */
+        public void cancel() {
+            synchronized (this) {
+                if (cancelled) {
+                    return;
+                }
+                cancelled = true;
+                if (emitting) {
+                    return;
+                }
+                emitting = true;
+            }
+            drain();
+        }
+
+        /**
+         * Sends requested rows until there is no demand, there are no more rows or the
+         * subscription is cancelled - which must only be called by the thread that set emitting.
+         */
+        private void drain() {
+            while (true) {
+                final Throwable error;
+                final boolean stop;
+                synchronized (this) {
+                    if (done) {
+                        emitting = false;
+                        return;
+                    }
+                    error = pendingError;
+                    stop = cancelled;
+                    if (!stop && demand == 0) {
+                        emitting = false;
+                        return;
+                    }
+                    if (!stop && demand != Long.MAX_VALUE) {
+                        demand--;
+                    }
+                }
+
+                if (stop) {
+                    finish();
+                    if (error != null) {
+                        subscriber.onError(error);
+                    }
+                    continue;
+                }
+
+                final Map<String, Object> row;
+                try {
+                    row = nextRow();
+                } catch (RuntimeException ex) {
+                    finish();
+                    subscriber.onError(ex);
+                    continue;
+                }
+
+                if (row == null) {
+                    finish();
+                    subscriber.onComplete();
+                } else {
+                    try {
+                        subscriber.onNext(row);
+                    } catch (RuntimeException ex) {
+                        // the subscriber broke the rules - stop sending rows
+                        finish();
+                        throw ex;
+                    }
+                }
+            }
+        }
+
+        /**
+         * Returns the next row of the result set - running the statement if it has not been run.
+         * @return
+         *   The next row - or null if there are no more rows.
+         */
+        private Map<String, Object> nextRow() {
+            try {
+                if (resultSet == null) {
+                    open();
+                }
+                if (!resultSet.next()) {
+                    return null;
+                }
+                final Map<String, Object> result =
+                        new LinkedHashMap<String, Object>(columnNames.length * 2);
+                for (int i = 0; i < columnNames.length; i++) {
+                    result.put(columnNames[i], resultSet.getObject(i + 1));
+                }
+                return result;
+
+            } catch (SQLException ex) {
+                throw new SqlRunnerException("failed to read row. " + sqlRunnerStatement, ex);
+
+            }
+        }
+
+        /**
+         * Runs the statement.
+         * @throws SQLException
+         *   If running the statement throws an exception.
+         */
+        private void open() throws SQLException {
+            final SqlRunnerStatement statementToExecute =
+                    newStatementToExecute(sqlRunnerStatement, startRun());
+            handler = getCallbackHandler(statementToExecute.getName());
+            connection = getConnection();
+            autoCommit = disableAutoCommit(connection);
+            preparedStatement = handler.prepareStatement(connection, statementToExecute);
+            applyHints(preparedStatement, statementToExecute);
+            if (fetchSize > 0) {
+                // the fetch size passed to publishRows overrides a fetch size comment
+                preparedStatement.setFetchSize(fetchSize);
+            }
+            bind(preparedStatement, statementToExecute);
+            resultSet = preparedStatement.executeQuery();
+
+            final ResultSetMetaData metaData = resultSet.getMetaData();
+            columnNames = new String[metaData.getColumnCount()];
+            for (int i = 0; i < columnNames.length; i++) {
+                columnNames[i] = SQL_NAME_TO_JAVA_NAME_HELPER.sqlNameToJavaName(
+                        metaData.getColumnName(i + 1));
+            }
+        }
+
+        /**
+         * Closes the result set, statement and connection - without letting exceptions
+         * propagate, as the subscriber is told about errors.
+         */
+        private void finish() {
+            synchronized (this) {
+                done = true;
+                cancelled = true;
+            }
+            try {
+                if (resultSet != null) {
+                    resultSet.close();
+                }
+            } catch (SQLException ex) {
+                logger.logp(Level.WARNING, CLASS_NAME, "RowSubscription.finish()",
+                        "failed to close result set", ex);
+            }
+            release(handler, preparedStatement);
+            if (connection != null) {
+                try {
+                    close(connection, autoCommit);
+                } catch (SqlRunnerException ex) {
+                    logger.logp(Level.WARNING, CLASS_NAME, "RowSubscription.finish()",
+                            "failed to close connection", ex);
+                }
+            }
+            resultSet = null;
+            preparedStatement = null;
+            connection = null;
+        }
+
+    }
+
+    /**
+     * Holds the executor used to run statements asynchronously when no executor has been set -
+     * which is only created when it is first used.
+     */
+    private static final class DefaultAsyncExecutorHolder {
+
+        /**
+         * The default executor - which uses daemon threads, so it does not stop the JVM exiting.
+         */
+        private static final ExecutorService EXECUTOR =
+                Executors.newCachedThreadPool(new ThreadFactory() {
+
+                    /**
+                     * The number of threads created by this factory.
+                     */
+                    private final AtomicLong threadCount = new AtomicLong();
+
+                    public Thread newThread(final Runnable runnable) {
+                        final Thread result = new Thread(
+                                runnable, "sql-runner-async-" + threadCount.incrementAndGet());
+                        result.setDaemon(true);
+                        return result;
+                    }
+
+                });
+
+        /**
+         * This class is not meant to be instantiated.
+         */
+        private DefaultAsyncExecutorHolder() {
+        }
+
+    }
+
+    /**
+     * A connection used to run the statements of a parallel block and its auto commit setting
+     * before the block.
+     */
+    private static final class WorkerConnection {
+
+        /**
+         * The connection.
+         */
+        private final Connection connection;
+
+        /**
+         * The auto commit setting of the connection before auto commit was disabled.
+         */
+        private final boolean autoCommit;
+
+        /**
+         * Creates a new worker connection.
+         * @param connection
+         *   The connection.
+         * @param autoCommit
+         *   The auto commit setting of the connection before auto commit was disabled.
+         */
+        WorkerConnection(final Connection connection, final boolean autoCommit) {
+            this.connection = connection;
+            this.autoCommit = autoCommit;
+        }
+
+    }
+
+    /**
+     * The values supplied by attribute suppliers during one run of a SqlRunner.
+     * Suppliers are only called when a statement being run uses their attribute and are called at
+     * most once per run.
+     * Suppliers are called without holding the lock of the SqlRunner - so a slow supplier does
+     * not hold up other runs - but the statements of a parallel block share the values of their
+     * run.
+     */
+    private static final class RunAttributes {
+
+        /**
+         * The values supplied during this run - created when the first supplier is called.
+         * Key is the supplier, so a supplier set during the run is called when it is used.
+         */
+        private Map<Object, Object> suppliedValues;
+
+        /**
+         * Replaces attribute suppliers in a copy of the attributes of a SqlRunner with the values
+         * they supply for this run.
+         * @param attributes
+         *   A copy of (some of) the attributes of a SqlRunner - which is updated by this method.
+         * @return
+         *   true if any attribute value was supplied by an attribute supplier.
+         */
+        boolean supply(final Map<String, Object> attributes) {
+            boolean result = false;
+            for (Map.Entry<String, Object> entry : attributes.entrySet()) {
+                if (entry.getValue() instanceof SqlRunnerAttributeSupplier) {
+                    entry.setValue(supply(entry.getKey(), entry.getValue()));
+                    result = true;
+                }
+            }
+            return result;
+        }
+
+        /**
+         * Returns the value of an attribute for this run - calling the attribute supplier, if
+         * the attribute value is a supplier that has not yet been called during this run.
+         * @param attribute
+         *   Name of the attribute.
+         * @param attributeValue
+         *   The value of the attribute, as it was set.
+         * @return
+         *   The value of the attribute.
+         */
+        synchronized Object supply(final String attribute, final Object attributeValue) {
+            if (!(attributeValue instanceof SqlRunnerAttributeSupplier)) {
+                return attributeValue;
+            }
+
+            if (suppliedValues == null) {
+                suppliedValues = new IdentityHashMap<Object, Object>();
+            } else if (suppliedValues.containsKey(attributeValue)) {
+                return suppliedValues.get(attributeValue);
+            }
+
+            final Object result;
+            try {
+                result = ((SqlRunnerAttributeSupplier<?>) attributeValue).get();
+            } catch (RuntimeException ex) {
+                throw new SqlRunnerException("failed to get value of attribute " + attribute, ex);
+            }
+            suppliedValues.put(attributeValue, result);
+            return result;
+
+        }
+
+    }
+
 }
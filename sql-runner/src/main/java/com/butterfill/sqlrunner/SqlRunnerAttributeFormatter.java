@@ -0,0 +1,28 @@
+package com.butterfill.sqlrunner;
+
+/**
+ * Used by SqlRunner to format attribute values that are put into SQL.
+ *
+ * <p>
+ * Attribute values are kept as the objects that were set. They are only formatted when they are
+ * put into the text of a SQL statement - so you can use an implementation of this interface to
+ * write values in the format expected by your database
+ * (e.g. dates as <code>TIMESTAMP '2014-03-31 12:00:00'</code>).
+ * Attribute values that are bound to JDBC parameters are not formatted.
+ * </p>
+ *
+ * @author Peter Butterfill
+ */
+public interface SqlRunnerAttributeFormatter {
+
+    /**
+     * Returns the text to put into SQL for an attribute value - Must not return null.
+     * This method is not called for attribute values that are strings.
+     * @param attributeValue
+     *   The attribute value - which will not be null.
+     * @return
+     *   The text to put into SQL.
+     */
+    String format(Object attributeValue);
+
+}
@@ -0,0 +1,26 @@
+package com.butterfill.sqlrunner;
+
+/**
+ * Supplies the value of an attribute when it is needed.
+ *
+ * <p>
+ * An attribute supplier can be set as the value of an attribute of a SqlRunner (or put into the
+ * attribute map of a SqlRunnerFactory) when the value is expensive to get.
+ * SqlRunner only calls the supplier when a statement it is running uses the attribute - and
+ * calls it at most once each time one of the run methods of SqlRunner is called.
+ * </p>
+ *
+ * @param <T>
+ *   The type of the attribute value.
+ * @author Peter Butterfill
+ */
+public interface SqlRunnerAttributeSupplier<T> {
+
+    /**
+     * Returns the value of the attribute.
+     * @return
+     *   The value of the attribute - or null if the attribute should be treated as not set.
+     */
+    T get();
+
+}
@@ -0,0 +1,32 @@
+package com.butterfill.sqlrunner;
+
+/**
+ * A file reader that can tell when a file has changed -
+ * so that caches of the statements read from the file can be refreshed.
+ * @author Peter Butterfill
+ */
+public interface SqlRunnerChangeAwareFileReader extends SqlRunnerFileReader {
+
+    /**
+     * Returns the time that a file was last modified.
+     * This should be cheap to call.
+     * @param fileName
+     *   Name of the file.
+     * @return
+     *   The time that the file was last modified, in milliseconds since the epoch -
+     *   or 0 if the time is not known.
+     */
+    long lastModified(String fileName);
+
+    /**
+     * Returns a checksum of the contents of a file -
+     * which will be different if the statements read from the file would be different.
+     * This may need to read the whole file.
+     * @param fileName
+     *   Name of the file.
+     * @return
+     *   A checksum of the contents of the file.
+     */
+    String checksum(String fileName);
+
+}
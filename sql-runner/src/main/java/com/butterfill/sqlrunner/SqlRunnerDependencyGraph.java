@@ -0,0 +1,654 @@
+package com.butterfill.sqlrunner;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Works out which statements of a script depend on which earlier statements - by looking at the
+ * objects (tables, views, indexes, sequences and synonyms) that each statement reads and writes.
+ *
+ * <p>
+ * A statement depends on an earlier statement if the earlier statement writes an object that the
+ * statement reads or writes - or if the earlier statement reads an object that the statement
+ * writes. DDL writes the objects that it creates, changes or drops (and the table of an index).
+ * Object names are compared without schema or database link and without case, so statements
+ * that use objects with the same name in different schemas are treated as dependent.
+ * </p>
+ *
+ * <p>
+ * The SQL is scanned, not parsed, so the analysis is deliberately cautious.
+ * Statements that are not understood (such as PL/SQL blocks, procedure calls, grants and
+ * statements with an attribute in place of an object name) are barriers - a barrier depends on
+ * all earlier statements and all later statements depend on it.
+ * Functions called by a statement are not analysed.
+ * Query results can set attributes, so statements that use attributes depend on earlier
+ * queries.
+ * </p>
+ *
+ * <p>Instances of this class are immutable.</p>
+ *
+ * @author Peter Butterfill
+ */
+final class SqlRunnerDependencyGraph {
+
+    /**
+     * The name used for the attributes of the SqlRunner - which can not be an object name.
+     */
+    private static final String ATTRIBUTES = " attributes";
+
+    /**
+     * Used in place of attribute placeholders when the SQL is scanned.
+     */
+    private static final String PLACEHOLDER = "?";
+
+    /**
+     * Words that can come between CREATE and the type of object being created.
+     */
+    private static final Set<String> CREATE_OPTIONS = new HashSet<String>(Arrays.asList(
+            "or", "replace", "global", "private", "temporary", "unique", "bitmap", "force",
+            "noforce", "editionable", "noneditionable", "public", "unlogged"));
+
+    /**
+     * Types of object that can be created, altered or dropped without being a barrier.
+     */
+    private static final Set<String> OBJECT_TYPES = new HashSet<String>(Arrays.asList(
+            "table", "view", "index", "sequence", "synonym"));
+
+    /**
+     * Words that can not be table aliases.
+     */
+    private static final Set<String> NOT_ALIASES = new HashSet<String>(Arrays.asList(
+            "where", "join", "inner", "left", "right", "full", "outer", "cross", "natural", "on",
+            "using", "group", "order", "having", "connect", "start", "union", "intersect",
+            "minus", "except", "set", "values", "select", "when", "then", "for", "fetch",
+            "limit", "offset", "window", "model", "partition", "pivot", "unpivot", "sample",
+            "as", "returning", "log"));
+
+    /**
+     * The indexes of the statements that each statement depends on - in ascending order.
+     */
+    private final int[][] dependencies;
+
+    /**
+     * Flags for the statements that are barriers.
+     */
+    private final boolean[] barriers;
+
+    /**
+     * Creates a new graph.
+     * @param dependencies
+     *   The indexes of the statements that each statement depends on.
+     * @param barriers
+     *   Flags for the statements that are barriers.
+     */
+    private SqlRunnerDependencyGraph(final int[][] dependencies, final boolean[] barriers) {
+        this.dependencies = dependencies;
+        this.barriers = barriers;
+    }
+
+    /**
+     * Works out the dependencies of a list of statements.
+     * @param statements
+     *   The statements, in the order they appear in the script.
+     * @param attributePrefix
+     *   The attribute prefix of the SqlRunner that will run the statements.
+     * @param attributePostfix
+     *   The attribute postfix of the SqlRunner that will run the statements.
+     * @return
+     *   The dependency graph of the statements.
+     */
+    static SqlRunnerDependencyGraph build(final List<SqlRunnerStatement> statements,
+            final String attributePrefix, final String attributePostfix) {
+        final int size = statements.size();
+        final int[][] dependencies = new int[size][];
+        final boolean[] barriers = new boolean[size];
+
+        final Map<String, Integer> lastWriters = new HashMap<String, Integer>();
+        final Map<String, List<Integer>> readers = new HashMap<String, List<Integer>>();
+        final List<Integer> sinceBarrier = new ArrayList<Integer>();
+        int lastBarrier = -1;
+
+        for (int i = 0; i < size; i++) {
+            final Access access = analyse(
+                    statements.get(i).getSql(), attributePrefix, attributePostfix);
+            final Set<Integer> result = new TreeSet<Integer>();
+
+            if (access.barrier) {
+                barriers[i] = true;
+                if (lastBarrier != -1) {
+                    result.add(lastBarrier);
+                }
+                result.addAll(sinceBarrier);
+                lastBarrier = i;
+                sinceBarrier.clear();
+                lastWriters.clear();
+                readers.clear();
+
+            } else {
+                if (lastBarrier != -1) {
+                    result.add(lastBarrier);
+                }
+                for (String object : access.reads) {
+                    final Integer lastWriter = lastWriters.get(object);
+                    if (lastWriter != null) {
+                        result.add(lastWriter);
+                    }
+                    readersOf(readers, object).add(i);
+                }
+                for (String object : access.writes) {
+                    final Integer lastWriter = lastWriters.get(object);
+                    if (lastWriter != null) {
+                        result.add(lastWriter);
+                    }
+                    final List<Integer> objectReaders = readersOf(readers, object);
+                    result.addAll(objectReaders);
+                    objectReaders.clear();
+                    lastWriters.put(object, i);
+                }
+                result.remove(i);
+                sinceBarrier.add(i);
+
+            }
+
+            dependencies[i] = new int[result.size()];
+            int j = 0;
+            for (Integer dependency : result) {
+                dependencies[i][j++] = dependency;
+            }
+        }
+
+        return new SqlRunnerDependencyGraph(dependencies, barriers);
+
+    }
+
+    /**
+     * Returns the number of statements in this graph.
+     * @return
+     *   The number of statements in this graph.
+     */
+    int size() {
+        return dependencies.length;
+    }
+
+    /**
+     * Returns the indexes of the statements that a statement depends on.
+     * @param index
+     *   The index of the statement.
+     * @return
+     *   The indexes of the statements that the statement depends on - in ascending order.
+     */
+    int[] getDependencies(final int index) {
+        return dependencies[index].clone();
+    }
+
+    /**
+     * Returns true if a statement is a barrier.
+     * @param index
+     *   The index of the statement.
+     * @return
+     *   true if the statement could not be analysed.
+     */
+    boolean isBarrier(final int index) {
+        return barriers[index];
+    }
+
+    /**
+     * Returns the list of statements that read an object - creating it if needed.
+     * @param readers
+     *   Lists of statements that have read objects since they were last written.
+     * @param object
+     *   The name of the object.
+     * @return
+     *   The list of statements that have read the object since it was last written.
+     */
+    private static List<Integer> readersOf(
+            final Map<String, List<Integer>> readers, final String object) {
+        List<Integer> result = readers.get(object);
+        if (result == null) {
+            result = new ArrayList<Integer>();
+            readers.put(object, result);
+        }
+        return result;
+    }
+
+    /**
+     * Works out the objects that a statement reads and writes.
+     * @param sql
+     *   The SQL of the statement.
+     * @param attributePrefix
+     *   The attribute prefix.
+     * @param attributePostfix
+     *   The attribute postfix.
+     * @return
+     *   The objects that the statement reads and writes.
+     */
+    static Access analyse(
+            final String sql, final String attributePrefix, final String attributePostfix) {
+        final Access result = new Access();
+
+        final boolean placeholdersKnown =
+                attributePrefix.length() > 0 && attributePostfix.length() > 0;
+        final List<String> tokens = tokenize(placeholdersKnown
+                ? replacePlaceholders(sql, attributePrefix, attributePostfix) : sql);
+
+        if (!placeholdersKnown || tokens.contains(PLACEHOLDER)) {
+            result.reads.add(ATTRIBUTES);
+        }
+
+        if (tokens.isEmpty()) {
+            result.barrier = true;
+            return result;
+        }
+
+        final String first = tokens.get(0);
+
+        if ("select".equals(first) || "with".equals(first)
+                || ("(".equals(first) && tokens.contains("select"))) {
+            // query results may be used to set attributes
+            result.writes.add(ATTRIBUTES);
+
+        } else if ("insert".equals(first)) {
+            if (!"into".equals(token(tokens, 1))) {
+                // e.g. a multi-table insert
+                result.barrier = true;
+            } else {
+                write(result, tokens, 2);
+            }
+
+        } else if ("update".equals(first)) {
+            write(result, tokens, 1);
+
+        } else if ("delete".equals(first)) {
+            write(result, tokens, "from".equals(token(tokens, 1)) ? 2 : 1);
+
+        } else if ("merge".equals(first)) {
+            if (!"into".equals(token(tokens, 1))) {
+                result.barrier = true;
+            } else {
+                write(result, tokens, 2);
+                final int using = tokens.indexOf("using");
+                if (using != -1) {
+                    readTables(result, tokens, using + 1);
+                }
+            }
+
+        } else if ("truncate".equals(first)) {
+            write(result, tokens, "table".equals(token(tokens, 1)) ? 2 : 1);
+
+        } else if ("create".equals(first)) {
+            int i = 1;
+            while (CREATE_OPTIONS.contains(token(tokens, i))) {
+                i++;
+            }
+            ddl(result, tokens, i);
+
+        } else if ("drop".equals(first) || "alter".equals(first)) {
+            ddl(result, tokens, 1);
+
+        } else if ("comment".equals(first) && "on".equals(token(tokens, 1))) {
+            final String type = token(tokens, 2);
+            final String name = token(tokens, 3);
+            if ("column".equals(type) && name != null && name.indexOf('.') != -1) {
+                // the table is the part of the name before the column
+                writeName(result, name.substring(0, name.lastIndexOf('.')));
+            } else if ("table".equals(type)) {
+                write(result, tokens, 3);
+            } else {
+                result.barrier = true;
+            }
+
+        } else {
+            result.barrier = true;
+
+        }
+
+        if (!result.barrier) {
+            for (int i = 0; i < tokens.size(); i++) {
+                final String token = tokens.get(i);
+                if ("from".equals(token) || "join".equals(token)) {
+                    readTables(result, tokens, i + 1);
+                }
+            }
+        }
+
+        return result;
+
+    }
+
+    /**
+     * Works out the objects written by CREATE, ALTER or DROP.
+     * @param access
+     *   The access of the statement.
+     * @param tokens
+     *   The tokens of the statement.
+     * @param typeIndex
+     *   The index of the token that gives the type of object.
+     */
+    private static void ddl(final Access access, final List<String> tokens, final int typeIndex) {
+        String type = token(tokens, typeIndex);
+        int nameIndex = typeIndex + 1;
+
+        if ("materialized".equals(type) && "view".equals(token(tokens, nameIndex))) {
+            type = "view";
+            nameIndex++;
+        }
+
+        if (!OBJECT_TYPES.contains(type)) {
+            access.barrier = true;
+            return;
+        }
+
+        if ("if".equals(token(tokens, nameIndex))) {
+            // if exists or if not exists
+            nameIndex += "not".equals(token(tokens, nameIndex + 1)) ? 3 : 2;
+        }
+
+        write(access, tokens, nameIndex);
+
+        if ("index".equals(type)) {
+            final int on = tokens.indexOf("on");
+            if (on != -1) {
+                write(access, tokens, on + 1);
+            }
+        } else if ("synonym".equals(type)) {
+            final int forIndex = tokens.indexOf("for");
+            if (forIndex != -1) {
+                read(access, tokens, forIndex + 1);
+            }
+        }
+
+    }
+
+    /**
+     * Notes that the object named by a token is written - or makes the statement a barrier if
+     * the token is not a name.
+     * @param access
+     *   The access of the statement.
+     * @param tokens
+     *   The tokens of the statement.
+     * @param index
+     *   The index of the token.
+     */
+    private static void write(final Access access, final List<String> tokens, final int index) {
+        final String name = token(tokens, index);
+        if (isName(name)) {
+            writeName(access, name);
+        } else {
+            access.barrier = true;
+        }
+    }
+
+    /**
+     * Notes that an object is written.
+     * @param access
+     *   The access of the statement.
+     * @param name
+     *   The name of the object.
+     */
+    private static void writeName(final Access access, final String name) {
+        access.writes.add(normalize(name));
+    }
+
+    /**
+     * Notes that the object named by a token is read - or makes the statement a barrier if the
+     * token is not a name.
+     * @param access
+     *   The access of the statement.
+     * @param tokens
+     *   The tokens of the statement.
+     * @param index
+     *   The index of the token.
+     */
+    private static void read(final Access access, final List<String> tokens, final int index) {
+        final String name = token(tokens, index);
+        if (isName(name)) {
+            access.reads.add(normalize(name));
+        } else {
+            access.barrier = true;
+        }
+    }
+
+    /**
+     * Notes the tables read by a list of tables - such as the tables after FROM.
+     * Sub-queries are skipped as they are scanned separately.
+     * @param access
+     *   The access of the statement.
+     * @param tokens
+     *   The tokens of the statement.
+     * @param start
+     *   The index of the first token of the list.
+     */
+    private static void readTables(
+            final Access access, final List<String> tokens, final int start) {
+        int i = start;
+        while (true) {
+            final String name = token(tokens, i);
+            if (PLACEHOLDER.equals(name)) {
+                access.barrier = true;
+                return;
+            }
+            if (!isName(name) || "(".equals(token(tokens, i + 1))) {
+                // a sub-query, table function or something we don't understand
+                return;
+            }
+            access.reads.add(normalize(name));
+            i++;
+            if ("as".equals(token(tokens, i))) {
+                i++;
+            }
+            final String alias = token(tokens, i);
+            if (isName(alias) && !NOT_ALIASES.contains(alias)) {
+                i++;
+            }
+            if (!",".equals(token(tokens, i))) {
+                return;
+            }
+            i++;
+        }
+    }
+
+    /**
+     * Returns a token - or null if there are not enough tokens.
+     * @param tokens
+     *   The tokens.
+     * @param index
+     *   The index of the token.
+     * @return
+     *   The token or null.
+     */
+    private static String token(final List<String> tokens, final int index) {
+        return (index < tokens.size()) ? tokens.get(index) : null;
+    }
+
+    /**
+     * Returns true if a token is a name.
+     * @param token
+     *   The token - which may be null.
+     * @return
+     *   true if the token is a name.
+     */
+    private static boolean isName(final String token) {
+        return token != null && token.length() > 0 && isNameChar(token.charAt(0))
+                && !PLACEHOLDER.equals(token);
+    }
+
+    /**
+     * Returns an object name without schema or database link.
+     * @param name
+     *   The name, as found in the SQL.
+     * @return
+     *   The name of the object.
+     */
+    private static String normalize(final String name) {
+        String result = name;
+        final int at = result.indexOf('@');
+        if (at != -1) {
+            result = result.substring(0, at);
+        }
+        return result.substring(result.lastIndexOf('.') + 1);
+    }
+
+    /**
+     * Returns SQL with each attribute placeholder replaced by a single question mark.
+     * @param sql
+     *   The SQL.
+     * @param attributePrefix
+     *   The attribute prefix.
+     * @param attributePostfix
+     *   The attribute postfix.
+     * @return
+     *   The SQL with placeholders replaced.
+     */
+    private static String replacePlaceholders(
+            final String sql, final String attributePrefix, final String attributePostfix) {
+        final StringBuilder sb = new StringBuilder(sql.length());
+        int start = 0;
+        int prefixIndex = sql.indexOf(attributePrefix);
+        while (prefixIndex != -1) {
+            final int postfixIndex =
+                    sql.indexOf(attributePostfix, prefixIndex + attributePrefix.length());
+            if (postfixIndex == -1) {
+                break;
+            }
+            sb.append(sql, start, prefixIndex).append(' ').append(PLACEHOLDER).append(' ');
+            start = postfixIndex + attributePostfix.length();
+            prefixIndex = sql.indexOf(attributePrefix, start);
+        }
+        return sb.append(sql, start, sql.length()).toString();
+    }
+
+    /**
+     * Splits SQL into lower case tokens - names (including quoted names) and the punctuation
+     * that matters to the analysis. Comments and string literals are skipped.
+     * @param sql
+     *   The SQL.
+     * @return
+     *   The tokens of the SQL.
+     */
+    static List<String> tokenize(final String sql) {
+        final List<String> result = new ArrayList<String>();
+        final StringBuilder name = new StringBuilder();
+        final int length = sql.length();
+
+        int i = 0;
+        while (i < length) {
+            final char c = sql.charAt(i);
+
+            if (isNameChar(c)) {
+                name.append(Character.toLowerCase(c));
+                i++;
+                continue;
+            }
+
+            if (c == '"') {
+                // a quoted name - which may be part of a qualified name
+                final int end = sql.indexOf('"', i + 1);
+                name.append(sql.substring(i + 1, (end == -1) ? length : end).toLowerCase());
+                i = (end == -1) ? length : end + 1;
+                continue;
+            }
+
+            if (name.length() > 0) {
+                result.add(name.toString());
+                name.setLength(0);
+            }
+
+            if (c == '\'') {
+                // skip a string literal - '' is a quote in a literal, so we can just skip to the
+                // next quote each time
+                final int end = sql.indexOf('\'', i + 1);
+                i = (end == -1) ? length : end + 1;
+
+            } else if (c == '-' && i + 1 < length && sql.charAt(i + 1) == '-') {
+                final int end = sql.indexOf('\n', i);
+                i = (end == -1) ? length : end + 1;
+
+            } else if (c == '/' && i + 1 < length && sql.charAt(i + 1) == '*') {
+                final int end = sql.indexOf("*/", i + 2);
+                i = (end == -1) ? length : end + 2;
+
+            } else {
+                if (c == '(' || c == ')' || c == ',' || c == '?') {
+                    result.add(String.valueOf(c));
+                }
+                i++;
+
+            }
+        }
+
+        if (name.length() > 0) {
+            result.add(name.toString());
+        }
+
+        return result;
+
+    }
+
+    /**
+     * Returns true if a character can be part of a name.
+     * @param c
+     *   The character.
+     * @return
+     *   true if the character can be part of a name.
+     */
+    private static boolean isNameChar(final char c) {
+        return Character.isLetterOrDigit(c) || c == '_' || c == '$' || c == '#' || c == '.'
+                || c == '@';
+    }
+
+    /**
+     * The objects that a statement reads and writes.
+     */
+    static final class Access {
+
+        /**
+         * The objects read by the statement.
+         */
+        private final Set<String> reads = new HashSet<String>();
+
+        /**
+         * The objects written by the statement.
+         */
+        private final Set<String> writes = new HashSet<String>();
+
+        /**
+         * true if the statement could not be analysed.
+         */
+        private boolean barrier;
+
+        /**
+         * Returns the objects read by the statement.
+         * @return
+         *   The objects read by the statement.
+         */
+        Set<String> getReads() {
+            return reads;
+        }
+
+        /**
+         * Returns the objects written by the statement.
+         * @return
+         *   The objects written by the statement.
+         */
+        Set<String> getWrites() {
+            return writes;
+        }
+
+        /**
+         * Returns true if the statement could not be analysed.
+         * @return
+         *   true if the statement could not be analysed.
+         */
+        boolean isBarrier() {
+            return barrier;
+        }
+
+    }
+
+}
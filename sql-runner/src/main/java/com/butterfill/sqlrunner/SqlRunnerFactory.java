@@ -1,9 +1,12 @@
 package com.butterfill.sqlrunner;
 
 import com.butterfill.sqlrunner.util.AttributeSettingResultSetNextRowCallbackHandlerImpl;
+import com.butterfill.sqlrunner.util.DefaultAttributeFormatterImpl;
 import com.butterfill.sqlrunner.util.DefaultCallbackHandlerImpl;
 import com.butterfill.sqlrunner.util.DefaultFileReader;
+import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ExecutorService;
 import javax.sql.DataSource;
 
 /**
@@ -49,8 +52,49 @@ public class SqlRunnerFactory {
     /**
      * Attributes that may be used in the SQL file.
      */
+    private Map<String, ?> attributes;
+
+    /**
+     * The attributes set by {@link #setAttributeMap(java.util.Map) } - or null if attributes were
+     * set by {@link #setAttributes(java.util.Map) }.
+     */
     private Map<String, String> attributeMap;
 
+    /**
+     * Used to format attribute values that are put into SQL.
+     */
+    private SqlRunnerAttributeFormatter attributeFormatter = new DefaultAttributeFormatterImpl();
+
+    /**
+     * The bind attributes option of SqlRunners created by this factory.
+     */
+    private boolean bindAttributes;
+
+    /**
+     * The batch size of SqlRunners created by this factory.
+     */
+    private int batchSize;
+
+    /**
+     * The load batch size of SqlRunners created by this factory.
+     */
+    private int loadBatchSize = SqlRunner.DEFAULT_LOAD_BATCH_SIZE;
+
+    /**
+     * The number of statements SqlRunners created by this factory run between commits.
+     */
+    private int commitEvery;
+
+    /**
+     * The number of rows SqlRunners created by this factory change between commits.
+     */
+    private int commitEveryRows;
+
+    /**
+     * The async executor of SqlRunners created by this factory - null to use the default.
+     */
+    private ExecutorService asyncExecutor;
+
     /**
      * Map of callback handlers.
      * Key is a statement name (set via a sql-runner comment or null).
@@ -63,6 +107,12 @@ public class SqlRunnerFactory {
      */
     private Map<String, SqlRunnerResultSetNextRowCallbackHandler> rsnrCallbackHandlerMap;
 
+    /**
+     * Copies of the attribute and handler maps that are shared by all SqlRunners created by this
+     * factory - created by the first call to newSqlRunner after one of the maps is set.
+     */
+    private volatile BaseLayers baseLayers;
+
     /**
      * Returns the file reader to be used to read SQL files.
      * @return
@@ -176,12 +226,47 @@ public class SqlRunnerFactory {
         this.attributeNamePostfix = attributeNamePostfix;
     }
 
+    /**
+     * Returns the attributes of this instance - all of which are set on SqlRunners by
+     * {@link #newSqlRunner() }.
+     * <p>
+     * Values may be {@link SqlRunnerAttributeSupplier}s - which each SqlRunner only calls if it
+     * runs a statement that uses the attribute.
+     * </p>
+     * <p>
+     * The map is copied by the first call to newSqlRunner after it is set - so changes made to
+     * the map after that are not seen by new SqlRunners until the map is set again.
+     * The same applies to the callback handler maps.
+     * </p>
+     * @return
+     *   The attributes of this instance.
+     */
+    public Map<String, ?> getAttributes() {
+        return attributes;
+    }
+
+    /**
+     * Sets the attributes of this instance - all of which are set on SqlRunners by
+     * {@link #newSqlRunner() }.
+     * @param attributes
+     *   The attributes of this instance - values may be any type.
+     */
+    public void setAttributes(final Map<String, ?> attributes) {
+        this.attributes = attributes;
+        this.attributeMap = null;
+        this.baseLayers = null;
+    }
+
     /**
      * Returns the attribute map of this instance - all attributes in this map are set on
      * SqlRunners by {@link #newSqlRunner() }.
      * @return
-     *   The attribute map of this instance.
+     *   The attribute map of this instance - or null if attributes were set by
+     *   {@link #setAttributes(java.util.Map) }.
+     * @deprecated
+     *   Attribute values need not be strings - use {@link #getAttributes() }.
      */
+    @Deprecated
     public Map<String, String> getAttributeMap() {
         return attributeMap;
     }
@@ -191,9 +276,162 @@ public class SqlRunnerFactory {
      * SqlRunners by {@link #newSqlRunner() }.
      * @param attributeMap
      *   The attribute map of this instance.
+     * @deprecated
+     *   Attribute values need not be strings - use {@link #setAttributes(java.util.Map) }.
      */
+    @Deprecated
     public void setAttributeMap(final Map<String, String> attributeMap) {
+        this.attributes = attributeMap;
         this.attributeMap = attributeMap;
+        this.baseLayers = null;
+    }
+
+    /**
+     * Returns the attribute formatter to be used by SqlRunners created by this factory.
+     * @see SqlRunner#setAttributeFormatter(com.butterfill.sqlrunner.SqlRunnerAttributeFormatter)
+     * @return
+     *   The attribute formatter to be used by SqlRunners created by this factory.
+     */
+    public SqlRunnerAttributeFormatter getAttributeFormatter() {
+        return attributeFormatter;
+    }
+
+    /**
+     * Sets the attribute formatter to be used by SqlRunners created by this factory.
+     * @see SqlRunner#setAttributeFormatter(com.butterfill.sqlrunner.SqlRunnerAttributeFormatter)
+     * @param attributeFormatter
+     *   The attribute formatter to be used by SqlRunners created by this factory.
+     */
+    public void setAttributeFormatter(final SqlRunnerAttributeFormatter attributeFormatter) {
+        this.attributeFormatter = attributeFormatter;
+    }
+
+    /**
+     * Returns the bind attributes option to be used by SqlRunners created by this factory.
+     * @see SqlRunner#setBindAttributes(boolean)
+     * @return
+     *   true if SqlRunners created by this factory bind attribute values.
+     */
+    public boolean getBindAttributes() {
+        return bindAttributes;
+    }
+
+    /**
+     * Sets the bind attributes option to be used by SqlRunners created by this factory.
+     * @see SqlRunner#setBindAttributes(boolean)
+     * @param bindAttributes
+     *   Pass true if SqlRunners created by this factory should bind attribute values.
+     */
+    public void setBindAttributes(final boolean bindAttributes) {
+        this.bindAttributes = bindAttributes;
+    }
+
+    /**
+     * Returns the batch size to be used by SqlRunners created by this factory.
+     * @see SqlRunner#setBatchSize(int)
+     * @return
+     *   The batch size to be used by SqlRunners created by this factory.
+     */
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    /**
+     * Sets the batch size to be used by SqlRunners created by this factory.
+     * @see SqlRunner#setBatchSize(int)
+     * @param batchSize
+     *   The batch size to be used by SqlRunners created by this factory.
+     */
+    public void setBatchSize(final int batchSize) {
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * Returns the load batch size to be used by SqlRunners created by this factory.
+     * @see SqlRunner#setLoadBatchSize(int)
+     * @return
+     *   The load batch size to be used by SqlRunners created by this factory.
+     */
+    public int getLoadBatchSize() {
+        return loadBatchSize;
+    }
+
+    /**
+     * Sets the load batch size to be used by SqlRunners created by this factory.
+     * @see SqlRunner#setLoadBatchSize(int)
+     * @param loadBatchSize
+     *   The load batch size to be used by SqlRunners created by this factory.
+     */
+    public void setLoadBatchSize(final int loadBatchSize) {
+        this.loadBatchSize = loadBatchSize;
+    }
+
+    /**
+     * Returns the number of statements that SqlRunners created by this factory run between
+     * commits.
+     * @see SqlRunner#setCommitEvery(int, int)
+     * @return
+     *   The number of statements to run between commits - 0 if commits do not depend on the
+     *   number of statements.
+     */
+    public int getCommitEvery() {
+        return commitEvery;
+    }
+
+    /**
+     * Sets the number of statements that SqlRunners created by this factory run between
+     * commits.
+     * @see SqlRunner#setCommitEvery(int, int)
+     * @param commitEvery
+     *   The number of statements to run between commits - 0 if commits should not depend on the
+     *   number of statements.
+     */
+    public void setCommitEvery(final int commitEvery) {
+        this.commitEvery = commitEvery;
+    }
+
+    /**
+     * Returns the number of rows that SqlRunners created by this factory change between commits.
+     * @see SqlRunner#setCommitEvery(int, int)
+     * @return
+     *   The number of rows to change between commits - 0 if commits do not depend on the number
+     *   of rows changed.
+     */
+    public int getCommitEveryRows() {
+        return commitEveryRows;
+    }
+
+    /**
+     * Sets the number of rows that SqlRunners created by this factory change between commits.
+     * @see SqlRunner#setCommitEvery(int, int)
+     * @param commitEveryRows
+     *   The number of rows to change between commits - 0 if commits should not depend on the
+     *   number of rows changed.
+     */
+    public void setCommitEveryRows(final int commitEveryRows) {
+        this.commitEveryRows = commitEveryRows;
+    }
+
+    /**
+     * Returns the executor used by SqlRunners created by this factory to run statements
+     * asynchronously.
+     * @see SqlRunner#setAsyncExecutor(java.util.concurrent.ExecutorService)
+     * @return
+     *   The async executor - or null if SqlRunners use the default executor.
+     */
+    public ExecutorService getAsyncExecutor() {
+        return asyncExecutor;
+    }
+
+    /**
+     * Sets the executor used by SqlRunners created by this factory to run statements
+     * asynchronously.
+     * @see SqlRunner#setAsyncExecutor(java.util.concurrent.ExecutorService)
+     * @param asyncExecutor
+     *   The async executor - or null to use the default executor.
+     */
+    public void setAsyncExecutor(final ExecutorService asyncExecutor) {
+        this.asyncExecutor = asyncExecutor;
     }
 
     /**
@@ -215,6 +453,7 @@ public class SqlRunnerFactory {
     public void setCallbackHandlerMap(
             final Map<String, SqlRunnerCallbackHandler> callbackHandlerMap) {
         this.callbackHandlerMap = callbackHandlerMap;
+        this.baseLayers = null;
     }
 
     /**
@@ -237,6 +476,7 @@ public class SqlRunnerFactory {
     public void setRunnerResultSetNextRowCallbackHandlerMap(
             final Map<String, SqlRunnerResultSetNextRowCallbackHandler> rsnrCallbackHandlerMap) {
         this.rsnrCallbackHandlerMap = rsnrCallbackHandlerMap;
+        this.baseLayers = null;
     }
 
 
@@ -246,35 +486,83 @@ public class SqlRunnerFactory {
      *   A new SQL runner.
      */
     public SqlRunner newSqlRunner() {
+        BaseLayers layers = baseLayers;
+        if (layers == null) {
+            layers = new BaseLayers(attributes, callbackHandlerMap, rsnrCallbackHandlerMap);
+            baseLayers = layers;
+        }
+
         final SqlRunner result = new SqlRunner(
                 dataSource,
                 defaultCallbackHandler,
                 defaultResultSetNextRowCallbackHandler,
-                fileReader)
-                .setAttributePrefixAndPostfix(attributeNamePrefix, attributeNamePostfix);
+                fileReader,
+                layers.attributeMap,
+                layers.callbackHandlerMap,
+                layers.rsnrCallbackHandlerMap)
+                .setAttributePrefixAndPostfix(attributeNamePrefix, attributeNamePostfix)
+                .setBindAttributes(bindAttributes)
+                .setBatchSize(batchSize)
+                .setLoadBatchSize(loadBatchSize)
+                .setCommitEvery(commitEvery, commitEveryRows)
+                .setAsyncExecutor(asyncExecutor)
+                .setAttributeFormatter(attributeFormatter);
 
-        if (attributeMap != null) {
-            for (Map.Entry<String, String> entry : attributeMap.entrySet()) {
-                result.setAttribute(entry.getKey(), entry.getValue());
-            }
-        }
+        return result;
 
-        if (callbackHandlerMap != null) {
-            for (Map.Entry<String, SqlRunnerCallbackHandler> entry
-                    : callbackHandlerMap.entrySet()) {
-                result.setCallbackHandler(entry.getKey(), entry.getValue());
-            }
-        }
+    }
 
-        if (rsnrCallbackHandlerMap != null) {
-            for (Map.Entry<String, SqlRunnerResultSetNextRowCallbackHandler> entry
-                    : rsnrCallbackHandlerMap.entrySet()) {
-                result.setResultSetNextRowCallbackHandler(entry.getKey(), entry.getValue());
+    /**
+     * Copies of the attribute and handler maps of a factory - which are never changed, so they
+     * can be shared by all SqlRunners created by the factory.
+     */
+    private static final class BaseLayers {
+
+        /**
+         * Copy of the attribute map.
+         */
+        private final Map<String, Object> attributeMap = new HashMap<String, Object>();
+
+        /**
+         * Copy of the callback handler map.
+         */
+        private final Map<String, SqlRunnerCallbackHandler> callbackHandlerMap =
+                new HashMap<String, SqlRunnerCallbackHandler>();
+
+        /**
+         * Copy of the result set next row callback handler map.
+         */
+        private final Map<String, SqlRunnerResultSetNextRowCallbackHandler> rsnrCallbackHandlerMap =
+                new HashMap<String, SqlRunnerResultSetNextRowCallbackHandler>();
+
+        /**
+         * Creates copies of the specified maps - any of which may be null.
+         * @param attributeMap
+         *   The attribute map. Null values are replaced by empty strings (as they would be by
+         *   {@link SqlRunner#setAttribute(java.lang.String, java.lang.Object) }).
+         * @param callbackHandlerMap
+         *   The callback handler map.
+         * @param rsnrCallbackHandlerMap
+         *   The result set next row callback handler map.
+         */
+        BaseLayers(final Map<String, ?> attributeMap,
+                final Map<String, SqlRunnerCallbackHandler> callbackHandlerMap,
+                final Map<String, SqlRunnerResultSetNextRowCallbackHandler>
+                        rsnrCallbackHandlerMap) {
+            if (attributeMap != null) {
+                for (Map.Entry<String, ?> entry : attributeMap.entrySet()) {
+                    this.attributeMap.put(entry.getKey(),
+                            (entry.getValue() == null) ? "" : entry.getValue());
+                }
+            }
+            if (callbackHandlerMap != null) {
+                this.callbackHandlerMap.putAll(callbackHandlerMap);
+            }
+            if (rsnrCallbackHandlerMap != null) {
+                this.rsnrCallbackHandlerMap.putAll(rsnrCallbackHandlerMap);
             }
         }
 
-        return result;
-
     }
 
 }
@@ -0,0 +1,138 @@
+package com.butterfill.sqlrunner;
+
+import java.util.AbstractMap;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A map made of a shared base layer, that is never changed, and an overlay that holds the
+ * entries put into this map.
+ *
+ * <p>
+ * Creating a layered map does not copy the base layer and the overlay is only created when the
+ * first entry is put into the map - so creating a layered map costs the same no matter how
+ * many entries the base layer holds.
+ * Entries in the overlay hide entries in the base layer with the same key - including entries
+ * with null values.
+ * </p>
+ *
+ * <p>
+ * Iterating over a layered map copies both layers, so this class is best used for maps that are
+ * mostly read by key.
+ * Entries can not be removed from a layered map.
+ * </p>
+ *
+ * <p>This class is not thread safe. The base layer must not be changed once it has been shared.</p>
+ *
+ * @param <K>
+ *   The type of keys.
+ * @param <V>
+ *   The type of values.
+ * @author Peter Butterfill
+ */
+final class SqlRunnerLayeredMap<K, V> extends AbstractMap<K, V> {
+
+    /**
+     * The base layer - which may be shared by many maps.
+     */
+    private final Map<K, V> base;
+
+    /**
+     * The entries put into this map - created when the first entry is put.
+     */
+    private Map<K, V> overlay;
+
+    /**
+     * Creates a new layered map.
+     * @param base
+     *   The base layer - which must not be changed once it has been passed to this constructor.
+     */
+    SqlRunnerLayeredMap(final Map<K, V> base) {
+        if (base == null) {
+            throw new NullPointerException("base must not be null");
+        }
+        this.base = base;
+    }
+
+    /**
+     * Returns the value for a key - from the overlay if it has an entry for the key,
+     * otherwise from the base layer.
+     * @param key
+     *   The key.
+     * @return
+     *   The value for the key.
+     */
+    @Override
+    public V get(final Object key) {
+        if (overlay != null) {
+            final V value = overlay.get(key);
+            if (value != null || overlay.containsKey(key)) {
+                return value;
+            }
+        }
+        return base.get(key);
+    }
+
+    /**
+     * Returns true if either layer has an entry for the key.
+     * @param key
+     *   The key.
+     * @return
+     *   true if this map has an entry for the key.
+     */
+    @Override
+    public boolean containsKey(final Object key) {
+        return (overlay != null && overlay.containsKey(key)) || base.containsKey(key);
+    }
+
+    /**
+     * Puts an entry into the overlay of this map.
+     * @param key
+     *   The key.
+     * @param value
+     *   The value.
+     * @return
+     *   The previous value for the key.
+     */
+    @Override
+    public V put(final K key, final V value) {
+        if (overlay == null) {
+            overlay = new HashMap<K, V>();
+        }
+        if (overlay.containsKey(key)) {
+            return overlay.put(key, value);
+        }
+        overlay.put(key, value);
+        return base.get(key);
+    }
+
+    /**
+     * Not supported.
+     * @param key
+     *   Ignored.
+     * @return
+     *   Never returns.
+     */
+    @Override
+    public V remove(final Object key) {
+        throw new UnsupportedOperationException("remove is not supported");
+    }
+
+    /**
+     * Returns an unmodifiable snapshot of the entries of this map.
+     * @return
+     *   The entries of this map.
+     */
+    @Override
+    public Set<Map.Entry<K, V>> entrySet() {
+        if (overlay == null) {
+            return Collections.unmodifiableMap(base).entrySet();
+        }
+        final Map<K, V> result = new HashMap<K, V>(base);
+        result.putAll(overlay);
+        return Collections.unmodifiableMap(result).entrySet();
+    }
+
+}
@@ -0,0 +1,87 @@
+package com.butterfill.sqlrunner;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The SQL of a statement after attributes have been replaced - and the values to bind, if
+ * attributes are bound - for a version of the attributes of a SqlRunner.
+ *
+ * <p>Instances of this class are immutable.</p>
+ *
+ * @author Peter Butterfill
+ */
+final class SqlRunnerRenderedSql {
+
+    /**
+     * The SQL that was rendered.
+     */
+    private final String sourceSql;
+
+    /**
+     * The version of the attributes used to render the SQL.
+     */
+    private final long attributeVersion;
+
+    /**
+     * The rendered SQL.
+     */
+    private final String sql;
+
+    /**
+     * The values to bind to the parameters of the rendered SQL, in parameter order.
+     */
+    private final List<Object> bindValues;
+
+    /**
+     * Creates a new rendered SQL.
+     * @param sourceSql
+     *   The SQL that was rendered.
+     * @param attributeVersion
+     *   The version of the attributes used to render the SQL.
+     * @param sql
+     *   The rendered SQL.
+     * @param bindValues
+     *   The values to bind to the parameters of the rendered SQL, in parameter order.
+     */
+    SqlRunnerRenderedSql(final String sourceSql, final long attributeVersion, final String sql,
+            final List<Object> bindValues) {
+        this.sourceSql = sourceSql;
+        this.attributeVersion = attributeVersion;
+        this.sql = sql;
+        this.bindValues = Collections.unmodifiableList(bindValues);
+    }
+
+    /**
+     * Returns true if this was rendered from the specified SQL and version of attributes.
+     * @param sourceSql
+     *   The SQL.
+     * @param attributeVersion
+     *   The version of the attributes.
+     * @return
+     *   true if this can be used for the SQL and version of attributes.
+     */
+    boolean isFor(final String sourceSql, final long attributeVersion) {
+        // we only re-use rendered SQL for the same instance of sql, so we don't need equals
+        return this.sourceSql == sourceSql && this.attributeVersion == attributeVersion;
+    }
+
+    /**
+     * Returns the rendered SQL.
+     * @return
+     *   The rendered SQL.
+     */
+    String getSql() {
+        return sql;
+    }
+
+    /**
+     * Returns the values to bind to the parameters of the rendered SQL.
+     * @return
+     *   The values to bind, in parameter order.
+     */
+    List<Object> getBindValues() {
+        return bindValues;
+    }
+
+}
@@ -0,0 +1,25 @@
+package com.butterfill.sqlrunner;
+
+/**
+ * Publishes the rows returned by a SELECT statement to subscribers - see
+ * {@link SqlRunner#publishRows(java.lang.String, java.lang.String, int) }.
+ *
+ * <p>
+ * Rows are only read from the result set when subscribers ask for them, so a slow subscriber
+ * does not cause rows to be buffered and the result set is read in batches of the fetch size.
+ * The statement is run once for each subscriber.
+ * </p>
+ *
+ * @author Peter Butterfill
+ */
+public interface SqlRunnerRowPublisher {
+
+    /**
+     * Adds a subscriber - which is sent onSubscribe before this method returns.
+     * The statement is run when the subscriber first requests rows.
+     * @param subscriber
+     *   The subscriber.
+     */
+    void subscribe(SqlRunnerRowSubscriber subscriber);
+
+}
@@ -0,0 +1,48 @@
+package com.butterfill.sqlrunner;
+
+import java.util.Map;
+
+/**
+ * Receives the rows published by a {@link SqlRunnerRowPublisher}.
+ *
+ * <p>
+ * onSubscribe is called first. onNext is then called once for each row requested through the
+ * subscription - followed by onComplete, when there are no more rows, or onError, if something
+ * goes wrong. Calls are never made at the same time but may be made by the thread that calls
+ * {@link SqlRunnerRowSubscription#request(long) }.
+ * </p>
+ *
+ * @author Peter Butterfill
+ */
+public interface SqlRunnerRowSubscriber {
+
+    /**
+     * Called when the subscriber is added to a publisher - no rows are sent until they are
+     * requested through the subscription.
+     * @param subscription
+     *   The subscription, which is used to request rows and to cancel.
+     */
+    void onSubscribe(SqlRunnerRowSubscription subscription);
+
+    /**
+     * Called for each requested row.
+     * @param row
+     *   The row - key is the column name converted to a java name (e.g. EMP_NAME is empName).
+     */
+    void onNext(Map<String, Object> row);
+
+    /**
+     * Called, at most once, if running the statement or reading a row fails - no more calls
+     * are made after this.
+     * @param throwable
+     *   The error.
+     */
+    void onError(Throwable throwable);
+
+    /**
+     * Called, at most once, after the last row has been sent - no more calls are made after
+     * this.
+     */
+    void onComplete();
+
+}
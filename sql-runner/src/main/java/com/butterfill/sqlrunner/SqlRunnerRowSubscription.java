@@ -0,0 +1,32 @@
+package com.butterfill.sqlrunner;
+
+/**
+ * Links a {@link SqlRunnerRowSubscriber} to a {@link SqlRunnerRowPublisher}.
+ *
+ * <p>
+ * The connection used to run the statement is held until all rows have been sent, the
+ * subscription is cancelled or an error occurs - so subscribers must request rows until they
+ * receive onComplete or onError, or cancel.
+ * </p>
+ *
+ * @author Peter Butterfill
+ */
+public interface SqlRunnerRowSubscription {
+
+    /**
+     * Requests rows - which may be sent before this method returns, using the calling thread.
+     * Requests add up, so requesting 10 rows twice requests 20 rows.
+     * @param n
+     *   The number of rows to request - which must be positive.
+     *   Requesting a number that is not positive sends an IllegalArgumentException to
+     *   onError.
+     */
+    void request(long n);
+
+    /**
+     * Stops sending rows and closes the result set and connection.
+     * No more calls are made to the subscriber, other than those already in progress.
+     */
+    void cancel();
+
+}
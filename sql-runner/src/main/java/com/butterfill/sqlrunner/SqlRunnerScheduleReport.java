@@ -0,0 +1,236 @@
+package com.butterfill.sqlrunner;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Describes a run of statements scheduled by their dependencies - see
+ * {@link SqlRunner#runScheduled(java.util.List, int, boolean) }.
+ * Each statement of the run was committed on its own, so the statements in a report have
+ * been committed even if a later statement of the run failed.
+ *
+ * <p>
+ * The critical path is the chain of dependent statements that took longest to run - the run
+ * can not take less time than this chain, however many connections are used.
+ * Times are in nanoseconds.
+ * </p>
+ *
+ * <p>Instances of this class are immutable.</p>
+ *
+ * @author Peter Butterfill
+ */
+public final class SqlRunnerScheduleReport {
+
+    /**
+     * The executed statements - in the order they appear in the script.
+     */
+    private final List<SqlRunnerStatement> statements;
+
+    /**
+     * The executed statements that could not be analysed and were run on their own.
+     */
+    private final List<SqlRunnerStatement> barrierStatements;
+
+    /**
+     * The statements on the critical path - in the order they were run.
+     */
+    private final List<SqlRunnerStatement> criticalPath;
+
+    /**
+     * The number of connections used to run the statements.
+     */
+    private final int connectionCount;
+
+    /**
+     * The time taken to run all statements.
+     */
+    private final long elapsedTime;
+
+    /**
+     * The sum of the times taken to run each statement.
+     */
+    private final long totalStatementTime;
+
+    /**
+     * The sum of the times taken to run the statements on the critical path.
+     */
+    private final long criticalPathTime;
+
+    /**
+     * Creates a new report.
+     * @param statements
+     *   The executed statements - in the order they appear in the script.
+     * @param graph
+     *   The dependencies of the statements.
+     * @param statementTimes
+     *   The time taken to run each statement.
+     * @param connectionCount
+     *   The number of connections used to run the statements.
+     * @param elapsedTime
+     *   The time taken to run all statements.
+     */
+    SqlRunnerScheduleReport(final List<SqlRunnerStatement> statements,
+            final SqlRunnerDependencyGraph graph, final long[] statementTimes,
+            final int connectionCount, final long elapsedTime) {
+        final int size = statements.size();
+
+        this.statements = Collections.unmodifiableList(
+                new ArrayList<SqlRunnerStatement>(statements));
+        this.connectionCount = connectionCount;
+        this.elapsedTime = elapsedTime;
+
+        final List<SqlRunnerStatement> barrierList = new ArrayList<SqlRunnerStatement>();
+        // the longest time to finish each statement (following dependencies) and the
+        // statement before it on that path - dependencies always come before the statement
+        final long[] pathTimes = new long[size];
+        final int[] previous = new int[size];
+        long total = 0;
+        int last = -1;
+
+        for (int i = 0; i < size; i++) {
+            if (graph.isBarrier(i)) {
+                barrierList.add(statements.get(i));
+            }
+            total += statementTimes[i];
+            previous[i] = -1;
+            for (int dependency : graph.getDependencies(i)) {
+                if (previous[i] == -1 || pathTimes[dependency] > pathTimes[previous[i]]) {
+                    previous[i] = dependency;
+                }
+            }
+            pathTimes[i] = statementTimes[i] + ((previous[i] == -1) ? 0 : pathTimes[previous[i]]);
+            if (last == -1 || pathTimes[i] > pathTimes[last]) {
+                last = i;
+            }
+        }
+
+        final List<SqlRunnerStatement> path = new ArrayList<SqlRunnerStatement>();
+        for (int i = last; i != -1; i = previous[i]) {
+            path.add(0, statements.get(i));
+        }
+
+        this.barrierStatements = Collections.unmodifiableList(barrierList);
+        this.criticalPath = Collections.unmodifiableList(path);
+        this.totalStatementTime = total;
+        this.criticalPathTime = (last == -1) ? 0 : pathTimes[last];
+
+    }
+
+    /**
+     * Returns the executed statements - in the order they appear in the script.
+     * @return
+     *   An unmodifiable list of the executed statements.
+     */
+    public List<SqlRunnerStatement> getStatements() {
+        return statements;
+    }
+
+    /**
+     * Returns the executed statements that could not be analysed - each of which was run after
+     * all statements before it had finished and before any statements after it started.
+     * @return
+     *   An unmodifiable list of the statements that could not be analysed.
+     */
+    public List<SqlRunnerStatement> getBarrierStatements() {
+        return barrierStatements;
+    }
+
+    /**
+     * Returns the chain of dependent statements that took longest to run.
+     * @return
+     *   An unmodifiable list of the statements on the critical path - in the order they were run.
+     */
+    public List<SqlRunnerStatement> getCriticalPath() {
+        return criticalPath;
+    }
+
+    /**
+     * Returns the number of connections used to run the statements.
+     * @return
+     *   The number of connections used to run the statements.
+     */
+    public int getConnectionCount() {
+        return connectionCount;
+    }
+
+    /**
+     * Returns the time taken to run all statements.
+     * @return
+     *   The time taken to run all statements, in nanoseconds.
+     */
+    public long getElapsedTime() {
+        return elapsedTime;
+    }
+
+    /**
+     * Returns the sum of the times taken to run each statement - which is roughly how long the
+     * run would take using one connection.
+     * @return
+     *   The sum of the times taken to run each statement, in nanoseconds.
+     */
+    public long getTotalStatementTime() {
+        return totalStatementTime;
+    }
+
+    /**
+     * Returns the time taken to run the statements on the critical path - which is the
+     * shortest time the run could take.
+     * @return
+     *   The sum of the times taken to run the statements on the critical path, in nanoseconds.
+     */
+    public long getCriticalPathTime() {
+        return criticalPathTime;
+    }
+
+    /**
+     * Returns the average number of statements that were running at the same time.
+     * @return
+     *   The total statement time divided by the elapsed time - or 1.0 if no time elapsed.
+     */
+    public double getAchievedParallelism() {
+        return (elapsedTime == 0) ? 1.0 : (double) totalStatementTime / elapsedTime;
+    }
+
+    /**
+     * Returns the best average number of statements that could run at the same time, given the
+     * dependencies between the statements.
+     * @return
+     *   The total statement time divided by the critical path time - or 1.0 if the critical
+     *   path took no time.
+     */
+    public double getAvailableParallelism() {
+        return (criticalPathTime == 0) ? 1.0 : (double) totalStatementTime / criticalPathTime;
+    }
+
+    /**
+     * Returns a string representation of this instance.
+     * @return
+     *   A string representation of this instance.
+     */
+    @Override
+    public String toString() {
+        return new StringBuilder()
+                .append("SqlRunnerScheduleReport[statementCount=")
+                .append(statements.size())
+                .append(", barrierCount=")
+                .append(barrierStatements.size())
+                .append(", connectionCount=")
+                .append(connectionCount)
+                .append(", elapsedTime=")
+                .append(elapsedTime)
+                .append(", totalStatementTime=")
+                .append(totalStatementTime)
+                .append(", criticalPathLength=")
+                .append(criticalPath.size())
+                .append(", criticalPathTime=")
+                .append(criticalPathTime)
+                .append(", achievedParallelism=")
+                .append(getAchievedParallelism())
+                .append(", availableParallelism=")
+                .append(getAvailableParallelism())
+                .append("]")
+                .toString();
+    }
+
+}
@@ -0,0 +1,58 @@
+package com.butterfill.sqlrunner;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.List;
+
+/**
+ * Gives file readers access to the contents of SQL script files - which could be held on the
+ * class path, on a file system or in memory.
+ * @author Peter Butterfill
+ */
+public interface SqlRunnerScriptSource {
+
+    /**
+     * Opens a script file for reading.
+     * @param fileName
+     *   Name of the file to open.
+     * @return
+     *   A reader for the contents of the file - which must be closed by the caller.
+     * @throws IOException
+     *   If the file does not exist or can not be opened.
+     */
+    Reader openScript(String fileName) throws IOException;
+
+    /**
+     * Returns the time that a script file was last modified.
+     * @param fileName
+     *   Name of the file.
+     * @return
+     *   The time that the file was last modified, in milliseconds since the epoch -
+     *   or 0 if the time is not known.
+     * @throws IOException
+     *   If the file does not exist.
+     */
+    long lastModified(String fileName) throws IOException;
+
+    /**
+     * Returns the size of a script file.
+     * @param fileName
+     *   Name of the file.
+     * @return
+     *   The size of the file, in bytes or characters depending on how the file is held -
+     *   or -1 if the size is not known.
+     * @throws IOException
+     *   If the file does not exist.
+     */
+    long length(String fileName) throws IOException;
+
+    /**
+     * Returns the names of all of the files that can be opened by this script source.
+     * @return
+     *   The names of the files, in no particular order.
+     * @throws IOException
+     *   If the files can not be listed.
+     */
+    List<String> listScripts() throws IOException;
+
+}
@@ -1,5 +1,7 @@
 package com.butterfill.sqlrunner;
 
+import java.util.Collections;
+import java.util.List;
 import java.util.logging.Logger;
 
 /**
@@ -8,6 +10,11 @@ import java.util.logging.Logger;
  * - you can tell SqlRunner use callback handlers by statement name.
  * By Default, all statements are "fail fast" - this means that if an exception is thrown when
  * the statement is run, the exception will propagate and subsequent statements will not be run.
+ * Consecutive statements in the same parallel block may be run at the same time, on several
+ * connections.
+ * The fetch size, max rows and forward only options are hints that SqlRunner passes to the
+ * JDBC statement before it is executed.
+ * The commit options tell SqlRunner to commit during a run - rather than only at the end.
  * @author Peter Butterfill
  */
 public class SqlRunnerStatement {
@@ -37,6 +44,47 @@ public class SqlRunnerStatement {
      */
     private final boolean failFast;
 
+    /**
+     * Identifies the parallel block of this statement - or 0 if this statement is not in a
+     * parallel block.
+     */
+    private int parallelBlock;
+
+    /**
+     * The maximum number of connections used to run the parallel block of this statement.
+     */
+    private int parallelism;
+
+    /**
+     * The number of rows the driver should fetch at a time - or 0 to use the driver default.
+     */
+    private int fetchSize;
+
+    /**
+     * The maximum number of rows a result set can contain - or 0 for no limit.
+     */
+    private int maxRows;
+
+    /**
+     * Set to true if the rows of a result set will only be read forwards.
+     */
+    private boolean forwardOnly;
+
+    /**
+     * The number of statements to run between commits - or 0 to use the setting of the runner.
+     */
+    private int commitEvery;
+
+    /**
+     * The number of rows to change between commits - or 0 to use the setting of the runner.
+     */
+    private int commitEveryRows;
+
+    /**
+     * Set to true if this statement should be run with auto commit enabled.
+     */
+    private boolean autoCommit;
+
     /**
      * The result of running the statement.
      */
@@ -59,6 +107,24 @@ public class SqlRunnerStatement {
      */
     private Exception exception;
 
+    /**
+     * The values to bind to the parameters of the SQL of this statement, in parameter order.
+     */
+    private List<Object> bindValues = Collections.emptyList();
+
+    /**
+     * The compiled template of sql, created by SqlRunner when this statement is first run -
+     * which can be re-used if this statement is run again (e.g. if it's held in a cache).
+     */
+    private volatile SqlRunnerTemplate template;
+
+    /**
+     * The SQL of this statement after attributes were last replaced by SqlRunner -
+     * which can be re-used if this statement is run again by the same SqlRunner before its
+     * attributes change.
+     */
+    private volatile SqlRunnerRenderedSql renderedSql;
+
     /**
      * Creates a new SqlRunnerStatement giving a name to the specified SQL.
      *
@@ -125,6 +191,173 @@ public class SqlRunnerStatement {
         return failFast;
     }
 
+    /**
+     * Returns the parallel block of this statement - or 0 if this statement is not in a
+     * parallel block.
+     * Consecutive statements with the same parallel block are independent of each other and
+     * may be run at the same time.
+     * @return
+     *   The parallel block of this statement.
+     */
+    public int getParallelBlock() {
+        return parallelBlock;
+    }
+
+    /**
+     * Returns the maximum number of connections used to run the parallel block of this
+     * statement - or 0 if this statement is not in a parallel block.
+     * @return
+     *   The maximum number of connections used to run the parallel block of this statement.
+     */
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    /**
+     * Puts this statement in a parallel block.
+     * @param parallelBlock
+     *   Identifies the parallel block - pass 0 if this statement is not in a parallel block.
+     * @param parallelism
+     *   The maximum number of connections used to run the block - which must be at least 1 if
+     *   parallelBlock is not 0.
+     */
+    public void setParallel(final int parallelBlock, final int parallelism) {
+        if (parallelBlock < 0) {
+            throw new IllegalArgumentException("parallelBlock must not be negative");
+        }
+        if (parallelBlock != 0 && parallelism < 1) {
+            throw new IllegalArgumentException("parallelism must be at least 1");
+        }
+        this.parallelBlock = parallelBlock;
+        this.parallelism = (parallelBlock == 0) ? 0 : parallelism;
+    }
+
+    /**
+     * Returns the number of rows the driver should fetch at a time when reading the result set
+     * of this statement.
+     * @return
+     *   The fetch size of this statement - or 0 to use the driver default.
+     */
+    public int getFetchSize() {
+        return fetchSize;
+    }
+
+    /**
+     * Sets the number of rows the driver should fetch at a time when reading the result set of
+     * this statement - see {@link java.sql.Statement#setFetchSize(int) }.
+     * @param fetchSize
+     *   The fetch size - pass 0 to use the driver default.
+     */
+    public void setFetchSize(final int fetchSize) {
+        if (fetchSize < 0) {
+            throw new IllegalArgumentException("fetchSize must not be negative");
+        }
+        this.fetchSize = fetchSize;
+    }
+
+    /**
+     * Returns the maximum number of rows that the result set of this statement can contain.
+     * @return
+     *   The maximum number of rows - or 0 for no limit.
+     */
+    public int getMaxRows() {
+        return maxRows;
+    }
+
+    /**
+     * Sets the maximum number of rows that the result set of this statement can contain -
+     * rows after the limit are dropped by the driver, see
+     * {@link java.sql.Statement#setMaxRows(int) }.
+     * @param maxRows
+     *   The maximum number of rows - pass 0 for no limit.
+     */
+    public void setMaxRows(final int maxRows) {
+        if (maxRows < 0) {
+            throw new IllegalArgumentException("maxRows must not be negative");
+        }
+        this.maxRows = maxRows;
+    }
+
+    /**
+     * Returns true if the rows of the result set of this statement will only be read forwards.
+     * @return
+     *   true if the rows of the result set will only be read forwards.
+     */
+    public boolean getForwardOnly() {
+        return forwardOnly;
+    }
+
+    /**
+     * Pass true if the rows of the result set of this statement will only be read forwards -
+     * which SqlRunner passes to the driver as a fetch direction hint, see
+     * {@link java.sql.Statement#setFetchDirection(int) }.
+     * @param forwardOnly
+     *   true if the rows of the result set will only be read forwards.
+     */
+    public void setForwardOnly(final boolean forwardOnly) {
+        this.forwardOnly = forwardOnly;
+    }
+
+    /**
+     * Returns the number of statements to run between commits.
+     * @return
+     *   The number of statements to run between commits - or 0 to use the setting of the runner.
+     */
+    public int getCommitEvery() {
+        return commitEvery;
+    }
+
+    /**
+     * Returns the number of rows to change between commits.
+     * @return
+     *   The number of rows to change between commits - or 0 to use the setting of the runner.
+     */
+    public int getCommitEveryRows() {
+        return commitEveryRows;
+    }
+
+    /**
+     * Sets how often SqlRunner commits when it runs this statement - the transaction is
+     * committed after this statement once statementCount statements have been run, or
+     * rowCount rows changed, since the last commit.
+     * If both are 0, the setting of the runner is used.
+     * @param statementCount
+     *   The number of statements to run between commits - or 0 if commits do not depend on the
+     *   number of statements.
+     * @param rowCount
+     *   The number of rows to change between commits - or 0 if commits do not depend on the
+     *   number of rows changed.
+     */
+    public void setCommitEvery(final int statementCount, final int rowCount) {
+        if (statementCount < 0) {
+            throw new IllegalArgumentException("statementCount must not be negative");
+        }
+        if (rowCount < 0) {
+            throw new IllegalArgumentException("rowCount must not be negative");
+        }
+        this.commitEvery = statementCount;
+        this.commitEveryRows = rowCount;
+    }
+
+    /**
+     * Returns true if this statement should be run with auto commit enabled.
+     * @return
+     *   true if this statement should be run with auto commit enabled.
+     */
+    public boolean getAutoCommit() {
+        return autoCommit;
+    }
+
+    /**
+     * Pass true if this statement should be run with auto commit enabled - which is useful for
+     * scripts of DDL statements, as there is no transaction to keep open between them.
+     * @param autoCommit
+     *   true if this statement should be run with auto commit enabled.
+     */
+    public void setAutoCommit(final boolean autoCommit) {
+        this.autoCommit = autoCommit;
+    }
+
     /**
      * After statement execution; this method returns true if the result of execution was a
      * ResultSet, false otherwise.
@@ -206,6 +439,69 @@ public class SqlRunnerStatement {
         this.exception = exception;
     }
 
+    /**
+     * Returns the values that SqlRunner binds to the parameters of the SQL of this statement,
+     * in parameter order - which will be empty unless the SqlRunner that created this statement
+     * binds attributes.
+     * @see SqlRunner#setBindAttributes(boolean)
+     * @return
+     *   The values to bind to the parameters of this statement.
+     */
+    public List<Object> getBindValues() {
+        return bindValues;
+    }
+
+    /**
+     * Sets the values to bind to the parameters of the SQL of this statement.
+     * @param bindValues
+     *   The values to bind to the parameters of this statement, in parameter order -
+     *   which must be an unmodifiable list.
+     */
+    void setBindValues(final List<Object> bindValues) {
+        this.bindValues = bindValues;
+    }
+
+    /**
+     * Returns a compiled template of the SQL of this statement, compiling the SQL if this
+     * statement does not already hold a template for the same SQL, prefix and postfix.
+     * @param attributePrefix
+     *   The attribute prefix - which must not be empty.
+     * @param attributePostfix
+     *   The attribute postfix - which must not be empty.
+     * @return
+     *   A template for the SQL of this statement.
+     */
+    SqlRunnerTemplate getTemplate(final String attributePrefix, final String attributePostfix) {
+        SqlRunnerTemplate result = template;
+        if (result == null || !result.isFor(sql, attributePrefix, attributePostfix)) {
+            result = SqlRunnerTemplate.compile(sql, attributePrefix, attributePostfix);
+            template = result;
+        }
+        return result;
+    }
+
+    /**
+     * Returns the SQL of this statement rendered for the specified version of attributes -
+     * or null if this statement does not hold SQL rendered for that version.
+     * @param attributeVersion
+     *   The version of attributes.
+     * @return
+     *   The rendered SQL or null.
+     */
+    SqlRunnerRenderedSql getRenderedSql(final long attributeVersion) {
+        final SqlRunnerRenderedSql result = renderedSql;
+        return (result != null && result.isFor(sql, attributeVersion)) ? result : null;
+    }
+
+    /**
+     * Sets the rendered SQL of this statement.
+     * @param renderedSql
+     *   The rendered SQL.
+     */
+    void setRenderedSql(final SqlRunnerRenderedSql renderedSql) {
+        this.renderedSql = renderedSql;
+    }
+
     /**
      * Returns a string representation of this instance.
      * @return
@@ -218,8 +514,24 @@ public class SqlRunnerStatement {
                 .append(name)
                 .append("\n  statement=")
                 .append(sql)
+                .append("\n  bindValues=")
+                .append(bindValues)
                 .append("\n  failFast=")
                 .append(failFast)
+                .append("\n  parallelBlock=")
+                .append(parallelBlock)
+                .append("\n  fetchSize=")
+                .append(fetchSize)
+                .append("\n  maxRows=")
+                .append(maxRows)
+                .append("\n  forwardOnly=")
+                .append(forwardOnly)
+                .append("\n  commitEvery=")
+                .append(commitEvery)
+                .append("\n  commitEveryRows=")
+                .append(commitEveryRows)
+                .append("\n  autoCommit=")
+                .append(autoCommit)
                 .append("\n  resultOfExecutionWasResultSet=")
                 .append(resultOfExecutionWasResultSet)
                 .append("\n  updateCount=")
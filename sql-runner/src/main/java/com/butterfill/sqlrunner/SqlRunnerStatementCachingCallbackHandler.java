@@ -0,0 +1,38 @@
+package com.butterfill.sqlrunner;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+
+/**
+ * A callback handler that keeps prepared statements open after they have been run -
+ * so that running the same SQL again on the same connection does not have to prepare it again.
+ * <p>
+ * SqlRunner calls {@link #releaseStatement(java.sql.PreparedStatement) } rather than closing the
+ * statements returned by this handler and calls
+ * {@link #releaseConnection(java.sql.Connection) } before it closes a connection that it got from
+ * its data source.
+ * </p>
+ * @author Peter Butterfill
+ */
+public interface SqlRunnerStatementCachingCallbackHandler extends SqlRunnerCallbackHandler {
+
+    /**
+     * Called by SqlRunner, instead of closing the statement, when it has finished with a
+     * statement returned by prepareStatement.
+     * The handler may keep the statement open to use it again or close it.
+     * This method should not throw exceptions.
+     * @param preparedStatement
+     *   The statement that SqlRunner has finished with.
+     */
+    void releaseStatement(PreparedStatement preparedStatement);
+
+    /**
+     * Called by SqlRunner before it closes a connection - the handler must close any statements
+     * that it has kept open for the connection.
+     * This method should not throw exceptions.
+     * @param connection
+     *   The connection that is about to be closed.
+     */
+    void releaseConnection(Connection connection);
+
+}
@@ -0,0 +1,19 @@
+package com.butterfill.sqlrunner;
+
+import java.util.Iterator;
+
+/**
+ * Iterates over the statements of a file, reading each statement only when it is asked for.
+ * {@link #remove() } is not supported.
+ * Cursors must be closed once they are no longer needed.
+ * @author Peter Butterfill
+ */
+public interface SqlRunnerStatementCursor extends Iterator<SqlRunnerStatement> {
+
+    /**
+     * Releases the resources (e.g. the file reader) held by this cursor.
+     * Calling this method more than once has no effect.
+     */
+    void close();
+
+}
@@ -0,0 +1,20 @@
+package com.butterfill.sqlrunner;
+
+/**
+ * A file reader that can read statements from a file one at a time -
+ * so that the whole file does not need to be held in memory.
+ * @author Peter Butterfill
+ */
+public interface SqlRunnerStreamingFileReader extends SqlRunnerFileReader {
+
+    /**
+     * Opens a file, returning a cursor that will read statements from the file as they are
+     * needed.
+     * @param fileName
+     *   Name of the file to read.
+     * @return
+     *   A cursor over the statements of the file - which must be closed by the caller.
+     */
+    SqlRunnerStatementCursor openFile(String fileName);
+
+}
@@ -0,0 +1,356 @@
+package com.butterfill.sqlrunner;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A SQL statement that has been split into literal text and attribute placeholders -
+ * so that attribute values can be put into the statement in a single pass, looking up only the
+ * attributes that the statement uses.
+ *
+ * <p>
+ * A placeholder is an attribute prefix followed by an attribute name and an attribute postfix.
+ * Placeholders for attributes that have not been set are left as they are.
+ * Attribute values are not searched for placeholders.
+ * </p>
+ *
+ * <p>
+ * A template can also be rendered for binding - where placeholders become JDBC parameter
+ * markers and the attribute values are returned separately, so that the SQL stays the same
+ * whatever the attribute values are.
+ * Placeholders in comments and in quoted strings or identifiers never become parameter markers -
+ * their attribute values are always put into the SQL.
+ * </p>
+ *
+ * <p>Instances of this class are immutable.</p>
+ *
+ * @author Peter Butterfill
+ */
+final class SqlRunnerTemplate {
+
+    /**
+     * The JDBC parameter marker.
+     */
+    private static final String PARAMETER_MARKER = "?";
+
+    /**
+     * Scanning SQL code.
+     */
+    private static final int CODE = 0;
+
+    /**
+     * Scanning a quoted string or identifier.
+     */
+    private static final int QUOTE = 1;
+
+    /**
+     * Scanning a single line comment.
+     */
+    private static final int LINE_COMMENT = 2;
+
+    /**
+     * Scanning a block comment.
+     */
+    private static final int BLOCK_COMMENT = 3;
+
+    /**
+     * The SQL that was compiled.
+     */
+    private final String sql;
+
+    /**
+     * The attribute prefix used to compile the SQL.
+     */
+    private final String attributePrefix;
+
+    /**
+     * The attribute postfix used to compile the SQL.
+     */
+    private final String attributePostfix;
+
+    /**
+     * The literal text of the SQL - there is one more literal than there are placeholders.
+     */
+    private final String[] literals;
+
+    /**
+     * The attribute names of the placeholders in the SQL.
+     */
+    private final String[] attributeNames;
+
+    /**
+     * Set to true for placeholders that can be replaced by parameter markers - i.e. placeholders
+     * that are not in a comment, quoted string or quoted identifier.
+     */
+    private final boolean[] bindable;
+
+    /**
+     * Creates a new template.
+     * @param sql
+     *   The SQL that was compiled.
+     * @param attributePrefix
+     *   The attribute prefix used to compile the SQL.
+     * @param attributePostfix
+     *   The attribute postfix used to compile the SQL.
+     * @param literals
+     *   The literal text of the SQL.
+     * @param attributeNames
+     *   The attribute names of the placeholders in the SQL.
+     * @param bindable
+     *   Set to true for placeholders that can be replaced by parameter markers.
+     */
+    private SqlRunnerTemplate(final String sql, final String attributePrefix,
+            final String attributePostfix, final String[] literals,
+            final String[] attributeNames, final boolean[] bindable) {
+        this.sql = sql;
+        this.attributePrefix = attributePrefix;
+        this.attributePostfix = attributePostfix;
+        this.literals = literals;
+        this.attributeNames = attributeNames;
+        this.bindable = bindable;
+    }
+
+    /**
+     * Compiles a SQL statement.
+     * @param sql
+     *   The SQL to compile.
+     * @param attributePrefix
+     *   The attribute prefix - which must not be empty.
+     * @param attributePostfix
+     *   The attribute postfix - which must not be empty.
+     * @return
+     *   A template for the SQL.
+     */
+    static SqlRunnerTemplate compile(
+            final String sql, final String attributePrefix, final String attributePostfix) {
+        final List<String> literals = new ArrayList<String>();
+        final List<String> attributeNames = new ArrayList<String>();
+        final List<Boolean> bindable = new ArrayList<Boolean>();
+
+        int literalStart = 0;
+        // the state of the SQL at scanIndex - so we know which placeholders are in code
+        int state = CODE;
+        int scanIndex = 0;
+        char closingQuote = 0;
+        int prefixIndex = sql.indexOf(attributePrefix);
+
+        while (prefixIndex != -1) {
+            final int nameStart = prefixIndex + attributePrefix.length();
+            final int postfixIndex = sql.indexOf(attributePostfix, nameStart);
+
+            if (postfixIndex == -1) {
+                break;
+            }
+
+            // use the prefix closest to the postfix. e.g. #{#{a} is literal #{ then #{a}
+            final int closestPrefixIndex =
+                    sql.lastIndexOf(attributePrefix, postfixIndex - attributePrefix.length());
+
+            literals.add(sql.substring(literalStart, closestPrefixIndex));
+            attributeNames.add(sql.substring(
+                    closestPrefixIndex + attributePrefix.length(), postfixIndex));
+
+            // scan the literal text before the placeholder
+            while (scanIndex < closestPrefixIndex) {
+                final char c = sql.charAt(scanIndex);
+                if (state == CODE) {
+                    if (c == '\'' || c == '"') {
+                        state = QUOTE;
+                        closingQuote = c;
+                    } else if (sql.startsWith("--", scanIndex)) {
+                        state = LINE_COMMENT;
+                        scanIndex++;
+                    } else if (sql.startsWith("/*", scanIndex)) {
+                        state = BLOCK_COMMENT;
+                        scanIndex++;
+                    }
+                } else if ((state == QUOTE && c == closingQuote)
+                        || (state == LINE_COMMENT && (c == '\n' || c == '\r'))) {
+                    state = CODE;
+                } else if (state == BLOCK_COMMENT && sql.startsWith("*/", scanIndex)) {
+                    state = CODE;
+                    scanIndex++;
+                }
+                scanIndex++;
+            }
+            bindable.add(state == CODE);
+
+            literalStart = postfixIndex + attributePostfix.length();
+            prefixIndex = sql.indexOf(attributePrefix, literalStart);
+        }
+
+        literals.add(sql.substring(literalStart));
+
+        final boolean[] bindableArray = new boolean[bindable.size()];
+        for (int i = 0; i < bindableArray.length; i++) {
+            bindableArray[i] = bindable.get(i);
+        }
+
+        return new SqlRunnerTemplate(sql, attributePrefix, attributePostfix,
+                literals.toArray(new String[literals.size()]),
+                attributeNames.toArray(new String[attributeNames.size()]), bindableArray);
+
+    }
+
+    /**
+     * Returns true if this template was compiled from the specified SQL, prefix and postfix.
+     * @param sql
+     *   The SQL.
+     * @param attributePrefix
+     *   The attribute prefix.
+     * @param attributePostfix
+     *   The attribute postfix.
+     * @return
+     *   true if this template can be used for the SQL.
+     */
+    boolean isFor(final String sql, final String attributePrefix, final String attributePostfix) {
+        // templates are only re-used for the same instance of sql, so we don't need equals
+        return this.sql == sql
+                && this.attributePrefix.equals(attributePrefix)
+                && this.attributePostfix.equals(attributePostfix);
+    }
+
+    /**
+     * Returns a copy of the attributes that are used by this template - so that the template can
+     * be rendered without holding on to the attributes.
+     * @param attributes
+     *   The attribute values. Key is attribute name.
+     * @return
+     *   A new map holding the attributes used by this template that have been set.
+     */
+    Map<String, Object> copyAttributes(final Map<String, ?> attributes) {
+        final Map<String, Object> result = new HashMap<String, Object>();
+        for (String attributeName : attributeNames) {
+            final Object value = attributes.get(attributeName);
+            if (value != null) {
+                result.put(attributeName, value);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns the SQL with placeholders replaced by attribute values.
+     * @param attributes
+     *   The attribute values. Key is attribute name.
+     * @param formatter
+     *   Used to format attribute values that are not strings.
+     * @return
+     *   The SQL with placeholders replaced by attribute values.
+     */
+    String render(final Map<String, ?> attributes, final SqlRunnerAttributeFormatter formatter) {
+        return render(attributes, formatter, null);
+    }
+
+    /**
+     * Returns the SQL with placeholders replaced by attribute values or parameter markers.
+     * @param attributes
+     *   The attribute values. Key is attribute name.
+     * @param formatter
+     *   Used to format attribute values that are not strings and are put into the SQL.
+     * @param bindValues
+     *   Pass null to put attribute values into the SQL.
+     *   Otherwise, placeholders of attributes that have been set (that are not in a comment or
+     *   quotes) are replaced by parameter markers and the attribute values are added to this
+     *   list - in parameter order.
+     * @return
+     *   The SQL with placeholders replaced by attribute values or parameter markers.
+     */
+    String render(final Map<String, ?> attributes, final SqlRunnerAttributeFormatter formatter,
+            final List<Object> bindValues) {
+        if (attributeNames.length == 0) {
+            return sql;
+        }
+
+        final StringBuilder sb = new StringBuilder(sql.length());
+
+        for (int i = 0; i < attributeNames.length; i++) {
+            sb.append(literals[i]);
+            final Object value = attributes.get(attributeNames[i]);
+            if (value != null && bindValues != null && bindable[i]) {
+                sb.append(PARAMETER_MARKER);
+                bindValues.add(value);
+            } else {
+                appendText(sb, i, value, formatter);
+            }
+        }
+
+        return sb.append(literals[attributeNames.length]).toString();
+
+    }
+
+    /**
+     * Returns the SQL with placeholders of attributes that have not been set replaced by
+     * parameter markers - and placeholders of attributes that have been set replaced by
+     * attribute values or parameter markers.
+     * One entry is added to parameterValues and parameterNames for each parameter marker.
+     * Placeholders in comments and quotes are replaced by attribute values or left as they are.
+     * @param attributes
+     *   The attribute values. Key is attribute name.
+     * @param formatter
+     *   Used to format attribute values that are not strings and are put into the SQL.
+     * @param bindAttributes
+     *   Pass true to replace placeholders of attributes that have been set by parameter markers,
+     *   false to put their values into the SQL.
+     * @param parameterValues
+     *   The values of attributes that are bound (or null for attributes that have not been set)
+     *   are added to this list - in parameter order.
+     * @param parameterNames
+     *   The names of attributes that have not been set (or null for attributes that are bound)
+     *   are added to this list - in parameter order.
+     * @return
+     *   The SQL with placeholders replaced by attribute values or parameter markers.
+     */
+    String renderParameters(final Map<String, ?> attributes,
+            final SqlRunnerAttributeFormatter formatter, final boolean bindAttributes,
+            final List<Object> parameterValues, final List<String> parameterNames) {
+        final StringBuilder sb = new StringBuilder(sql.length());
+
+        for (int i = 0; i < attributeNames.length; i++) {
+            sb.append(literals[i]);
+            final Object value = attributes.get(attributeNames[i]);
+            if (!bindable[i]) {
+                appendText(sb, i, value, formatter);
+            } else if (value == null) {
+                sb.append(PARAMETER_MARKER);
+                parameterValues.add(null);
+                parameterNames.add(attributeNames[i]);
+            } else if (bindAttributes) {
+                sb.append(PARAMETER_MARKER);
+                parameterValues.add(value);
+                parameterNames.add(null);
+            } else {
+                appendText(sb, i, value, formatter);
+            }
+        }
+
+        return sb.append(literals[attributeNames.length]).toString();
+
+    }
+
+    /**
+     * Appends the text of a placeholder to sb - which is the attribute value or, if the attribute
+     * has not been set, the placeholder itself.
+     * @param sb
+     *   The SQL being rendered.
+     * @param index
+     *   Index of the placeholder.
+     * @param value
+     *   The attribute value - which may be null.
+     * @param formatter
+     *   Used to format attribute values that are not strings.
+     */
+    private void appendText(final StringBuilder sb, final int index, final Object value,
+            final SqlRunnerAttributeFormatter formatter) {
+        if (value == null) {
+            sb.append(attributePrefix).append(attributeNames[index]).append(attributePostfix);
+        } else if (value instanceof String) {
+            sb.append((String) value);
+        } else {
+            sb.append(formatter.format(value));
+        }
+    }
+
+}
@@ -47,6 +47,56 @@
  *   </li>
  * </ul>
  * </p>
+ * <p>
+ * If you call <code>setBindAttributes(true)</code>, attribute values are bound to JDBC
+ * parameters rather than put into the SQL - so the SQL above would be run as;<br/>
+ * <code>UPDATE emp SET sal = sal * 2 WHERE empno = ?</code><br/>
+ * with 12345 bound to the parameter. The SQL then stays the same whatever the value of empno is,
+ * so the database does not have to parse the statement every time it is run.
+ * Bound attributes can only be used where a SQL parameter is allowed.
+ * Placeholders in comments and quotes are not bound.
+ * </p>
+ * <p>
+ * Attribute values are kept as the objects that were set (e.g. a java.sql.Timestamp stays a
+ * timestamp) - so they can be bound as they are. Values that are put into SQL are formatted by a
+ * {@link com.butterfill.sqlrunner.SqlRunnerAttributeFormatter}, which uses toString() by default.
+ * </p>
+ * <p>
+ * If an attribute value is expensive to get, set a
+ * {@link com.butterfill.sqlrunner.SqlRunnerAttributeSupplier} as the attribute value.
+ * The supplier is only called if a statement uses the attribute - and at most once per run.
+ * </p>
+ * <p>
+ * To run a statement once for each of many rows, use
+ * {@link com.butterfill.sqlrunner.SqlRunner#load(String, String, java.util.Iterator, int)}.
+ * Placeholders of attributes that have not been set are bound to the values of each row and
+ * rows are run in JDBC batches.
+ * </p>
+ * <p>
+ * Statements in a file between <code>--sqlrunner.parallel: n</code> and
+ * <code>--sqlrunner.parallel: end</code> comments are run at the same time, using up to n
+ * connections from the data source - see
+ * {@link com.butterfill.sqlrunner.util.DefaultFileReader}.
+ * </p>
+ * <p>
+ * <code>--sqlrunner.fetchsize: n</code>, <code>--sqlrunner.maxrows: n</code> and
+ * <code>--sqlrunner.cursor: forward-only</code> comments pass JDBC hints for the next statement
+ * of a file.
+ * </p>
+ * <p>
+ * {@link com.butterfill.sqlrunner.SqlRunner#setCommitEvery(int, int)} and
+ * <code>--sqlrunner.commitevery:</code> comments commit long runs every n statements or every n
+ * changed rows, rather than holding one transaction until the end of the run.
+ * </p>
+ * <p>
+ * {@link com.butterfill.sqlrunner.SqlRunner#runFileScheduled(java.lang.String, int, boolean)}
+ * works out which statements of a file depend on each other, from the objects they read and
+ * write, and runs independent statements at the same time. The returned
+ * {@link com.butterfill.sqlrunner.SqlRunnerScheduleReport} gives the critical path and the
+ * parallelism achieved.
+ * Each scheduled statement is committed on its own, so the caller has to opt in to this when
+ * the file has "fail fast" statements.
+ * </p>
  *
  * <h3>Running SELECT statements.</h3>
  * <p>
@@ -60,6 +110,12 @@
  * If you need custom behaviour, use a
  * {@link com.butterfill.sqlrunner.SqlRunnerResultSetNextRowCallbackHandler}.
  * </p>
+ * <p>
+ * {@link com.butterfill.sqlrunner.SqlRunner#publishRows(java.lang.String, java.lang.String, int)}
+ * sends the rows of a named SELECT statement to a
+ * {@link com.butterfill.sqlrunner.SqlRunnerRowSubscriber} as they are requested - so large
+ * results can be read a batch at a time.
+ * </p>
  *
  *
  * <h3>Using files to execute multiple statements.</h3>
@@ -69,8 +125,13 @@
  * No effort is made to support running procedural code - but if your code will run via
  * {@link java.sql.PreparedStatement#execute()} SqlRunner will not try to block it.<br/>
  * The file is read from the class path using filePathPrefix + fileName.<br/>
- * Comments are removed before running a statement.<br/>
- * Statements are terminated by semi-columns.<br/>
+ * Comments between statements are removed - comments in a statement (such as optimizer hints)
+ * are kept.<br/>
+ * Statements are terminated by semi-columns that are not in quotes or comments.<br/>
+ * </p>
+ * <p>
+ * {@link com.butterfill.sqlrunner.SqlRunner#runFileStreaming(java.lang.String)} runs very large
+ * files - each statement is read from the file only when the previous statement has been run.
  * </p>
  *
  * <h3>Running lists of statements.</h3>
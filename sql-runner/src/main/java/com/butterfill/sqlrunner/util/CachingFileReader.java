@@ -1,41 +1,423 @@
-
 package com.butterfill.sqlrunner.util;
 
+import com.butterfill.sqlrunner.SqlRunnerChangeAwareFileReader;
+import com.butterfill.sqlrunner.SqlRunnerException;
 import com.butterfill.sqlrunner.SqlRunnerFileReader;
 import com.butterfill.sqlrunner.SqlRunnerStatement;
-import java.util.HashMap;
+import java.lang.ref.SoftReference;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Iterator;
 import java.util.List;
-import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 /**
  * Wraps a {@link SqlRunnerFileReader} and caches the result of reading files as they are read.
- * Calling {@link #readFile(java.lang.String) } with the same fileName will return the same result.
+ * Calling {@link #readFile(java.lang.String) } with the same fileName will return the same result
+ * - as long as the file has not been evicted from the cache.
+ *
+ * <p>
+ * Instances of this class are thread safe and can be shared by any number of threads.
+ * Each file is read once - if several threads ask for the same file at the same time, the first
+ * thread reads the file and the others wait for its result.
+ * Reading a file that is already in the cache does not need a lock.
+ * If reading a file fails, the failure is not cached - so the next call will try again.
+ * </p>
+ *
+ * <h3>Limits</h3>
+ * By default, the cache is not limited. The cache can be limited by the number of files and by
+ * the total length of the SQL of the statements held. When a limit is exceeded, the least
+ * recently used files are evicted until the cache is back within its limits.
+ * Finding the least recently used files needs a scan of the cache, so evictions are
+ * O(n log n) in the number of files held - which is cheap compared to reading a file,
+ * but means that the cache works best when evictions are rare.
+ * The cache can also hold statements using soft references, which lets the garbage collector
+ * clear files from the cache when memory is short.
+ *
+ * <h3>Reloading files that have changed</h3>
+ * If the wrapped file reader is a {@link SqlRunnerChangeAwareFileReader} (such as
+ * {@link DefaultFileReader}), {@link #setReloadCheckInterval(long)} can be used to have the
+ * cache check files for changes.
+ * Reading a file that is due a check, checks the last modified time of the file and - if that
+ * has changed or is not known - the checksum of the file. Files are only read again if the
+ * checksum has changed.
+ * The thread that finds the change reads the file again. Other threads keep getting the
+ * statements read before the change, without waiting, until the new statements are in the cache.
+ * Files can also be removed from the cache using {@link #invalidate(java.lang.String)} and
+ * {@link #invalidateAll()}.
+ *
+ * <h3>Warming up</h3>
+ * {@link #warmUp(java.util.Collection, java.util.concurrent.ExecutorService)} reads files into
+ * the cache in parallel - e.g. all of the files listed by
+ * {@link DefaultFileReader#listFiles(java.lang.String)} - so that requests do not have to wait
+ * for files to be read after an application starts.
+ *
+ * <h3>Statistics</h3>
+ * {@link #getStats()} returns the number of hits, misses and evictions as well as the time spent
+ * reading files and an estimate of the heap used by the cache.
  *
  * @author Peter Butterfill
  */
 public class CachingFileReader implements SqlRunnerFileReader {
 
+    /**
+     * The name of this class.
+     */
+    public static final String CLASS_NAME = CachingFileReader.class.getName();
+
+    /**
+     * The logger for this class.
+     */
+    private static final Logger logger = Logger.getLogger(CLASS_NAME);
+
+    /**
+     * The number of nanoseconds in a millisecond.
+     */
+    private static final long NANOS_PER_MILLI = 1000000L;
+
+    /**
+     * The number of bytes used to hold a char.
+     */
+    private static final int BYTES_PER_CHAR = 2;
+
+    /**
+     * An estimate of the heap used by a statement, not counting the chars of its SQL.
+     */
+    private static final int BYTES_PER_STATEMENT = 96;
+
+    /**
+     * Last access times are only updated when they are at least this many nanoseconds old -
+     * to avoid writing to memory shared between threads on every hit.
+     */
+    private static final long ACCESS_TIME_GRANULARITY = NANOS_PER_MILLI;
+
     /**
      * The file reader being wrapped by this instance.
      */
     private final SqlRunnerFileReader fileReader;
 
+    /**
+     * The file reader being wrapped by this instance -
+     * or null if the wrapped file reader is not change aware.
+     */
+    private final SqlRunnerChangeAwareFileReader changeAwareFileReader;
+
+    /**
+     * Files are checked for changes at most once in this many nanoseconds -
+     * or never if this is negative.
+     */
+    private volatile long reloadCheckInterval = -1L;
+
+    /**
+     * The maximum number of files held by this cache.
+     */
+    private final int maxEntries;
+
+    /**
+     * The maximum total length of the SQL held by this cache.
+     */
+    private final long maxSqlLength;
+
+    /**
+     * true if this cache holds statements using soft references.
+     */
+    private final boolean softValues;
+
+    /**
+     * true if this cache has a limit - and needs to track last access times.
+     */
+    private final boolean bounded;
+
     /**
      * A cache of {@link #readFile(java.lang.String) } results.
      */
-    private final Map<String, List<SqlRunnerStatement>> cache =
-            new HashMap<String, List<SqlRunnerStatement>>();
+    private final ConcurrentMap<String, Entry> cache = new ConcurrentHashMap<String, Entry>();
+
+    /**
+     * The number of reads that found the file in the cache.
+     */
+    private final StripedCounter hitCount = new StripedCounter();
 
     /**
-     * Creates a new caching file reader.
+     * The number of reads that had to read the file using the wrapped file reader.
+     */
+    private final AtomicLong missCount = new AtomicLong();
+
+    /**
+     * The total time, in nanoseconds, spent reading files using the wrapped file reader.
+     */
+    private final AtomicLong totalLoadTime = new AtomicLong();
+
+    /**
+     * The number of files evicted from the cache.
+     */
+    private final AtomicLong evictionCount = new AtomicLong();
+
+    /**
+     * The total length of the SQL held in the cache.
+     */
+    private final AtomicLong sqlLength = new AtomicLong();
+
+    /**
+     * The number of statements held in the cache.
+     */
+    private final AtomicLong statementCount = new AtomicLong();
+
+    /**
+     * Only one thread evicts files at a time.
+     */
+    private final Object evictionLock = new Object();
+
+    /**
+     * Orders entries by last access time, as it was when the eviction started.
+     */
+    private final Comparator<Entry> leastRecentlyUsedFirst = new Comparator<Entry>() {
+        public int compare(final Entry e1, final Entry e2) {
+            return (e1.evictionAccessTime < e2.evictionAccessTime) ? -1
+                    : ((e1.evictionAccessTime == e2.evictionAccessTime) ? 0 : 1);
+        }
+    };
+
+    /**
+     * A file held in the cache.
+     */
+    private final class Entry {
+
+        /**
+         * Name of the file.
+         */
+        private final String fileName;
+
+        /**
+         * Reads the file - which is set to null once the file has been read.
+         */
+        private volatile FutureTask<List<SqlRunnerStatement>> task;
+
+        /**
+         * The statements from the file, if this cache does not use soft references.
+         */
+        private volatile List<SqlRunnerStatement> value;
+
+        /**
+         * The statements from the file, if this cache uses soft references.
+         */
+        private volatile SoftReference<List<SqlRunnerStatement>> softValue;
+
+        /**
+         * The time (from System.nanoTime()) that this entry was last read.
+         */
+        private volatile long lastAccessTime = System.nanoTime();
+
+        /**
+         * The time (from System.nanoTime()) that this entry was last checked for changes.
+         */
+        private volatile long lastCheckTime = System.nanoTime();
+
+        /**
+         * Set to true by the thread that is checking this entry for changes.
+         */
+        private final AtomicBoolean checking = new AtomicBoolean();
+
+        /**
+         * The time that the file was last modified, as it was when the file was read.
+         * Guarded by checking.
+         */
+        private long fileLastModified;
+
+        /**
+         * The checksum of the file, as it was when the file was read.
+         * Guarded by checking.
+         */
+        private String fileChecksum;
+
+        /**
+         * Copy of lastAccessTime that does not change while files are evicted.
+         * Guarded by evictionLock.
+         */
+        private long evictionAccessTime;
+
+        /**
+         * The total length of the SQL from the file.
+         * Guarded by this.
+         */
+        private long entrySqlLength;
+
+        /**
+         * The number of statements from the file.
+         * Guarded by this.
+         */
+        private int entryStatementCount;
+
+        /**
+         * true once this entry has been removed from the cache.
+         * Guarded by this.
+         */
+        private boolean removed;
+
+        /**
+         * Creates a new entry that will read the file when its task is run.
+         * @param fileName
+         *   Name of the file.
+         */
+        Entry(final String fileName) {
+            this.fileName = fileName;
+            this.task = new FutureTask<List<SqlRunnerStatement>>(
+                    new Callable<List<SqlRunnerStatement>>() {
+                        public List<SqlRunnerStatement> call() {
+                            return load();
+                        }
+                    });
+        }
+
+        /**
+         * Reads the file using the wrapped file reader and keeps the result.
+         * @return
+         *   The statements from the file.
+         */
+        private List<SqlRunnerStatement> load() {
+            if (changeAwareFileReader != null && reloadCheckInterval >= 0) {
+                // get these before reading the file, so a change while reading is not missed
+                fileLastModified = changeAwareFileReader.lastModified(fileName);
+                fileChecksum = changeAwareFileReader.checksum(fileName);
+            }
+
+            final long start = System.nanoTime();
+            final List<SqlRunnerStatement> statements = fileReader.readFile(fileName);
+            totalLoadTime.addAndGet(System.nanoTime() - start);
+
+            long length = 0;
+            for (SqlRunnerStatement statement : statements) {
+                if (statement.getSql() != null) {
+                    length += statement.getSql().length();
+                }
+            }
+
+            synchronized (this) {
+                if (!removed) {
+                    entrySqlLength = length;
+                    entryStatementCount = statements.size();
+                    sqlLength.addAndGet(length);
+                    statementCount.addAndGet(entryStatementCount);
+                }
+            }
+
+            if (softValues) {
+                softValue = new SoftReference<List<SqlRunnerStatement>>(statements);
+            } else {
+                value = statements;
+            }
+
+            return statements;
+
+        }
+
+        /**
+         * Returns the statements from the file -
+         * or null if the file has not been read or the statements have been cleared by the
+         * garbage collector.
+         * @return
+         *   The statements from the file.
+         */
+        private List<SqlRunnerStatement> getValue() {
+            final List<SqlRunnerStatement> result = value;
+            if (result != null) {
+                return result;
+            }
+            final SoftReference<List<SqlRunnerStatement>> reference = softValue;
+            return (reference == null) ? null : reference.get();
+        }
+
+        /**
+         * Records that this entry has been read.
+         */
+        private void accessed() {
+            if (bounded) {
+                final long now = System.nanoTime();
+                if (now - lastAccessTime > ACCESS_TIME_GRANULARITY) {
+                    lastAccessTime = now;
+                }
+            }
+        }
+
+        /**
+         * Records that this entry has been removed from the cache.
+         */
+        private synchronized void removed() {
+            removed = true;
+            sqlLength.addAndGet(-entrySqlLength);
+            statementCount.addAndGet(-entryStatementCount);
+            entrySqlLength = 0;
+            entryStatementCount = 0;
+        }
+
+    }
+
+    /**
+     * Creates a new caching file reader that is not limited.
      * @param fileReader
      *   The file reader to wrap.
      */
     public CachingFileReader(final SqlRunnerFileReader fileReader) {
+        this(fileReader, Integer.MAX_VALUE, Long.MAX_VALUE, false);
+    }
+
+    /**
+     * Creates a new caching file reader that will hold a limited number of files.
+     * @param fileReader
+     *   The file reader to wrap.
+     * @param maxEntries
+     *   The maximum number of files held by the cache.
+     * @param maxSqlLength
+     *   The maximum total length of the SQL held by the cache.
+     */
+    public CachingFileReader(
+            final SqlRunnerFileReader fileReader, final int maxEntries, final long maxSqlLength) {
+        this(fileReader, maxEntries, maxSqlLength, false);
+    }
+
+    /**
+     * Creates a new caching file reader that will hold a limited number of files.
+     * @param fileReader
+     *   The file reader to wrap.
+     * @param maxEntries
+     *   The maximum number of files held by the cache.
+     * @param maxSqlLength
+     *   The maximum total length of the SQL held by the cache.
+     * @param softValues
+     *   Pass true to hold statements using soft references - so the garbage collector can clear
+     *   files from the cache when memory is short.
+     */
+    public CachingFileReader(final SqlRunnerFileReader fileReader, final int maxEntries,
+            final long maxSqlLength, final boolean softValues) {
         if (fileReader == null) {
             throw new NullPointerException("fileReader must not be null");
         }
+        if (maxEntries < 1) {
+            throw new IllegalArgumentException("maxEntries must be greater than zero");
+        }
+        if (maxSqlLength < 0) {
+            throw new IllegalArgumentException("maxSqlLength must not be negative");
+        }
         this.fileReader = fileReader;
+        this.changeAwareFileReader = (fileReader instanceof SqlRunnerChangeAwareFileReader)
+                ? (SqlRunnerChangeAwareFileReader) fileReader : null;
+        this.maxEntries = maxEntries;
+        this.maxSqlLength = maxSqlLength;
+        this.softValues = softValues;
+        this.bounded = maxEntries != Integer.MAX_VALUE || maxSqlLength != Long.MAX_VALUE;
     }
 
     /**
@@ -48,10 +430,387 @@ public class CachingFileReader implements SqlRunnerFileReader {
      *   The statements from the file.
      */
     public List<SqlRunnerStatement> readFile(final String fileName) {
-        if (!cache.containsKey(fileName)) {
-            cache.put(fileName, fileReader.readFile(fileName));
+        if (fileName == null) {
+            throw new NullPointerException("fileName must not be null");
+        }
+
+        while (true) {
+            final Entry entry = cache.get(fileName);
+
+            if (entry == null) {
+                final Entry newEntry = new Entry(fileName);
+                if (cache.putIfAbsent(fileName, newEntry) == null) {
+                    // we won the race to add the entry, so we read the file
+                    missCount.incrementAndGet();
+                    return load(newEntry);
+                }
+                continue;
+            }
+
+            List<SqlRunnerStatement> result = entry.getValue();
+            if (result != null) {
+                hitCount.increment();
+                entry.accessed();
+                return checkForChanges(entry, result);
+            }
+
+            final FutureTask<List<SqlRunnerStatement>> task = entry.task;
+            if (task != null) {
+                // another thread is reading the file
+                hitCount.increment();
+                entry.accessed();
+                return waitFor(entry, task);
+            }
+
+            // the task may have finished between getting the value and getting the task
+            result = entry.getValue();
+            if (result != null) {
+                hitCount.increment();
+                entry.accessed();
+                return result;
+            }
+
+            // the garbage collector cleared the statements
+            if (remove(entry)) {
+                evictionCount.incrementAndGet();
+            }
+
         }
-        return cache.get(fileName);
+
+    }
+
+    /**
+     * Sets how often files are checked for changes.
+     * This has no effect if the wrapped file reader is not a
+     * {@link SqlRunnerChangeAwareFileReader}.
+     * @param reloadCheckInterval
+     *   Files are checked for changes at most once in this many milliseconds.
+     *   Pass 0 to check files every time they are read or a negative number to never check
+     *   files (which is the default).
+     */
+    public void setReloadCheckInterval(final long reloadCheckInterval) {
+        this.reloadCheckInterval = (reloadCheckInterval < 0)
+                ? -1L : reloadCheckInterval * NANOS_PER_MILLI;
+    }
+
+    /**
+     * Reads files into the cache using a new thread for each available processor -
+     * waiting until all of the files have been read.
+     * @param fileNames
+     *   Names of the files to read.
+     * @return
+     *   The number of files read without error.
+     */
+    public int warmUp(final Collection<String> fileNames) {
+        final ExecutorService executor =
+                Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+        try {
+            return warmUp(fileNames, executor);
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * Reads files into the cache using an executor - waiting until all of the files have been
+     * read. Failures to read files are logged and do not stop other files being read.
+     * This could be called while an application starts, so that requests do not have to wait
+     * for files to be read.
+     * @param fileNames
+     *   Names of the files to read.
+     * @param executor
+     *   The executor used to read files.
+     * @return
+     *   The number of files read without error.
+     */
+    public int warmUp(final Collection<String> fileNames, final ExecutorService executor) {
+        if (fileNames == null) {
+            throw new NullPointerException("fileNames must not be null");
+        }
+        if (executor == null) {
+            throw new NullPointerException("executor must not be null");
+        }
+
+        final List<Callable<List<SqlRunnerStatement>>> tasks =
+                new ArrayList<Callable<List<SqlRunnerStatement>>>(fileNames.size());
+        for (final String fileName : fileNames) {
+            tasks.add(new Callable<List<SqlRunnerStatement>>() {
+                public List<SqlRunnerStatement> call() {
+                    return readFile(fileName);
+                }
+            });
+        }
+
+        final List<Future<List<SqlRunnerStatement>>> results;
+        try {
+            results = executor.invokeAll(tasks);
+
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new SqlRunnerException("interrupted while warming up cache", ex);
+
+        }
+
+        int readCount = 0;
+        final Iterator<String> fileNameIterator = fileNames.iterator();
+        for (Future<List<SqlRunnerStatement>> result : results) {
+            final String fileName = fileNameIterator.next();
+            try {
+                result.get();
+                readCount++;
+
+            } catch (ExecutionException ex) {
+                logger.logp(Level.WARNING, CLASS_NAME, "warmUp(Collection, ExecutorService)",
+                        "failed to read file [" + fileName + "]", ex.getCause());
+
+            } catch (InterruptedException ex) {
+                // can't happen, invokeAll waits for all tasks to finish
+                Thread.currentThread().interrupt();
+                throw new SqlRunnerException("interrupted while warming up cache", ex);
+
+            }
+        }
+
+        logger.logp(Level.FINE, CLASS_NAME, "warmUp(Collection, ExecutorService)",
+                "read {0} of {1} files", new Object[] {readCount, fileNames.size()});
+
+        return readCount;
+
+    }
+
+    /**
+     * Removes a file from the cache - so the next call to read the file will read it again.
+     * Threads that are already reading the file are not affected.
+     * @param fileName
+     *   Name of the file to remove.
+     */
+    public void invalidate(final String fileName) {
+        if (fileName == null) {
+            throw new NullPointerException("fileName must not be null");
+        }
+        final Entry entry = cache.get(fileName);
+        if (entry != null) {
+            remove(entry);
+        }
+    }
+
+    /**
+     * Removes all files from the cache.
+     */
+    public void invalidateAll() {
+        for (Entry entry : cache.values()) {
+            remove(entry);
+        }
+    }
+
+    /**
+     * Returns a snapshot of the statistics of this cache.
+     * @return
+     *   A snapshot of the statistics of this cache.
+     */
+    public CachingFileReaderStats getStats() {
+        final long length = sqlLength.get();
+        return new CachingFileReaderStats(hitCount.sum(), missCount.get(), totalLoadTime.get(),
+                evictionCount.get(), cache.size(), length,
+                length * BYTES_PER_CHAR + statementCount.get() * BYTES_PER_STATEMENT);
+    }
+
+    /**
+     * Reads a file for an entry that has just been added to the cache.
+     * @param entry
+     *   The entry.
+     * @return
+     *   The statements from the file.
+     */
+    private List<SqlRunnerStatement> load(final Entry entry) {
+        final FutureTask<List<SqlRunnerStatement>> task = entry.task;
+        task.run();
+        final List<SqlRunnerStatement> result = waitFor(entry, task);
+        // the entry holds the result now, so we don't need the task
+        entry.task = null;
+        evictIfNeeded();
+        return result;
+    }
+
+    /**
+     * Checks a file for changes, if it is due a check and no other thread is checking it,
+     * reading the file again if it has changed.
+     * @param entry
+     *   The entry of the file.
+     * @param current
+     *   The statements held by the entry.
+     * @return
+     *   The statements from the file - which will be the current statements unless the file has
+     *   changed.
+     */
+    private List<SqlRunnerStatement> checkForChanges(
+            final Entry entry, final List<SqlRunnerStatement> current) {
+        final long interval = reloadCheckInterval;
+
+        if (changeAwareFileReader == null || interval < 0
+                || System.nanoTime() - entry.lastCheckTime < interval
+                || !entry.checking.compareAndSet(false, true)) {
+            return current;
+        }
+
+        try {
+            return hasChanged(entry) ? reload(entry) : current;
+
+        } catch (RuntimeException ex) {
+            // e.g. the file has been deleted. keep using what we have
+            logger.logp(Level.WARNING, CLASS_NAME, "checkForChanges(Entry, List)",
+                    "failed to check file [" + entry.fileName + "] for changes", ex);
+            return current;
+
+        } finally {
+            entry.lastCheckTime = System.nanoTime();
+            entry.checking.set(false);
+
+        }
+
+    }
+
+    /**
+     * Returns true if a file has changed since it was read.
+     * Must only be called by the thread checking the entry for changes.
+     * @param entry
+     *   The entry of the file.
+     * @return
+     *   true if the file has changed.
+     */
+    private boolean hasChanged(final Entry entry) {
+        final long lastModified = changeAwareFileReader.lastModified(entry.fileName);
+
+        if (lastModified != 0 && lastModified == entry.fileLastModified
+                && entry.fileChecksum != null) {
+            return false;
+        }
+
+        entry.fileLastModified = lastModified;
+
+        return !changeAwareFileReader.checksum(entry.fileName).equals(entry.fileChecksum);
+
+    }
+
+    /**
+     * Reads a file that has changed, replacing its entry in the cache.
+     * Other threads keep using the old entry until the file has been read.
+     * @param entry
+     *   The entry of the file.
+     * @return
+     *   The statements from the file.
+     */
+    private List<SqlRunnerStatement> reload(final Entry entry) {
+        logger.logp(Level.FINE, CLASS_NAME, "reload(Entry)",
+                "reading changed file [{0}]", entry.fileName);
+
+        missCount.incrementAndGet();
+
+        final Entry newEntry = new Entry(entry.fileName);
+        final FutureTask<List<SqlRunnerStatement>> task = newEntry.task;
+        task.run();
+        final List<SqlRunnerStatement> result = waitFor(newEntry, task);
+        newEntry.task = null;
+
+        if (cache.replace(entry.fileName, entry, newEntry)) {
+            entry.removed();
+            evictIfNeeded();
+        } else {
+            // the old entry was removed while we were reading the file
+            newEntry.removed();
+        }
+
+        return result;
+
+    }
+
+    /**
+     * Waits for the task of an entry to finish, removing the entry if the task fails.
+     * @param entry
+     *   The entry.
+     * @param task
+     *   The task of the entry.
+     * @return
+     *   The statements from the file.
+     */
+    private List<SqlRunnerStatement> waitFor(
+            final Entry entry, final FutureTask<List<SqlRunnerStatement>> task) {
+        try {
+            return task.get();
+
+        } catch (ExecutionException ex) {
+            // don't cache failures
+            remove(entry);
+            final Throwable cause = ex.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new SqlRunnerException("failed to read file [" + entry.fileName + "]", cause);
+
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new SqlRunnerException(
+                    "interrupted while waiting for file [" + entry.fileName + "]", ex);
+
+        }
+
+    }
+
+    /**
+     * Removes an entry from the cache.
+     * @param entry
+     *   The entry to remove.
+     * @return
+     *   true if the entry was removed by this call.
+     */
+    private boolean remove(final Entry entry) {
+        if (cache.remove(entry.fileName, entry)) {
+            entry.removed();
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Returns true if this cache holds more than its limits allow.
+     * @return
+     *   true if this cache holds more than its limits allow.
+     */
+    private boolean isOverLimit() {
+        return cache.size() > maxEntries || sqlLength.get() > maxSqlLength;
+    }
+
+    /**
+     * Evicts the least recently used files until this cache is within its limits.
+     * Files that are being read are not evicted.
+     */
+    private void evictIfNeeded() {
+        if (!bounded || !isOverLimit()) {
+            return;
+        }
+
+        synchronized (evictionLock) {
+            if (!isOverLimit()) {
+                return;
+            }
+
+            final Entry[] entries = cache.values().toArray(new Entry[0]);
+            for (Entry entry : entries) {
+                entry.evictionAccessTime = entry.lastAccessTime;
+            }
+            Arrays.sort(entries, leastRecentlyUsedFirst);
+
+            for (int i = 0; i < entries.length && isOverLimit(); i++) {
+                if (entries[i].task == null && remove(entries[i])) {
+                    evictionCount.incrementAndGet();
+                }
+            }
+
+        }
+
     }
 
 }
@@ -0,0 +1,176 @@
+package com.butterfill.sqlrunner.util;
+
+/**
+ * A snapshot of the statistics of a {@link CachingFileReader}.
+ * Counts are totals since the caching file reader was created.
+ *
+ * @author Peter Butterfill
+ */
+public final class CachingFileReaderStats {
+
+    /**
+     * The number of reads that found the file in the cache.
+     */
+    private final long hitCount;
+
+    /**
+     * The number of reads that had to read the file using the wrapped file reader.
+     */
+    private final long missCount;
+
+    /**
+     * The total time, in nanoseconds, spent reading files using the wrapped file reader.
+     */
+    private final long totalLoadTime;
+
+    /**
+     * The number of files removed from the cache to stay within the limits of the cache
+     * (or because the garbage collector cleared them).
+     */
+    private final long evictionCount;
+
+    /**
+     * The number of files in the cache.
+     */
+    private final int entryCount;
+
+    /**
+     * The total length of the SQL held in the cache.
+     */
+    private final long sqlLength;
+
+    /**
+     * An estimate of the heap used by the statements held in the cache.
+     */
+    private final long estimatedRetainedBytes;
+
+    /**
+     * Creates a new snapshot.
+     * @param hitCount
+     *   The number of reads that found the file in the cache.
+     * @param missCount
+     *   The number of reads that had to read the file using the wrapped file reader.
+     * @param totalLoadTime
+     *   The total time, in nanoseconds, spent reading files using the wrapped file reader.
+     * @param evictionCount
+     *   The number of files removed from the cache.
+     * @param entryCount
+     *   The number of files in the cache.
+     * @param sqlLength
+     *   The total length of the SQL held in the cache.
+     * @param estimatedRetainedBytes
+     *   An estimate of the heap used by the statements held in the cache.
+     */
+    CachingFileReaderStats(final long hitCount, final long missCount, final long totalLoadTime,
+            final long evictionCount, final int entryCount, final long sqlLength,
+            final long estimatedRetainedBytes) {
+        this.hitCount = hitCount;
+        this.missCount = missCount;
+        this.totalLoadTime = totalLoadTime;
+        this.evictionCount = evictionCount;
+        this.entryCount = entryCount;
+        this.sqlLength = sqlLength;
+        this.estimatedRetainedBytes = estimatedRetainedBytes;
+    }
+
+    /**
+     * Returns the number of reads that found the file in the cache.
+     * @return
+     *   The number of reads that found the file in the cache.
+     */
+    public long getHitCount() {
+        return hitCount;
+    }
+
+    /**
+     * Returns the number of reads that had to read the file using the wrapped file reader.
+     * @return
+     *   The number of reads that had to read the file using the wrapped file reader.
+     */
+    public long getMissCount() {
+        return missCount;
+    }
+
+    /**
+     * Returns the ratio of hits to reads - or 1.0 if there have been no reads.
+     * @return
+     *   The ratio of hits to reads.
+     */
+    public double getHitRate() {
+        final long readCount = hitCount + missCount;
+        return (readCount == 0) ? 1.0 : (double) hitCount / readCount;
+    }
+
+    /**
+     * Returns the total time, in nanoseconds, spent reading files using the wrapped file reader.
+     * @return
+     *   The total time, in nanoseconds, spent reading files using the wrapped file reader.
+     */
+    public long getTotalLoadTime() {
+        return totalLoadTime;
+    }
+
+    /**
+     * Returns the number of files removed from the cache to stay within the limits of the cache
+     * (or because the garbage collector cleared them).
+     * @return
+     *   The number of files removed from the cache.
+     */
+    public long getEvictionCount() {
+        return evictionCount;
+    }
+
+    /**
+     * Returns the number of files in the cache - including files that are being read.
+     * @return
+     *   The number of files in the cache.
+     */
+    public int getEntryCount() {
+        return entryCount;
+    }
+
+    /**
+     * Returns the total length of the SQL held in the cache.
+     * @return
+     *   The total length of the SQL held in the cache.
+     */
+    public long getSqlLength() {
+        return sqlLength;
+    }
+
+    /**
+     * Returns an estimate of the heap used by the statements held in the cache.
+     * @return
+     *   An estimate of the heap used by the statements held in the cache.
+     */
+    public long getEstimatedRetainedBytes() {
+        return estimatedRetainedBytes;
+    }
+
+    /**
+     * Returns a string representation of this instance.
+     * @return
+     *   A string representation of this instance.
+     */
+    @Override
+    public String toString() {
+        return new StringBuilder()
+                .append("CachingFileReaderStats[hitCount=")
+                .append(hitCount)
+                .append(", missCount=")
+                .append(missCount)
+                .append(", totalLoadTime=")
+                .append(totalLoadTime)
+                .append(", evictionCount=")
+                .append(evictionCount)
+                .append(", entryCount=")
+                .append(entryCount)
+                .append(", sqlLength=")
+                .append(sqlLength)
+                .append(", estimatedRetainedBytes=")
+                .append(estimatedRetainedBytes)
+                .append("]")
+                .toString();
+    }
+
+}
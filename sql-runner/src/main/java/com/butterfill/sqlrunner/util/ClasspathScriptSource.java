@@ -0,0 +1,247 @@
+package com.butterfill.sqlrunner.util;
+
+import com.butterfill.sqlrunner.SqlRunnerScriptSource;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.net.JarURLConnection;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+
+/**
+ * Reads SQL script files from the class path.
+ * Files are found using <code>filePathPrefix + fileName</code>.
+ *
+ * @author Peter Butterfill
+ */
+public class ClasspathScriptSource implements SqlRunnerScriptSource {
+
+    /**
+     * The file path prefix.
+     */
+    private final String filePathPrefix;
+
+    /**
+     * The name of the character set of the SQL script files.
+     */
+    private final String charsetName;
+
+    /**
+     * Creates a script source that will use "" as the file path prefix and UTF-8.
+     */
+    public ClasspathScriptSource() {
+        this("", "UTF-8");
+    }
+
+    /**
+     * Creates a new script source.
+     * @param filePathPrefix
+     *   The file path prefix.
+     *   An empty string is the default.
+     * @param charsetName
+     *   The name of the character set of the SQL script files.
+     *   UTF-8 is the default.
+     */
+    public ClasspathScriptSource(final String filePathPrefix, final String charsetName) {
+        this.filePathPrefix = filePathPrefix;
+        this.charsetName = charsetName;
+    }
+
+    /**
+     * Opens a script file from the class path.
+     * @param fileName
+     *   Name of the file to open.
+     * @return
+     *   A reader for the contents of the file.
+     * @throws IOException
+     *   If the file is not on the class path or can not be opened.
+     */
+    public Reader openScript(final String fileName) throws IOException {
+        final InputStream inputStream =
+                this.getClass().getResourceAsStream(filePathPrefix + fileName);
+
+        if (inputStream == null) {
+            throw new FileNotFoundException(filePathPrefix + fileName + " not found on class path");
+        }
+
+        try {
+            return new InputStreamReader(inputStream, charsetName);
+
+        } catch (IOException ex) {
+            inputStream.close();
+            throw ex;
+
+        }
+
+    }
+
+    /**
+     * Returns the time that a script file was last modified -
+     * which is only known for files that are in a directory on the class path.
+     * @param fileName
+     *   Name of the file.
+     * @return
+     *   The time that the file was last modified, or 0 if the file is not in a directory.
+     * @throws IOException
+     *   If the file is not on the class path.
+     */
+    public long lastModified(final String fileName) throws IOException {
+        final File file = getFile(fileName);
+        return (file == null) ? 0L : file.lastModified();
+    }
+
+    /**
+     * Returns the size of a script file -
+     * which is only known for files that are in a directory on the class path.
+     * @param fileName
+     *   Name of the file.
+     * @return
+     *   The size of the file in bytes, or -1 if the file is not in a directory.
+     * @throws IOException
+     *   If the file is not on the class path.
+     */
+    public long length(final String fileName) throws IOException {
+        final File file = getFile(fileName);
+        return (file == null) ? -1L : file.length();
+    }
+
+    /**
+     * Returns the file that holds a script -
+     * if the script is in a directory on the class path.
+     * @param fileName
+     *   Name of the file.
+     * @return
+     *   The file that holds the script, or null if the file is not in a directory.
+     * @throws IOException
+     *   If the file is not on the class path.
+     */
+    private File getFile(final String fileName) throws IOException {
+        final URL url = this.getClass().getResource(filePathPrefix + fileName);
+
+        if (url == null) {
+            throw new FileNotFoundException(filePathPrefix + fileName + " not found on class path");
+        }
+
+        if (!"file".equals(url.getProtocol())) {
+            return null;
+        }
+
+        try {
+            return new File(url.toURI());
+
+        } catch (URISyntaxException ex) {
+            return null;
+
+        }
+
+    }
+
+    /**
+     * Returns the names of the files on the class path that start with the file path prefix of
+     * this instance - from every directory and jar file on the class path that holds the
+     * directory part of the file path prefix.
+     * @return
+     *   The names of the files, relative to the file path prefix.
+     * @throws IOException
+     *   If the directory part of the file path prefix is not on the class path or the files
+     *   can not be listed.
+     */
+    public List<String> listScripts() throws IOException {
+        final int lastSlash = filePathPrefix.lastIndexOf('/');
+        final String namePrefix = filePathPrefix.substring(lastSlash + 1);
+
+        // resolve the directory name the same way as Class.getResource
+        String directoryName = filePathPrefix.substring(0, lastSlash + 1);
+        if (directoryName.startsWith("/")) {
+            directoryName = directoryName.substring(1);
+        } else {
+            final String className = this.getClass().getName();
+            directoryName = className.substring(0, className.lastIndexOf('.') + 1)
+                    .replace('.', '/') + directoryName;
+        }
+
+        final Set<String> fileNames = new TreeSet<String>();
+
+        final Enumeration<URL> urls = this.getClass().getClassLoader().getResources(directoryName);
+        if (!urls.hasMoreElements()) {
+            throw new FileNotFoundException(directoryName + " not found on class path");
+        }
+        while (urls.hasMoreElements()) {
+            listFiles(urls.nextElement(), fileNames);
+        }
+
+        final List<String> result = new ArrayList<String>();
+        for (String fileName : fileNames) {
+            if (fileName.startsWith(namePrefix)) {
+                result.add(fileName.substring(namePrefix.length()));
+            }
+        }
+        return result;
+
+    }
+
+    /**
+     * Adds the names of the files in a directory or jar file directory, and its sub-directories,
+     * to a set.
+     * @param url
+     *   URL of the directory.
+     * @param fileNames
+     *   The set to add names to.
+     * @throws IOException
+     *   If the files can not be listed.
+     */
+    private void listFiles(final URL url, final Set<String> fileNames) throws IOException {
+        if ("file".equals(url.getProtocol())) {
+            final List<String> names = new ArrayList<String>();
+            try {
+                FileSystemScriptSource.listFiles(new File(url.toURI()), "", names);
+            } catch (URISyntaxException ex) {
+                throw new IOException("failed to list files in " + url + ". " + ex);
+            }
+            fileNames.addAll(names);
+
+        } else if ("jar".equals(url.getProtocol())) {
+            final JarURLConnection connection = (JarURLConnection) url.openConnection();
+            connection.setUseCaches(false);
+            final String entryPrefix = (connection.getEntryName() == null)
+                    ? "" : connection.getEntryName();
+            final JarFile jarFile = connection.getJarFile();
+            try {
+                for (Enumeration<JarEntry> e = jarFile.entries(); e.hasMoreElements();) {
+                    final JarEntry entry = e.nextElement();
+                    if (!entry.isDirectory() && entry.getName().startsWith(entryPrefix)) {
+                        fileNames.add(entry.getName().substring(entryPrefix.length()));
+                    }
+                }
+            } finally {
+                jarFile.close();
+            }
+
+        } else {
+            throw new IOException("can not list files in " + url);
+
+        }
+
+    }
+
+    /**
+     * Returns a string representation of this instance.
+     * @return
+     *   A string representation of this instance.
+     */
+    @Override
+    public String toString() {
+        return "filePathPrefix [" + filePathPrefix + "]";
+    }
+
+}
@@ -0,0 +1,24 @@
+package com.butterfill.sqlrunner.util;
+
+import com.butterfill.sqlrunner.SqlRunnerAttributeFormatter;
+
+/**
+ * Used by {@link com.butterfill.sqlrunner.SqlRunner} when no attribute formatter has been
+ * specified.
+ *
+ * @author Peter Butterfill
+ */
+public class DefaultAttributeFormatterImpl implements SqlRunnerAttributeFormatter {
+
+    /**
+     * Returns the string representation of an attribute value.
+     * @param attributeValue
+     *   The attribute value.
+     * @return
+     *   attributeValue.toString()
+     */
+    public String format(final Object attributeValue) {
+        return attributeValue.toString();
+    }
+
+}
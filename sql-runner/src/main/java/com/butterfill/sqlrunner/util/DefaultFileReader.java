@@ -1,14 +1,18 @@
 
 package com.butterfill.sqlrunner.util;
 
+import com.butterfill.sqlrunner.SqlRunnerChangeAwareFileReader;
 import com.butterfill.sqlrunner.SqlRunnerException;
 import com.butterfill.sqlrunner.SqlRunnerFileReader;
+import com.butterfill.sqlrunner.SqlRunnerScriptSource;
 import com.butterfill.sqlrunner.SqlRunnerStatement;
-import java.io.BufferedReader;
+import com.butterfill.sqlrunner.SqlRunnerStatementCursor;
+import com.butterfill.sqlrunner.SqlRunnerStreamingFileReader;
 import java.io.Closeable;
 import java.io.IOException;
-import java.io.InputStreamReader;
+import java.io.Reader;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -29,9 +33,64 @@ import java.util.logging.Logger;
  * and filePathPrefix ("/oracle/" or "/mysql/") could be set on the {@link SqlRunnerFileReader}
  * used by {@link com.butterfill.sqlrunner.SqlRunner} via dependency injection.
  *
+ * <h3>Script sources</h3>
+ * Files are read from the class path unless a {@link SqlRunnerScriptSource} is passed to the
+ * constructor. {@link FileSystemScriptSource} reads files from a directory on the file system
+ * and {@link InMemoryScriptSource} holds scripts in memory.
+ *
+ * <h3>PL/SQL blocks</h3>
+ * BEGIN and DECLARE blocks and CREATE [OR REPLACE] PROCEDURE, FUNCTION, PACKAGE or TRIGGER
+ * statements with a PL/SQL body (i.e. BEGIN, IS or AS follows the header) are terminated by a
+ * line that contains only a slash - or, if the block is on one line, by the semi-colon after its
+ * END. Statements without a PL/SQL body, such as Derby functions, BEGIN; and
+ * DECLARE c CURSOR FOR ..., are terminated by a semi-colon like any other statement. e.g.
+ * <pre>
+ *   begin do_work; end;
+ *   create or replace procedure do_work is
+ *   begin
+ *     update emp set sal = sal * 1.1;
+ *   end;
+ *   /
+ * </pre>
+ *
+ * <h3>Parallel blocks</h3>
+ * A <code>--sqlrunner.parallel: n</code> comment starts a block of statements that do not depend
+ * on each other - which SqlRunner may run at the same time on up to n connections.
+ * The block ends at a <code>--sqlrunner.parallel: end</code> comment, at the next parallel
+ * comment or at the end of the file. e.g.
+ * <pre>
+ *   --sqlrunner.parallel: 4
+ *   create index emp_i1 on emp (ename);
+ *   create index emp_i2 on emp (hiredate);
+ *   --sqlrunner.parallel: end
+ * </pre>
+ *
+ * <h3>Statement hints</h3>
+ * <code>--sqlrunner.fetchsize: n</code>, <code>--sqlrunner.maxrows: n</code> and
+ * <code>--sqlrunner.cursor: forward-only</code> comments set the fetch size, max rows and
+ * forward only options of the next statement - which SqlRunner passes to the driver. e.g.
+ * <pre>
+ *   --sqlrunner.fetchsize: 5000
+ *   --sqlrunner.cursor: forward-only
+ *   select * from emp;
+ * </pre>
+ *
+ * <h3>Commits</h3>
+ * A <code>--sqlrunner.commitevery:</code> comment sets how often SqlRunner commits the
+ * statements after it - every n statements (<code>n</code> or <code>n statements</code>),
+ * every n changed rows (<code>n rows</code>) or whichever comes first (e.g.
+ * <code>1000 statements, 50000 rows</code>). <code>auto</code> runs the statements with auto
+ * commit enabled and <code>end</code> goes back to the setting of the runner. e.g.
+ * <pre>
+ *   --sqlrunner.commitevery: 50000 rows
+ *   insert into emp_copy select * from emp where deptno = 10;
+ *   insert into emp_copy select * from emp where deptno = 20;
+ * </pre>
+ *
  * @author Peter Butterfill
  */
-public class DefaultFileReader implements SqlRunnerFileReader {
+public class DefaultFileReader
+        implements SqlRunnerStreamingFileReader, SqlRunnerChangeAwareFileReader {
 
     /**
      * The name of this class.
@@ -44,19 +103,9 @@ public class DefaultFileReader implements SqlRunnerFileReader {
     private static final Logger logger = Logger.getLogger(CLASS_NAME);
 
     /**
-     * Line separator on this platform.
-     */
-    private static final String LINE_SEPARATOR = System.getProperty("line.separator", "\n");
-
-    /**
-     * The name of the character set of the SQL script file.
-     */
-    private final String charsetName;
-
-    /**
-     * The file path prefix.
+     * The source of the SQL script files read by this instance.
      */
-    private final String filePathPrefix;
+    private final SqlRunnerScriptSource scriptSource;
 
     /**
      * Lines with this prefix will be treated as single line comments.
@@ -84,11 +133,7 @@ public class DefaultFileReader implements SqlRunnerFileReader {
      * </ul>
      */
     public DefaultFileReader() {
-        this.charsetName = "UTF-8";
-        this.filePathPrefix = "";
-        this.singleLineCommentPrefix = "--";
-        this.nameCommentPrefix = "--sqlrunner.name:";
-        this.failFastCommentPrefix = "--sqlrunner.failfast:";
+        this("");
     }
 
     /**
@@ -103,15 +148,11 @@ public class DefaultFileReader implements SqlRunnerFileReader {
      *   An empty string is the default.
      */
     public DefaultFileReader(final String filePathPrefix) {
-        this.charsetName = "UTF-8";
-        this.filePathPrefix = filePathPrefix;
-        this.singleLineCommentPrefix = "--";
-        this.nameCommentPrefix = "--sqlrunner.name:";
-        this.failFastCommentPrefix = "--sqlrunner.failfast:";
+        this(filePathPrefix, "UTF-8", "--");
     }
 
     /**
-     * Creates a new file reader.
+     * Creates a new file reader that reads files from the class path.
      * @param filePathPrefix
      *   The file path prefix.
      *   An empty string is the default.
@@ -119,21 +160,67 @@ public class DefaultFileReader implements SqlRunnerFileReader {
      *   The name of the character set of the SQL script file.
      *   UTF-8 is the default.
      * @param singleLineCommentPrefix
-     *   The single line comment prefix, which must not be null.
+     *   The single line comment prefix, which must not be null or empty.
      *   Double hyphen is the default. Note: MySQL allows # as well as --.
      */
     public DefaultFileReader(final String filePathPrefix, final String charsetName,
             final String singleLineCommentPrefix) {
+        this(new ClasspathScriptSource(filePathPrefix, charsetName), singleLineCommentPrefix);
+    }
+
+    /**
+     * Creates a file reader that will read files from the specified source using
+     * -- as the single line comment prefix.
+     * @param scriptSource
+     *   The source of the SQL script files.
+     */
+    public DefaultFileReader(final SqlRunnerScriptSource scriptSource) {
+        this(scriptSource, "--");
+    }
+
+    /**
+     * Creates a new file reader.
+     * @param scriptSource
+     *   The source of the SQL script files.
+     * @param singleLineCommentPrefix
+     *   The single line comment prefix, which must not be null or empty.
+     *   Double hyphen is the default. Note: MySQL allows # as well as --.
+     */
+    public DefaultFileReader(
+            final SqlRunnerScriptSource scriptSource, final String singleLineCommentPrefix) {
+        if (scriptSource == null) {
+            throw new NullPointerException("scriptSource must not be null");
+        }
         if (singleLineCommentPrefix == null) {
             throw new NullPointerException("singleLineCommentPrefix must not be null");
         }
-        this.charsetName = charsetName;
-        this.filePathPrefix = filePathPrefix;
+        if (singleLineCommentPrefix.length() == 0) {
+            throw new IllegalArgumentException("singleLineCommentPrefix must not be empty");
+        }
+        this.scriptSource = scriptSource;
         this.singleLineCommentPrefix = singleLineCommentPrefix;
         this.nameCommentPrefix = singleLineCommentPrefix + "sqlrunner.name:";
         this.failFastCommentPrefix = singleLineCommentPrefix + "sqlrunner.failfast:";
     }
 
+    /**
+     * Returns the source of the SQL script files read by this instance.
+     * @return
+     *   The source of the SQL script files read by this instance.
+     */
+    public SqlRunnerScriptSource getScriptSource() {
+        return scriptSource;
+    }
+
+    /**
+     * Returns the single line comment prefix used by this instance.
+     * @return
+     *   The single line comment prefix used by this instance.
+     */
+    public String getSingleLineCommentPrefix() {
+        return singleLineCommentPrefix;
+    }
+
     /**
      * Reads a file.
      * @param fileName
@@ -142,89 +229,132 @@ public class DefaultFileReader implements SqlRunnerFileReader {
      *   The statements from the file.
      */
     public List<SqlRunnerStatement> readFile(final String fileName) {
+        final SqlRunnerStatementCursor cursor = openFile(fileName);
+
+        try {
+            final List<SqlRunnerStatement> sqlRunnerStatements =
+                    new ArrayList<SqlRunnerStatement>();
+
+            while (cursor.hasNext()) {
+                sqlRunnerStatements.add(cursor.next());
+            }
+
+            return sqlRunnerStatements;
+
+        } finally {
+            cursor.close();
+
+        }
+
+    }
+
+    /**
+     * Opens a file, returning a cursor that reads statements from the file one at a time.
+     * @param fileName
+     *   Name of the file to read.
+     * @return
+     *   A cursor over the statements of the file - which must be closed by the caller.
+     */
+    public SqlRunnerStatementCursor openFile(final String fileName) {
         if (fileName == null) {
             throw new NullPointerException("fileName must not be null");
         }
 
-        BufferedReader reader = null;
+        final String fileDescription = "[" + fileName + "]. using " + scriptSource;
+
+        Reader reader = null;
 
         try {
-            reader = new BufferedReader(
-                    new InputStreamReader(
-                    this.getClass().getResourceAsStream(filePathPrefix + fileName), charsetName));
+            reader = scriptSource.openScript(fileName);
 
-            final List<SqlRunnerStatement> sqlRunnerStatements =
-                    new ArrayList<SqlRunnerStatement>();
+            return new DefaultFileReaderCursor(reader, fileDescription,
+                    singleLineCommentPrefix, nameCommentPrefix, failFastCommentPrefix);
+
+        } catch (Exception ex) {
+            // we want to catch IOException and any runtime exceptions thrown by the script source
+            close(reader);
+            throw new SqlRunnerException("failed to read file " + fileDescription, ex);
+
+        }
+
+    }
 
-            final StringBuilder sqlBuilder = new StringBuilder();
-            String statementName = null;
-            boolean failFast = true;
-            boolean inMultiLineComment = false;
-
-            for (String line = reader.readLine(); line != null; line = reader.readLine()) {
-                final String trimmedLine = line.trim();
-
-                if (trimmedLine.startsWith(nameCommentPrefix)) {
-                    // we've found a sql runner name comment - this gives us the statement name
-                    statementName = trimmedLine.substring(nameCommentPrefix.length()).trim();
-                    continue;
-                }
-
-                if (trimmedLine.startsWith(failFastCommentPrefix)) {
-                    // we've found the fail fast comment
-                    failFast = !"false"
-                            .equals(trimmedLine.substring(failFastCommentPrefix.length()).trim());
-                    continue;
-                }
-
-                if ("".equals(trimmedLine)
-                        || trimmedLine.startsWith(singleLineCommentPrefix)) {
-                    // skip single line comments and empty lines
-                    continue;
-                }
-
-                // skip multi-line comments
-                if (trimmedLine.startsWith("/*")) {
-                    // we're only in a multi-line comment if it is not ended on this line
-                    inMultiLineComment = !trimmedLine.endsWith("*/");
-                    continue;
-                } else if (trimmedLine.endsWith("*/")) {
-                    inMultiLineComment = false;
-                    continue;
-                } else if (inMultiLineComment) {
-                    continue;
-                }
-
-                // add the line to the statement builder
-                sqlBuilder.append(line);
-
-                if (trimmedLine.endsWith(";")) {
-                    // statements are terminated with a semi-colon
-                    final String sql = sqlBuilder.substring(0, sqlBuilder.length() - 1);
-                    sqlRunnerStatements.add(new SqlRunnerStatement(statementName, sql, failFast));
-                    statementName = null;
-                    failFast = true;
-                    sqlBuilder.setLength(0);
-
-                } else {
-                    sqlBuilder.append(LINE_SEPARATOR);
-
-                }
+    /**
+     * Returns the names of the files, available from the script source of this instance, that
+     * end with the specified suffix - which could be used to warm up a {@link CachingFileReader}.
+     * @param fileNameSuffix
+     *   Only names of files that end with this suffix are returned. e.g. ".sql"
+     * @return
+     *   The names of the files, in sorted order.
+     */
+    public List<String> listFiles(final String fileNameSuffix) {
+        if (fileNameSuffix == null) {
+            throw new NullPointerException("fileNameSuffix must not be null");
+        }
 
+        final List<String> fileNames;
+
+        try {
+            fileNames = scriptSource.listScripts();
+
+        } catch (IOException ex) {
+            throw new SqlRunnerException("failed to list files. using " + scriptSource, ex);
+
+        }
+
+        final List<String> result = new ArrayList<String>();
+        for (String fileName : fileNames) {
+            if (fileName.endsWith(fileNameSuffix)) {
+                result.add(fileName);
             }
+        }
+        Collections.sort(result);
+        return result;
 
-            return sqlRunnerStatements;
+    }
 
-        } catch (Exception ex) {
-            // we want to catch IOException and runtime exceptions such as NullPointerException
-            // thrown by InputStreamReader when the resource is not found
+    /**
+     * Returns the time that a file was last modified.
+     * @param fileName
+     *   Name of the file.
+     * @return
+     *   The time that the file was last modified, or 0 if the time is not known.
+     */
+    public long lastModified(final String fileName) {
+        if (fileName == null) {
+            throw new NullPointerException("fileName must not be null");
+        }
+
+        try {
+            return scriptSource.lastModified(fileName);
+
+        } catch (IOException ex) {
             throw new SqlRunnerException(
-                    "failed to read file [" + fileName
-                    + "]. using filePathPrefix [" + filePathPrefix + "]",
-                    ex);
+                    "failed to read file [" + fileName + "]. using " + scriptSource, ex);
 
-        } finally {
-            close(reader);
+        }
+
+    }
+
+    /**
+     * Returns a checksum of the contents of a file and the single line comment prefix used by
+     * this instance.
+     * @param fileName
+     *   Name of the file.
+     * @return
+     *   A checksum of the file.
+     */
+    public String checksum(final String fileName) {
+        if (fileName == null) {
+            throw new NullPointerException("fileName must not be null");
+        }
+
+        try {
+            return ScriptDigest.sha1(scriptSource, fileName, singleLineCommentPrefix);
+
+        } catch (IOException ex) {
+            throw new SqlRunnerException(
+                    "failed to read file [" + fileName + "]. using " + scriptSource, ex);
 
         }
 
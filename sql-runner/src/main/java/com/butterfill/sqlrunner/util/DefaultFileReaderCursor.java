@@ -0,0 +1,1408 @@
+package com.butterfill.sqlrunner.util;
+
+import com.butterfill.sqlrunner.SqlRunnerException;
+import com.butterfill.sqlrunner.SqlRunnerStatement;
+import com.butterfill.sqlrunner.SqlRunnerStatementCursor;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Cursor used by {@link DefaultFileReader} to read statements from a file one at a time.
+ * The next statement is only read from the file when the previous statement has been returned.
+ *
+ * <p>
+ * The file is read in one pass, a character at a time, by a state machine.
+ * Characters are read into a buffer and the SQL of each statement is created directly from the
+ * buffer - so we create one string per statement rather than several strings per line.
+ * </p>
+ *
+ * <ul>
+ *   <li>
+ *     Comments and whitespace between statements are skipped.
+ *     A single line comment between statements that starts with the sql-runner name or
+ *     fail fast comment prefix gives the name or fail fast setting of the next statement.
+ *     A sql-runner parallel comment starts (or ends) a block of statements that may be run at
+ *     the same time.
+ *     Fetch size, max rows and cursor comments give JDBC hints for the next statement.
+ *   </li>
+ *   <li>
+ *     Statements are terminated by a semi-colon that is not in a quoted string (including
+ *     Oracle alternative quotes such as q'[...]'), a quoted identifier or a comment.
+ *     A statement, quote or comment that is not closed at the end of the file is an error.
+ *   </li>
+ *   <li>
+ *     PL/SQL blocks (BEGIN or DECLARE blocks and CREATE [OR REPLACE] PROCEDURE, FUNCTION,
+ *     PACKAGE or TRIGGER statements whose body is PL/SQL) contain
+ *     semi-colons, so they are terminated by a line that contains only a slash - or, if the
+ *     block is on one line, by the semi-colon after its END. The semi-colon at the end of a
+ *     block is kept. The end of the file also terminates a block.
+ *     Lines that contain only a slash between statements are skipped.
+ *   </li>
+ *   <li>
+ *     Comments in a statement are kept - so optimizer hints are not lost.
+ *   </li>
+ *   <li>
+ *     Line separators in a statement are converted to the line separator of this platform.
+ *   </li>
+ * </ul>
+ *
+ * @author Peter Butterfill
+ */
+class DefaultFileReaderCursor implements SqlRunnerStatementCursor {
+
+    /**
+     * The name of this class.
+     */
+    public static final String CLASS_NAME = DefaultFileReaderCursor.class.getName();
+
+    /**
+     * The logger for this class.
+     */
+    private static final Logger logger = Logger.getLogger(CLASS_NAME);
+
+    /**
+     * Line separator on this platform.
+     */
+    private static final String LINE_SEPARATOR = System.getProperty("line.separator", "\n");
+
+    /**
+     * Set to true if new line characters need converting to the line separator of this platform.
+     */
+    private static final boolean CONVERT_NEW_LINES = !"\n".equals(LINE_SEPARATOR);
+
+    /**
+     * The number of characters we try to read from the file in one go.
+     */
+    private static final int BUFFER_SIZE = 65536;
+
+    /**
+     * Length of the special characters array - special characters are all ASCII.
+     */
+    private static final int SPECIAL_CHARACTERS_LENGTH = 128;
+
+    /**
+     * We're between statements.
+     */
+    private static final int BETWEEN_STATEMENTS = 0;
+
+    /**
+     * We're in a single line comment between statements.
+     */
+    private static final int BETWEEN_STATEMENTS_LINE_COMMENT = 1;
+
+    /**
+     * We're in a multi-line comment between statements.
+     */
+    private static final int BETWEEN_STATEMENTS_BLOCK_COMMENT = 2;
+
+    /**
+     * We're in a statement.
+     */
+    private static final int IN_STATEMENT = 3;
+
+    /**
+     * We're in a quoted string (or quoted identifier) in a statement.
+     */
+    private static final int IN_STATEMENT_QUOTE = 4;
+
+    /**
+     * We're in a single line comment in a statement.
+     */
+    private static final int IN_STATEMENT_LINE_COMMENT = 5;
+
+    /**
+     * We're in a multi-line comment in a statement.
+     */
+    private static final int IN_STATEMENT_BLOCK_COMMENT = 6;
+
+    /**
+     * We don't yet know if the statement being read is a PL/SQL block.
+     */
+    private static final int BLOCK_UNKNOWN = -1;
+
+    /**
+     * The statement being read is not a PL/SQL block.
+     */
+    private static final int BLOCK_NO = 0;
+
+    /**
+     * The statement being read is a PL/SQL block.
+     */
+    private static final int BLOCK_YES = 1;
+
+    /**
+     * Words that follow BEGIN when it starts a transaction rather than a block.
+     */
+    private static final Set<String> TRANSACTION_WORDS = new HashSet<String>(Arrays.asList(
+            "transaction", "tran", "work", "isolation", "read", "deferrable", "not",
+            "distributed", "deferred", "immediate", "exclusive"));
+
+    /**
+     * Words that follow CURSOR when DECLARE declares a cursor rather than starting a block.
+     */
+    private static final Set<String> CURSOR_WORDS = new HashSet<String>(Arrays.asList(
+            "for", "with", "without"));
+
+    /**
+     * Words that may come between CREATE and the type of object created.
+     */
+    private static final Set<String> CREATE_OPTIONS = new HashSet<String>(Arrays.asList(
+            "or", "replace", "editionable", "noneditionable"));
+
+    /**
+     * The reader we read characters from - set to null when this cursor has been closed.
+     */
+    private Reader reader;
+
+    /**
+     * Description of the file being read - used in exception messages.
+     */
+    private final String fileDescription;
+
+    /**
+     * Single line comments start with this prefix.
+     */
+    private final String singleLineCommentPrefix;
+
+    /**
+     * The sql-runner name comment prefix.
+     */
+    private final String nameCommentPrefix;
+
+    /**
+     * The sql-runner fail fast comment prefix.
+     */
+    private final String failFastCommentPrefix;
+
+    /**
+     * The sql-runner parallel comment prefix.
+     */
+    private final String parallelCommentPrefix;
+
+    /**
+     * The sql-runner fetch size comment prefix.
+     */
+    private final String fetchSizeCommentPrefix;
+
+    /**
+     * The sql-runner max rows comment prefix.
+     */
+    private final String maxRowsCommentPrefix;
+
+    /**
+     * The sql-runner cursor comment prefix.
+     */
+    private final String cursorCommentPrefix;
+
+    /**
+     * The sql-runner commit every comment prefix.
+     */
+    private final String commitEveryCommentPrefix;
+
+    /**
+     * Flags, indexed by character, for the characters that need action when found in a
+     * statement.
+     */
+    private final boolean[] specialCharacters = new boolean[SPECIAL_CHARACTERS_LENGTH];
+
+    /**
+     * Characters read from the file.
+     */
+    private char[] buffer = new char[BUFFER_SIZE];
+
+    /**
+     * Index of the next character in buffer to be processed.
+     */
+    private int position;
+
+    /**
+     * Number of characters in buffer that have been read from the file.
+     */
+    private int limit;
+
+    /**
+     * Set to true when we've read all characters from the file.
+     */
+    private boolean endOfFile;
+
+    /**
+     * The current state of the state machine.
+     */
+    private int state = BETWEEN_STATEMENTS;
+
+    /**
+     * The character that will end the quote we're in.
+     */
+    private char closingQuote;
+
+    /**
+     * Set to true if the quote we're in is an Oracle alternative quote (e.g. q'[...]') - which
+     * ends at closingQuote followed by a single quote.
+     */
+    private boolean alternativeQuote;
+
+    /**
+     * The number of characters that have been dropped from the start of buffer.
+     */
+    private long charactersDropped;
+
+    /**
+     * Index in buffer of the start of the statement or comment being read or -1.
+     */
+    private int tokenStart = -1;
+
+    /**
+     * Set to true if the statement being read contains line separators that need converting.
+     */
+    private boolean convertLineSeparators;
+
+    /**
+     * Set to BLOCK_YES if the statement being read is a PL/SQL block, BLOCK_NO if it is not or
+     * BLOCK_UNKNOWN if we have not checked yet.
+     */
+    private int block = BLOCK_UNKNOWN;
+
+    /**
+     * The end (exclusive) of the SQL of the statement that ends at the current position.
+     */
+    private int statementEnd;
+
+    /**
+     * The name of the next statement.
+     */
+    private String statementName;
+
+    /**
+     * The fail fast setting of the next statement.
+     */
+    private boolean failFast = true;
+
+    /**
+     * The number of parallel blocks started so far.
+     */
+    private int parallelBlockCount;
+
+    /**
+     * The parallel block of the next statement - or 0 if we're not in a parallel block.
+     */
+    private int parallelBlock;
+
+    /**
+     * The parallelism of the current parallel block.
+     */
+    private int parallelism;
+
+    /**
+     * The fetch size of the next statement.
+     */
+    private int fetchSize;
+
+    /**
+     * The max rows of the next statement.
+     */
+    private int maxRows;
+
+    /**
+     * The forward only option of the next statement.
+     */
+    private boolean forwardOnly;
+
+    /**
+     * The number of statements to run between commits - set by the last commit every comment.
+     */
+    private int commitEvery;
+
+    /**
+     * The number of rows to change between commits - set by the last commit every comment.
+     */
+    private int commitEveryRows;
+
+    /**
+     * The auto commit option - set by the last commit every comment.
+     */
+    private boolean autoCommit;
+
+    /**
+     * The statement that will be returned by the next call to next - null if not yet read.
+     */
+    private SqlRunnerStatement nextStatement;
+
+    /**
+     * Creates a new cursor.
+     * @param reader
+     *   The reader to read characters from. This cursor will close the reader.
+     * @param fileDescription
+     *   Description of the file being read - used in exception messages.
+     * @param singleLineCommentPrefix
+     *   Single line comments start with this prefix.
+     * @param nameCommentPrefix
+     *   The sql-runner name comment prefix.
+     * @param failFastCommentPrefix
+     *   The sql-runner fail fast comment prefix.
+     */
+    DefaultFileReaderCursor(final Reader reader, final String fileDescription,
+            final String singleLineCommentPrefix, final String nameCommentPrefix,
+            final String failFastCommentPrefix) {
+        this.reader = reader;
+        this.fileDescription = fileDescription;
+        this.singleLineCommentPrefix = singleLineCommentPrefix;
+        this.nameCommentPrefix = nameCommentPrefix;
+        this.failFastCommentPrefix = failFastCommentPrefix;
+        this.parallelCommentPrefix = singleLineCommentPrefix + "sqlrunner.parallel:";
+        this.fetchSizeCommentPrefix = singleLineCommentPrefix + "sqlrunner.fetchsize:";
+        this.maxRowsCommentPrefix = singleLineCommentPrefix + "sqlrunner.maxrows:";
+        this.cursorCommentPrefix = singleLineCommentPrefix + "sqlrunner.cursor:";
+        this.commitEveryCommentPrefix = singleLineCommentPrefix + "sqlrunner.commitevery:";
+
+        specialCharacters[';'] = true;
+        specialCharacters['\''] = true;
+        specialCharacters['"'] = true;
+        specialCharacters['/'] = true;
+        specialCharacters['\r'] = true;
+        specialCharacters['\n'] = CONVERT_NEW_LINES;
+        final char commentStart = singleLineCommentPrefix.charAt(0);
+        if (commentStart < SPECIAL_CHARACTERS_LENGTH) {
+            specialCharacters[commentStart] = true;
+        }
+    }
+
+    /**
+     * Returns true if the file contains another statement.
+     * This method will read the file up to the end of the next statement.
+     * @return
+     *   true if the file contains another statement.
+     */
+    public boolean hasNext() {
+        if (nextStatement == null && reader != null) {
+            nextStatement = readStatement();
+            if (nextStatement == null) {
+                // we've reached the end of the file
+                close();
+            }
+        }
+        return nextStatement != null;
+    }
+
+    /**
+     * Returns the next statement from the file.
+     * @return
+     *   The next statement from the file.
+     */
+    public SqlRunnerStatement next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException("no more statements in " + fileDescription);
+        }
+        final SqlRunnerStatement result = nextStatement;
+        nextStatement = null;
+        return result;
+    }
+
+    /**
+     * Not supported.
+     */
+    public void remove() {
+        throw new UnsupportedOperationException("remove is not supported");
+    }
+
+    /**
+     * Closes the reader used by this cursor without letting exceptions propagate.
+     */
+    public void close() {
+        if (reader != null) {
+            try {
+                reader.close();
+            } catch (IOException ex) {
+                logger.logp(Level.WARNING, CLASS_NAME, "close()",
+                        "failed to close reader", ex);
+            }
+            reader = null;
+            buffer = null;
+        }
+    }
+
+    /**
+     * Runs the state machine until we've read a complete statement.
+     * @return
+     *   The statement read or null if the file contains no more statements.
+     */
+    private SqlRunnerStatement readStatement() {
+        try {
+            while (position < limit || fill()) {
+                switch (state) {
+                    case BETWEEN_STATEMENTS:
+                        betweenStatements();
+                        break;
+
+                    case BETWEEN_STATEMENTS_LINE_COMMENT:
+                        if (skipToEndOfLine()) {
+                            endOfComment();
+                        }
+                        break;
+
+                    case BETWEEN_STATEMENTS_BLOCK_COMMENT:
+                    case IN_STATEMENT_BLOCK_COMMENT:
+                        blockComment();
+                        break;
+
+                    case IN_STATEMENT:
+                        if (inStatement()) {
+                            return endOfStatement();
+                        }
+                        break;
+
+                    case IN_STATEMENT_QUOTE:
+                        inQuote();
+                        break;
+
+                    case IN_STATEMENT_LINE_COMMENT:
+                        if (skipToEndOfLine()) {
+                            // the line separator is part of the statement
+                            state = IN_STATEMENT;
+                        }
+                        break;
+
+                    default:
+                        throw new IllegalStateException("unexpected state " + state);
+                }
+
+            }
+
+            // we've reached the end of the file
+            if (state == BETWEEN_STATEMENTS_LINE_COMMENT) {
+                endOfComment();
+            } else if ((state == IN_STATEMENT || state == IN_STATEMENT_LINE_COMMENT)
+                    && isBlock()) {
+                // the end of the file terminates a block
+                statementEnd = position;
+                return endOfStatement();
+            } else if (state != BETWEEN_STATEMENTS && state != BETWEEN_STATEMENTS_BLOCK_COMMENT) {
+                // we must not drop the end of the file without telling the caller
+                final String problem;
+                if (state == IN_STATEMENT_QUOTE) {
+                    problem = "has a quote that is not closed";
+                } else if (state == IN_STATEMENT_BLOCK_COMMENT) {
+                    problem = "has a comment that is not closed";
+                } else {
+                    problem = "is not terminated by a semi-colon";
+                }
+                final long offset = charactersDropped + tokenStart;
+                close();
+                throw new SqlRunnerException("the statement starting at character " + offset
+                        + " of " + fileDescription + " " + problem, null);
+            }
+
+            return null;
+
+        } catch (IOException ex) {
+            close();
+            throw new SqlRunnerException("failed to read file " + fileDescription, ex);
+
+        }
+
+    }
+
+    /**
+     * Skips whitespace between statements - stopping at the start of a comment or statement.
+     * @throws IOException
+     *   If reading the file fails.
+     */
+    private void betweenStatements() throws IOException {
+        final char[] buf = buffer;
+        final int lim = limit;
+        int p = position;
+        while (p < lim && (buf[p] == ';' || Character.isWhitespace(buf[p]))) {
+            // skip whitespace and empty statements
+            p++;
+        }
+        position = p;
+
+        if (p == lim) {
+            return;
+        }
+
+        if (buf[p] == '/' && isAloneOnLine()) {
+            // skip the slash that ends a block in scripts written for SQL*Plus
+            position++;
+            return;
+        }
+
+        if (startsWith(singleLineCommentPrefix)) {
+            state = BETWEEN_STATEMENTS_LINE_COMMENT;
+            tokenStart = position;
+            position += singleLineCommentPrefix.length();
+        } else if (startsWith("/*")) {
+            state = BETWEEN_STATEMENTS_BLOCK_COMMENT;
+            position += 2;
+        } else {
+            // this is the first character of the next statement
+            state = IN_STATEMENT;
+            tokenStart = position;
+            convertLineSeparators = false;
+            block = BLOCK_UNKNOWN;
+        }
+    }
+
+    /**
+     * Moves position to the next line separator.
+     * @return
+     *   true if we found a line separator, false if we need to read more of the file.
+     */
+    private boolean skipToEndOfLine() {
+        final char[] buf = buffer;
+        final int lim = limit;
+        int p = position;
+        while (p < lim && buf[p] != '\n' && buf[p] != '\r') {
+            p++;
+        }
+        position = p;
+        return p < lim;
+    }
+
+    /**
+     * Moves position past the end of a multi-line comment.
+     * @throws IOException
+     *   If reading the file fails.
+     */
+    private void blockComment() throws IOException {
+        final char[] buf = buffer;
+        final int lim = limit;
+        int p = position;
+        while (p < lim && buf[p] != '*') {
+            checkLineSeparator(buf[p]);
+            p++;
+        }
+        position = p;
+
+        if (p < lim) {
+            if (startsWith("*/")) {
+                state = (state == IN_STATEMENT_BLOCK_COMMENT) ? IN_STATEMENT : BETWEEN_STATEMENTS;
+                position += 2;
+            } else {
+                position++;
+            }
+        }
+    }
+
+    /**
+     * Moves position past the end of a quoted string or identifier.
+     * @throws IOException
+     *   If reading the file fails.
+     */
+    private void inQuote() throws IOException {
+        final char[] buf = buffer;
+        final int lim = limit;
+        final char quote = closingQuote;
+        int p = position;
+        while (p < lim && buf[p] != quote) {
+            checkLineSeparator(buf[p]);
+            p++;
+        }
+        position = p;
+        if (p == lim) {
+            return;
+        }
+        if (!alternativeQuote) {
+            // a doubled quote will take us out of the quote and straight back in
+            state = IN_STATEMENT;
+            position++;
+        } else if (startsWith(quote + "'")) {
+            state = IN_STATEMENT;
+            position += 2;
+        } else {
+            // startsWith may have moved the contents of the buffer
+            position++;
+        }
+    }
+
+    /**
+     * Returns true if the single quote at index in buffer starts an Oracle alternative quote -
+     * i.e. it follows q (or nq) at the start of a word.
+     * @param index
+     *   Index of the single quote.
+     * @return
+     *   true if the single quote starts an alternative quote.
+     */
+    private boolean isAlternativeQuotePrefix(final int index) {
+        int prefixStart = index - 1;
+        if (prefixStart < tokenStart
+                || (buffer[prefixStart] != 'q' && buffer[prefixStart] != 'Q')) {
+            return false;
+        }
+        if (prefixStart > tokenStart
+                && (buffer[prefixStart - 1] == 'n' || buffer[prefixStart - 1] == 'N')) {
+            prefixStart--;
+        }
+        return prefixStart == tokenStart || !isWordCharacter(buffer[prefixStart - 1]);
+    }
+
+    /**
+     * Returns the character that closes an Oracle alternative quote.
+     * @param delimiter
+     *   The character after the opening single quote.
+     * @return
+     *   The matching bracket, if delimiter is an opening bracket, otherwise delimiter.
+     */
+    private static char closingDelimiter(final char delimiter) {
+        switch (delimiter) {
+            case '[':
+                return ']';
+            case '{':
+                return '}';
+            case '(':
+                return ')';
+            case '<':
+                return '>';
+            default:
+                return delimiter;
+        }
+    }
+
+    /**
+     * Moves position through a statement until we find the end of the statement or the start of a
+     * quote or comment.
+     * @return
+     *   true if we found the end of the statement - in which case statementEnd is set and
+     *   position is after the semi-colon or slash that ends the statement.
+     * @throws IOException
+     *   If reading the file fails.
+     */
+    private boolean inStatement() throws IOException {
+        final char[] buf = buffer;
+        final int lim = limit;
+        final boolean[] special = specialCharacters;
+        final char commentStart = singleLineCommentPrefix.charAt(0);
+        int p = position;
+
+        while (p < lim) {
+            final char c = buf[p];
+            // most characters need no action, which we can check with one lookup
+            if ((c >= special.length || !special[c]) && c != commentStart) {
+                p++;
+                continue;
+            }
+            if (c == ';') {
+                position = p;
+                if (!isBlock()) {
+                    // statements are terminated with a semi-colon
+                    statementEnd = position;
+                    position++;
+                    return true;
+                }
+                if (isEndOnFirstLine() && isEndOfLine()) {
+                    // a block on one line is terminated by the semi-colon at the end of the line
+                    position++;
+                    statementEnd = position;
+                    return true;
+                }
+                // isEndOfLine may have moved the contents of the buffer
+                position++;
+                return false;
+            }
+            if (c == '\'' || c == '"') {
+                state = IN_STATEMENT_QUOTE;
+                closingQuote = c;
+                alternativeQuote = false;
+                position = p + 1;
+                if (c == '\'' && isAlternativeQuotePrefix(p)) {
+                    // q'<delimiter>...<delimiter>' - the delimiter follows the quote
+                    while (position >= limit) {
+                        if (!fill()) {
+                            return false;
+                        }
+                    }
+                    closingQuote = closingDelimiter(buffer[position]);
+                    alternativeQuote = true;
+                    position++;
+                }
+                return false;
+            }
+            if (c == commentStart || c == '/') {
+                position = p;
+                if (c == '/' && isAloneOnLine() && isBlock()) {
+                    // blocks are terminated by a line that contains only a slash
+                    statementEnd = position;
+                    position++;
+                    return true;
+                }
+                if (c == commentStart && isLineCommentStart()) {
+                    state = IN_STATEMENT_LINE_COMMENT;
+                    position += singleLineCommentPrefix.length();
+                    return false;
+                }
+                if (c == '/' && startsWith("/*")) {
+                    state = IN_STATEMENT_BLOCK_COMMENT;
+                    position += 2;
+                    return false;
+                }
+                // startsWith may have moved the contents of the buffer
+                position++;
+                return false;
+            }
+            // the only other special characters are line separators that need converting
+            convertLineSeparators = true;
+            p++;
+        }
+
+        position = p;
+        return false;
+    }
+
+    /**
+     * Returns true if the statement being read is a PL/SQL block.
+     * The words of the statement are read from the buffer, which holds the statement from
+     * tokenStart up to the current position - which is the first semi-colon (or slash alone on
+     * a line) of the statement or the end of the file.
+     * @return
+     *   true if the statement being read is a PL/SQL block.
+     */
+    private boolean isBlock() {
+        if (block == BLOCK_UNKNOWN) {
+            block = isBlock(readWords(tokenStart, position)) ? BLOCK_YES : BLOCK_NO;
+        }
+        return block == BLOCK_YES;
+    }
+
+    /**
+     * Returns true if the words at the start of a statement start a PL/SQL block.
+     * <ul>
+     *   <li>
+     *     BEGIN starts a block - unless it starts a transaction (e.g. BEGIN; or
+     *     BEGIN TRANSACTION;).
+     *   </li>
+     *   <li>
+     *     DECLARE starts a block - unless it declares a cursor (DECLARE c CURSOR FOR ...) or a
+     *     variable (DECLARE @x ...).
+     *   </li>
+     *   <li>
+     *     CREATE [OR REPLACE] PROCEDURE, FUNCTION or PACKAGE is a block if BEGIN, IS or AS
+     *     follows the header - unless IS or AS is followed by LANGUAGE, EXTERNAL or a quoted
+     *     body (e.g. Oracle call specs and Postgres functions).
+     *     CREATE [OR REPLACE] TRIGGER is a block if its body starts with BEGIN, DECLARE or
+     *     COMPOUND.
+     *     Derby procedures, functions and triggers (which have no PL/SQL body) are not blocks.
+     *   </li>
+     * </ul>
+     * @param words
+     *   The lower case words at the start of the statement - see {@link #readWords(int, int)}.
+     * @return
+     *   true if the words start a PL/SQL block.
+     */
+    private static boolean isBlock(final List<String> words) {
+        final int size = words.size();
+        if (size < 2) {
+            return false;
+        }
+
+        final String first = words.get(0);
+
+        if ("begin".equals(first)) {
+            return !TRANSACTION_WORDS.contains(words.get(1));
+        }
+
+        if ("declare".equals(first)) {
+            if (words.get(1).startsWith("@")) {
+                return false;
+            }
+            for (int i = 2; i < size - 1; i++) {
+                if ("cursor".equals(words.get(i)) && CURSOR_WORDS.contains(words.get(i + 1))) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        if (!"create".equals(first)) {
+            return false;
+        }
+
+        int index = 1;
+        while (index < size && CREATE_OPTIONS.contains(words.get(index))) {
+            index++;
+        }
+        if (index == size) {
+            return false;
+        }
+
+        final String kind = words.get(index);
+        if ("trigger".equals(kind)) {
+            return words.contains("begin") || words.contains("declare")
+                    || words.contains("compound");
+        }
+        if (!"procedure".equals(kind) && !"function".equals(kind) && !"package".equals(kind)) {
+            return false;
+        }
+
+        for (int i = index + 1; i < size; i++) {
+            final String word = words.get(i);
+            if ("begin".equals(word)) {
+                return true;
+            }
+            if ("is".equals(word) || "as".equals(word)) {
+                if (i + 1 == size) {
+                    return true;
+                }
+                final String next = words.get(i + 1);
+                return !"language".equals(next) && !"external".equals(next)
+                        && !next.startsWith("'") && !next.startsWith("$");
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns the words in buffer from start to end - in lower case.
+     * Comments are skipped, a quoted string is returned as a single quote and a quoted
+     * identifier as a double quote. Other punctuation is skipped.
+     * @param start
+     *   Index of the first character.
+     * @param end
+     *   Index (exclusive) of the last character.
+     * @return
+     *   The words in buffer from start to end.
+     */
+    private List<String> readWords(final int start, final int end) {
+        final List<String> result = new ArrayList<String>();
+        int index = start;
+        while (index < end) {
+            final char c = buffer[index];
+            if (c == '\'' || c == '"') {
+                result.add(String.valueOf(c));
+                index++;
+                while (index < end && buffer[index] != c) {
+                    index++;
+                }
+                index++;
+            } else if (c == '-' && index + 1 < end && buffer[index + 1] == '-') {
+                while (index < end && buffer[index] != '\n' && buffer[index] != '\r') {
+                    index++;
+                }
+            } else if (c == '/' && index + 1 < end && buffer[index + 1] == '*') {
+                index += 2;
+                while (index < end && !(buffer[index - 1] == '*' && buffer[index] == '/')) {
+                    index++;
+                }
+                index++;
+            } else if (isWordCharacter(c) || c == '@') {
+                final int wordStart = index;
+                while (index < end && (isWordCharacter(buffer[index]) || buffer[index] == '@')) {
+                    index++;
+                }
+                result.add(new String(buffer, wordStart, index - wordStart)
+                        .toLowerCase(Locale.ENGLISH));
+            } else {
+                index++;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns true if the semi-colon at the current position is on the first line of the
+     * statement being read and follows the word END (optionally followed by a name).
+     * @return
+     *   true if the semi-colon at the current position ends a block that is on one line.
+     */
+    private boolean isEndOnFirstLine() {
+        for (int i = position - 1; i >= tokenStart; i--) {
+            if (buffer[i] == '\n' || buffer[i] == '\r') {
+                return false;
+            }
+        }
+        int index = skipWhitespaceBackwards(position);
+        int wordStart = skipWordBackwards(index);
+        if (!isWord(wordStart, index, "end")) {
+            // skip the name after END
+            index = skipWhitespaceBackwards(wordStart);
+            if (index == wordStart) {
+                return false;
+            }
+            wordStart = skipWordBackwards(index);
+        }
+        return isWord(wordStart, index, "end");
+    }
+
+    /**
+     * Returns the index after the last non-whitespace character before end in the statement
+     * being read.
+     * @param end
+     *   Index (exclusive) to start from.
+     * @return
+     *   The index after the last non-whitespace character before end.
+     */
+    private int skipWhitespaceBackwards(final int end) {
+        int index = end;
+        while (index > tokenStart && Character.isWhitespace(buffer[index - 1])) {
+            index--;
+        }
+        return index;
+    }
+
+    /**
+     * Returns the index of the first character of the word that ends at end in the statement
+     * being read.
+     * @param end
+     *   Index (exclusive) of the end of the word.
+     * @return
+     *   The index of the first character of the word - which is end if there is no word.
+     */
+    private int skipWordBackwards(final int end) {
+        int index = end;
+        while (index > tokenStart
+                && (isWordCharacter(buffer[index - 1]) || buffer[index - 1] == '"')) {
+            index--;
+        }
+        return index;
+    }
+
+    /**
+     * Returns true if c can be part of an identifier.
+     * @param c
+     *   The character to check.
+     * @return
+     *   true if c can be part of an identifier.
+     */
+    private static boolean isWordCharacter(final char c) {
+        return Character.isLetterOrDigit(c) || c == '_' || c == '$' || c == '#';
+    }
+
+    /**
+     * Returns true if the characters in buffer from start to end are word (ignoring case).
+     * @param start
+     *   Index of the first character.
+     * @param end
+     *   Index (exclusive) of the last character.
+     * @param word
+     *   The lower case word to look for.
+     * @return
+     *   true if the characters in buffer from start to end are word.
+     */
+    private boolean isWord(final int start, final int end, final String word) {
+        return end - start == word.length()
+                && new String(buffer, start, end - start).equalsIgnoreCase(word);
+    }
+
+    /**
+     * Returns true if the rest of the line after the current position is empty, whitespace or a
+     * single line comment.
+     * @return
+     *   true if the current position is the last character of code on its line.
+     * @throws IOException
+     *   If reading the file fails.
+     */
+    private boolean isEndOfLine() throws IOException {
+        int offset = 1;
+        while (true) {
+            if (position + offset >= limit) {
+                if (!fill()) {
+                    return true;
+                }
+                continue;
+            }
+            final char c = buffer[position + offset];
+            if (c == '\n' || c == '\r') {
+                return true;
+            }
+            if (c == singleLineCommentPrefix.charAt(0)) {
+                while (limit - position - offset < singleLineCommentPrefix.length()) {
+                    if (!fill()) {
+                        return false;
+                    }
+                }
+                return regionStartsWith(position + offset, singleLineCommentPrefix);
+            }
+            if (!Character.isWhitespace(c)) {
+                return false;
+            }
+            offset++;
+        }
+    }
+
+    /**
+     * Returns true if the character at the current position is the only character, other than
+     * whitespace, on its line.
+     * @return
+     *   true if the character at the current position is alone on its line.
+     * @throws IOException
+     *   If reading the file fails.
+     */
+    private boolean isAloneOnLine() throws IOException {
+        // between statements tokenStart is -1 and we've only skipped whitespace and semi-colons
+        for (int i = position - 1; tokenStart >= 0 && i >= tokenStart; i--) {
+            final char previous = buffer[i];
+            if (previous == '\n' || previous == '\r') {
+                break;
+            }
+            if (!Character.isWhitespace(previous)) {
+                return false;
+            }
+        }
+        int offset = 1;
+        while (true) {
+            if (position + offset >= limit) {
+                if (!fill()) {
+                    return true;
+                }
+                continue;
+            }
+            final char c = buffer[position + offset];
+            if (c == '\n' || c == '\r') {
+                return true;
+            }
+            if (!Character.isWhitespace(c)) {
+                return false;
+            }
+            offset++;
+        }
+    }
+
+    /**
+     * Returns true if the character at the current position starts a single line comment in a
+     * statement.
+     * Double hyphen starts a comment anywhere in a statement but other single line comment
+     * prefixes (e.g. #) only start a comment at the beginning of a line.
+     * @return
+     *   true if the character at the current position starts a single line comment.
+     * @throws IOException
+     *   If reading the file fails.
+     */
+    private boolean isLineCommentStart() throws IOException {
+        if (!startsWith(singleLineCommentPrefix)) {
+            return false;
+        }
+        if ("--".equals(singleLineCommentPrefix)) {
+            return true;
+        }
+        for (int i = position - 1; i >= tokenStart; i--) {
+            final char previous = buffer[i];
+            if (previous == '\n' || previous == '\r') {
+                return true;
+            }
+            if (!Character.isWhitespace(previous)) {
+                return false;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Notes that the statement being read will need its line separators converted if c is a line
+     * separator that does not match the line separator of this platform.
+     * @param c
+     *   The character at the current position.
+     */
+    private void checkLineSeparator(final char c) {
+        if (c == '\r' || (c == '\n' && CONVERT_NEW_LINES)) {
+            convertLineSeparators = true;
+        }
+    }
+
+    /**
+     * Called at the end of a single line comment between statements -
+     * checks the comment for sql-runner name or fail fast settings.
+     */
+    private void endOfComment() {
+        if (regionStartsWith(tokenStart, nameCommentPrefix)) {
+            // we've found a sql runner name comment - this gives us the statement name
+            statementName = commentValue(nameCommentPrefix);
+
+        } else if (regionStartsWith(tokenStart, failFastCommentPrefix)) {
+            // we've found the fail fast comment
+            failFast = !"false".equals(commentValue(failFastCommentPrefix));
+
+        } else if (regionStartsWith(tokenStart, parallelCommentPrefix)) {
+            // we've found a parallel comment - which starts or ends a parallel block
+            startParallelBlock(commentValue(parallelCommentPrefix));
+
+        } else if (regionStartsWith(tokenStart, fetchSizeCommentPrefix)) {
+            fetchSize = nonNegativeInt(commentValue(fetchSizeCommentPrefix), "fetchsize");
+
+        } else if (regionStartsWith(tokenStart, maxRowsCommentPrefix)) {
+            maxRows = nonNegativeInt(commentValue(maxRowsCommentPrefix), "maxrows");
+
+        } else if (regionStartsWith(tokenStart, cursorCommentPrefix)) {
+            final String value = commentValue(cursorCommentPrefix);
+            if (!"forward-only".equals(value)) {
+                throw new SqlRunnerException("invalid cursor comment [" + value + "] in "
+                        + fileDescription, null);
+            }
+            forwardOnly = true;
+
+        } else if (regionStartsWith(tokenStart, commitEveryCommentPrefix)) {
+            // we've found a commit every comment - which applies to all statements after it
+            setCommitEvery(commentValue(commitEveryCommentPrefix));
+
+        }
+
+        state = BETWEEN_STATEMENTS;
+        tokenStart = -1;
+    }
+
+    /**
+     * Starts a new parallel block - or ends the current parallel block.
+     * @param value
+     *   The value of the parallel comment - which is either "end" or the maximum number of
+     *   connections used to run the block.
+     */
+    private void startParallelBlock(final String value) {
+        if ("end".equals(value)) {
+            parallelBlock = 0;
+            parallelism = 0;
+            return;
+        }
+
+        try {
+            parallelism = Integer.parseInt(value);
+        } catch (NumberFormatException ex) {
+            throw new SqlRunnerException("invalid parallel comment [" + value + "] in "
+                    + fileDescription, ex);
+        }
+
+        if (parallelism < 1) {
+            throw new SqlRunnerException("invalid parallel comment [" + value + "] in "
+                    + fileDescription, null);
+        }
+
+        parallelBlock = ++parallelBlockCount;
+    }
+
+    /**
+     * Sets how often statements after a commit every comment are committed.
+     * @param value
+     *   The value of the commit every comment - which is "auto", "end" or a comma separated
+     *   list of a number of statements (e.g. "1000" or "1000 statements") and / or a number of
+     *   rows (e.g. "50000 rows").
+     */
+    private void setCommitEvery(final String value) {
+        commitEvery = 0;
+        commitEveryRows = 0;
+        autoCommit = false;
+
+        if ("auto".equals(value)) {
+            autoCommit = true;
+            return;
+        }
+
+        if ("end".equals(value)) {
+            return;
+        }
+
+        for (String part : value.split(",")) {
+            final String[] words = part.trim().split("\\s+");
+            final int count = nonNegativeInt(words[0], "commitevery");
+            if (count == 0 || words.length > 2) {
+                throw new SqlRunnerException("invalid commitevery comment [" + value + "] in "
+                        + fileDescription, null);
+            }
+            if (words.length == 1 || "statements".equals(words[1])) {
+                commitEvery = count;
+            } else if ("rows".equals(words[1])) {
+                commitEveryRows = count;
+            } else {
+                throw new SqlRunnerException("invalid commitevery comment [" + value + "] in "
+                        + fileDescription, null);
+            }
+        }
+    }
+
+    /**
+     * Returns the value of a comment as a number that is not negative.
+     * @param value
+     *   The value of the comment.
+     * @param comment
+     *   The name of the comment - used in exception messages.
+     * @return
+     *   The value as a number.
+     */
+    private int nonNegativeInt(final String value, final String comment) {
+        final int result;
+        try {
+            result = Integer.parseInt(value);
+        } catch (NumberFormatException ex) {
+            throw new SqlRunnerException("invalid " + comment + " comment [" + value + "] in "
+                    + fileDescription, ex);
+        }
+
+        if (result < 0) {
+            throw new SqlRunnerException("invalid " + comment + " comment [" + value + "] in "
+                    + fileDescription, null);
+        }
+
+        return result;
+    }
+
+    /**
+     * Returns the trimmed value of the comment that ends at the current position.
+     * @param commentPrefix
+     *   The prefix of the comment.
+     * @return
+     *   The value of the comment.
+     */
+    private String commentValue(final String commentPrefix) {
+        final int start = tokenStart + commentPrefix.length();
+        return new String(buffer, start, position - start).trim();
+    }
+
+    /**
+     * Called when we find the semi-colon at the end of a statement -
+     * creates the statement and resets state ready to read the next statement.
+     * @return
+     *   The statement that ends at the current position.
+     */
+    private SqlRunnerStatement endOfStatement() {
+        int end = statementEnd;
+        while (end > tokenStart && Character.isWhitespace(buffer[end - 1])) {
+            end--;
+        }
+
+        final String sql;
+        if (convertLineSeparators) {
+            sql = convertLineSeparators(tokenStart, end);
+        } else {
+            sql = new String(buffer, tokenStart, end - tokenStart);
+        }
+
+        final SqlRunnerStatement result = new SqlRunnerStatement(statementName, sql, failFast);
+        if (parallelBlock != 0) {
+            result.setParallel(parallelBlock, parallelism);
+        }
+        result.setFetchSize(fetchSize);
+        result.setMaxRows(maxRows);
+        result.setForwardOnly(forwardOnly);
+        result.setCommitEvery(commitEvery, commitEveryRows);
+        result.setAutoCommit(autoCommit);
+
+        state = BETWEEN_STATEMENTS;
+        tokenStart = -1;
+        statementName = null;
+        failFast = true;
+        fetchSize = 0;
+        maxRows = 0;
+        forwardOnly = false;
+
+        return result;
+    }
+
+    /**
+     * Creates a string from a region of the buffer, converting all line separators to the line
+     * separator of this platform.
+     * @param start
+     *   The start of the region (inclusive).
+     * @param end
+     *   The end of the region (exclusive).
+     * @return
+     *   A string created from the region of the buffer.
+     */
+    private String convertLineSeparators(final int start, final int end) {
+        final StringBuilder sb = new StringBuilder(end - start);
+        for (int i = start; i < end; i++) {
+            final char c = buffer[i];
+            if (c == '\r') {
+                sb.append(LINE_SEPARATOR);
+                if (i + 1 < end && buffer[i + 1] == '\n') {
+                    i++;
+                }
+            } else if (c == '\n') {
+                sb.append(LINE_SEPARATOR);
+            } else {
+                sb.append(c);
+            }
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Returns true if the characters at the current position match prefix.
+     * @param prefix
+     *   The prefix to look for.
+     * @return
+     *   true if the characters at the current position match prefix.
+     * @throws IOException
+     *   If reading the file fails.
+     */
+    private boolean startsWith(final String prefix) throws IOException {
+        while (limit - position < prefix.length()) {
+            if (!fill()) {
+                return false;
+            }
+        }
+        return regionStartsWith(position, prefix);
+    }
+
+    /**
+     * Returns true if the characters in buffer, starting at index, match prefix.
+     * @param index
+     *   Index of the first character to check.
+     * @param prefix
+     *   The prefix to look for.
+     * @return
+     *   true if the characters starting at index match prefix.
+     */
+    private boolean regionStartsWith(final int index, final String prefix) {
+        final int length = prefix.length();
+        if (limit - index < length) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (buffer[index + i] != prefix.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Reads more characters from the file into the buffer.
+     * Characters we've finished with are dropped from the buffer to make room - but the statement
+     * or comment being read is kept.
+     * The buffer will grow if a statement does not fit in it.
+     * @return
+     *   true if characters were read, false if we've reached the end of the file.
+     * @throws IOException
+     *   If reading the file fails.
+     */
+    private boolean fill() throws IOException {
+        if (endOfFile) {
+            return false;
+        }
+
+        final int keepFrom = (tokenStart < 0) ? position : tokenStart;
+
+        if (keepFrom > 0) {
+            // move the characters we need to keep to the start of the buffer
+            System.arraycopy(buffer, keepFrom, buffer, 0, limit - keepFrom);
+            charactersDropped += keepFrom;
+            limit -= keepFrom;
+            position -= keepFrom;
+            if (tokenStart >= 0) {
+                tokenStart -= keepFrom;
+            }
+        }
+
+        if (limit == buffer.length) {
+            final char[] newBuffer = new char[buffer.length * 2];
+            System.arraycopy(buffer, 0, newBuffer, 0, limit);
+            buffer = newBuffer;
+        }
+
+        final int read = reader.read(buffer, limit, buffer.length - limit);
+
+        if (read < 0) {
+            endOfFile = true;
+            return false;
+        }
+
+        limit += read;
+        return true;
+
+    }
+
+}
@@ -0,0 +1,180 @@
+package com.butterfill.sqlrunner.util;
+
+import com.butterfill.sqlrunner.SqlRunnerScriptSource;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reads SQL script files from a directory on the file system.
+ *
+ * <p>
+ * Files are memory-mapped and decoded a chunk at a time - so even very large files are read
+ * without copying the file contents through input streams and buffered readers.
+ * </p>
+ *
+ * @author Peter Butterfill
+ */
+public class FileSystemScriptSource implements SqlRunnerScriptSource {
+
+    /**
+     * Files are read from this directory.
+     */
+    private final File baseDirectory;
+
+    /**
+     * The character set of the SQL script files.
+     */
+    private final Charset charset;
+
+    /**
+     * Creates a script source that will read UTF-8 files from the specified directory.
+     * @param baseDirectory
+     *   Files will be read from this directory.
+     */
+    public FileSystemScriptSource(final File baseDirectory) {
+        this(baseDirectory, "UTF-8");
+    }
+
+    /**
+     * Creates a new script source.
+     * @param baseDirectory
+     *   Files will be read from this directory.
+     * @param charsetName
+     *   The name of the character set of the SQL script files.
+     */
+    public FileSystemScriptSource(final File baseDirectory, final String charsetName) {
+        if (baseDirectory == null) {
+            throw new NullPointerException("baseDirectory must not be null");
+        }
+        this.baseDirectory = baseDirectory;
+        this.charset = Charset.forName(charsetName);
+    }
+
+    /**
+     * Returns the file for the specified file name.
+     * @param fileName
+     *   Name of the file, relative to the base directory of this instance.
+     * @return
+     *   The file.
+     */
+    File getFile(final String fileName) {
+        return new File(baseDirectory, fileName);
+    }
+
+    /**
+     * Opens a script file by memory-mapping it.
+     * @param fileName
+     *   Name of the file to open, relative to the base directory of this instance.
+     * @return
+     *   A reader for the contents of the file.
+     * @throws IOException
+     *   If the file does not exist or can not be opened.
+     */
+    public Reader openScript(final String fileName) throws IOException {
+        final File file = getFile(fileName);
+
+        if (!file.isFile()) {
+            throw new FileNotFoundException(file.getPath() + " not found");
+        }
+
+        return new MappedFileReader(file, charset);
+
+    }
+
+    /**
+     * Returns the time that a script file was last modified.
+     * @param fileName
+     *   Name of the file, relative to the base directory of this instance.
+     * @return
+     *   The time that the file was last modified.
+     * @throws IOException
+     *   If the file does not exist.
+     */
+    public long lastModified(final String fileName) throws IOException {
+        final File file = getFile(fileName);
+
+        if (!file.isFile()) {
+            throw new FileNotFoundException(file.getPath() + " not found");
+        }
+
+        return file.lastModified();
+
+    }
+
+    /**
+     * Returns the size of a script file.
+     * @param fileName
+     *   Name of the file, relative to the base directory of this instance.
+     * @return
+     *   The size of the file in bytes.
+     * @throws IOException
+     *   If the file does not exist.
+     */
+    public long length(final String fileName) throws IOException {
+        final File file = getFile(fileName);
+
+        if (!file.isFile()) {
+            throw new FileNotFoundException(file.getPath() + " not found");
+        }
+
+        return file.length();
+
+    }
+
+    /**
+     * Returns the names of the files in the base directory of this instance and its
+     * sub-directories. Names of files in sub-directories use "/" as the separator.
+     * @return
+     *   The names of the files.
+     * @throws IOException
+     *   If the base directory does not exist.
+     */
+    public List<String> listScripts() throws IOException {
+        if (!baseDirectory.isDirectory()) {
+            throw new FileNotFoundException(baseDirectory.getPath() + " not found");
+        }
+        final List<String> result = new ArrayList<String>();
+        listFiles(baseDirectory, "", result);
+        return result;
+    }
+
+    /**
+     * Adds the names of the files in a directory, and its sub-directories, to a list.
+     * @param directory
+     *   The directory.
+     * @param namePrefix
+     *   Prefix of the names of the files in the directory.
+     * @param fileNames
+     *   The list to add names to.
+     */
+    static void listFiles(
+            final File directory, final String namePrefix, final List<String> fileNames) {
+        final File[] children = directory.listFiles();
+        if (children == null) {
+            return;
+        }
+        for (File child : children) {
+            if (child.isDirectory()) {
+                listFiles(child, namePrefix + child.getName() + "/", fileNames);
+            } else {
+                fileNames.add(namePrefix + child.getName());
+            }
+        }
+    }
+
+    /**
+     * Returns a string representation of this instance.
+     * @return
+     *   A string representation of this instance.
+     */
+    @Override
+    public String toString() {
+        return "baseDirectory [" + baseDirectory.getPath() + "]";
+    }
+
+}
@@ -0,0 +1,139 @@
+package com.butterfill.sqlrunner.util;
+
+import com.butterfill.sqlrunner.SqlRunnerScriptSource;
+import java.io.FileNotFoundException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Holds SQL scripts in memory - which can be useful for tests and for scripts that are built
+ * at runtime.
+ *
+ * @author Peter Butterfill
+ */
+public class InMemoryScriptSource implements SqlRunnerScriptSource {
+
+    /**
+     * The scripts held by this instance.
+     * Key is file name, value is the contents of the file.
+     */
+    private final Map<String, String> scripts = new ConcurrentHashMap<String, String>();
+
+    /**
+     * Creates a new script source that holds no scripts.
+     */
+    public InMemoryScriptSource() {
+    }
+
+    /**
+     * Creates a new script source holding a copy of the specified scripts.
+     * @param scripts
+     *   The scripts to hold. Key is file name, value is the contents of the file.
+     */
+    public InMemoryScriptSource(final Map<String, String> scripts) {
+        if (scripts == null) {
+            throw new NullPointerException("scripts must not be null");
+        }
+        this.scripts.putAll(scripts);
+    }
+
+    /**
+     * Adds a script to this instance, replacing any script already held with the same name.
+     * @param fileName
+     *   Name of the file.
+     * @param script
+     *   Contents of the file.
+     * @return
+     *   this instance.
+     */
+    public InMemoryScriptSource putScript(final String fileName, final String script) {
+        if (fileName == null) {
+            throw new NullPointerException("fileName must not be null");
+        }
+        if (script == null) {
+            throw new NullPointerException("script must not be null");
+        }
+        scripts.put(fileName, script);
+        return this;
+    }
+
+    /**
+     * Opens a script held by this instance.
+     * @param fileName
+     *   Name of the file to open.
+     * @return
+     *   A reader for the contents of the file.
+     * @throws FileNotFoundException
+     *   If this instance does not hold a script with the specified name.
+     */
+    public Reader openScript(final String fileName) throws FileNotFoundException {
+        final String script = scripts.get(fileName);
+
+        if (script == null) {
+            throw new FileNotFoundException(fileName + " not found in memory");
+        }
+
+        return new StringReader(script);
+
+    }
+
+    /**
+     * Returns 0 as the time that scripts held in memory were last modified is not known.
+     * @param fileName
+     *   Name of the file.
+     * @return
+     *   0.
+     * @throws FileNotFoundException
+     *   If this instance does not hold a script with the specified name.
+     */
+    public long lastModified(final String fileName) throws FileNotFoundException {
+        if (!scripts.containsKey(fileName)) {
+            throw new FileNotFoundException(fileName + " not found in memory");
+        }
+        return 0L;
+    }
+
+    /**
+     * Returns the number of characters in a script held by this instance.
+     * @param fileName
+     *   Name of the file.
+     * @return
+     *   The number of characters in the script.
+     * @throws FileNotFoundException
+     *   If this instance does not hold a script with the specified name.
+     */
+    public long length(final String fileName) throws FileNotFoundException {
+        final String script = scripts.get(fileName);
+
+        if (script == null) {
+            throw new FileNotFoundException(fileName + " not found in memory");
+        }
+
+        return script.length();
+
+    }
+
+    /**
+     * Returns the names of the scripts held by this instance.
+     * @return
+     *   The names of the scripts.
+     */
+    public List<String> listScripts() {
+        return new ArrayList<String>(scripts.keySet());
+    }
+
+    /**
+     * Returns a string representation of this instance.
+     * @return
+     *   A string representation of this instance.
+     */
+    @Override
+    public String toString() {
+        return "in-memory scripts " + scripts.keySet();
+    }
+
+}
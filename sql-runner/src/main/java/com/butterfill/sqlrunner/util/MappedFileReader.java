@@ -0,0 +1,224 @@
+package com.butterfill.sqlrunner.util;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+
+/**
+ * Reads characters from a memory-mapped file.
+ *
+ * <p>
+ * The file is mapped one window at a time, so files bigger than the largest possible mapping can
+ * be read.
+ * Bytes are copied from the mapped window a chunk at a time, with a single bulk copy, and decoded
+ * straight into the caller's array.
+ * </p>
+ *
+ * @author Peter Butterfill
+ */
+class MappedFileReader extends Reader {
+
+    /**
+     * The default size of the window of the file that we map at one time.
+     */
+    static final long DEFAULT_WINDOW_SIZE = 64L * 1024 * 1024;
+
+    /**
+     * The number of bytes we decode at one time.
+     */
+    private static final int CHUNK_SIZE = 65536;
+
+    /**
+     * The size of the window of the file that we map at one time.
+     */
+    private final long windowSize;
+
+    /**
+     * The channel we map the file with - set to null when this reader has been closed.
+     */
+    private FileChannel channel;
+
+    /**
+     * Size of the file in bytes.
+     */
+    private final long fileSize;
+
+    /**
+     * Decodes the bytes of the file.
+     */
+    private final CharsetDecoder decoder;
+
+    /**
+     * The mapped window of the file - null until the first read.
+     */
+    private MappedByteBuffer window;
+
+    /**
+     * Position in the file of the end of the mapped window.
+     */
+    private long windowEnd;
+
+    /**
+     * Bytes copied from the mapped window that have not yet been decoded.
+     */
+    private final ByteBuffer chunk;
+
+    /**
+     * Set to true when all characters have been decoded and flushed from the decoder.
+     */
+    private boolean endOfFile;
+
+    /**
+     * Creates a reader for the specified file.
+     * @param file
+     *   The file to read.
+     * @param charset
+     *   The character set of the file.
+     * @throws IOException
+     *   If the file can not be opened.
+     */
+    MappedFileReader(final File file, final Charset charset) throws IOException {
+        this(file, charset, DEFAULT_WINDOW_SIZE, CHUNK_SIZE);
+    }
+
+    /**
+     * Creates a reader for the specified file.
+     * @param file
+     *   The file to read.
+     * @param charset
+     *   The character set of the file.
+     * @param windowSize
+     *   The size of the window of the file that we map at one time.
+     * @param chunkSize
+     *   The number of bytes we decode at one time.
+     * @throws IOException
+     *   If the file can not be opened.
+     */
+    MappedFileReader(final File file, final Charset charset, final long windowSize,
+            final int chunkSize) throws IOException {
+        this.windowSize = windowSize;
+        // malformed input is replaced, as it would be by InputStreamReader
+        this.decoder = charset.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        this.chunk = ByteBuffer.allocate(chunkSize);
+        // the chunk starts empty
+        this.chunk.flip();
+        final FileInputStream inputStream = new FileInputStream(file);
+        this.channel = inputStream.getChannel();
+        this.fileSize = channel.size();
+    }
+
+    /**
+     * Reads characters into a portion of an array.
+     * @param cbuf
+     *   Destination buffer.
+     * @param off
+     *   Offset at which to start storing characters.
+     * @param len
+     *   Maximum number of characters to read.
+     * @return
+     *   The number of characters read, or -1 if the end of the file has been reached.
+     * @throws IOException
+     *   If this reader has been closed or reading the file fails.
+     */
+    @Override
+    public int read(final char[] cbuf, final int off, final int len) throws IOException {
+        if (channel == null) {
+            throw new IOException("reader has been closed");
+        }
+
+        if (len == 0) {
+            return 0;
+        }
+
+        final CharBuffer out = CharBuffer.wrap(cbuf, off, len);
+
+        while (out.position() == off && !endOfFile) {
+            final boolean endOfInput = fillChunk();
+
+            final CoderResult result = decoder.decode(chunk, out, endOfInput);
+
+            if (result.isError()) {
+                result.throwException();
+            }
+
+            if (result.isUnderflow() && endOfInput) {
+                decoder.flush(out);
+                endOfFile = true;
+            }
+        }
+
+        final int read = out.position() - off;
+        return (read == 0) ? -1 : read;
+
+    }
+
+    /**
+     * Copies bytes from the mapped window into the chunk - keeping bytes that have not yet been
+     * decoded (the last chunk may have ended part way through a character).
+     * @return
+     *   true if the chunk holds the last bytes of the file.
+     * @throws IOException
+     *   If mapping the file fails.
+     */
+    private boolean fillChunk() throws IOException {
+        chunk.compact();
+
+        while (chunk.hasRemaining()) {
+            if (window == null || !window.hasRemaining()) {
+                if (windowEnd >= fileSize && window != null) {
+                    break;
+                }
+                mapNextWindow();
+            }
+            final int count = Math.min(chunk.remaining(), window.remaining());
+            window.get(chunk.array(), chunk.arrayOffset() + chunk.position(), count);
+            chunk.position(chunk.position() + count);
+        }
+
+        chunk.flip();
+
+        return windowEnd >= fileSize && !window.hasRemaining();
+    }
+
+    /**
+     * Maps the next window of the file.
+     * @throws IOException
+     *   If mapping the file fails.
+     */
+    private void mapNextWindow() throws IOException {
+        final long start = windowEnd;
+        final long size = Math.min(windowSize, fileSize - start);
+        window = channel.map(FileChannel.MapMode.READ_ONLY, start, size);
+        windowEnd = start + size;
+    }
+
+    /**
+     * Closes this reader.
+     * The mapped window will be released when it is garbage collected.
+     * @throws IOException
+     *   If closing the file fails.
+     */
+    @Override
+    public void close() throws IOException {
+        if (channel != null) {
+            try {
+                channel.close();
+            } finally {
+                channel = null;
+                window = null;
+            }
+        }
+    }
+
+}
@@ -0,0 +1,409 @@
+package com.butterfill.sqlrunner.util;
+
+import com.butterfill.sqlrunner.SqlRunnerChangeAwareFileReader;
+import com.butterfill.sqlrunner.SqlRunnerException;
+import com.butterfill.sqlrunner.SqlRunnerScriptSource;
+import com.butterfill.sqlrunner.SqlRunnerStatement;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Wraps a {@link DefaultFileReader} and saves the statements read from each file in a cache
+ * directory - so that files only need to be parsed once, even across restarts.
+ *
+ * <p>
+ * Each file has one cache entry, named after the file (and the single line comment prefix used
+ * to parse it). The entry records the size and last modified time of the file along with a
+ * digest of its contents.
+ * Reading a file whose size and last modified time have not changed is a single sequential read
+ * of the cache entry - the file itself is not read at all.
+ * When the size or last modified time has changed, or is not known, the digest is calculated
+ * (which needs a single pass over the file) and the file is only parsed again if the digest has
+ * changed too.
+ * </p>
+ *
+ * <p>
+ * Cache entries that can not be read (e.g. they were written by a different version of this
+ * class) are ignored and replaced.
+ * </p>
+ *
+ * @author Peter Butterfill
+ */
+public class PrecompiledFileReader implements SqlRunnerChangeAwareFileReader {
+
+    /**
+     * The name of this class.
+     */
+    public static final String CLASS_NAME = PrecompiledFileReader.class.getName();
+
+    /**
+     * The logger for this class.
+     */
+    private static final Logger logger = Logger.getLogger(CLASS_NAME);
+
+    /**
+     * The first 4 bytes of every cache entry.
+     */
+    private static final int MAGIC_NUMBER = 0x53514c52;
+
+    /**
+     * Version of the cache entry format - change this when the format changes.
+     */
+    private static final int FORMAT_VERSION = 7;
+
+    /**
+     * Cache entry file names end with this suffix.
+     */
+    private static final String CACHE_FILE_SUFFIX = ".sqlrunner";
+
+    /**
+     * The file reader being wrapped by this instance.
+     */
+    private final DefaultFileReader fileReader;
+
+    /**
+     * Cache entries are saved in this directory.
+     */
+    private final File cacheDirectory;
+
+    /**
+     * Creates a new precompiled file reader.
+     * @param fileReader
+     *   The file reader to wrap - used to parse files that are not in the cache.
+     * @param cacheDirectory
+     *   Cache entries are saved in this directory, which will be created if it does not exist.
+     */
+    public PrecompiledFileReader(final DefaultFileReader fileReader, final File cacheDirectory) {
+        if (fileReader == null) {
+            throw new NullPointerException("fileReader must not be null");
+        }
+        if (cacheDirectory == null) {
+            throw new NullPointerException("cacheDirectory must not be null");
+        }
+        this.fileReader = fileReader;
+        this.cacheDirectory = cacheDirectory;
+    }
+
+    /**
+     * Reads a file -
+     * loading statements from the cache if the file has been read before, parsing the file and
+     * saving the statements in the cache otherwise.
+     * @param fileName
+     *   Name of the file to read.
+     * @return
+     *   The statements from the file.
+     */
+    public List<SqlRunnerStatement> readFile(final String fileName) {
+        if (fileName == null) {
+            throw new NullPointerException("fileName must not be null");
+        }
+
+        final SqlRunnerScriptSource scriptSource = fileReader.getScriptSource();
+        final String salt = FORMAT_VERSION + fileReader.getSingleLineCommentPrefix();
+        final File cacheFile = new File(cacheDirectory,
+                ScriptDigest.sha1(fileName + '\n' + salt) + CACHE_FILE_SUFFIX);
+
+        final long length;
+        final long lastModified;
+
+        try {
+            length = scriptSource.length(fileName);
+            lastModified = scriptSource.lastModified(fileName);
+
+        } catch (IOException ex) {
+            throw new SqlRunnerException(
+                    "failed to read file [" + fileName + "]. using " + scriptSource, ex);
+
+        }
+
+        String digest = null;
+        List<SqlRunnerStatement> result = null;
+
+        if (cacheFile.isFile()) {
+            try {
+                final DataInputStream in = new DataInputStream(
+                        new BufferedInputStream(new FileInputStream(cacheFile)));
+
+                try {
+                    if (in.readInt() != MAGIC_NUMBER || in.readInt() != FORMAT_VERSION) {
+                        throw new IOException("unknown cache entry format");
+                    }
+
+                    final boolean sameFile = fileName.equals(readString(in));
+                    final long cachedLength = in.readLong();
+                    final long cachedLastModified = in.readLong();
+                    final String cachedDigest = readString(in);
+
+                    if (sameFile && length >= 0 && lastModified != 0
+                            && length == cachedLength && lastModified == cachedLastModified) {
+                        return readStatements(in);
+                    }
+
+                    if (sameFile) {
+                        // the file may have been touched without being changed
+                        digest = digest(fileName, salt);
+                        if (digest.equals(cachedDigest)) {
+                            result = readStatements(in);
+                        }
+                    }
+
+                } finally {
+                    in.close();
+
+                }
+
+            } catch (IOException ex) {
+                logger.logp(Level.WARNING, CLASS_NAME, "readFile(String)",
+                        "ignoring cache entry that can not be loaded " + cacheFile, ex);
+                if (!cacheFile.delete()) {
+                    logger.logp(Level.WARNING, CLASS_NAME, "readFile(String)",
+                            "failed to delete {0}", cacheFile);
+                }
+
+            }
+
+        }
+
+        if (digest == null) {
+            digest = digest(fileName, salt);
+        }
+
+        if (result == null) {
+            result = fileReader.readFile(fileName);
+        }
+
+        try {
+            save(cacheFile, fileName, length, lastModified, digest, result);
+
+        } catch (IOException ex) {
+            // we can carry on without saving the cache entry
+            logger.logp(Level.WARNING, CLASS_NAME, "readFile(String)",
+                    "failed to save cache entry " + cacheFile, ex);
+
+        }
+
+        return result;
+
+    }
+
+    /**
+     * Returns the time that a file was last modified.
+     * @param fileName
+     *   Name of the file.
+     * @return
+     *   The time that the file was last modified, or 0 if the time is not known.
+     */
+    public long lastModified(final String fileName) {
+        return fileReader.lastModified(fileName);
+    }
+
+    /**
+     * Returns a checksum of the contents of a file.
+     * @param fileName
+     *   Name of the file.
+     * @return
+     *   A checksum of the file.
+     */
+    public String checksum(final String fileName) {
+        return fileReader.checksum(fileName);
+    }
+
+    /**
+     * Returns a digest of the contents of a file.
+     * @param fileName
+     *   Name of the file.
+     * @param salt
+     *   Added to the digest before the contents of the file.
+     * @return
+     *   A digest of the contents of the file.
+     */
+    private String digest(final String fileName, final String salt) {
+        try {
+            return ScriptDigest.sha1(fileReader.getScriptSource(), fileName, salt);
+
+        } catch (IOException ex) {
+            throw new SqlRunnerException("failed to read file [" + fileName + "]. using "
+                    + fileReader.getScriptSource(), ex);
+
+        }
+
+    }
+
+    /**
+     * Reads the statements of a cache entry - which follow the header of the entry.
+     * @param in
+     *   The cache entry, positioned after the header.
+     * @return
+     *   The statements from the cache entry.
+     * @throws IOException
+     *   If the cache entry can not be read.
+     */
+    private List<SqlRunnerStatement> readStatements(final DataInputStream in)
+            throws IOException {
+        final int statementCount = in.readInt();
+        final List<SqlRunnerStatement> result =
+                new ArrayList<SqlRunnerStatement>(statementCount);
+
+        for (int i = 0; i < statementCount; i++) {
+            final String name = readString(in);
+            final boolean failFast = in.readBoolean();
+            final int parallelBlock = in.readInt();
+            final int parallelism = in.readInt();
+            final int fetchSize = in.readInt();
+            final int maxRows = in.readInt();
+            final boolean forwardOnly = in.readBoolean();
+            final int commitEvery = in.readInt();
+            final int commitEveryRows = in.readInt();
+            final boolean autoCommit = in.readBoolean();
+            if (parallelBlock < 0 || (parallelBlock != 0 && parallelism < 1)
+                    || fetchSize < 0 || maxRows < 0
+                    || commitEvery < 0 || commitEveryRows < 0) {
+                throw new IOException("corrupt cache entry");
+            }
+            final String sql = readString(in);
+            final SqlRunnerStatement statement = new SqlRunnerStatement(name, sql, failFast);
+            statement.setParallel(parallelBlock, parallelism);
+            statement.setFetchSize(fetchSize);
+            statement.setMaxRows(maxRows);
+            statement.setForwardOnly(forwardOnly);
+            statement.setCommitEvery(commitEvery, commitEveryRows);
+            statement.setAutoCommit(autoCommit);
+            result.add(statement);
+        }
+
+        return result;
+
+    }
+
+    /**
+     * Saves statements in a cache entry.
+     * The entry is written to a temporary file and then renamed so that other readers never see
+     * a partly written entry.
+     * @param cacheFile
+     *   The cache entry.
+     * @param fileName
+     *   Name of the file that the statements were read from.
+     * @param length
+     *   The size of the file.
+     * @param lastModified
+     *   The time that the file was last modified.
+     * @param digest
+     *   A digest of the contents of the file.
+     * @param statements
+     *   The statements to save.
+     * @throws IOException
+     *   If the cache entry can not be written.
+     */
+    private void save(final File cacheFile, final String fileName, final long length,
+            final long lastModified, final String digest,
+            final List<SqlRunnerStatement> statements) throws IOException {
+        if (!cacheDirectory.isDirectory() && !cacheDirectory.mkdirs()) {
+            throw new IOException("failed to create cache directory " + cacheDirectory);
+        }
+
+        final File tempFile = File.createTempFile("sqlrunner", ".tmp", cacheDirectory);
+
+        try {
+            final DataOutputStream out = new DataOutputStream(
+                    new BufferedOutputStream(new FileOutputStream(tempFile)));
+
+            try {
+                out.writeInt(MAGIC_NUMBER);
+                out.writeInt(FORMAT_VERSION);
+                writeString(out, fileName);
+                out.writeLong(length);
+                out.writeLong(lastModified);
+                writeString(out, digest);
+                out.writeInt(statements.size());
+
+                for (SqlRunnerStatement statement : statements) {
+                    writeString(out, statement.getName());
+                    out.writeBoolean(statement.getFailFast());
+                    out.writeInt(statement.getParallelBlock());
+                    out.writeInt(statement.getParallelism());
+                    out.writeInt(statement.getFetchSize());
+                    out.writeInt(statement.getMaxRows());
+                    out.writeBoolean(statement.getForwardOnly());
+                    out.writeInt(statement.getCommitEvery());
+                    out.writeInt(statement.getCommitEveryRows());
+                    out.writeBoolean(statement.getAutoCommit());
+                    writeString(out, statement.getSql());
+                }
+
+            } finally {
+                out.close();
+
+            }
+
+            // replace any previous entry for this file. if another reader saved an entry
+            // at the same time, we can't rename - which is fine
+            if (cacheFile.isFile() && !cacheFile.delete()) {
+                logger.logp(Level.WARNING, CLASS_NAME,
+                        "save(File, String, long, long, String, List)",
+                        "failed to delete {0}", cacheFile);
+            }
+            if (!tempFile.renameTo(cacheFile) && !cacheFile.isFile()) {
+                throw new IOException("failed to rename " + tempFile + " to " + cacheFile);
+            }
+
+        } finally {
+            if (tempFile.exists() && !tempFile.delete()) {
+                logger.logp(Level.WARNING, CLASS_NAME,
+                        "save(File, String, long, long, String, List)",
+                        "failed to delete {0}", tempFile);
+            }
+
+        }
+
+    }
+
+    /**
+     * Writes a string, which may be null, as a length followed by UTF-8 bytes.
+     * @param out
+     *   Where to write the string.
+     * @param string
+     *   The string to write.
+     * @throws IOException
+     *   If writing fails.
+     */
+    private void writeString(final DataOutputStream out, final String string)
+            throws IOException {
+        if (string == null) {
+            out.writeInt(-1);
+        } else {
+            final byte[] bytes = string.getBytes("UTF-8");
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+    }
+
+    /**
+     * Reads a string written by {@link #writeString(java.io.DataOutputStream, java.lang.String)}.
+     * @param in
+     *   Where to read the string from.
+     * @return
+     *   The string, which may be null.
+     * @throws IOException
+     *   If reading fails.
+     */
+    private String readString(final DataInputStream in) throws IOException {
+        final int length = in.readInt();
+        if (length < 0) {
+            return null;
+        }
+        final byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, "UTF-8");
+    }
+
+}
@@ -0,0 +1,147 @@
+package com.butterfill.sqlrunner.util;
+
+import com.butterfill.sqlrunner.SqlRunnerScriptSource;
+import java.io.IOException;
+import java.io.Reader;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Helper class for calculating digests of the contents of SQL script files.
+ *
+ * @author Peter Butterfill
+ */
+final class ScriptDigest {
+
+    /**
+     * The number of characters we read from a script in one go.
+     */
+    private static final int BUFFER_SIZE = 8192;
+
+    /**
+     * Number of bits in a byte.
+     */
+    private static final int BITS_PER_BYTE = 8;
+
+    /**
+     * Number of bits in a hex digit.
+     */
+    private static final int BITS_PER_HEX_DIGIT = 4;
+
+    /**
+     * Mask for the low hex digit of an int.
+     */
+    private static final int HEX_DIGIT_MASK = 0xf;
+
+    /**
+     * Used to convert digest bytes to hex.
+     */
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+    /**
+     * This class should not be instantiated.
+     */
+    private ScriptDigest() {
+    }
+
+    /**
+     * Returns a SHA-1 digest, as a hex string, of the contents of a script file.
+     * @param scriptSource
+     *   The source of the script file.
+     * @param fileName
+     *   Name of the script file.
+     * @param salt
+     *   Added to the digest before the contents of the file - so that the same file read with
+     *   different settings gives a different digest.
+     * @return
+     *   A digest of the contents of the script file.
+     * @throws IOException
+     *   If reading the file fails.
+     */
+    static String sha1(final SqlRunnerScriptSource scriptSource, final String fileName,
+            final String salt) throws IOException {
+        final MessageDigest messageDigest = newSha1();
+
+        final char[] chars = new char[BUFFER_SIZE];
+        final byte[] bytes = new byte[BUFFER_SIZE * 2];
+
+        update(messageDigest, salt.toCharArray(), salt.length(), bytes);
+
+        final Reader reader = scriptSource.openScript(fileName);
+        try {
+            for (int read = reader.read(chars); read != -1; read = reader.read(chars)) {
+                update(messageDigest, chars, read, bytes);
+            }
+        } finally {
+            reader.close();
+        }
+
+        return toHex(messageDigest.digest());
+
+    }
+
+    /**
+     * Returns a SHA-1 digest, as a hex string, of a string.
+     * @param string
+     *   The string to digest.
+     * @return
+     *   A digest of the string.
+     */
+    static String sha1(final String string) {
+        final MessageDigest messageDigest = newSha1();
+        update(messageDigest, string.toCharArray(), string.length(),
+                new byte[string.length() * 2]);
+        return toHex(messageDigest.digest());
+    }
+
+    /**
+     * Returns a new SHA-1 message digest.
+     * @return
+     *   A new SHA-1 message digest.
+     */
+    private static MessageDigest newSha1() {
+        try {
+            return MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException ex) {
+            // every Java platform is required to support SHA-1
+            throw new IllegalStateException("SHA-1 not supported", ex);
+        }
+    }
+
+    /**
+     * Converts digest bytes to a hex string.
+     * @param digest
+     *   The digest bytes.
+     * @return
+     *   The digest as a hex string.
+     */
+    private static String toHex(final byte[] digest) {
+        final char[] hex = new char[digest.length * 2];
+        for (int i = 0; i < digest.length; i++) {
+            hex[i * 2] = HEX_DIGITS[(digest[i] >> BITS_PER_HEX_DIGIT) & HEX_DIGIT_MASK];
+            hex[i * 2 + 1] = HEX_DIGITS[digest[i] & HEX_DIGIT_MASK];
+        }
+        return new String(hex);
+    }
+
+    /**
+     * Adds characters to a digest - two bytes per character.
+     * @param messageDigest
+     *   The digest to update.
+     * @param chars
+     *   The characters to add.
+     * @param count
+     *   The number of characters to add.
+     * @param bytes
+     *   A work area - which must be at least twice as long as count.
+     */
+    private static void update(final MessageDigest messageDigest, final char[] chars,
+            final int count, final byte[] bytes) {
+        for (int i = 0; i < count; i++) {
+            bytes[i * 2] = (byte) (chars[i] >> BITS_PER_BYTE);
+            bytes[i * 2 + 1] = (byte) chars[i];
+        }
+        messageDigest.update(bytes, 0, count * 2);
+    }
+
+}
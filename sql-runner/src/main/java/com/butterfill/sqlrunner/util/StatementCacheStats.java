@@ -0,0 +1,117 @@
+package com.butterfill.sqlrunner.util;
+
+/**
+ * A snapshot of the statistics of a {@link StatementCachingCallbackHandlerImpl}.
+ * Counts are totals since the handler was created.
+ *
+ * @author Peter Butterfill
+ */
+public final class StatementCacheStats {
+
+    /**
+     * The number of statements that were found in the cache.
+     */
+    private final long hitCount;
+
+    /**
+     * The number of statements that had to be prepared.
+     */
+    private final long missCount;
+
+    /**
+     * The number of statements removed from the cache to stay within the limit of the cache.
+     */
+    private final long evictionCount;
+
+    /**
+     * The number of statements in the cache.
+     */
+    private final int statementCount;
+
+    /**
+     * Creates a new snapshot.
+     * @param hitCount
+     *   The number of statements that were found in the cache.
+     * @param missCount
+     *   The number of statements that had to be prepared.
+     * @param evictionCount
+     *   The number of statements removed from the cache.
+     * @param statementCount
+     *   The number of statements in the cache.
+     */
+    StatementCacheStats(final long hitCount, final long missCount, final long evictionCount,
+            final int statementCount) {
+        this.hitCount = hitCount;
+        this.missCount = missCount;
+        this.evictionCount = evictionCount;
+        this.statementCount = statementCount;
+    }
+
+    /**
+     * Returns the number of statements that were found in the cache.
+     * @return
+     *   The number of statements that were found in the cache.
+     */
+    public long getHitCount() {
+        return hitCount;
+    }
+
+    /**
+     * Returns the number of statements that had to be prepared.
+     * @return
+     *   The number of statements that had to be prepared.
+     */
+    public long getMissCount() {
+        return missCount;
+    }
+
+    /**
+     * Returns the ratio of hits to requests - or 1.0 if there have been no requests.
+     * @return
+     *   The ratio of hits to requests.
+     */
+    public double getHitRate() {
+        final long requestCount = hitCount + missCount;
+        return (requestCount == 0) ? 1.0 : (double) hitCount / requestCount;
+    }
+
+    /**
+     * Returns the number of statements removed from the cache to stay within the limit of the
+     * cache.
+     * @return
+     *   The number of statements removed from the cache.
+     */
+    public long getEvictionCount() {
+        return evictionCount;
+    }
+
+    /**
+     * Returns the number of statements in the cache - for all connections.
+     * @return
+     *   The number of statements in the cache.
+     */
+    public int getStatementCount() {
+        return statementCount;
+    }
+
+    /**
+     * Returns a string representation of this instance.
+     * @return
+     *   A string representation of this instance.
+     */
+    @Override
+    public String toString() {
+        return new StringBuilder()
+                .append("StatementCacheStats[hitCount=")
+                .append(hitCount)
+                .append(", missCount=")
+                .append(missCount)
+                .append(", evictionCount=")
+                .append(evictionCount)
+                .append(", statementCount=")
+                .append(statementCount)
+                .append("]")
+                .toString();
+    }
+
+}
@@ -0,0 +1,654 @@
+package com.butterfill.sqlrunner.util;
+
+import com.butterfill.sqlrunner.SqlRunnerCallbackHandler;
+import com.butterfill.sqlrunner.SqlRunnerStatement;
+import com.butterfill.sqlrunner.SqlRunnerStatementCachingCallbackHandler;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Wraps a {@link SqlRunnerCallbackHandler} and keeps the statements that it prepares open -
+ * so that running the same SQL again on the same connection re-uses the prepared statement.
+ *
+ * <p>
+ * Statements are cached per connection and keyed by SQL. Each connection holds at most
+ * maxStatementsPerConnection statements - when the limit is exceeded, the least recently used
+ * statement is closed.
+ * The wrapped handler is called for every statement, so it can still bind values and register
+ * out parameters, but it is given a connection that returns cached statements from
+ * prepareStatement(String) and prepareCall(String) - after clearing their parameters and
+ * putting their fetch size, max rows and fetch direction back to the values they had when they
+ * were prepared, so hints given for one run of a statement don't stick to the next.
+ * Statements prepared in any other way are not cached.
+ * </p>
+ *
+ * <p>
+ * SqlRunner closes the statements cached for a connection before it closes a connection that it
+ * got from its data source. If you pass your own connection to SqlRunner, call
+ * {@link #releaseConnection(java.sql.Connection) } before you close the connection.
+ * {@link #getStats()} returns the number of hits, misses and evictions.
+ * </p>
+ *
+ * <p>
+ * Instances of this class are thread safe - so they can be shared by SqlRunners that use
+ * different connections at the same time.
+ * </p>
+ *
+ * @author Peter Butterfill
+ */
+public class StatementCachingCallbackHandlerImpl
+        implements SqlRunnerStatementCachingCallbackHandler {
+
+    /**
+     * The name of this class.
+     */
+    public static final String CLASS_NAME = StatementCachingCallbackHandlerImpl.class.getName();
+
+    /**
+     * The logger for this class.
+     */
+    private static final Logger logger = Logger.getLogger(CLASS_NAME);
+
+    /**
+     * The number of statements cached per connection if no limit is specified.
+     */
+    public static final int DEFAULT_MAX_STATEMENTS_PER_CONNECTION = 50;
+
+    /**
+     * The initial capacity of the map that holds the statements of a connection.
+     */
+    private static final int INITIAL_CAPACITY = 16;
+
+    /**
+     * The load factor of the map that holds the statements of a connection.
+     */
+    private static final float LOAD_FACTOR = 0.75f;
+
+    /**
+     * The handler that prepares statements.
+     */
+    private final SqlRunnerCallbackHandler callbackHandler;
+
+    /**
+     * The maximum number of statements cached per connection.
+     */
+    private final int maxStatementsPerConnection;
+
+    /**
+     * The statement caches. Key is connection.
+     * This map is also the lock that guards statementsInUse.
+     */
+    private final Map<Connection, StatementCache> caches =
+            new IdentityHashMap<Connection, StatementCache>();
+
+    /**
+     * The cached statements that have been returned by prepareStatement and not yet released.
+     */
+    private final Map<PreparedStatement, CachedStatement> statementsInUse =
+            new IdentityHashMap<PreparedStatement, CachedStatement>();
+
+    /**
+     * The number of statements that were found in the cache.
+     */
+    private final AtomicLong hitCount = new AtomicLong();
+
+    /**
+     * The number of statements that had to be prepared.
+     */
+    private final AtomicLong missCount = new AtomicLong();
+
+    /**
+     * The number of statements removed from the cache to stay within the limit.
+     */
+    private final AtomicLong evictionCount = new AtomicLong();
+
+    /**
+     * Creates a new handler that caches statements prepared by a
+     * {@link DefaultCallbackHandlerImpl}.
+     */
+    public StatementCachingCallbackHandlerImpl() {
+        this(new DefaultCallbackHandlerImpl());
+    }
+
+    /**
+     * Creates a new handler that caches statements prepared by the specified handler - holding up
+     * to {@link #DEFAULT_MAX_STATEMENTS_PER_CONNECTION} statements per connection.
+     * @param callbackHandler
+     *   The handler that prepares statements.
+     */
+    public StatementCachingCallbackHandlerImpl(final SqlRunnerCallbackHandler callbackHandler) {
+        this(callbackHandler, DEFAULT_MAX_STATEMENTS_PER_CONNECTION);
+    }
+
+    /**
+     * Creates a new handler that caches statements prepared by the specified handler.
+     * @param callbackHandler
+     *   The handler that prepares statements.
+     * @param maxStatementsPerConnection
+     *   The maximum number of statements cached per connection - which must be at least 1.
+     */
+    public StatementCachingCallbackHandlerImpl(final SqlRunnerCallbackHandler callbackHandler,
+            final int maxStatementsPerConnection) {
+        if (callbackHandler == null) {
+            throw new NullPointerException("callbackHandler must not be null");
+        }
+        if (maxStatementsPerConnection < 1) {
+            throw new IllegalArgumentException("maxStatementsPerConnection must be at least 1");
+        }
+        this.callbackHandler = callbackHandler;
+        this.maxStatementsPerConnection = maxStatementsPerConnection;
+    }
+
+    /**
+     * Returns a prepared statement - which will be a cached statement if the wrapped handler
+     * prepares SQL that has already been prepared on the connection.
+     * @param connection
+     *   The connection we use to prepare the statement.
+     * @param sqlRunnerStatement
+     *   The statement we want to run.
+     * @return
+     *   A prepared statement.
+     * @throws SQLException
+     *   If the wrapped handler throws an exception.
+     */
+    public PreparedStatement prepareStatement(
+            final Connection connection, final SqlRunnerStatement sqlRunnerStatement)
+            throws SQLException {
+        if (connection == null) {
+            throw new NullPointerException("connection must not be null");
+        }
+        return callbackHandler.prepareStatement(
+                getCache(connection).cachingConnection, sqlRunnerStatement);
+    }
+
+    /**
+     * Calls executeComplete of the wrapped handler.
+     * @param preparedStatement
+     *   The prepared statement that has just be run.
+     * @param sqlRunnerStatement
+     *   The SqlRunnerStatement.
+     * @throws SQLException
+     *   If the wrapped handler throws an exception.
+     */
+    public void executeComplete(
+            final PreparedStatement preparedStatement,
+            final SqlRunnerStatement sqlRunnerStatement)
+            throws SQLException {
+        callbackHandler.executeComplete(preparedStatement, sqlRunnerStatement);
+    }
+
+    /**
+     * Puts a statement back in the cache - or closes it if it is not cached.
+     * @param preparedStatement
+     *   The statement that SqlRunner has finished with.
+     */
+    public void releaseStatement(final PreparedStatement preparedStatement) {
+        final CachedStatement cachedStatement;
+        synchronized (caches) {
+            cachedStatement = statementsInUse.remove(preparedStatement);
+        }
+        if (cachedStatement == null || !cachedStatement.cache.checkIn(cachedStatement)) {
+            close(preparedStatement);
+        }
+    }
+
+    /**
+     * Closes the statements cached for a connection.
+     * @param connection
+     *   The connection that is about to be closed.
+     */
+    public void releaseConnection(final Connection connection) {
+        final StatementCache cache;
+        synchronized (caches) {
+            cache = caches.remove(connection);
+        }
+        if (cache != null) {
+            cache.closeAll();
+        }
+    }
+
+    /**
+     * Closes the statements cached for all connections.
+     */
+    public void releaseAll() {
+        final List<StatementCache> released;
+        synchronized (caches) {
+            released = new ArrayList<StatementCache>(caches.values());
+            caches.clear();
+        }
+        for (StatementCache cache : released) {
+            cache.closeAll();
+        }
+    }
+
+    /**
+     * Returns a snapshot of the statistics of this handler.
+     * @return
+     *   A snapshot of the statistics of this handler.
+     */
+    public StatementCacheStats getStats() {
+        int statementCount = 0;
+        synchronized (caches) {
+            for (StatementCache cache : caches.values()) {
+                statementCount += cache.size();
+            }
+        }
+        return new StatementCacheStats(
+                hitCount.get(), missCount.get(), evictionCount.get(), statementCount);
+    }
+
+    /**
+     * Returns the cache for a connection - creating it if needed.
+     * Creating a cache also closes the caches of connections that have been closed without
+     * being released.
+     * @param connection
+     *   The connection.
+     * @return
+     *   The cache for the connection.
+     */
+    private StatementCache getCache(final Connection connection) {
+        final List<StatementCache> closedCaches = new ArrayList<StatementCache>();
+        final StatementCache result;
+
+        synchronized (caches) {
+            final StatementCache cache = caches.get(connection);
+            if (cache != null) {
+                return cache;
+            }
+
+            for (Iterator<StatementCache> i = caches.values().iterator(); i.hasNext();) {
+                final StatementCache other = i.next();
+                if (isClosed(other.connection)) {
+                    i.remove();
+                    closedCaches.add(other);
+                }
+            }
+
+            result = new StatementCache(connection);
+            caches.put(connection, result);
+        }
+
+        for (StatementCache closedCache : closedCaches) {
+            closedCache.closeAll();
+        }
+
+        return result;
+
+    }
+
+    /**
+     * Returns true if a connection is closed.
+     * @param connection
+     *   The connection.
+     * @return
+     *   true if the connection is closed or we could not find out.
+     */
+    private static boolean isClosed(final Connection connection) {
+        try {
+            return connection.isClosed();
+        } catch (SQLException ex) {
+            return true;
+        }
+    }
+
+    /**
+     * Closes a statement without letting exceptions propagate.
+     * @param statement
+     *   The statement to close.
+     */
+    private static void close(final PreparedStatement statement) {
+        try {
+            statement.close();
+        } catch (SQLException ex) {
+            logger.logp(Level.WARNING, CLASS_NAME, "close(PreparedStatement)",
+                    "failed to close statement", ex);
+        }
+    }
+
+    /**
+     * A statement held by a cache.
+     */
+    private static final class CachedStatement {
+
+        /**
+         * The cache that holds the statement.
+         */
+        private final StatementCache cache;
+
+        /**
+         * The statement.
+         */
+        private final PreparedStatement statement;
+
+        /**
+         * The fetch size of the statement when it was prepared.
+         */
+        private final int fetchSize;
+
+        /**
+         * The max rows of the statement when it was prepared.
+         */
+        private final int maxRows;
+
+        /**
+         * The fetch direction of the statement when it was prepared.
+         */
+        private final int fetchDirection;
+
+        /**
+         * true if the statement has been returned by prepareStatement and not yet released.
+         * Guarded by cache.
+         */
+        private boolean inUse = true;
+
+        /**
+         * true if the statement has been removed from the cache.
+         * Guarded by cache.
+         */
+        private boolean removed;
+
+        /**
+         * Creates a new cached statement - which is in use.
+         * @param cache
+         *   The cache that holds the statement.
+         * @param statement
+         *   The statement.
+         * @param fetchSize
+         *   The fetch size of the statement when it was prepared.
+         * @param maxRows
+         *   The max rows of the statement when it was prepared.
+         * @param fetchDirection
+         *   The fetch direction of the statement when it was prepared.
+         */
+        private CachedStatement(final StatementCache cache, final PreparedStatement statement,
+                final int fetchSize, final int maxRows, final int fetchDirection) {
+            this.cache = cache;
+            this.statement = statement;
+            this.fetchSize = fetchSize;
+            this.maxRows = maxRows;
+            this.fetchDirection = fetchDirection;
+        }
+
+        /**
+         * Gets the statement ready to be used again - clearing its parameters and putting its
+         * fetch size, max rows and fetch direction back to the values it had when it was
+         * prepared.
+         * @throws SQLException
+         *   If the statement can not be reset.
+         */
+        private void reset() throws SQLException {
+            statement.clearParameters();
+            statement.setFetchSize(fetchSize);
+            statement.setMaxRows(maxRows);
+            statement.setFetchDirection(fetchDirection);
+        }
+
+    }
+
+    /**
+     * The statements cached for one connection - which is also the invocation handler of the
+     * connection given to the wrapped handler.
+     */
+    private final class StatementCache implements InvocationHandler {
+
+        /**
+         * The connection.
+         */
+        private final Connection connection;
+
+        /**
+         * The connection given to the wrapped handler.
+         */
+        private final Connection cachingConnection;
+
+        /**
+         * The cached statements, least recently used first. Key is method name and SQL.
+         * Guarded by this.
+         */
+        private final Map<String, CachedStatement> statements =
+                new LinkedHashMap<String, CachedStatement>(INITIAL_CAPACITY, LOAD_FACTOR, true);
+
+        /**
+         * Creates a new cache.
+         * @param connection
+         *   The connection.
+         */
+        private StatementCache(final Connection connection) {
+            this.connection = connection;
+            this.cachingConnection = (Connection) Proxy.newProxyInstance(
+                    Connection.class.getClassLoader(), new Class<?>[] {Connection.class}, this);
+        }
+
+        /**
+         * Handles calls to the caching connection - calls that prepare statements from SQL use
+         * the cache and all other calls are passed to the connection.
+         * @param proxy
+         *   The caching connection.
+         * @param method
+         *   The method that was called.
+         * @param args
+         *   The arguments of the call.
+         * @return
+         *   The result of the call.
+         * @throws Throwable
+         *   If the connection throws an exception.
+         */
+        public Object invoke(final Object proxy, final Method method, final Object[] args)
+                throws Throwable {
+            if (args != null && args.length == 1 && args[0] instanceof String
+                    && ("prepareStatement".equals(method.getName())
+                    || "prepareCall".equals(method.getName()))) {
+                return prepare(method, (String) args[0]);
+            }
+            return invokeOnConnection(method, args);
+        }
+
+        /**
+         * Calls a method of the connection.
+         * @param method
+         *   The method to call.
+         * @param args
+         *   The arguments of the call.
+         * @return
+         *   The result of the call.
+         * @throws Throwable
+         *   If the connection throws an exception.
+         */
+        private Object invokeOnConnection(final Method method, final Object[] args)
+                throws Throwable {
+            try {
+                return method.invoke(connection, args);
+            } catch (InvocationTargetException ex) {
+                throw ex.getCause();
+            }
+        }
+
+        /**
+         * Returns a cached statement - or prepares a new statement and caches it.
+         * @param method
+         *   The method used to prepare the statement.
+         * @param sql
+         *   The SQL to prepare.
+         * @return
+         *   A statement for the SQL.
+         * @throws Throwable
+         *   If the connection throws an exception.
+         */
+        private Object prepare(final Method method, final String sql) throws Throwable {
+            final String key = method.getName() + ':' + sql;
+
+            final CachedStatement cachedStatement = checkOut(key);
+
+            if (cachedStatement != null) {
+                hitCount.incrementAndGet();
+                try {
+                    cachedStatement.reset();
+                } catch (SQLException ex) {
+                    discard(key, cachedStatement);
+                    throw ex;
+                }
+                synchronized (caches) {
+                    statementsInUse.put(cachedStatement.statement, cachedStatement);
+                }
+                return cachedStatement.statement;
+            }
+
+            missCount.incrementAndGet();
+
+            final PreparedStatement result =
+                    (PreparedStatement) invokeOnConnection(method, new Object[] {sql});
+
+            final int fetchSize;
+            final int maxRows;
+            final int fetchDirection;
+
+            try {
+                fetchSize = result.getFetchSize();
+                maxRows = result.getMaxRows();
+                fetchDirection = result.getFetchDirection();
+            } catch (SQLException ex) {
+                close(result);
+                throw ex;
+            }
+
+            final CachedStatement newStatement =
+                    add(key, result, fetchSize, maxRows, fetchDirection);
+            if (newStatement != null) {
+                synchronized (caches) {
+                    statementsInUse.put(result, newStatement);
+                }
+            }
+
+            return result;
+
+        }
+
+        /**
+         * Marks a cached statement as in use and returns it.
+         * @param key
+         *   The key of the statement.
+         * @return
+         *   The cached statement - or null if it is not cached or is already in use.
+         */
+        private synchronized CachedStatement checkOut(final String key) {
+            final CachedStatement result = statements.get(key);
+            if (result == null || result.inUse) {
+                return null;
+            }
+            result.inUse = true;
+            return result;
+        }
+
+        /**
+         * Marks a cached statement as not in use.
+         * @param cachedStatement
+         *   The cached statement.
+         * @return
+         *   true if the statement is still cached - false if it has been removed from the cache
+         *   and should be closed.
+         */
+        private synchronized boolean checkIn(final CachedStatement cachedStatement) {
+            cachedStatement.inUse = false;
+            return !cachedStatement.removed;
+        }
+
+        /**
+         * Adds a statement, that is in use, to this cache - closing the least recently used
+         * statement if this cache is full.
+         * @param key
+         *   The key of the statement.
+         * @param statement
+         *   The statement.
+         * @param fetchSize
+         *   The fetch size of the statement when it was prepared.
+         * @param maxRows
+         *   The max rows of the statement when it was prepared.
+         * @param fetchDirection
+         *   The fetch direction of the statement when it was prepared.
+         * @return
+         *   The cached statement - or null if a statement with the same key is already cached.
+         */
+        private synchronized CachedStatement add(final String key,
+                final PreparedStatement statement, final int fetchSize, final int maxRows,
+                final int fetchDirection) {
+            if (statements.containsKey(key)) {
+                return null;
+            }
+
+            final CachedStatement result =
+                    new CachedStatement(this, statement, fetchSize, maxRows, fetchDirection);
+            statements.put(key, result);
+
+            if (statements.size() > maxStatementsPerConnection) {
+                final Iterator<CachedStatement> i = statements.values().iterator();
+                remove(i.next());
+                i.remove();
+                evictionCount.incrementAndGet();
+            }
+
+            return result;
+
+        }
+
+        /**
+         * Removes a statement that could not be used from this cache and closes it.
+         * @param key
+         *   The key of the statement.
+         * @param cachedStatement
+         *   The cached statement.
+         */
+        private synchronized void discard(
+                final String key, final CachedStatement cachedStatement) {
+            statements.remove(key);
+            cachedStatement.inUse = false;
+            remove(cachedStatement);
+        }
+
+        /**
+         * Marks a statement as removed - closing it if it is not in use.
+         * @param cachedStatement
+         *   The cached statement.
+         */
+        private void remove(final CachedStatement cachedStatement) {
+            cachedStatement.removed = true;
+            if (!cachedStatement.inUse) {
+                close(cachedStatement.statement);
+            }
+        }
+
+        /**
+         * Removes all statements from this cache - closing those that are not in use.
+         */
+        private synchronized void closeAll() {
+            for (CachedStatement cachedStatement : statements.values()) {
+                remove(cachedStatement);
+            }
+            statements.clear();
+        }
+
+        /**
+         * Returns the number of statements in this cache.
+         * @return
+         *   The number of statements in this cache.
+         */
+        private synchronized int size() {
+            return statements.size();
+        }
+
+    }
+
+}
@@ -0,0 +1,76 @@
+package com.butterfill.sqlrunner.util;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A counter that can be incremented by many threads at the same time without them all
+ * fighting over the same memory.
+ * Each thread updates one of several cells and the value of the counter is the sum of the cells.
+ *
+ * @author Peter Butterfill
+ */
+final class StripedCounter {
+
+    /**
+     * The number of longs between cells - so that cells are in different cache lines.
+     */
+    private static final int PADDING = 8;
+
+    /**
+     * The number of cells per available processor.
+     */
+    private static final int CELLS_PER_PROCESSOR = 2;
+
+    /**
+     * Used to pick the cell for the current thread - which is a power of two minus one.
+     */
+    private final int mask;
+
+    /**
+     * The cells of this counter.
+     */
+    private final AtomicLongArray cells;
+
+    /**
+     * Creates a new counter with a value of zero.
+     */
+    StripedCounter() {
+        int cellCount = 1;
+        while (cellCount < Runtime.getRuntime().availableProcessors() * CELLS_PER_PROCESSOR) {
+            cellCount <<= 1;
+        }
+        this.mask = cellCount - 1;
+        this.cells = new AtomicLongArray(cellCount * PADDING);
+    }
+
+    /**
+     * Adds one to this counter.
+     */
+    void increment() {
+        add(1L);
+    }
+
+    /**
+     * Adds a value to this counter.
+     * @param value
+     *   The value to add.
+     */
+    void add(final long value) {
+        cells.addAndGet(((int) Thread.currentThread().getId() & mask) * PADDING, value);
+    }
+
+    /**
+     * Returns the value of this counter.
+     * Updates made while this method is running may or may not be included.
+     * @return
+     *   The value of this counter.
+     */
+    long sum() {
+        long sum = 0;
+        for (int i = 0; i <= mask; i++) {
+            sum += cells.get(i * PADDING);
+        }
+        return sum;
+    }
+
+}
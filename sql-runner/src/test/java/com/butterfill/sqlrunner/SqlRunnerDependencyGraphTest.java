@@ -0,0 +1,154 @@
+package com.butterfill.sqlrunner;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Peter Butterfill
+ */
+public class SqlRunnerDependencyGraphTest {
+
+    public SqlRunnerDependencyGraphTest() {
+    }
+
+    @BeforeClass
+    public static void setUpClass() {
+    }
+
+    @AfterClass
+    public static void tearDownClass() {
+    }
+
+    @Before
+    public void setUp() {
+    }
+
+    @After
+    public void tearDown() {
+    }
+
+    private SqlRunnerDependencyGraph build(String... sqls) {
+        List<SqlRunnerStatement> statements = new ArrayList<SqlRunnerStatement>();
+        for (String sql : sqls) {
+            statements.add(new SqlRunnerStatement(null, sql));
+        }
+        return SqlRunnerDependencyGraph.build(statements, "#{", "}");
+    }
+
+    private SqlRunnerDependencyGraph.Access analyse(String sql) {
+        return SqlRunnerDependencyGraph.analyse(sql, "#{", "}");
+    }
+
+    @Test
+    public void testTokenize() {
+        System.out.println("tokenize");
+
+        assertEquals(Arrays.asList("select", "a.b", ",", "q", "from", "s.mixedcase", "x"),
+                SqlRunnerDependencyGraph.tokenize(
+                        "SELECT a.b, 'x from y' q -- from z\n from S.\"MixedCase\" /* from w */ x"));
+    }
+
+    @Test
+    public void testAnalyse() {
+        System.out.println("analyse");
+
+        SqlRunnerDependencyGraph.Access access =
+                analyse("insert into scott.emp@remote (id) select id from dept d, loc");
+        assertFalse(access.isBarrier());
+        assertEquals(new HashSet<String>(Arrays.asList("emp")), access.getWrites());
+        assertEquals(new HashSet<String>(Arrays.asList("dept", "loc")), access.getReads());
+
+        access = analyse("update emp set x = (select y from dept) where z in (select z from loc)");
+        assertEquals(new HashSet<String>(Arrays.asList("emp")), access.getWrites());
+        assertEquals(new HashSet<String>(Arrays.asList("dept", "loc")), access.getReads());
+
+        access = analyse("create unique index emp_i on emp (id)");
+        assertEquals(new HashSet<String>(Arrays.asList("emp_i", "emp")), access.getWrites());
+
+        access = analyse("create or replace view v as select * from a join b on a.id = b.id");
+        assertEquals(new HashSet<String>(Arrays.asList("v")), access.getWrites());
+        assertEquals(new HashSet<String>(Arrays.asList("a", "b")), access.getReads());
+
+        access = analyse("comment on column emp.name is 'from x'");
+        assertEquals(new HashSet<String>(Arrays.asList("emp")), access.getWrites());
+
+        access = analyse("delete emp where id = #{id}");
+        assertEquals(new HashSet<String>(Arrays.asList("emp")), access.getWrites());
+        assertTrue(access.getReads().contains(" attributes"));
+
+        access = analyse("select count(*) from emp");
+        assertTrue(access.getWrites().contains(" attributes"));
+
+        assertTrue(analyse("begin null; end;").isBarrier());
+        assertTrue(analyse("drop procedure p").isBarrier());
+        assertTrue(analyse("insert all into a values (1) select * from dual").isBarrier());
+        assertTrue(analyse("delete from #{table}").isBarrier());
+        assertTrue(analyse("select * from #{table}").isBarrier());
+    }
+
+    @Test
+    public void testBuild() {
+        System.out.println("build");
+
+        SqlRunnerDependencyGraph graph = build(
+                "create table a (id number)",
+                "create table b (id number)",
+                "insert into a values (1)",
+                "insert into b select id from a",
+                "select count(*) from a",
+                "delete from a",
+                "create index b_i on b (id)");
+
+        assertEquals(7, graph.size());
+        assertArrayEquals(new int[0], graph.getDependencies(0));
+        assertArrayEquals(new int[0], graph.getDependencies(1));
+        assertArrayEquals(new int[] {0}, graph.getDependencies(2));
+        assertArrayEquals(new int[] {1, 2}, graph.getDependencies(3));
+        assertArrayEquals(new int[] {2}, graph.getDependencies(4));
+        // delete must wait for statements reading a
+        assertArrayEquals(new int[] {2, 3, 4}, graph.getDependencies(5));
+        assertArrayEquals(new int[] {3}, graph.getDependencies(6));
+        assertFalse(graph.isBarrier(6));
+    }
+
+    @Test
+    public void testBuildBarrier() {
+        System.out.println("build");
+
+        SqlRunnerDependencyGraph graph = build(
+                "insert into a values (1)",
+                "insert into b values (1)",
+                "begin p; end;",
+                "insert into c values (1)",
+                "insert into a values (2)");
+
+        assertFalse(graph.isBarrier(0));
+        assertTrue(graph.isBarrier(2));
+        assertArrayEquals(new int[] {0, 1}, graph.getDependencies(2));
+        assertArrayEquals(new int[] {2}, graph.getDependencies(3));
+        assertArrayEquals(new int[] {2}, graph.getDependencies(4));
+    }
+
+    @Test
+    public void testBuildAttributes() {
+        System.out.println("build");
+
+        SqlRunnerDependencyGraph graph = build(
+                "select max(id) max_id from a",
+                "insert into b values (#{maxId})",
+                "insert into c values (1)");
+
+        assertArrayEquals(new int[] {0}, graph.getDependencies(1));
+        assertArrayEquals(new int[0], graph.getDependencies(2));
+    }
+
+}
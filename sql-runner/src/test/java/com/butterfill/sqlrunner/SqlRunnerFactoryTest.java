@@ -2,6 +2,7 @@ package com.butterfill.sqlrunner;
 
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ExecutorService;
 import javax.sql.DataSource;
 import org.junit.After;
 import org.junit.AfterClass;
@@ -11,6 +12,7 @@ import org.junit.Test;
 import static org.junit.Assert.*;
 import static org.mockito.Mockito.*;
 import static com.butterfill.sqlrunner.TestHelper.*;
+import com.butterfill.sqlrunner.util.DefaultAttributeFormatterImpl;
 import com.butterfill.sqlrunner.util.DefaultFileReader;
 import java.util.List;
 
@@ -199,6 +201,159 @@ public class SqlRunnerFactoryTest {
         assertSame(attributeMap, instance.getAttributeMap());
     }
 
+    /**
+     * Test of getAttributes and setAttributes methods, of class SqlRunnerFactory.
+     */
+    @Test
+    public void testSetAttributes() {
+        System.out.println("setAttributes");
+        SqlRunnerFactory instance = new SqlRunnerFactory();
+        instance.setDataSource(mock(DataSource.class));
+        assertNull(instance.getAttributes());
+
+        Map<String, String> attributeMap = new HashMap<String, String>();
+        instance.setAttributeMap(attributeMap);
+        assertSame(attributeMap, instance.getAttributes());
+
+        Map<String, Object> attributes = new HashMap<String, Object>();
+        attributes.put("n", Integer.valueOf(1));
+        instance.setAttributes(attributes);
+        assertSame(attributes, instance.getAttributes());
+        assertNull(instance.getAttributeMap());
+        assertEquals(Integer.valueOf(1), instance.newSqlRunner().getAttribute("n"));
+    }
+
+    /**
+     * Test that SqlRunners share the attributes and handlers of the factory.
+     */
+    @Test
+    public void testNewSqlRunnerSharesBaseLayers() throws Exception {
+        System.out.println("newSqlRunner");
+        SqlRunnerFactory instance = new SqlRunnerFactory();
+        instance.setDataSource(mock(DataSource.class));
+        Map<String, Object> attributeMap = new HashMap<String, Object>();
+        attributeMap.put("a", "A");
+        attributeMap.put("n", null);
+        instance.setAttributes(attributeMap);
+
+        SqlRunner runner1 = instance.newSqlRunner();
+        SqlRunner runner2 = instance.newSqlRunner();
+        assertEquals("A", runner1.getAttribute("a"));
+        assertEquals("", runner1.getAttribute("n"));
+
+        runner1.setAttribute("a", "A1");
+        runner1.setCallbackHandler("s", mock(SqlRunnerCallbackHandler.class));
+        assertEquals("A1", runner1.getAttribute("a"));
+        assertEquals("A", runner2.getAttribute("a"));
+        assertEquals("A", instance.newSqlRunner().getAttribute("a"));
+        assertNull(((Map) getFieldValue(SqlRunner.class, "callbackHandlerMap", runner2)).get("s"));
+
+        attributeMap.put("s", new SqlRunnerAttributeSupplier<String>() {
+            public String get() {
+                return "S";
+            }
+        });
+        instance.setAttributes(attributeMap);
+        assertTrue(instance.newSqlRunner().getAttribute("s") instanceof SqlRunnerAttributeSupplier);
+
+        // changes to the map are seen once the map is set again
+        attributeMap.put("a", "A2");
+        assertEquals("A", instance.newSqlRunner().getAttribute("a"));
+        instance.setAttributes(attributeMap);
+        assertEquals("A2", instance.newSqlRunner().getAttribute("a"));
+    }
+
+    /**
+     * Test of getAttributeFormatter and setAttributeFormatter methods, of class SqlRunnerFactory.
+     */
+    @Test
+    public void testSetAttributeFormatter() {
+        System.out.println("setAttributeFormatter");
+        SqlRunnerFactory instance = new SqlRunnerFactory();
+        instance.setDataSource(mock(DataSource.class));
+        assertTrue(instance.getAttributeFormatter() instanceof DefaultAttributeFormatterImpl);
+        SqlRunnerAttributeFormatter attributeFormatter = mock(SqlRunnerAttributeFormatter.class);
+        instance.setAttributeFormatter(attributeFormatter);
+        assertSame(attributeFormatter, instance.getAttributeFormatter());
+        assertSame(attributeFormatter,
+                getFieldValue(SqlRunner.class, "attributeFormatter", instance.newSqlRunner()));
+    }
+
+    /**
+     * Test of getBatchSize and setBatchSize methods, of class SqlRunnerFactory.
+     */
+    @Test
+    public void testSetBatchSize() throws Exception {
+        System.out.println("setBatchSize");
+        SqlRunnerFactory instance = new SqlRunnerFactory();
+        instance.setDataSource(mock(DataSource.class));
+        assertEquals(0, instance.getBatchSize());
+        instance.setBatchSize(100);
+        assertEquals(100, instance.getBatchSize());
+        assertEquals(100, getFieldValue(SqlRunner.class, "batchSize", instance.newSqlRunner()));
+    }
+
+    /**
+     * Test of getLoadBatchSize and setLoadBatchSize methods, of class SqlRunnerFactory.
+     */
+    @Test
+    public void testSetLoadBatchSize() throws Exception {
+        System.out.println("setLoadBatchSize");
+        SqlRunnerFactory instance = new SqlRunnerFactory();
+        instance.setDataSource(mock(DataSource.class));
+        assertEquals(SqlRunner.DEFAULT_LOAD_BATCH_SIZE, instance.getLoadBatchSize());
+        instance.setLoadBatchSize(50);
+        assertEquals(50, instance.getLoadBatchSize());
+        assertEquals(50, getFieldValue(SqlRunner.class, "loadBatchSize", instance.newSqlRunner()));
+    }
+
+    /**
+     * Test of getCommitEvery and setCommitEvery methods, of class SqlRunnerFactory.
+     */
+    @Test
+    public void testSetCommitEvery() throws Exception {
+        System.out.println("setCommitEvery");
+        SqlRunnerFactory instance = new SqlRunnerFactory();
+        instance.setDataSource(mock(DataSource.class));
+        assertEquals(0, instance.getCommitEvery());
+        assertEquals(0, instance.getCommitEveryRows());
+        instance.setCommitEvery(100);
+        instance.setCommitEveryRows(5000);
+        assertEquals(100, instance.getCommitEvery());
+        assertEquals(5000, instance.getCommitEveryRows());
+        SqlRunner sqlRunner = instance.newSqlRunner();
+        assertEquals(100, getFieldValue(SqlRunner.class, "commitEvery", sqlRunner));
+        assertEquals(5000, getFieldValue(SqlRunner.class, "commitEveryRows", sqlRunner));
+    }
+
+    /**
+     * Test of getAsyncExecutor and setAsyncExecutor methods, of class SqlRunnerFactory.
+     */
+    @Test
+    public void testSetAsyncExecutor() throws Exception {
+        System.out.println("setAsyncExecutor");
+        SqlRunnerFactory instance = new SqlRunnerFactory();
+        instance.setDataSource(mock(DataSource.class));
+        assertNull(instance.getAsyncExecutor());
+        ExecutorService executor = mock(ExecutorService.class);
+        instance.setAsyncExecutor(executor);
+        assertSame(executor, instance.getAsyncExecutor());
+        assertSame(executor,
+                getFieldValue(SqlRunner.class, "asyncExecutor", instance.newSqlRunner()));
+    }
+
+    /**
+     * Test of getBindAttributes and setBindAttributes methods, of class SqlRunnerFactory.
+     */
+    @Test
+    public void testSetBindAttributes() {
+        System.out.println("setBindAttributes");
+        SqlRunnerFactory instance = new SqlRunnerFactory();
+        assertFalse(instance.getBindAttributes());
+        instance.setBindAttributes(true);
+        assertTrue(instance.getBindAttributes());
+    }
+
     /**
      * Test of getCallbackHandlerMap method, of class SqlRunnerFactory.
      */
@@ -0,0 +1,115 @@
+package com.butterfill.sqlrunner;
+
+import java.util.HashMap;
+import java.util.Map;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Peter Butterfill
+ */
+public class SqlRunnerLayeredMapTest {
+
+    private Map<String, String> base;
+
+    private SqlRunnerLayeredMap<String, String> instance;
+
+    public SqlRunnerLayeredMapTest() {
+    }
+
+    @BeforeClass
+    public static void setUpClass() {
+    }
+
+    @AfterClass
+    public static void tearDownClass() {
+    }
+
+    @Before
+    public void setUp() {
+        base = new HashMap<String, String>();
+        base.put("a", "A");
+        base.put("b", "B");
+        instance = new SqlRunnerLayeredMap<String, String>(base);
+    }
+
+    @After
+    public void tearDown() {
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void testConstructorNull() {
+        new SqlRunnerLayeredMap<String, String>(null);
+    }
+
+    /**
+     * Test of get method, of class SqlRunnerLayeredMap.
+     */
+    @Test
+    public void testGet() {
+        System.out.println("get");
+        assertEquals("A", instance.get("a"));
+        assertEquals(null, instance.get("c"));
+        assertTrue(instance.containsKey("a"));
+        assertFalse(instance.containsKey("c"));
+        assertEquals(2, instance.size());
+    }
+
+    /**
+     * Test of put method, of class SqlRunnerLayeredMap.
+     */
+    @Test
+    public void testPut() {
+        System.out.println("put");
+        assertEquals("A", instance.put("a", "A2"));
+        assertEquals(null, instance.put("c", "C"));
+        assertEquals("A2", instance.put("a", "A3"));
+
+        assertEquals("A3", instance.get("a"));
+        assertEquals("B", instance.get("b"));
+        assertEquals("C", instance.get("c"));
+        assertEquals(3, instance.size());
+
+        // the base layer is not changed
+        assertEquals("A", base.get("a"));
+        assertFalse(base.containsKey("c"));
+        assertEquals("A", new SqlRunnerLayeredMap<String, String>(base).get("a"));
+    }
+
+    @Test
+    public void testPutNullHidesBase() {
+        System.out.println("put");
+        instance.put("a", null);
+        assertEquals(null, instance.get("a"));
+        assertTrue(instance.containsKey("a"));
+        assertEquals("A", base.get("a"));
+    }
+
+    /**
+     * Test of entrySet method, of class SqlRunnerLayeredMap.
+     */
+    @Test
+    public void testEntrySet() {
+        System.out.println("entrySet");
+        instance.put("a", "A2");
+        instance.put("c", "C");
+
+        Map<String, String> expected = new HashMap<String, String>();
+        expected.put("a", "A2");
+        expected.put("b", "B");
+        expected.put("c", "C");
+        assertEquals(expected, new HashMap<String, String>(instance));
+        assertEquals(expected, instance);
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void testRemove() {
+        instance.remove("a");
+    }
+
+}
@@ -125,8 +125,13 @@ public class SqlRunnerOracleIntegrationTest extends AbstractJUnit4SpringContextT
         System.out.println("runFile");
         String fileName = "empty.sql";
         SqlRunner instance = sqlRunnerFactory.newSqlRunner();
-        List<SqlRunnerStatement> result = instance.runFile(fileName);
-        assertEquals(0, result.size());
+        // // does not start a comment - so the file ends with a statement that is not terminated
+        try {
+            instance.runFile(fileName);
+            fail("expected SqlRunnerException");
+        } catch (SqlRunnerException expected) {
+            assertTrue(expected.getMessage().endsWith("is not terminated by a semi-colon"));
+        }
 
     }
 
@@ -148,10 +153,8 @@ public class SqlRunnerOracleIntegrationTest extends AbstractJUnit4SpringContextT
         assertEquals(null, result.get(1).getUpdateCount());
         assertEquals(Integer.valueOf("0"), result.get(2).getUpdateCount());
 
-        Map<String, String> attributeMap = (Map<String, String>)
-                TestHelper.getFieldValue(SqlRunner.class, "attributeMap", instance);
-        assertEquals("1", attributeMap.get("NUMBER_COL.1"));
-        assertEquals("a", attributeMap.get("TEXT_COL.1"));
+        assertEquals("1", String.valueOf(instance.getAttribute("NUMBER_COL.1")));
+        assertEquals("a", instance.getAttribute("TEXT_COL.1"));
 
     }
 
@@ -183,10 +186,8 @@ public class SqlRunnerOracleIntegrationTest extends AbstractJUnit4SpringContextT
         assertEquals(null, result.get(1).getUpdateCount());
         assertEquals(Integer.valueOf("0"), result.get(2).getUpdateCount());
 
-        Map<String, String> attributeMap = (Map<String, String>)
-                TestHelper.getFieldValue(SqlRunner.class, "attributeMap", instance);
-        assertEquals("1", attributeMap.get("NUMBER_COL.1"));
-        assertEquals("a", attributeMap.get("TEXT_COL.1"));
+        assertEquals("1", String.valueOf(instance.getAttribute("NUMBER_COL.1")));
+        assertEquals("a", instance.getAttribute("TEXT_COL.1"));
 
     }
 
@@ -211,10 +212,8 @@ public class SqlRunnerOracleIntegrationTest extends AbstractJUnit4SpringContextT
         assertEquals(null, result.get(1).getUpdateCount());
         assertEquals(Integer.valueOf("0"), result.get(2).getUpdateCount());
 
-        Map<String, String> attributeMap = (Map<String, String>)
-                TestHelper.getFieldValue(SqlRunner.class, "attributeMap", instance);
-        assertEquals("1", attributeMap.get("NUMBER_COL.1"));
-        assertEquals("a", attributeMap.get("TEXT_COL.1"));
+        assertEquals("1", String.valueOf(instance.getAttribute("NUMBER_COL.1")));
+        assertEquals("a", instance.getAttribute("TEXT_COL.1"));
 
     }
 
@@ -275,15 +274,14 @@ public class SqlRunnerOracleIntegrationTest extends AbstractJUnit4SpringContextT
         assertEquals(null, result.get(1).getUpdateCount());
         assertEquals(Integer.valueOf("0"), result.get(2).getUpdateCount());
 
-        Map<String, String> attributeMap = (Map<String, String>)
-                TestHelper.getFieldValue(SqlRunner.class, "attributeMap", instance);
-        assertEquals("1", attributeMap.get("NUMBER_COL.1"));
-        assertEquals("a", attributeMap.get("TEXT_COL.1"));
+        assertEquals("1", String.valueOf(instance.getAttribute("NUMBER_COL.1")));
+        assertEquals("a", instance.getAttribute("TEXT_COL.1"));
 
-        assertEquals("2", attributeMap.get("NUMBER_COL.2"));
-        assertEquals("a", attributeMap.get("TEXT_COL.2"));
+        assertEquals("2", String.valueOf(instance.getAttribute("NUMBER_COL.2")));
+        assertEquals("a", instance.getAttribute("TEXT_COL.2"));
 
-        assertEquals(4, attributeMap.size());
+        // only two rows were selected
+        assertNull(instance.getAttribute("NUMBER_COL.3"));
 
     }
 
@@ -381,10 +379,8 @@ public class SqlRunnerOracleIntegrationTest extends AbstractJUnit4SpringContextT
             assertEquals(null, result.getUpdateCount());
             assertTrue(result.getResultOfExecutionWasResultSet());
 
-            Map<String, String> attributeMap = (Map<String, String>)
-                    TestHelper.getFieldValue(SqlRunner.class, "attributeMap", instance);
-            assertEquals("1", attributeMap.get("NUMBER_COL.1"));
-            assertEquals("a", attributeMap.get("TEXT_COL.1"));
+            assertEquals("1", String.valueOf(instance.getAttribute("NUMBER_COL.1")));
+            assertEquals("a", instance.getAttribute("TEXT_COL.1"));
 
         } finally {
             instance.run("drop table a");
@@ -420,10 +416,8 @@ public class SqlRunnerOracleIntegrationTest extends AbstractJUnit4SpringContextT
             assertEquals(null, result.getUpdateCount());
             assertTrue(result.getResultOfExecutionWasResultSet());
 
-            Map<String, String> attributeMap = (Map<String, String>)
-                    TestHelper.getFieldValue(SqlRunner.class, "attributeMap", instance);
-            assertEquals("1", attributeMap.get("NUMBER_COL.1"));
-            assertEquals("a", attributeMap.get("TEXT_COL.1"));
+            assertEquals("1", String.valueOf(instance.getAttribute("NUMBER_COL.1")));
+            assertEquals("a", instance.getAttribute("TEXT_COL.1"));
 
             connection.close();
 
@@ -480,10 +474,8 @@ public class SqlRunnerOracleIntegrationTest extends AbstractJUnit4SpringContextT
             sql = "select * from a";
             instance.run(sql);
 
-            Map<String, String> attributeMap = (Map<String, String>)
-                    TestHelper.getFieldValue(SqlRunner.class, "attributeMap", instance);
-            assertEquals("9", attributeMap.get("NUMBER_COL.1"));
-            assertEquals("test text", attributeMap.get("TEXT_COL.1"));
+            assertEquals("9", String.valueOf(instance.getAttribute("NUMBER_COL.1")));
+            assertEquals("test text", instance.getAttribute("TEXT_COL.1"));
 
         } finally {
             instance.run("drop table a");
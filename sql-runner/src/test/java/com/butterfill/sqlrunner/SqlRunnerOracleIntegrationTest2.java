@@ -7,7 +7,6 @@ import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.Map;
 import javax.sql.DataSource;
 import oracle.jdbc.OraclePreparedStatement;
 import oracle.jdbc.OracleTypes;
@@ -176,10 +175,8 @@ public class SqlRunnerOracleIntegrationTest2 extends AbstractJUnit4SpringContext
             assertEquals(null, result.getUpdateCount());
             assertTrue(result.getResultOfExecutionWasResultSet());
 
-            Map<String, String> attributeMap = (Map<String, String>)
-                    TestHelper.getFieldValue(SqlRunner.class, "attributeMap", instance);
-            assertEquals("9", attributeMap.get("NUMBER_COL.1"));
-            assertEquals("test text", attributeMap.get("TEXT_COL.1"));
+            assertEquals("9", String.valueOf(instance.getAttribute("NUMBER_COL.1")));
+            assertEquals("test text", instance.getAttribute("TEXT_COL.1"));
 
         } finally {
             instance.run("drop table a");
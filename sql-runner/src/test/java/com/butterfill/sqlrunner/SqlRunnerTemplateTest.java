@@ -0,0 +1,226 @@
+package com.butterfill.sqlrunner;
+
+import com.butterfill.sqlrunner.util.DefaultAttributeFormatterImpl;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Peter Butterfill
+ */
+public class SqlRunnerTemplateTest {
+
+    private Map<String, Object> attributes;
+
+    private SqlRunnerAttributeFormatter formatter;
+
+    public SqlRunnerTemplateTest() {
+    }
+
+    @BeforeClass
+    public static void setUpClass() {
+    }
+
+    @AfterClass
+    public static void tearDownClass() {
+    }
+
+    @Before
+    public void setUp() {
+        attributes = new HashMap<String, Object>();
+        formatter = new DefaultAttributeFormatterImpl();
+    }
+
+    @After
+    public void tearDown() {
+    }
+
+    /**
+     * Test of compile and render methods, of class SqlRunnerTemplate.
+     */
+    @Test
+    public void testRender() {
+        System.out.println("render");
+        attributes.put("table", "emp");
+        attributes.put("col", "a");
+        attributes.put("unused", "x");
+
+        assertEquals("update emp set a = 'a' where a is not null",
+                SqlRunnerTemplate.compile(
+                "update #{table} set #{col} = 'a' where #{col} is not null", "#{", "}")
+                .render(attributes, formatter));
+        assertEquals("emp", SqlRunnerTemplate.compile("#{table}", "#{", "}").render(attributes, formatter));
+        assertEquals("empa",
+                SqlRunnerTemplate.compile("#{table}#{col}", "#{", "}").render(attributes, formatter));
+        assertEquals("select emp from dual",
+                SqlRunnerTemplate.compile("select [[table]] from dual", "[[", "]]")
+                .render(attributes, formatter));
+    }
+
+    @Test
+    public void testRenderMissingAttributes() {
+        System.out.println("render");
+        attributes.put("table", "emp");
+
+        assertEquals("update emp set #{col} = 'a'",
+                SqlRunnerTemplate.compile("update #{table} set #{col} = 'a'", "#{", "}")
+                .render(attributes, formatter));
+        assertEquals("update #{table",
+                SqlRunnerTemplate.compile("update #{table", "#{", "}").render(attributes, formatter));
+        assertEquals("update table} #{",
+                SqlRunnerTemplate.compile("update table} #{", "#{", "}").render(attributes, formatter));
+    }
+
+    @Test
+    public void testRenderNestedPrefix() {
+        System.out.println("render");
+        attributes.put("a", "x");
+
+        assertEquals("#{x", SqlRunnerTemplate.compile("#{#{a}", "#{", "}").render(attributes, formatter));
+        assertEquals("#{#{b}x",
+                SqlRunnerTemplate.compile("#{#{b}#{a}", "#{", "}").render(attributes, formatter));
+    }
+
+    @Test
+    public void testRenderNoPlaceholders() {
+        System.out.println("render");
+        final String sql = "select * from dual";
+        assertSame(sql, SqlRunnerTemplate.compile(sql, "#{", "}").render(attributes, formatter));
+        assertEquals("", SqlRunnerTemplate.compile("", "#{", "}").render(attributes, formatter));
+    }
+
+    @Test
+    public void testRenderValuesNotExpanded() {
+        System.out.println("render");
+        attributes.put("a", "#{b}");
+        attributes.put("b", "x");
+
+        assertEquals("#{b} x",
+                SqlRunnerTemplate.compile("#{a} #{b}", "#{", "}").render(attributes, formatter));
+    }
+
+    @Test
+    public void testRenderTypedValues() {
+        System.out.println("render");
+        attributes.put("n", Integer.valueOf(7));
+        attributes.put("s", "x");
+        formatter = new SqlRunnerAttributeFormatter() {
+            public String format(final Object attributeValue) {
+                return "f(" + attributeValue + ")";
+            }
+        };
+
+        assertEquals("select f(7), x from dual",
+                SqlRunnerTemplate.compile("select #{n}, #{s} from dual", "#{", "}")
+                .render(attributes, formatter));
+
+        List<Object> bindValues = new ArrayList<Object>();
+        assertEquals("select ?, ? from dual",
+                SqlRunnerTemplate.compile("select #{n}, #{s} from dual", "#{", "}")
+                .render(attributes, formatter, bindValues));
+        assertEquals(Arrays.<Object>asList(Integer.valueOf(7), "x"), bindValues);
+    }
+
+    @Test
+    public void testRenderBindValues() {
+        System.out.println("render");
+        attributes.put("a", "x");
+        attributes.put("b", "y");
+        List<Object> bindValues = new ArrayList<Object>();
+
+        assertEquals("select ? from dual where ? = ? and #{c} = ?",
+                SqlRunnerTemplate.compile(
+                "select #{a} from dual where #{b} = #{a} and #{c} = #{b}", "#{", "}")
+                .render(attributes, formatter, bindValues));
+        assertEquals(Arrays.<Object>asList("x", "y", "x", "y"), bindValues);
+
+        bindValues.clear();
+        assertEquals("select 1 from dual",
+                SqlRunnerTemplate.compile("select 1 from dual", "#{", "}")
+                .render(attributes, formatter, bindValues));
+        assertTrue(bindValues.isEmpty());
+    }
+
+    @Test
+    public void testRenderBindValuesInCommentsAndQuotes() {
+        System.out.println("render");
+        attributes.put("x", Integer.valueOf(1));
+        attributes.put("t", "emp");
+        List<Object> bindValues = new ArrayList<Object>();
+
+        assertEquals("select a -- uses 1\n from t where b = ?",
+                SqlRunnerTemplate.compile(
+                "select a -- uses #{x}\n from t where b = #{x}", "#{", "}")
+                .render(attributes, formatter, bindValues));
+        assertEquals(Arrays.<Object>asList(Integer.valueOf(1)), bindValues);
+
+        bindValues.clear();
+        assertEquals("select /* 1 */ 'it''s 1', \"emp\" from dual where c = ? -- #{y}",
+                SqlRunnerTemplate.compile(
+                "select /* #{x} */ 'it''s #{x}', \"#{t}\" from dual where c = #{x} -- #{y}",
+                "#{", "}")
+                .render(attributes, formatter, bindValues));
+        assertEquals(Arrays.<Object>asList(Integer.valueOf(1)), bindValues);
+    }
+
+    /**
+     * Test of renderParameters method, of class SqlRunnerTemplate.
+     */
+    @Test
+    public void testRenderParameters() {
+        System.out.println("renderParameters");
+        attributes.put("t", "emp");
+        List<Object> parameterValues = new ArrayList<Object>();
+        List<String> parameterNames = new ArrayList<String>();
+
+        assertEquals("insert into emp (a) values (?) -- loads #{a}",
+                SqlRunnerTemplate.compile(
+                "insert into #{t} (a) values (#{a}) -- loads #{a}", "#{", "}")
+                .renderParameters(attributes, formatter, false, parameterValues, parameterNames));
+        assertEquals(Arrays.<Object>asList((Object) null), parameterValues);
+        assertEquals(Arrays.asList("a"), parameterNames);
+    }
+
+    /**
+     * Test of isFor method, of class SqlRunnerTemplate.
+     */
+    @Test
+    public void testIsFor() {
+        System.out.println("isFor");
+        final String sql = "select #{a} from dual";
+        final SqlRunnerTemplate template = SqlRunnerTemplate.compile(sql, "#{", "}");
+        assertTrue(template.isFor(sql, "#{", "}"));
+        assertFalse(template.isFor(sql, "[[", "}"));
+        assertFalse(template.isFor(sql, "#{", "]]"));
+        assertFalse(template.isFor(new String(sql), "#{", "}"));
+    }
+
+    /**
+     * Test of getTemplate method, of class SqlRunnerStatement.
+     */
+    @Test
+    public void testStatementGetTemplate() {
+        System.out.println("getTemplate");
+        attributes.put("a", "x");
+        final SqlRunnerStatement statement = new SqlRunnerStatement(null, "select #{a} from dual");
+
+        final SqlRunnerTemplate template = statement.getTemplate("#{", "}");
+        assertSame(template, statement.getTemplate("#{", "}"));
+        assertEquals("select x from dual", template.render(attributes, formatter));
+
+        assertNotSame(template, statement.getTemplate("[[", "]]"));
+
+        statement.setSql("select [[a]] from dual");
+        assertEquals("select x from dual", statement.getTemplate("[[", "]]").render(attributes, formatter));
+    }
+
+}
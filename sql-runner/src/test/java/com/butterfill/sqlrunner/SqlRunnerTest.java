@@ -3,11 +3,16 @@ package com.butterfill.sqlrunner;
 
 import com.butterfill.sqlrunner.util.DefaultCallbackHandlerImpl;
 import com.butterfill.sqlrunner.util.AttributeSettingResultSetNextRowCallbackHandlerImpl;
+import java.sql.BatchUpdateException;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.SQLException;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import javax.sql.DataSource;
 import org.junit.After;
 import org.junit.AfterClass;
@@ -20,6 +25,7 @@ import static org.mockito.Mockito.*;
 import static com.butterfill.sqlrunner.TestHelper.*;
 import com.butterfill.sqlrunner.util.DefaultFileReader;
 import java.util.ArrayList;
+import java.util.Arrays;
 
 /**
  *
@@ -154,7 +160,7 @@ public class SqlRunnerTest {
 
         attributeValue = 9L;
         instance.setAttribute(attributeName, attributeValue);
-        assertEquals("9", attributeMap.get(attributeName));
+        assertEquals(Long.valueOf(9L), attributeMap.get(attributeName));
 
     }
 
@@ -182,6 +188,393 @@ public class SqlRunnerTest {
         assertEquals(null, result.getException());
     }
 
+    @Test
+    public void testRunBindAttributes() throws Exception {
+        System.out.println("run");
+
+        when(dataSource.getConnection()).thenReturn(connection);
+        when(connection.getAutoCommit()).thenReturn(false);
+        when(connection.prepareStatement("update emp set a = ? where b = ? and c = #{c}"))
+                .thenReturn(preparedStatement);
+        when(connection.prepareStatement("update emp set a = 'x'"))
+                .thenReturn(preparedStatement);
+        when(preparedStatement.execute()).thenReturn(false);
+        when(preparedStatement.getUpdateCount()).thenReturn(1);
+
+        instance.setBindAttributes(true);
+        instance.setAttribute("a", "x");
+        instance.setAttribute("b", 2);
+
+        SqlRunnerStatement result =
+                instance.run("update emp set a = #{a} where b = #{b} and c = #{c}");
+        assertEquals(Integer.valueOf(1), result.getUpdateCount());
+        assertEquals("update emp set a = ? where b = ? and c = #{c}", result.getSql());
+        assertEquals(2, result.getBindValues().size());
+        assertEquals("x", result.getBindValues().get(0));
+        assertEquals(Integer.valueOf(2), result.getBindValues().get(1));
+        verify(preparedStatement).setObject(1, "x");
+        verify(preparedStatement).setObject(2, Integer.valueOf(2));
+
+        instance.setBindAttributes(false);
+        result = instance.run("update emp set a = '#{a}'");
+        assertEquals("update emp set a = 'x'", result.getSql());
+        assertTrue(result.getBindValues().isEmpty());
+    }
+
+    @Test
+    public void testRunHints() throws Exception {
+        System.out.println("run");
+
+        when(dataSource.getConnection()).thenReturn(connection);
+        when(connection.prepareStatement(anyString())).thenReturn(preparedStatement);
+
+        SqlRunnerStatement hinted = new SqlRunnerStatement(null, "select * from #{table}");
+        hinted.setFetchSize(500);
+        hinted.setMaxRows(10);
+        hinted.setForwardOnly(true);
+        instance.setAttribute("table", "emp");
+
+        SqlRunnerStatement result = instance.run(Arrays.asList(hinted)).get(0);
+        assertEquals("select * from emp", result.getSql());
+        assertEquals(500, result.getFetchSize());
+        assertEquals(10, result.getMaxRows());
+        assertTrue(result.getForwardOnly());
+        verify(preparedStatement).setFetchSize(500);
+        verify(preparedStatement).setMaxRows(10);
+        verify(preparedStatement).setFetchDirection(java.sql.ResultSet.FETCH_FORWARD);
+
+        // statements without hints leave the driver defaults alone
+        instance.run("select * from dept");
+        verify(preparedStatement, times(1)).setFetchSize(anyInt());
+        verify(preparedStatement, times(1)).setMaxRows(anyInt());
+        verify(preparedStatement, times(1)).setFetchDirection(anyInt());
+    }
+
+    @Test
+    public void testRunCommitEvery() throws Exception {
+        System.out.println("run");
+
+        when(dataSource.getConnection()).thenReturn(connection);
+        when(connection.prepareStatement(anyString())).thenReturn(preparedStatement);
+
+        List<String> sqlList = Arrays.asList("a", "b", "c", "d", "e");
+
+        assertSame(instance, instance.setCommitEvery(2, 0));
+        instance.run(instance.toSqlRunnerStatements(sqlList));
+        // after b, after d and when the connection is closed
+        verify(connection, times(3)).commit();
+
+        // commit options of statements are used instead of the options of the runner
+        when(preparedStatement.getUpdateCount()).thenReturn(6);
+        List<SqlRunnerStatement> statements = instance.toSqlRunnerStatements(sqlList);
+        for (SqlRunnerStatement statement : statements) {
+            statement.setCommitEvery(0, 10);
+        }
+        instance.run(statements);
+        verify(connection, times(6)).commit();
+
+        // runs that are passed a connection never commit
+        instance.run(statements, connection);
+        verify(connection, times(6)).commit();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testSetCommitEveryInvalid() throws Exception {
+        instance.setCommitEvery(0, -1);
+    }
+
+    @Test
+    public void testRunAutoCommit() throws Exception {
+        System.out.println("run");
+
+        when(dataSource.getConnection()).thenReturn(connection);
+        when(connection.prepareStatement(anyString())).thenReturn(preparedStatement);
+
+        List<SqlRunnerStatement> statements =
+                instance.toSqlRunnerStatements(Arrays.asList("a", "b", "c", "d"));
+        statements.get(1).setAutoCommit(true);
+        statements.get(2).setAutoCommit(true);
+
+        instance.run(statements);
+
+        org.mockito.InOrder inOrder = inOrder(connection, preparedStatement);
+        inOrder.verify(preparedStatement).execute();
+        inOrder.verify(connection).commit();
+        inOrder.verify(connection).setAutoCommit(true);
+        inOrder.verify(preparedStatement, calls(2)).execute();
+        inOrder.verify(connection).setAutoCommit(false);
+        inOrder.verify(preparedStatement).execute();
+        inOrder.verify(connection).commit();
+        inOrder.verify(connection).close();
+    }
+
+    @Test
+    public void testRunAutoCommitFails() throws Exception {
+        System.out.println("run");
+
+        when(dataSource.getConnection()).thenReturn(connection);
+        when(connection.prepareStatement(anyString())).thenReturn(preparedStatement);
+        when(preparedStatement.execute()).thenReturn(false).thenThrow(new SQLException("x"));
+
+        List<SqlRunnerStatement> statements =
+                instance.toSqlRunnerStatements(Arrays.asList("a", "b"));
+        statements.get(1).setAutoCommit(true);
+
+        try {
+            instance.run(statements);
+            fail("expected SqlRunnerException");
+        } catch (SqlRunnerException expected) {
+            assertEquals("x", expected.getCause().getMessage());
+        }
+
+        // auto commit is disabled again before the rollback
+        org.mockito.InOrder inOrder = inOrder(connection);
+        inOrder.verify(connection).setAutoCommit(true);
+        inOrder.verify(connection).setAutoCommit(false);
+        inOrder.verify(connection).rollback();
+        inOrder.verify(connection).close();
+    }
+
+    @Test
+    public void testSetAttributeTyped() throws Exception {
+        System.out.println("setAttribute");
+
+        java.sql.Date date = new java.sql.Date(0L);
+        instance.setAttribute("date", date);
+        instance.setAttribute("null", null);
+        instance.setAttribute("null2", null, "x");
+        assertSame(date, instance.getAttribute("date"));
+        assertEquals("", instance.getAttribute("null"));
+        assertEquals("x", instance.getAttribute("null2"));
+        assertEquals(null, instance.getAttribute("not set"));
+
+        when(dataSource.getConnection()).thenReturn(connection);
+        when(connection.prepareStatement("select DATE '1970-01-01' from dual"))
+                .thenReturn(preparedStatement);
+
+        instance.setAttributeFormatter(new SqlRunnerAttributeFormatter() {
+            public String format(final Object attributeValue) {
+                return "DATE '" + attributeValue + "'";
+            }
+        });
+        SqlRunnerStatement result = instance.run("select #{date} from dual");
+        assertEquals("select DATE '1970-01-01' from dual", result.getSql());
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void testSetAttributeFormatterNull() throws Exception {
+        instance.setAttributeFormatter(null);
+    }
+
+    @Test
+    public void testRunReusesRenderedSql() throws Exception {
+        System.out.println("run");
+
+        when(dataSource.getConnection()).thenReturn(connection);
+        when(connection.prepareStatement(anyString())).thenReturn(preparedStatement);
+
+        List<SqlRunnerStatement> statements = new ArrayList<SqlRunnerStatement>();
+        statements.add(new SqlRunnerStatement(null, "update #{table} set a = 'a'"));
+
+        instance.setAttribute("table", "emp");
+        String sql1 = instance.run(statements).get(0).getSql();
+        String sql2 = instance.run(statements).get(0).getSql();
+        assertEquals("update emp set a = 'a'", sql1);
+        assertSame(sql1, sql2);
+
+        instance.setAttribute("table", "dept");
+        assertEquals("update dept set a = 'a'", instance.run(statements).get(0).getSql());
+
+        // another runner with the same number of attribute changes must not see our SQL
+        SqlRunner other = new SqlRunner(
+                dataSource, callbackHandler, resultSetNextRowCallbackHandler, fileReader);
+        other.setAttribute("table", "x");
+        other.setAttribute("table", "bonus");
+        assertEquals("update bonus set a = 'a'", other.run(statements).get(0).getSql());
+
+        instance.setBindAttributes(true);
+        SqlRunnerStatement result = instance.run(statements).get(0);
+        assertEquals("update ? set a = 'a'", result.getSql());
+        assertEquals(1, result.getBindValues().size());
+
+        statements.get(0).setSql("delete from #{table}");
+        assertEquals("delete from ?", instance.run(statements).get(0).getSql());
+    }
+
+    @Test
+    public void testAttributeSupplier() throws Exception {
+        System.out.println("setAttribute");
+
+        when(dataSource.getConnection()).thenReturn(connection);
+        when(connection.prepareStatement(anyString())).thenReturn(preparedStatement);
+
+        final int[] calls = new int[2];
+        instance.setAttribute("used", new SqlRunnerAttributeSupplier<Integer>() {
+            public Integer get() {
+                return Integer.valueOf(++calls[0]);
+            }
+        });
+        instance.setAttribute("unused", new SqlRunnerAttributeSupplier<String>() {
+            public String get() {
+                calls[1]++;
+                return "x";
+            }
+        });
+
+        List<SqlRunnerStatement> statements = instance.toSqlRunnerStatements(
+                java.util.Arrays.asList("select #{used} from a", "select #{used} from b"));
+
+        List<SqlRunnerStatement> result = instance.run(statements);
+        assertEquals("select 1 from a", result.get(0).getSql());
+        assertEquals("select 1 from b", result.get(1).getSql());
+        assertEquals(1, calls[0]);
+        assertEquals(0, calls[1]);
+
+        // suppliers are called again by the next run
+        result = instance.run(statements);
+        assertEquals("select 2 from a", result.get(0).getSql());
+        assertEquals(2, calls[0]);
+        assertEquals("select 3 from dual", instance.run("select #{used} from dual").getSql());
+        assertEquals(0, calls[1]);
+
+        instance.setBindAttributes(true);
+        result = instance.run(statements);
+        assertEquals("select ? from a", result.get(0).getSql());
+        assertEquals(Integer.valueOf(4), result.get(1).getBindValues().get(0));
+        assertEquals(0, calls[1]);
+    }
+
+    @Test
+    public void testAttributeSupplierNull() throws Exception {
+        System.out.println("setAttribute");
+
+        when(dataSource.getConnection()).thenReturn(connection);
+        when(connection.prepareStatement(anyString())).thenReturn(preparedStatement);
+
+        instance.setAttribute("a", new SqlRunnerAttributeSupplier<String>() {
+            public String get() {
+                return null;
+            }
+        });
+        assertEquals("select #{a} from dual", instance.run("select #{a} from dual").getSql());
+
+        instance.setAttributePrefixAndPostfix("", "");
+        assertEquals("select a from dual", instance.run("select a from dual").getSql());
+    }
+
+    @Test
+    public void testAttributeSupplierThrows() throws Exception {
+        System.out.println("setAttribute");
+
+        when(dataSource.getConnection()).thenReturn(connection);
+        final RuntimeException ex = new IllegalStateException("test");
+        instance.setAttribute("a", new SqlRunnerAttributeSupplier<String>() {
+            public String get() {
+                throw ex;
+            }
+        });
+        try {
+            instance.run("select #{a} from dual");
+            fail("expected SqlRunnerException");
+        } catch (SqlRunnerException expected) {
+            assertSame(ex, expected.getCause());
+        }
+        verify(connection).rollback();
+    }
+
+    @Test
+    public void testRunBatch() throws Exception {
+        System.out.println("run");
+
+        when(dataSource.getConnection()).thenReturn(connection);
+        when(connection.prepareStatement(anyString())).thenReturn(preparedStatement);
+        when(preparedStatement.executeBatch()).thenReturn(new int[] {1, 1});
+        when(preparedStatement.execute()).thenReturn(false);
+        when(preparedStatement.getUpdateCount()).thenReturn(3);
+
+        instance.setBindAttributes(true);
+        instance.setBatchSize(2);
+        instance.setAttribute("a", "x");
+
+        List<SqlRunnerStatement> result = instance.run(instance.toSqlRunnerStatements(
+                java.util.Arrays.asList(
+                "insert into t values (#{a})",
+                "insert into t values (#{a})",
+                "insert into t values (#{a})",
+                "select 1 from dual",
+                "select 1 from dual",
+                " UPDATE t set a = #{a}",
+                " UPDATE t set a = #{a}")));
+
+        assertEquals(7, result.size());
+        assertEquals(Integer.valueOf(1), result.get(0).getUpdateCount());
+        assertEquals(Integer.valueOf(1), result.get(1).getUpdateCount());
+        assertEquals(Integer.valueOf(3), result.get(2).getUpdateCount());
+        assertEquals(Integer.valueOf(3), result.get(3).getUpdateCount());
+        assertEquals(Integer.valueOf(1), result.get(5).getUpdateCount());
+        assertEquals(Boolean.FALSE, result.get(6).getResultOfExecutionWasResultSet());
+        verify(preparedStatement, times(4)).addBatch();
+        verify(preparedStatement, times(2)).executeBatch();
+        verify(preparedStatement, times(3)).execute();
+        verify(preparedStatement, times(5)).setObject(1, "x");
+        verify(connection, times(5)).prepareStatement(anyString());
+    }
+
+    @Test
+    public void testRunBatchFailFast() throws Exception {
+        System.out.println("run");
+
+        when(dataSource.getConnection()).thenReturn(connection);
+        when(connection.prepareStatement(anyString())).thenReturn(preparedStatement);
+        BatchUpdateException ex = new BatchUpdateException(new int[] {1});
+        when(preparedStatement.executeBatch()).thenThrow(ex);
+
+        instance.setBatchSize(10);
+
+        List<SqlRunnerStatement> statements = instance.toSqlRunnerStatements(
+                java.util.Arrays.asList("delete from t", "delete from t", "delete from t"));
+        try {
+            instance.run(statements);
+            fail("expected SqlRunnerException");
+        } catch (SqlRunnerException expected) {
+            assertSame(ex, expected.getCause());
+        }
+        verify(connection).rollback();
+        verify(preparedStatement, never()).execute();
+    }
+
+    @Test
+    public void testRunBatchNotFailFast() throws Exception {
+        System.out.println("run");
+
+        when(dataSource.getConnection()).thenReturn(connection);
+        when(connection.prepareStatement(anyString())).thenReturn(preparedStatement);
+        BatchUpdateException ex = new BatchUpdateException(new int[] {1});
+        when(preparedStatement.executeBatch()).thenThrow(ex);
+        when(preparedStatement.execute()).thenReturn(false);
+        when(preparedStatement.getUpdateCount()).thenReturn(5);
+
+        instance.setBatchSize(10);
+
+        List<SqlRunnerStatement> statements = new ArrayList<SqlRunnerStatement>();
+        for (int i = 0; i < 3; i++) {
+            statements.add(new SqlRunnerStatement(null, "delete from t", false));
+        }
+        List<SqlRunnerStatement> result = instance.run(statements);
+        assertEquals(Integer.valueOf(1), result.get(0).getUpdateCount());
+        assertEquals(null, result.get(0).getException());
+        assertSame(ex, result.get(1).getException());
+        assertEquals(null, result.get(1).getUpdateCount());
+        assertEquals(Integer.valueOf(5), result.get(2).getUpdateCount());
+        verify(preparedStatement, times(1)).execute();
+        verify(connection, never()).rollback();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testSetBatchSizeNegative() {
+        instance.setBatchSize(-1);
+    }
+
     @Test(expected = NullPointerException.class)
     public void testRunNullSql() throws Exception {
         System.out.println("run");
@@ -255,6 +648,52 @@ public class SqlRunnerTest {
 
     }
 
+    /**
+     * Test of runFileStreaming method, of class SqlRunner.
+     */
+    @Test
+    public void testRunFileStreaming() throws Exception {
+        System.out.println("runFileStreaming");
+
+        when(dataSource.getConnection()).thenReturn(connection);
+        when(connection.getAutoCommit()).thenReturn(true, false);
+        when(connection.prepareStatement(anyString())).thenReturn(preparedStatement);
+        when(preparedStatement.execute()).thenReturn(false);
+
+        assertEquals(3, instance.runFileStreaming("/test.sql"));
+
+        verify(connection, times(3)).prepareStatement(anyString());
+        verify(preparedStatement, times(3)).close();
+        verify(connection).setAutoCommit(false);
+        verify(connection).commit();
+        verify(connection).setAutoCommit(true);
+        verify(connection).close();
+    }
+
+    @Test
+    public void testRunFileStreaming_failFast() throws Exception {
+        when(dataSource.getConnection()).thenReturn(connection);
+        when(connection.prepareStatement(anyString())).thenReturn(preparedStatement);
+        when(preparedStatement.execute()).thenThrow(new SQLException("test SQL ex"));
+
+        try {
+            instance.runFileStreaming("/test.sql");
+            fail();
+        } catch (SqlRunnerException ex) {
+            assertTrue(ex.getMessage().startsWith("failed to execute."));
+        }
+
+        // we should stop at the first statement
+        verify(connection, times(1)).prepareStatement(anyString());
+        verify(connection).rollback();
+        verify(connection).close();
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void testRunFileStreamingNullConnection() throws Exception {
+        instance.runFileStreaming("/test.sql", null);
+    }
+
     @Test
     public void testFailedToGetConnection() throws Exception {
         when(dataSource.getConnection()).thenThrow(new SQLException("test SQL ex"));
@@ -268,4 +707,710 @@ public class SqlRunnerTest {
 
     // TODO: add more exception condition tests
 
+
+    private SqlRunner newLoadingInstance() {
+        SqlRunnerFileReader loadFileReader = mock(SqlRunnerFileReader.class);
+        when(loadFileReader.readFile("load.sql")).thenReturn(java.util.Arrays.asList(
+                new SqlRunnerStatement("other", "delete from t", true),
+                new SqlRunnerStatement(
+                        "insertT", "insert into t (a, b, c) values (#{a}, #{b}, #{c})", true)));
+        return new SqlRunner(
+                dataSource, callbackHandler, resultSetNextRowCallbackHandler, loadFileReader);
+    }
+
+    @Test
+    public void testLoad() throws Exception {
+        System.out.println("load");
+
+        when(dataSource.getConnection()).thenReturn(connection);
+        when(connection.prepareStatement(anyString())).thenReturn(preparedStatement);
+
+        SqlRunner loader = newLoadingInstance();
+        loader.setLoadBatchSize(2);
+        // the batch size of run methods is not used by load
+        loader.setBatchSize(4);
+        loader.setAttribute("c", "9");
+
+        List<Map<String, Object>> rows = new ArrayList<Map<String, Object>>();
+        for (int i = 0; i < 5; i++) {
+            Map<String, Object> row = new java.util.HashMap<String, Object>();
+            row.put("a", i);
+            rows.add(row);
+        }
+
+        assertEquals(5, loader.load("load.sql", "insertT", rows.iterator(), 3));
+
+        verify(connection, times(1)).prepareStatement("insert into t (a, b, c) values (?, ?, 9)");
+        verify(preparedStatement, times(5)).addBatch();
+        // batches of 2, 1 (to commit after 3 rows), 2
+        verify(preparedStatement, times(3)).executeBatch();
+        verify(preparedStatement, never()).execute();
+        verify(preparedStatement).setObject(1, 4);
+        verify(preparedStatement, times(5)).setNull(2, java.sql.Types.NULL);
+        // once after 3 rows and once on close
+        verify(connection, times(2)).commit();
+        verify(preparedStatement).close();
+    }
+
+    @Test
+    public void testLoadArrays() throws Exception {
+        System.out.println("load");
+
+        when(dataSource.getConnection()).thenReturn(connection);
+        when(connection.prepareStatement(anyString())).thenReturn(preparedStatement);
+
+        SqlRunner loader = newLoadingInstance();
+        loader.setLoadBatchSize(0);
+        loader.setBindAttributes(true);
+        loader.setAttribute("c", 7);
+
+        List<Object[]> rows = new ArrayList<Object[]>();
+        rows.add(new Object[] {"y", "x"});
+        rows.add(new Object[] {"y2", null});
+
+        assertEquals(2, loader.load(
+                "load.sql", "insertT", new String[] {"b", "a"}, rows.iterator(), 0));
+
+        verify(connection).prepareStatement("insert into t (a, b, c) values (?, ?, ?)");
+        verify(preparedStatement, times(2)).execute();
+        verify(preparedStatement).setObject(1, "x");
+        verify(preparedStatement).setObject(2, "y");
+        verify(preparedStatement).setNull(1, java.sql.Types.NULL);
+        verify(preparedStatement, times(2)).setObject(3, 7);
+        verify(preparedStatement, never()).addBatch();
+        verify(connection, times(1)).commit();
+    }
+
+    @Test
+    public void testLoadCommitEvery() throws Exception {
+        System.out.println("load");
+
+        when(dataSource.getConnection()).thenReturn(connection);
+        when(connection.prepareStatement(anyString())).thenReturn(preparedStatement);
+
+        SqlRunner loader = newLoadingInstance();
+        loader.setLoadBatchSize(0);
+        // loads only use the number of rows - not the number of statements
+        loader.setCommitEvery(1, 2);
+
+        List<Object[]> rows = new ArrayList<Object[]>();
+        for (int i = 0; i < 5; i++) {
+            rows.add(new Object[] {i, i, i});
+        }
+
+        assertEquals(5, loader.load(
+                "load.sql", "insertT", new String[] {"a", "b", "c"}, rows.iterator(), 0));
+        // after 2 and 4 rows and once on close
+        verify(connection, times(3)).commit();
+
+        // loads using the callers connection never commit
+        assertEquals(5, loader.load("load.sql", "insertT", new String[] {"a", "b", "c"},
+                rows.iterator(), connection));
+        verify(connection, times(3)).commit();
+    }
+
+    @Test
+    public void testLoadFails() throws Exception {
+        System.out.println("load");
+
+        when(dataSource.getConnection()).thenReturn(connection);
+        when(connection.prepareStatement(anyString())).thenReturn(preparedStatement);
+        SQLException ex = new SQLException("bad row");
+        when(preparedStatement.execute()).thenReturn(false).thenThrow(ex);
+
+        List<Object[]> rows = new ArrayList<Object[]>();
+        rows.add(new Object[] {1, 2, 3});
+        rows.add(new Object[] {4, 5, 6});
+
+        try {
+            newLoadingInstance().setLoadBatchSize(0).load(
+                    "load.sql", "insertT", new String[] {"a", "b", "c"}, rows.iterator(), 0);
+            fail("expected SqlRunnerException");
+        } catch (SqlRunnerException expected) {
+            assertSame(ex, expected.getCause());
+            assertTrue(expected.getMessage().startsWith("failed to load row 2"));
+        }
+        verify(connection).rollback();
+        verify(preparedStatement).close();
+    }
+
+    @Test
+    public void testLoadDefaultBatchSize() throws Exception {
+        System.out.println("load");
+
+        when(dataSource.getConnection()).thenReturn(connection);
+        when(connection.prepareStatement(anyString())).thenReturn(preparedStatement);
+
+        List<Object[]> rows = new ArrayList<Object[]>();
+        for (int i = 0; i < SqlRunner.DEFAULT_LOAD_BATCH_SIZE + 1; i++) {
+            rows.add(new Object[] {i, i, i});
+        }
+
+        assertEquals(rows.size(), newLoadingInstance().load(
+                "load.sql", "insertT", new String[] {"a", "b", "c"}, rows.iterator(), 0));
+
+        verify(preparedStatement, times(rows.size())).addBatch();
+        // one full batch and one batch of the last row
+        verify(preparedStatement, times(2)).executeBatch();
+        verify(preparedStatement, never()).execute();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testSetLoadBatchSizeNegative() throws Exception {
+        instance.setLoadBatchSize(-1);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testLoadStatementNotFound() throws Exception {
+        System.out.println("load");
+
+        newLoadingInstance().load("load.sql", "missing",
+                new ArrayList<Map<String, Object>>().iterator(), 0);
+    }
+
+    @Test
+    public void testRunStatementCachingCallbackHandler() throws Exception {
+        System.out.println("run");
+
+        when(dataSource.getConnection()).thenReturn(connection);
+        when(connection.prepareStatement(anyString())).thenReturn(preparedStatement);
+
+        com.butterfill.sqlrunner.util.StatementCachingCallbackHandlerImpl cachingHandler =
+                new com.butterfill.sqlrunner.util.StatementCachingCallbackHandlerImpl();
+        instance = new SqlRunner(
+                dataSource, cachingHandler, resultSetNextRowCallbackHandler, fileReader);
+
+        instance.run(instance.toSqlRunnerStatements(java.util.Arrays.asList(
+                "delete from t", "delete from t", "delete from t")));
+
+        verify(connection, times(1)).prepareStatement("delete from t");
+        verify(preparedStatement, times(3)).execute();
+        // the statement is closed when the connection is closed
+        verify(preparedStatement, times(1)).close();
+        assertEquals(2L, cachingHandler.getStats().getHitCount());
+        assertEquals(0, cachingHandler.getStats().getStatementCount());
+    }
+
+    @Test
+    public void testRunStatementCachingCallbackHandlerHints() throws Exception {
+        System.out.println("run");
+
+        when(dataSource.getConnection()).thenReturn(connection);
+        when(connection.prepareStatement(anyString())).thenReturn(preparedStatement);
+        when(preparedStatement.getFetchSize()).thenReturn(10);
+        when(preparedStatement.getFetchDirection()).thenReturn(java.sql.ResultSet.FETCH_FORWARD);
+
+        com.butterfill.sqlrunner.util.StatementCachingCallbackHandlerImpl cachingHandler =
+                new com.butterfill.sqlrunner.util.StatementCachingCallbackHandlerImpl();
+        instance = new SqlRunner(
+                dataSource, cachingHandler, resultSetNextRowCallbackHandler, fileReader);
+
+        SqlRunnerStatement hinted = new SqlRunnerStatement(null, "select * from emp");
+        hinted.setFetchSize(500);
+        hinted.setMaxRows(7);
+        instance.run(Arrays.asList(hinted, new SqlRunnerStatement(null, "select * from emp")));
+
+        verify(connection, times(1)).prepareStatement("select * from emp");
+        org.mockito.InOrder inOrder = inOrder(preparedStatement);
+        inOrder.verify(preparedStatement).setFetchSize(500);
+        inOrder.verify(preparedStatement).setMaxRows(7);
+        inOrder.verify(preparedStatement).execute();
+        // the second run gets the driver defaults back, not the hints of the first run
+        inOrder.verify(preparedStatement).setFetchSize(10);
+        inOrder.verify(preparedStatement).setMaxRows(0);
+        inOrder.verify(preparedStatement).execute();
+        verify(preparedStatement, times(2)).setFetchSize(anyInt());
+        verify(preparedStatement, times(1)).setMaxRows(7);
+        assertEquals(1L, cachingHandler.getStats().getHitCount());
+    }
+
+    private List<SqlRunnerStatement> newParallelBlock(String... sqls) {
+        List<SqlRunnerStatement> result = new ArrayList<SqlRunnerStatement>();
+        result.add(new SqlRunnerStatement(null, "delete from a"));
+        for (String sql : sqls) {
+            SqlRunnerStatement statement = new SqlRunnerStatement(null, sql);
+            statement.setParallel(1, 2);
+            result.add(statement);
+        }
+        result.add(new SqlRunnerStatement(null, "delete from b"));
+        return result;
+    }
+
+    @Test
+    public void testRunParallelBlock() throws Exception {
+        System.out.println("run");
+
+        Connection worker1 = mock(Connection.class);
+        Connection worker2 = mock(Connection.class);
+        when(dataSource.getConnection()).thenReturn(connection, worker1, worker2);
+        for (Connection c : new Connection[] {connection, worker1, worker2}) {
+            when(c.prepareStatement(anyString())).thenReturn(preparedStatement);
+        }
+        when(worker1.getAutoCommit()).thenReturn(true, false);
+
+        List<SqlRunnerStatement> result = instance.run(newParallelBlock(
+                "create index i1 on a (b)", "create index i2 on a (c)",
+                "create index i3 on a (d)"));
+
+        assertEquals(5, result.size());
+        assertEquals(1, result.get(1).getParallelBlock());
+        verify(preparedStatement, times(5)).execute();
+        verify(connection).prepareStatement("delete from a");
+        verify(connection).prepareStatement("delete from b");
+        verify(connection, never()).prepareStatement(startsWith("create index"));
+        // committed before the block and on close
+        verify(connection, times(2)).commit();
+        for (Connection worker : new Connection[] {worker1, worker2}) {
+            // once all statements of the block have finished and on close
+            verify(worker, times(2)).commit();
+            verify(worker, never()).rollback();
+            verify(worker).close();
+        }
+        verify(worker1).setAutoCommit(true);
+        verify(worker2, never()).setAutoCommit(true);
+    }
+
+    @Test
+    public void testRunParallelBlockFails() throws Exception {
+        System.out.println("run");
+
+        Connection worker = mock(Connection.class);
+        PreparedStatement failing = mock(PreparedStatement.class);
+        SQLException ex = new SQLException("failed");
+        when(failing.execute()).thenThrow(ex);
+        when(dataSource.getConnection()).thenReturn(connection, worker);
+        when(connection.prepareStatement(anyString())).thenReturn(preparedStatement);
+        when(worker.prepareStatement(anyString())).thenReturn(failing);
+
+        try {
+            instance.run(newParallelBlock("create index i1 on a (b)", "create index i2 on a (c)"));
+            fail("expected SqlRunnerException");
+        } catch (SqlRunnerException expected) {
+            assertSame(ex, expected.getCause());
+        }
+
+        // both workers use the same (mock) connection
+        verify(dataSource, times(3)).getConnection();
+        verify(worker, atLeastOnce()).rollback();
+        verify(worker, times(2)).close();
+        verify(connection).rollback();
+        verify(connection, never()).prepareStatement("delete from b");
+    }
+
+    @Test
+    public void testRunParallelBlockFailsRollsBackAllWorkers() throws Exception {
+        System.out.println("run");
+
+        Connection worker1 = mock(Connection.class);
+        Connection worker2 = mock(Connection.class);
+        PreparedStatement failing = mock(PreparedStatement.class);
+        when(failing.execute()).thenThrow(new SQLException("failed"));
+        when(dataSource.getConnection()).thenReturn(connection, worker1, worker2);
+        when(connection.prepareStatement(anyString())).thenReturn(preparedStatement);
+        for (Connection worker : new Connection[] {worker1, worker2}) {
+            when(worker.prepareStatement("create index i1 on a (b)")).thenReturn(preparedStatement);
+            when(worker.prepareStatement("create index i2 on a (c)")).thenReturn(failing);
+        }
+
+        try {
+            instance.run(newParallelBlock("create index i1 on a (b)", "create index i2 on a (c)"));
+            fail("expected SqlRunnerException");
+        } catch (SqlRunnerException expected) {
+            assertEquals("failed", expected.getCause().getMessage());
+        }
+
+        // the worker that ran i1 is rolled back too - the only commit is the one made on close
+        for (Connection worker : new Connection[] {worker1, worker2}) {
+            org.mockito.InOrder inOrder = inOrder(worker);
+            inOrder.verify(worker).rollback();
+            inOrder.verify(worker).commit();
+            inOrder.verify(worker).close();
+        }
+    }
+
+    @Test
+    public void testRunParallelBlockOwnConnection() throws Exception {
+        System.out.println("run");
+
+        when(connection.prepareStatement(anyString())).thenReturn(preparedStatement);
+
+        instance.run(newParallelBlock("create index i1 on a (b)", "create index i2 on a (c)"),
+                connection);
+
+        verify(dataSource, never()).getConnection();
+        verify(preparedStatement, times(4)).execute();
+        verify(connection, never()).commit();
+    }
+
+    @Test
+    public void testRunScheduled() throws Exception {
+        System.out.println("runScheduled");
+
+        Connection worker = mock(Connection.class);
+        when(dataSource.getConnection()).thenReturn(connection, worker);
+        when(connection.prepareStatement(anyString())).thenReturn(preparedStatement);
+        when(worker.prepareStatement(anyString())).thenReturn(preparedStatement);
+
+        SqlRunnerScheduleReport report = instance.runScheduled(instance.toSqlRunnerStatements(
+                Arrays.asList("create table a (id number)", "create table b (id number)",
+                        "insert into a values (1)", "begin p; end;")), 2, true);
+
+        assertEquals(4, report.getStatements().size());
+        assertEquals("insert into a values (1)", report.getStatements().get(2).getSql());
+        assertEquals(2, report.getConnectionCount());
+        assertEquals(1, report.getBarrierStatements().size());
+        // the critical path ends with the barrier - the statements before it depend on timing
+        List<SqlRunnerStatement> criticalPath = report.getCriticalPath();
+        assertEquals("begin p; end;", criticalPath.get(criticalPath.size() - 1).getSql());
+        assertTrue(report.getTotalStatementTime() >= report.getCriticalPathTime());
+        verify(preparedStatement, times(4)).execute();
+        verify(dataSource, times(2)).getConnection();
+        verify(connection).close();
+        verify(worker).close();
+    }
+
+    @Test
+    public void testRunScheduledFails() throws Exception {
+        System.out.println("runScheduled");
+
+        PreparedStatement failing = mock(PreparedStatement.class);
+        SQLException ex = new SQLException("failed");
+        when(failing.execute()).thenThrow(ex);
+        when(dataSource.getConnection()).thenReturn(connection);
+        when(connection.prepareStatement("insert into a values (1)")).thenReturn(failing);
+
+        try {
+            instance.runScheduled(instance.toSqlRunnerStatements(Arrays.asList(
+                    "insert into a values (1)", "insert into a values (2)")), 2, true);
+            fail("expected SqlRunnerException");
+        } catch (SqlRunnerException expected) {
+            assertSame(ex, expected.getCause());
+        }
+
+        // the second statement depends on the first, so it is never started
+        verify(connection).rollback();
+        verify(connection, never()).prepareStatement("insert into a values (2)");
+        // both connections are the same (mock) connection
+        verify(connection, times(2)).close();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testRunScheduledMaxConnections() throws Exception {
+        System.out.println("runScheduled");
+        instance.runScheduled(new ArrayList<SqlRunnerStatement>(), 0, true);
+    }
+
+    @Test
+    public void testRunScheduledFailFastNeedsCommitEachStatement() throws Exception {
+        System.out.println("runScheduled");
+
+        when(dataSource.getConnection()).thenReturn(connection);
+        when(connection.prepareStatement(anyString())).thenReturn(preparedStatement);
+
+        try {
+            instance.runScheduled(instance.toSqlRunnerStatements(Arrays.asList(
+                    "delete from a", "delete from b")), 2, false);
+            fail("expected SqlRunnerException");
+        } catch (SqlRunnerException expected) {
+            assertTrue(expected.getMessage().contains("commitEachStatement"));
+        }
+        verify(dataSource, never()).getConnection();
+
+        // statements that do not fail fast can be scheduled without opting in
+        List<SqlRunnerStatement> statements = new ArrayList<SqlRunnerStatement>();
+        statements.add(new SqlRunnerStatement(null, "delete from a", false));
+        statements.add(new SqlRunnerStatement(null, "delete from b", false));
+        assertEquals(2, instance.runScheduled(statements, 2, false).getStatements().size());
+        verify(preparedStatement, times(2)).execute();
+    }
+
+    @Test
+    public void testRunAsync() throws Exception {
+        System.out.println("runAsync");
+
+        when(dataSource.getConnection()).thenReturn(connection);
+        when(connection.prepareStatement(anyString())).thenReturn(preparedStatement);
+
+        List<SqlRunnerStatement> statements = instance.toSqlRunnerStatements(
+                Arrays.asList("delete from a", "delete from b"));
+        Future<List<SqlRunnerStatement>> future = instance.runAsync(statements);
+        // the list is copied, so changing it does not change the run
+        statements.clear();
+
+        assertEquals(2, future.get().size());
+        verify(preparedStatement, times(2)).execute();
+        verify(connection).commit();
+        verify(connection).close();
+    }
+
+    @Test
+    public void testRunFileAsync() throws Exception {
+        System.out.println("runFileAsync");
+
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            instance.setAsyncExecutor(executor);
+            Future<List<SqlRunnerStatement>> future =
+                    instance.runFileAsync("this file does not exist");
+            future.get();
+            fail("expected ExecutionException");
+        } catch (ExecutionException expected) {
+            assertTrue(expected.getCause() instanceof SqlRunnerException);
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void testRunAsyncNullSqlList() throws Exception {
+        System.out.println("runAsync");
+        List<SqlRunnerStatement> sqlList = null;
+        instance.runAsync(sqlList);
+    }
+
+    @Test
+    public void testRunRestoresAutoCommitPerRun() throws Exception {
+        System.out.println("run");
+
+        final Connection outer = mock(Connection.class);
+        Connection inner = mock(Connection.class);
+        when(dataSource.getConnection()).thenReturn(outer, inner);
+        when(outer.getAutoCommit()).thenReturn(true, false);
+        when(inner.getAutoCommit()).thenReturn(false);
+        when(inner.prepareStatement(anyString())).thenReturn(preparedStatement);
+        // another run starts (and finishes) while the outer run is using its connection
+        when(outer.prepareStatement("delete from a")).thenAnswer(
+                new org.mockito.stubbing.Answer<PreparedStatement>() {
+                    public PreparedStatement answer(
+                            final org.mockito.invocation.InvocationOnMock invocation) {
+                        instance.run("delete from b");
+                        return preparedStatement;
+                    }
+                });
+
+        instance.run("delete from a");
+
+        verify(outer).setAutoCommit(false);
+        verify(outer).setAutoCommit(true);
+        verify(inner, never()).setAutoCommit(anyBoolean());
+        verify(outer).close();
+        verify(inner).close();
+    }
+
+    @Test
+    public void testRunSharedInstance() throws Exception {
+        System.out.println("run");
+
+        when(dataSource.getConnection()).thenReturn(connection);
+        when(connection.prepareStatement(anyString())).thenReturn(preparedStatement);
+        instance.setBindAttributes(true);
+
+        final int threadCount = 4;
+        final int runCount = 50;
+        ExecutorService executor = Executors.newFixedThreadPool(threadCount);
+        List<Future<?>> futures = new ArrayList<Future<?>>();
+        try {
+            for (int i = 0; i < threadCount; i++) {
+                final String attribute = "a" + i;
+                futures.add(executor.submit(new java.util.concurrent.Callable<Object>() {
+                    public Object call() {
+                        for (int j = 0; j < runCount; j++) {
+                            instance.setAttribute(attribute, j);
+                            instance.setCallbackHandler(attribute, callbackHandler);
+                            instance.run(instance.toSqlRunnerStatements(Arrays.asList(
+                                    "delete from t where a = #{" + attribute + "}")));
+                        }
+                        return null;
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        verify(preparedStatement, times(threadCount * runCount)).execute();
+        verify(connection, times(threadCount * runCount)).close();
+        assertEquals(runCount - 1, instance.getAttribute("a0"));
+    }
+
+    /**
+     * Returns the value of an attribute of instance, read by another thread - which fails if
+     * the lock of instance is held for more than a few seconds.
+     */
+    private Object getAttributeFromOtherThread(final String attribute) {
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            return executor.submit(new java.util.concurrent.Callable<Object>() {
+                public Object call() {
+                    return instance.getAttribute(attribute);
+                }
+            }).get(5, java.util.concurrent.TimeUnit.SECONDS);
+        } catch (Exception ex) {
+            throw new RuntimeException("failed to get attribute from another thread", ex);
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testRunDoesNotHoldLockWhileSupplyingOrFetching() throws Exception {
+        System.out.println("run");
+
+        final List<Object> seen = new ArrayList<Object>();
+        instance.setAttribute("a", "x");
+        instance.setAttribute("s", new SqlRunnerAttributeSupplier<String>() {
+            public String get() {
+                seen.add(getAttributeFromOtherThread("a"));
+                return "y";
+            }
+        });
+        java.sql.ResultSet resultSet = mock(java.sql.ResultSet.class);
+        when(resultSet.next()).thenAnswer(new org.mockito.stubbing.Answer<Boolean>() {
+            public Boolean answer(final org.mockito.invocation.InvocationOnMock invocation) {
+                seen.add(getAttributeFromOtherThread("a"));
+                return false;
+            }
+        });
+        when(dataSource.getConnection()).thenReturn(connection);
+        when(connection.prepareStatement("select x, y from dual")).thenReturn(preparedStatement);
+        when(preparedStatement.execute()).thenReturn(true);
+        when(preparedStatement.getResultSet()).thenReturn(resultSet);
+
+        instance.run("select #{a}, #{s} from dual");
+
+        verify(connection).prepareStatement("select x, y from dual");
+        assertEquals(Arrays.<Object>asList("x", "x"), seen);
+    }
+
+    private static class RecordingSubscriber implements SqlRunnerRowSubscriber {
+        private SqlRunnerRowSubscription subscription;
+        private final List<Map<String, Object>> rows = new ArrayList<Map<String, Object>>();
+        private Throwable error;
+        private boolean complete;
+
+        public void onSubscribe(SqlRunnerRowSubscription subscription) {
+            this.subscription = subscription;
+        }
+
+        public void onNext(Map<String, Object> row) {
+            rows.add(row);
+        }
+
+        public void onError(Throwable throwable) {
+            error = throwable;
+        }
+
+        public void onComplete() {
+            complete = true;
+        }
+    }
+
+    private SqlRunnerRowPublisher newRowPublisher(java.sql.ResultSet resultSet)
+            throws Exception {
+        SqlRunnerFileReader exportFileReader = mock(SqlRunnerFileReader.class);
+        when(exportFileReader.readFile("export.sql")).thenReturn(Arrays.asList(
+                new SqlRunnerStatement("selectT", "select id, emp_name from t where c = #{c}",
+                        true)));
+        java.sql.ResultSetMetaData metaData = mock(java.sql.ResultSetMetaData.class);
+        when(metaData.getColumnCount()).thenReturn(2);
+        when(metaData.getColumnName(1)).thenReturn("ID");
+        when(metaData.getColumnName(2)).thenReturn("EMP_NAME");
+        when(resultSet.getMetaData()).thenReturn(metaData);
+        when(dataSource.getConnection()).thenReturn(connection);
+        when(connection.prepareStatement(anyString())).thenReturn(preparedStatement);
+        when(preparedStatement.executeQuery()).thenReturn(resultSet);
+        return new SqlRunner(
+                dataSource, callbackHandler, resultSetNextRowCallbackHandler, exportFileReader)
+                .setAttribute("c", 3)
+                .publishRows("export.sql", "selectT", 2);
+    }
+
+    @Test
+    public void testPublishRows() throws Exception {
+        System.out.println("publishRows");
+
+        java.sql.ResultSet resultSet = mock(java.sql.ResultSet.class);
+        when(resultSet.next()).thenReturn(true, true, true, false);
+        when(resultSet.getObject(1)).thenReturn(1, 2, 3);
+        when(resultSet.getObject(2)).thenReturn("a", "b", "c");
+
+        RecordingSubscriber subscriber = new RecordingSubscriber();
+        newRowPublisher(resultSet).subscribe(subscriber);
+
+        // nothing is run until rows are requested
+        verify(dataSource, never()).getConnection();
+
+        subscriber.subscription.request(2);
+        verify(connection).prepareStatement("select id, emp_name from t where c = 3");
+        verify(preparedStatement).setFetchSize(2);
+        verify(resultSet, times(2)).next();
+        assertEquals(2, subscriber.rows.size());
+        assertEquals(1, subscriber.rows.get(0).get("id"));
+        assertEquals("b", subscriber.rows.get(1).get("empName"));
+        assertFalse(subscriber.complete);
+
+        subscriber.subscription.request(5);
+        assertEquals(3, subscriber.rows.size());
+        assertTrue(subscriber.complete);
+        assertNull(subscriber.error);
+        verify(resultSet).close();
+        verify(preparedStatement).close();
+        verify(connection).close();
+
+        // requests after completion are ignored
+        subscriber.subscription.request(1);
+        verify(resultSet, times(4)).next();
+    }
+
+    @Test
+    public void testPublishRowsCancel() throws Exception {
+        System.out.println("publishRows");
+
+        java.sql.ResultSet resultSet = mock(java.sql.ResultSet.class);
+        when(resultSet.next()).thenReturn(true);
+
+        RecordingSubscriber subscriber = new RecordingSubscriber();
+        newRowPublisher(resultSet).subscribe(subscriber);
+        subscriber.subscription.request(1);
+        subscriber.subscription.cancel();
+        subscriber.subscription.request(1);
+
+        assertEquals(1, subscriber.rows.size());
+        assertFalse(subscriber.complete);
+        assertNull(subscriber.error);
+        verify(resultSet, times(1)).next();
+        verify(connection).close();
+    }
+
+    @Test
+    public void testPublishRowsInvalidRequest() throws Exception {
+        System.out.println("publishRows");
+
+        RecordingSubscriber subscriber = new RecordingSubscriber();
+        newRowPublisher(mock(java.sql.ResultSet.class)).subscribe(subscriber);
+        subscriber.subscription.request(0);
+
+        assertTrue(subscriber.error instanceof IllegalArgumentException);
+        verify(dataSource, never()).getConnection();
+    }
+
+    @Test
+    public void testPublishRowsFails() throws Exception {
+        System.out.println("publishRows");
+
+        java.sql.ResultSet resultSet = mock(java.sql.ResultSet.class);
+        SQLException ex = new SQLException("failed");
+        when(resultSet.next()).thenThrow(ex);
+
+        RecordingSubscriber subscriber = new RecordingSubscriber();
+        newRowPublisher(resultSet).subscribe(subscriber);
+        subscriber.subscription.request(1);
+
+        assertTrue(subscriber.error instanceof SqlRunnerException);
+        assertSame(ex, subscriber.error.getCause());
+        verify(connection).close();
+    }
 }
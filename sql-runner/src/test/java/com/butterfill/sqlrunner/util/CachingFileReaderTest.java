@@ -1,8 +1,20 @@
 
 package com.butterfill.sqlrunner.util;
 
+import com.butterfill.sqlrunner.SqlRunnerFileReader;
 import com.butterfill.sqlrunner.SqlRunnerStatement;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 import org.junit.After;
 import org.junit.AfterClass;
 import org.junit.Before;
@@ -71,4 +83,284 @@ public class CachingFileReaderTest {
 
     }
 
+    @Test(expected = NullPointerException.class)
+    public void testReadFile_nullFileName() {
+        new CachingFileReader(new DefaultFileReader("/")).readFile(null);
+    }
+
+    @Test
+    public void testReadFile_concurrent() throws Exception {
+        final AtomicInteger readCount = new AtomicInteger();
+        final CountDownLatch allWaiting = new CountDownLatch(1);
+        final CachingFileReader cachingFileReader = new CachingFileReader(
+                new SqlRunnerFileReader() {
+                    public List<SqlRunnerStatement> readFile(String fileName) {
+                        readCount.incrementAndGet();
+                        try {
+                            allWaiting.await();
+                        } catch (InterruptedException ex) {
+                            throw new RuntimeException(ex);
+                        }
+                        return new ArrayList<SqlRunnerStatement>();
+                    }
+                });
+
+        int threadCount = 8;
+        final CountDownLatch started = new CountDownLatch(threadCount);
+        ExecutorService executor = Executors.newFixedThreadPool(threadCount);
+        try {
+            List<Future<List<SqlRunnerStatement>>> results =
+                    new ArrayList<Future<List<SqlRunnerStatement>>>();
+            for (int i = 0; i < threadCount; i++) {
+                results.add(executor.submit(new Callable<List<SqlRunnerStatement>>() {
+                    public List<SqlRunnerStatement> call() {
+                        started.countDown();
+                        return cachingFileReader.readFile("test.sql");
+                    }
+                }));
+            }
+            started.await();
+            Thread.sleep(50);
+            allWaiting.countDown();
+
+            List<SqlRunnerStatement> first = results.get(0).get();
+            for (Future<List<SqlRunnerStatement>> result : results) {
+                assertSame(first, result.get());
+            }
+            assertEquals(1, readCount.get());
+
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testReadFile_failureNotCached() {
+        final AtomicInteger readCount = new AtomicInteger();
+        CachingFileReader cachingFileReader = new CachingFileReader(new SqlRunnerFileReader() {
+            public List<SqlRunnerStatement> readFile(String fileName) {
+                if (readCount.incrementAndGet() == 1) {
+                    throw new IllegalStateException("first read fails");
+                }
+                return new ArrayList<SqlRunnerStatement>();
+            }
+        });
+
+        try {
+            cachingFileReader.readFile("test.sql");
+            fail("first read should fail");
+        } catch (IllegalStateException ex) {
+            assertEquals("first read fails", ex.getMessage());
+        }
+
+        List<SqlRunnerStatement> result = cachingFileReader.readFile("test.sql");
+        assertSame(result, cachingFileReader.readFile("test.sql"));
+        assertEquals(2, readCount.get());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testConstructor_zeroMaxEntries() {
+        new CachingFileReader(new DefaultFileReader("/"), 0, 1L);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testConstructor_negativeMaxSqlLength() {
+        new CachingFileReader(new DefaultFileReader("/"), 1, -1L);
+    }
+
+    private InMemoryScriptSource newScriptSource() {
+        return new InMemoryScriptSource()
+                .putScript("a.sql", "select 'a' from dual;")
+                .putScript("b.sql", "select 'b' from dual;")
+                .putScript("c.sql", "select 'c' from dual;")
+                .putScript("long.sql", "select 'long' from dual;");
+    }
+
+    @Test
+    public void testReadFile_maxEntries() throws Exception {
+        CachingFileReader cachingFileReader = new CachingFileReader(
+                new DefaultFileReader(newScriptSource()), 2, Long.MAX_VALUE);
+
+        List<SqlRunnerStatement> a = cachingFileReader.readFile("a.sql");
+        Thread.sleep(5);
+        List<SqlRunnerStatement> b = cachingFileReader.readFile("b.sql");
+        Thread.sleep(5);
+        // a is now more recently used than b
+        assertSame(a, cachingFileReader.readFile("a.sql"));
+        Thread.sleep(5);
+        cachingFileReader.readFile("c.sql");
+
+        CachingFileReaderStats stats = cachingFileReader.getStats();
+        assertEquals(2, stats.getEntryCount());
+        assertEquals(1, stats.getEvictionCount());
+        assertSame(a, cachingFileReader.readFile("a.sql"));
+        assertNotSame(b, cachingFileReader.readFile("b.sql"));
+    }
+
+    @Test
+    public void testReadFile_maxSqlLength() {
+        // "select 'a' from dual" is 20 chars long
+        CachingFileReader cachingFileReader = new CachingFileReader(
+                new DefaultFileReader(newScriptSource()), Integer.MAX_VALUE, 40L);
+
+        cachingFileReader.readFile("a.sql");
+        cachingFileReader.readFile("b.sql");
+        assertEquals(40L, cachingFileReader.getStats().getSqlLength());
+        assertEquals(0L, cachingFileReader.getStats().getEvictionCount());
+
+        cachingFileReader.readFile("long.sql");
+        CachingFileReaderStats stats = cachingFileReader.getStats();
+        assertEquals(2L, stats.getEvictionCount());
+        assertEquals(1, stats.getEntryCount());
+        assertEquals(23L, stats.getSqlLength());
+    }
+
+    @Test
+    public void testGetStats() {
+        CachingFileReader cachingFileReader = new CachingFileReader(
+                new DefaultFileReader(newScriptSource()), 10, 1000L, true);
+
+        CachingFileReaderStats stats = cachingFileReader.getStats();
+        assertEquals(0L, stats.getHitCount());
+        assertEquals(0L, stats.getMissCount());
+        assertEquals(1.0, stats.getHitRate(), 0.0);
+
+        List<SqlRunnerStatement> a = cachingFileReader.readFile("a.sql");
+        assertSame(a, cachingFileReader.readFile("a.sql"));
+        assertSame(a, cachingFileReader.readFile("a.sql"));
+        cachingFileReader.readFile("b.sql");
+
+        stats = cachingFileReader.getStats();
+        assertEquals(2L, stats.getHitCount());
+        assertEquals(2L, stats.getMissCount());
+        assertEquals(0.5, stats.getHitRate(), 0.0);
+        assertEquals(2, stats.getEntryCount());
+        assertEquals(40L, stats.getSqlLength());
+        assertTrue(stats.getTotalLoadTime() > 0L);
+        assertTrue(stats.getEstimatedRetainedBytes() > 80L);
+        assertTrue(stats.toString().startsWith("CachingFileReaderStats[hitCount=2, missCount=2"));
+    }
+
+    @Test
+    public void testReadFile_reloadChangedFile() {
+        InMemoryScriptSource scriptSource = newScriptSource();
+        CachingFileReader cachingFileReader =
+                new CachingFileReader(new DefaultFileReader(scriptSource));
+
+        List<SqlRunnerStatement> a = cachingFileReader.readFile("a.sql");
+        scriptSource.putScript("a.sql", "select 'changed' from dual;");
+        // checking is off by default
+        assertSame(a, cachingFileReader.readFile("a.sql"));
+
+        cachingFileReader.setReloadCheckInterval(0L);
+        List<SqlRunnerStatement> changed = cachingFileReader.readFile("a.sql");
+        assertEquals("select 'changed' from dual", changed.get(0).getSql());
+        assertSame(changed, cachingFileReader.readFile("a.sql"));
+        assertEquals(1, cachingFileReader.getStats().getEntryCount());
+        assertEquals(26L, cachingFileReader.getStats().getSqlLength());
+
+        // a check that finds the same contents does not read the file again
+        scriptSource.putScript("a.sql", "select 'changed' from dual;");
+        assertSame(changed, cachingFileReader.readFile("a.sql"));
+        assertEquals(2L, cachingFileReader.getStats().getMissCount());
+    }
+
+    @Test
+    public void testReadFile_reloadCheckInterval() {
+        InMemoryScriptSource scriptSource = newScriptSource();
+        CachingFileReader cachingFileReader =
+                new CachingFileReader(new DefaultFileReader(scriptSource));
+        cachingFileReader.setReloadCheckInterval(60000L);
+
+        List<SqlRunnerStatement> a = cachingFileReader.readFile("a.sql");
+        scriptSource.putScript("a.sql", "select 'changed' from dual;");
+        // not due a check for another minute
+        assertSame(a, cachingFileReader.readFile("a.sql"));
+    }
+
+    @Test
+    public void testReadFile_reloadDeletedFile() throws IOException {
+        File directory = File.createTempFile("sql-runner", "");
+        directory.delete();
+        directory.mkdir();
+        File file = new File(directory, "a.sql");
+        FileOutputStream out = new FileOutputStream(file);
+        try {
+            out.write("select 'a' from dual;".getBytes("UTF-8"));
+        } finally {
+            out.close();
+        }
+
+        try {
+            CachingFileReader cachingFileReader = new CachingFileReader(
+                    new DefaultFileReader(new FileSystemScriptSource(directory)));
+            cachingFileReader.setReloadCheckInterval(0L);
+
+            List<SqlRunnerStatement> a = cachingFileReader.readFile("a.sql");
+            assertSame(a, cachingFileReader.readFile("a.sql"));
+
+            // we keep using what we have if the file can't be checked
+            file.delete();
+            assertSame(a, cachingFileReader.readFile("a.sql"));
+
+        } finally {
+            file.delete();
+            directory.delete();
+        }
+    }
+
+    @Test
+    public void testInvalidate() {
+        CachingFileReader cachingFileReader =
+                new CachingFileReader(new DefaultFileReader(newScriptSource()));
+
+        List<SqlRunnerStatement> a = cachingFileReader.readFile("a.sql");
+        List<SqlRunnerStatement> b = cachingFileReader.readFile("b.sql");
+        cachingFileReader.invalidate("a.sql");
+        cachingFileReader.invalidate("not-in-cache.sql");
+        assertNotSame(a, cachingFileReader.readFile("a.sql"));
+        assertSame(b, cachingFileReader.readFile("b.sql"));
+
+        cachingFileReader.invalidateAll();
+        assertEquals(0, cachingFileReader.getStats().getEntryCount());
+        assertEquals(0L, cachingFileReader.getStats().getSqlLength());
+        assertNotSame(b, cachingFileReader.readFile("b.sql"));
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void testInvalidate_nullFileName() {
+        new CachingFileReader(new DefaultFileReader("/")).invalidate(null);
+    }
+
+    @Test
+    public void testWarmUp() {
+        DefaultFileReader fileReader = new DefaultFileReader(newScriptSource());
+        CachingFileReader cachingFileReader = new CachingFileReader(fileReader);
+
+        List<String> fileNames = fileReader.listFiles(".sql");
+        assertEquals(Arrays.asList("a.sql", "b.sql", "c.sql", "long.sql"), fileNames);
+
+        assertEquals(4, cachingFileReader.warmUp(fileNames));
+        assertEquals(4L, cachingFileReader.getStats().getMissCount());
+
+        cachingFileReader.readFile("a.sql");
+        cachingFileReader.readFile("long.sql");
+        assertEquals(4L, cachingFileReader.getStats().getMissCount());
+        assertEquals(2L, cachingFileReader.getStats().getHitCount());
+    }
+
+    @Test
+    public void testWarmUp_fileNotFound() {
+        CachingFileReader cachingFileReader =
+                new CachingFileReader(new DefaultFileReader(newScriptSource()));
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            assertEquals(2, cachingFileReader.warmUp(
+                    Arrays.asList("a.sql", "missing.sql", "b.sql"), executor));
+        } finally {
+            executor.shutdown();
+        }
+        assertEquals(2, cachingFileReader.getStats().getEntryCount());
+    }
+
 }
@@ -1,9 +1,15 @@
 
 package com.butterfill.sqlrunner.util;
 
+import com.butterfill.sqlrunner.SqlRunnerException;
+import com.butterfill.sqlrunner.SqlRunnerScriptSource;
 import com.butterfill.sqlrunner.SqlRunnerStatement;
+import com.butterfill.sqlrunner.SqlRunnerStatementCursor;
 import static com.butterfill.sqlrunner.TestHelper.getFieldValue;
+import java.io.StringReader;
+import java.util.Arrays;
 import java.util.List;
+import java.util.NoSuchElementException;
 import org.junit.After;
 import org.junit.AfterClass;
 import org.junit.Before;
@@ -47,11 +53,13 @@ public class DefaultFileReaderTest {
     @Test
     public void testSetCharsetName() {
         DefaultFileReader instance = new DefaultFileReader();
-        assertEquals("UTF-8", getFieldValue(DefaultFileReader.class, "charsetName", instance));
+        assertEquals("UTF-8", getFieldValue(
+                ClasspathScriptSource.class, "charsetName", instance.getScriptSource()));
 
         String charsetName = "couldBeAnything";
         DefaultFileReader result = new DefaultFileReader("", charsetName, "#");
-        assertEquals(charsetName, getFieldValue(DefaultFileReader.class, "charsetName", result));
+        assertEquals(charsetName, getFieldValue(
+                ClasspathScriptSource.class, "charsetName", result.getScriptSource()));
     }
 
     /**
@@ -62,11 +70,13 @@ public class DefaultFileReaderTest {
         System.out.println("setFilePathPrefix");
 
         DefaultFileReader instance = new DefaultFileReader();
-        assertEquals("", getFieldValue(DefaultFileReader.class, "filePathPrefix", instance));
+        assertEquals("", getFieldValue(
+                ClasspathScriptSource.class, "filePathPrefix", instance.getScriptSource()));
 
         String filePathPrefix = "/com/test/scripts/mysql/";
         DefaultFileReader result = new DefaultFileReader(filePathPrefix);
-        assertEquals(filePathPrefix, getFieldValue(DefaultFileReader.class, "filePathPrefix", result));
+        assertEquals(filePathPrefix, getFieldValue(
+                ClasspathScriptSource.class, "filePathPrefix", result.getScriptSource()));
     }
 
 
@@ -121,4 +131,480 @@ public class DefaultFileReaderTest {
         assertEquals(3, result.size());
     }
 
+    /**
+     * Test of readFile method, of class DefaultFileReader -
+     * checks that semi-colons in strings and comments do not end statements.
+     */
+    @Test
+    public void testReadFile_quotesAndComments() {
+        System.out.println("readFile_quotesAndComments");
+        DefaultFileReader instance = new DefaultFileReader("/");
+
+        List<SqlRunnerStatement> result = instance.readFile("test-lexer.sql");
+
+        assertEquals(4, result.size());
+
+        SqlRunnerStatement statement = result.get(0);
+        assertEquals("semi-colon-in-string", statement.getName());
+        assertEquals(false, statement.getFailFast());
+        assertEquals("insert into a (b) values ('x;y''z;')", statement.getSql());
+
+        statement = result.get(1);
+        assertEquals("comments-in-statement", statement.getName());
+        assertEquals(true, statement.getFailFast());
+        String expectedSql = "select /*+ index(a) */ b -- not the end;" + LINE_SEPARATOR
+                + "  from a /* still" + LINE_SEPARATOR
+                + "  not the end; */" + LINE_SEPARATOR
+                + " where \"c;d\" = 1";
+        assertEquals(expectedSql, statement.getSql());
+
+        statement = result.get(2);
+        assertEquals(null, statement.getName());
+        assertEquals("select 1 from dual", statement.getSql());
+
+        statement = result.get(3);
+        assertEquals("select 2 from dual", statement.getSql());
+    }
+
+    /**
+     * Test of DefaultFileReaderCursor -
+     * checks line separators, other comment prefixes and statements bigger than the buffer.
+     */
+    @Test
+    public void testCursor() {
+        StringBuilder bigStatement = new StringBuilder("select 'a");
+        for (int i = 0; i < 100000; i++) {
+            bigStatement.append(i % 10);
+        }
+        bigStatement.append("' from dual");
+
+        String script = "#sqlrunner.name: crlf\r\nselect 1\r\n  from dual;\r\n"
+                + "select #{a} # a comment;\n from dual\n# another comment;\n;"
+                + bigStatement + ";";
+
+        SqlRunnerStatementCursor cursor = new DefaultFileReaderCursor(
+                new StringReader(script), "test", "#", "#sqlrunner.name:",
+                "#sqlrunner.failfast:");
+
+        SqlRunnerStatement statement = cursor.next();
+        assertEquals("crlf", statement.getName());
+        assertEquals("select 1" + LINE_SEPARATOR + "  from dual", statement.getSql());
+
+        statement = cursor.next();
+        assertEquals(null, statement.getName());
+        assertEquals("select #{a} # a comment", statement.getSql());
+
+        statement = cursor.next();
+        assertEquals("from dual" + LINE_SEPARATOR + "# another comment;", statement.getSql());
+
+        statement = cursor.next();
+        assertEquals(bigStatement.toString(), statement.getSql());
+
+        assertFalse(cursor.hasNext());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testSetSingleLineCommentPrefix_passEmptyString() {
+        new DefaultFileReader("", "UTF-8", "");
+    }
+
+    /**
+     * Test of openFile method, of class DefaultFileReader.
+     */
+    @Test
+    public void testOpenFile() {
+        System.out.println("openFile");
+        DefaultFileReader instance = new DefaultFileReader("/");
+
+        SqlRunnerStatementCursor cursor = instance.openFile("test.sql");
+        List<SqlRunnerStatement> expected = instance.readFile("test.sql");
+
+        for (SqlRunnerStatement expectedStatement : expected) {
+            assertTrue(cursor.hasNext());
+            SqlRunnerStatement statement = cursor.next();
+            assertEquals(expectedStatement.getName(), statement.getName());
+            assertEquals(expectedStatement.getSql(), statement.getSql());
+            assertEquals(expectedStatement.getFailFast(), statement.getFailFast());
+        }
+
+        assertFalse(cursor.hasNext());
+        cursor.close();
+        cursor.close();
+        assertFalse(cursor.hasNext());
+
+        try {
+            cursor.next();
+            fail();
+        } catch (NoSuchElementException ex) {
+            // expected
+        }
+    }
+
+    @Test(expected = SqlRunnerException.class)
+    public void testOpenFile_fileNotFound() {
+        new DefaultFileReader("/").openFile("this file does not exist");
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void testConstructor_nullScriptSource() {
+        new DefaultFileReader((SqlRunnerScriptSource) null);
+    }
+
+    /**
+     * Test of readFile method, of class DefaultFileReader - using an in-memory script source.
+     */
+    @Test
+    public void testReadFile_inMemory() {
+        InMemoryScriptSource scriptSource = new InMemoryScriptSource()
+                .putScript("a.sql", "--sqlrunner.name: a\nselect 1 from dual;");
+        DefaultFileReader instance = new DefaultFileReader(scriptSource);
+        assertSame(scriptSource, instance.getScriptSource());
+
+        List<SqlRunnerStatement> result = instance.readFile("a.sql");
+        assertEquals(1, result.size());
+        assertEquals("a", result.get(0).getName());
+        assertEquals("select 1 from dual", result.get(0).getSql());
+
+        try {
+            instance.readFile("b.sql");
+            fail();
+        } catch (SqlRunnerException ex) {
+            assertTrue(ex.getMessage().startsWith("failed to read file [b.sql]. using in-memory"));
+        }
+    }
+
+    @Test
+    public void testLastModified() {
+        // test resources are in a directory on the class path when the tests run
+        assertTrue(new DefaultFileReader("/").lastModified("test.sql") > 0L);
+        assertEquals(0L, new DefaultFileReader(new InMemoryScriptSource()
+                .putScript("a.sql", "select 1 from dual;")).lastModified("a.sql"));
+    }
+
+    @Test(expected = SqlRunnerException.class)
+    public void testLastModified_fileNotFound() {
+        new DefaultFileReader("/").lastModified("this file does not exist");
+    }
+
+    @Test
+    public void testListFiles() {
+        List<String> result = new DefaultFileReader("/").listFiles(".sql");
+        assertTrue(result.contains("test.sql"));
+        assertTrue(result.contains("test-lexer.sql"));
+        for (String fileName : result) {
+            assertTrue(fileName.endsWith(".sql"));
+        }
+
+        // names are relative to the file path prefix
+        assertEquals(Arrays.asList("lexer.sql"),
+                new DefaultFileReader("/test-").listFiles(".sql"));
+    }
+
+    @Test(expected = SqlRunnerException.class)
+    public void testListFiles_directoryNotFound() {
+        new DefaultFileReader("/no-such-directory/").listFiles(".sql");
+    }
+
+
+    /**
+     * Test of DefaultFileReaderCursor - checks parallel comments.
+     */
+    @Test
+    public void testCursor_parallel() {
+        System.out.println("cursor_parallel");
+
+        String script = "select 1 from dual;\n"
+                + "--sqlrunner.parallel: 4\n"
+                + "create index a1 on a (b);\n"
+                + "--sqlrunner.name: c\n"
+                + "create index a2 on a (c);\n"
+                + "--sqlrunner.parallel: 2\n"
+                + "create index a3 on a (d);\n"
+                + "--sqlrunner.parallel: end\n"
+                + "select 2 from dual;\n";
+
+        SqlRunnerStatementCursor cursor = new DefaultFileReaderCursor(
+                new StringReader(script), "test", "--", "--sqlrunner.name:",
+                "--sqlrunner.failfast:");
+
+        int[][] expected = {{0, 0}, {1, 4}, {1, 4}, {2, 2}, {0, 0}};
+        for (int[] expectedBlock : expected) {
+            SqlRunnerStatement statement = cursor.next();
+            assertEquals(expectedBlock[0], statement.getParallelBlock());
+            assertEquals(expectedBlock[1], statement.getParallelism());
+        }
+        assertFalse(cursor.hasNext());
+        cursor.close();
+    }
+
+    /**
+     * Test of DefaultFileReaderCursor - checks that invalid parallel comments are rejected.
+     */
+    @Test
+    public void testCursor_parallelInvalid() {
+        System.out.println("cursor_parallelInvalid");
+
+        for (String value : new String[] {"x", "0", ""}) {
+            SqlRunnerStatementCursor cursor = new DefaultFileReaderCursor(
+                    new StringReader("--sqlrunner.parallel: " + value + "\nselect 1 from dual;"),
+                    "test", "--", "--sqlrunner.name:", "--sqlrunner.failfast:");
+            try {
+                cursor.next();
+                fail("expected SqlRunnerException for " + value);
+            } catch (SqlRunnerException expected) {
+                assertTrue(expected.getMessage().startsWith("invalid parallel comment"));
+            } finally {
+                cursor.close();
+            }
+        }
+    }
+
+    /**
+     * Test of DefaultFileReaderCursor - checks fetch size, max rows and cursor comments.
+     */
+    @Test
+    public void testCursor_hints() {
+        System.out.println("cursor_hints");
+
+        String script = "--sqlrunner.fetchsize: 500\n"
+                + "--sqlrunner.maxrows: 10\n"
+                + "--sqlrunner.cursor: forward-only\n"
+                + "select * from a;\n"
+                + "select * from b;\n";
+
+        SqlRunnerStatementCursor cursor = new DefaultFileReaderCursor(
+                new StringReader(script), "test", "--", "--sqlrunner.name:",
+                "--sqlrunner.failfast:");
+
+        SqlRunnerStatement statement = cursor.next();
+        assertEquals(500, statement.getFetchSize());
+        assertEquals(10, statement.getMaxRows());
+        assertTrue(statement.getForwardOnly());
+
+        // hints apply to the next statement only
+        statement = cursor.next();
+        assertEquals(0, statement.getFetchSize());
+        assertEquals(0, statement.getMaxRows());
+        assertFalse(statement.getForwardOnly());
+        assertFalse(cursor.hasNext());
+        cursor.close();
+    }
+
+    /**
+     * Test of DefaultFileReaderCursor - checks that invalid hint comments are rejected.
+     */
+    @Test
+    public void testCursor_hintsInvalid() {
+        System.out.println("cursor_hintsInvalid");
+
+        String[][] comments = {
+            {"--sqlrunner.fetchsize: x", "invalid fetchsize comment"},
+            {"--sqlrunner.fetchsize: -1", "invalid fetchsize comment"},
+            {"--sqlrunner.maxrows: ", "invalid maxrows comment"},
+            {"--sqlrunner.cursor: scrollable", "invalid cursor comment"}
+        };
+        for (String[] comment : comments) {
+            SqlRunnerStatementCursor cursor = new DefaultFileReaderCursor(
+                    new StringReader(comment[0] + "\nselect 1 from dual;"),
+                    "test", "--", "--sqlrunner.name:", "--sqlrunner.failfast:");
+            try {
+                cursor.next();
+                fail("expected SqlRunnerException for " + comment[0]);
+            } catch (SqlRunnerException expected) {
+                assertTrue(expected.getMessage().startsWith(comment[1]));
+            } finally {
+                cursor.close();
+            }
+        }
+    }
+
+    /**
+     * Test of DefaultFileReaderCursor - checks commit every comments.
+     */
+    @Test
+    public void testCursor_commitEvery() {
+        System.out.println("cursor_commitEvery");
+
+        String script = "select 1 from dual;\n"
+                + "--sqlrunner.commitevery: 100\n"
+                + "insert into a values (1);\n"
+                + "insert into a values (2);\n"
+                + "--sqlrunner.commitevery: 5000 rows\n"
+                + "insert into b select * from a;\n"
+                + "--sqlrunner.commitevery: 10 statements, 20 rows\n"
+                + "delete from a;\n"
+                + "--sqlrunner.commitevery: auto\n"
+                + "create index b_i on b (c);\n"
+                + "--sqlrunner.commitevery: end\n"
+                + "select 2 from dual;\n";
+
+        SqlRunnerStatementCursor cursor = new DefaultFileReaderCursor(
+                new StringReader(script), "test", "--", "--sqlrunner.name:",
+                "--sqlrunner.failfast:");
+
+        // commit every, commit every rows, auto commit (0 or 1)
+        int[][] expected = {{0, 0, 0}, {100, 0, 0}, {100, 0, 0}, {0, 5000, 0}, {10, 20, 0},
+            {0, 0, 1}, {0, 0, 0}};
+        for (int[] expectedCommit : expected) {
+            SqlRunnerStatement statement = cursor.next();
+            assertEquals(expectedCommit[0], statement.getCommitEvery());
+            assertEquals(expectedCommit[1], statement.getCommitEveryRows());
+            assertEquals(expectedCommit[2] == 1, statement.getAutoCommit());
+        }
+        assertFalse(cursor.hasNext());
+        cursor.close();
+    }
+
+    /**
+     * Test of DefaultFileReaderCursor - checks that invalid commit every comments are rejected.
+     */
+    @Test
+    public void testCursor_commitEveryInvalid() {
+        System.out.println("cursor_commitEveryInvalid");
+
+        for (String value : new String[] {"", "0", "x", "10 minutes", "10 rows 5", "-1 rows"}) {
+            SqlRunnerStatementCursor cursor = new DefaultFileReaderCursor(
+                    new StringReader("--sqlrunner.commitevery: " + value
+                            + "\nselect 1 from dual;"),
+                    "test", "--", "--sqlrunner.name:", "--sqlrunner.failfast:");
+            try {
+                cursor.next();
+                fail("expected SqlRunnerException for " + value);
+            } catch (SqlRunnerException expected) {
+                assertTrue(expected.getMessage().startsWith("invalid commitevery comment"));
+            } finally {
+                cursor.close();
+            }
+        }
+    }
+
+    /**
+     * Test of DefaultFileReaderCursor - checks that PL/SQL blocks are not split at semi-colons.
+     */
+    @Test
+    public void testCursor_blocks() {
+        System.out.println("cursor_blocks");
+
+        String script = "begin do_work; end;\n"
+                + "select 1 from dual;\n"
+                + "create or replace procedure do_work is\n"
+                + "begin\n"
+                + "  update a set b = 1 / 2;\n"
+                + "end;\n"
+                + "/\n"
+                + "/\n"
+                + "DECLARE x number; BEGIN x := 1; END do_it; -- one line\n"
+                + "declare\n"
+                + "  x number;\n"
+                + "begin\n"
+                + "  x := 1;\n"
+                + "end;\n";
+
+        SqlRunnerStatementCursor cursor = new DefaultFileReaderCursor(
+                new StringReader(script), "test", "--", "--sqlrunner.name:",
+                "--sqlrunner.failfast:");
+
+        assertEquals("begin do_work; end;", cursor.next().getSql());
+        assertEquals("select 1 from dual", cursor.next().getSql());
+        assertEquals("create or replace procedure do_work is\n"
+                + "begin\n"
+                + "  update a set b = 1 / 2;\n"
+                + "end;", cursor.next().getSql());
+        assertEquals("DECLARE x number; BEGIN x := 1; END do_it;", cursor.next().getSql());
+        // the end of the file terminates a block
+        assertEquals("declare\n  x number;\nbegin\n  x := 1;\nend;", cursor.next().getSql());
+        assertFalse(cursor.hasNext());
+        cursor.close();
+    }
+
+    /**
+     * Test of DefaultFileReaderCursor - checks that statements which look like PL/SQL blocks but
+     * have no PL/SQL body (e.g. Derby functions, procedures and triggers) end at a semi-colon.
+     */
+    @Test
+    public void testCursor_notBlocks() {
+        System.out.println("cursor_notBlocks");
+
+        String[] statements = {
+            "CREATE FUNCTION f(x INT) RETURNS INT PARAMETER STYLE JAVA NO SQL LANGUAGE JAVA"
+                    + " EXTERNAL NAME 'com.example.F.f'",
+            "CREATE PROCEDURE p(IN a INT)\n  PARAMETER STYLE JAVA LANGUAGE JAVA\n"
+                    + "  EXTERNAL NAME 'com.example.P.p'",
+            "CREATE TRIGGER t AFTER INSERT ON a REFERENCING NEW AS n FOR EACH ROW"
+                    + " UPDATE b SET c = n.c",
+            "create or replace function f return number as language java name 'F.f() return int'",
+            "CREATE FUNCTION add(a int, b int) RETURNS int AS 'select a + b' LANGUAGE SQL",
+            "BEGIN",
+            "BEGIN TRANSACTION",
+            "DECLARE c CURSOR FOR SELECT * FROM a",
+            "DECLARE @x INT",
+            "select 1 from dual"
+        };
+
+        StringBuilder script = new StringBuilder();
+        for (String statement : statements) {
+            script.append(statement).append(";\n");
+        }
+
+        SqlRunnerStatementCursor cursor = new DefaultFileReaderCursor(
+                new StringReader(script.toString()), "test", "--", "--sqlrunner.name:",
+                "--sqlrunner.failfast:");
+
+        for (String statement : statements) {
+            assertEquals(statement, cursor.next().getSql());
+        }
+        assertFalse(cursor.hasNext());
+        cursor.close();
+    }
+
+    /**
+     * Test of DefaultFileReaderCursor - checks Oracle alternative quotes.
+     */
+    @Test
+    public void testCursor_alternativeQuotes() {
+        System.out.println("cursor_alternativeQuotes");
+
+        String script = "select q'[it's; here]', Q'{a}'}', nq'!x'!' from dual;\n"
+                + "select 'q' from dual;\n";
+
+        SqlRunnerStatementCursor cursor = new DefaultFileReaderCursor(
+                new StringReader(script), "test", "--", "--sqlrunner.name:",
+                "--sqlrunner.failfast:");
+
+        assertEquals("select q'[it's; here]', Q'{a}'}', nq'!x'!' from dual", cursor.next().getSql());
+        assertEquals("select 'q' from dual", cursor.next().getSql());
+        assertFalse(cursor.hasNext());
+        cursor.close();
+    }
+
+    /**
+     * Test of DefaultFileReaderCursor - checks that a statement, quote or comment that is not
+     * closed at the end of the file is reported.
+     */
+    @Test
+    public void testCursor_notTerminated() {
+        System.out.println("cursor_notTerminated");
+
+        String[][] scripts = {
+            {"select 1 from dual;\nselect 2 from dual", "is not terminated by a semi-colon"},
+            {"select 1 from dual;\nselect 'x from dual;\nselect 3 from dual;",
+                "has a quote that is not closed"},
+            {"select 1 from dual;\nselect /* 2 from dual;", "has a comment that is not closed"}
+        };
+        for (String[] script : scripts) {
+            SqlRunnerStatementCursor cursor = new DefaultFileReaderCursor(
+                    new StringReader(script[0]), "test.sql", "--", "--sqlrunner.name:",
+                    "--sqlrunner.failfast:");
+            assertEquals("select 1 from dual", cursor.next().getSql());
+            try {
+                cursor.next();
+                fail("expected SqlRunnerException for " + script[0]);
+            } catch (SqlRunnerException expected) {
+                assertEquals("the statement starting at character 20 of test.sql " + script[1],
+                        expected.getMessage());
+            } finally {
+                cursor.close();
+            }
+        }
+    }
 }
@@ -0,0 +1,179 @@
+package com.butterfill.sqlrunner.util;
+
+import com.butterfill.sqlrunner.SqlRunnerStatement;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Peter Butterfill
+ */
+public class FileSystemScriptSourceTest {
+
+    private File directory;
+
+    public FileSystemScriptSourceTest() {
+    }
+
+    @BeforeClass
+    public static void setUpClass() {
+    }
+
+    @AfterClass
+    public static void tearDownClass() {
+    }
+
+    @Before
+    public void setUp() throws IOException {
+        directory = File.createTempFile("sql-runner", "");
+        directory.delete();
+        directory.mkdir();
+    }
+
+    @After
+    public void tearDown() {
+        for (File file : directory.listFiles()) {
+            file.delete();
+        }
+        directory.delete();
+    }
+
+    private File writeFile(String fileName, String contents) throws IOException {
+        File file = new File(directory, fileName);
+        FileOutputStream out = new FileOutputStream(file);
+        try {
+            out.write(contents.getBytes("UTF-8"));
+        } finally {
+            out.close();
+        }
+        return file;
+    }
+
+    private String readAll(Reader reader) throws IOException {
+        StringBuilder sb = new StringBuilder();
+        char[] chars = new char[5];
+        for (int read = reader.read(chars); read != -1; read = reader.read(chars)) {
+            sb.append(chars, 0, read);
+        }
+        reader.close();
+        return sb.toString();
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void testConstructorNullArg() {
+        new FileSystemScriptSource(null);
+    }
+
+    @Test(expected = FileNotFoundException.class)
+    public void testOpenScript_fileNotFound() throws IOException {
+        new FileSystemScriptSource(directory).openScript("missing.sql");
+    }
+
+    @Test
+    public void testListScripts() throws IOException {
+        writeFile("a.sql", "select 1 from dual;");
+        writeFile("b.txt", "");
+        new File(directory, "sub").mkdir();
+        writeFile("sub/c.sql", "select 1 from dual;");
+        try {
+            List<String> result = new FileSystemScriptSource(directory).listScripts();
+            Collections.sort(result);
+            assertEquals(Arrays.asList("a.sql", "b.txt", "sub/c.sql"), result);
+
+            assertEquals(Arrays.asList("a.sql", "sub/c.sql"),
+                    new DefaultFileReader(new FileSystemScriptSource(directory)).listFiles(".sql"));
+        } finally {
+            new File(directory, "sub/c.sql").delete();
+        }
+    }
+
+    @Test(expected = FileNotFoundException.class)
+    public void testListScripts_directoryNotFound() throws IOException {
+        new FileSystemScriptSource(new File(directory, "missing")).listScripts();
+    }
+
+    @Test
+    public void testLastModified() throws IOException {
+        File file = writeFile("a.sql", "select 1 from dual;");
+        file.setLastModified(1000000000000L);
+        assertEquals(file.lastModified(),
+                new FileSystemScriptSource(directory).lastModified("a.sql"));
+        assertEquals(file.lastModified(),
+                new DefaultFileReader(new FileSystemScriptSource(directory)).lastModified("a.sql"));
+    }
+
+    @Test(expected = FileNotFoundException.class)
+    public void testLastModified_fileNotFound() throws IOException {
+        new FileSystemScriptSource(directory).lastModified("missing.sql");
+    }
+
+    @Test
+    public void testChecksum() throws IOException {
+        writeFile("a.sql", "select 1 from dual;");
+        writeFile("b.sql", "select 1 from dual;");
+        writeFile("c.sql", "select 2 from dual;");
+        DefaultFileReader fileReader = new DefaultFileReader(new FileSystemScriptSource(directory));
+        assertEquals(40, fileReader.checksum("a.sql").length());
+        assertEquals(fileReader.checksum("a.sql"), fileReader.checksum("b.sql"));
+        assertFalse(fileReader.checksum("a.sql").equals(fileReader.checksum("c.sql")));
+        assertFalse(fileReader.checksum("a.sql").equals(new DefaultFileReader(
+                new FileSystemScriptSource(directory), "#").checksum("a.sql")));
+    }
+
+    /**
+     * Test of openScript method, of class FileSystemScriptSource.
+     */
+    @Test
+    public void testOpenScript() throws IOException {
+        System.out.println("openScript");
+        writeFile("empty.sql", "");
+        writeFile("a.sql", "select '\u00e9\u20ac' from dual;");
+
+        FileSystemScriptSource instance = new FileSystemScriptSource(directory);
+        assertEquals("", readAll(instance.openScript("empty.sql")));
+        assertEquals("select '\u00e9\u20ac' from dual;", readAll(instance.openScript("a.sql")));
+
+        List<SqlRunnerStatement> result = new DefaultFileReader(instance).readFile("a.sql");
+        assertEquals(1, result.size());
+        assertEquals("select '\u00e9\u20ac' from dual", result.get(0).getSql());
+    }
+
+    /**
+     * Test of MappedFileReader - with windows and chunks that end part way through characters.
+     */
+    @Test
+    public void testMappedFileReader_smallWindows() throws IOException {
+        String contents = "a\u00e9\u20acb\u20ac\u20ac\u00e9c";
+        File file = writeFile("a.sql", contents);
+
+        for (int size = 4; size < 20; size++) {
+            assertEquals(contents, readAll(
+                    new MappedFileReader(file, Charset.forName("UTF-8"), size, 8)));
+            assertEquals(contents, readAll(
+                    new MappedFileReader(file, Charset.forName("UTF-8"), 8, size)));
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void testMappedFileReader_closed() throws IOException {
+        File file = writeFile("a.sql", "select 1 from dual;");
+        Reader reader = new MappedFileReader(file, Charset.forName("UTF-8"));
+        reader.close();
+        reader.close();
+        reader.read(new char[1]);
+    }
+
+}
@@ -0,0 +1,238 @@
+package com.butterfill.sqlrunner.util;
+
+import com.butterfill.sqlrunner.SqlRunnerScriptSource;
+import com.butterfill.sqlrunner.SqlRunnerStatement;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.List;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Peter Butterfill
+ */
+public class PrecompiledFileReaderTest {
+
+    private File directory;
+
+    private InMemoryScriptSource scriptSource;
+
+    private CountingFileReader fileReader;
+
+    private static class CountingFileReader extends DefaultFileReader {
+
+        private int readCount;
+
+        CountingFileReader(InMemoryScriptSource scriptSource) {
+            super(scriptSource);
+        }
+
+        @Override
+        public List<SqlRunnerStatement> readFile(String fileName) {
+            readCount++;
+            return super.readFile(fileName);
+        }
+
+    }
+
+    public PrecompiledFileReaderTest() {
+    }
+
+    @BeforeClass
+    public static void setUpClass() {
+    }
+
+    @AfterClass
+    public static void tearDownClass() {
+    }
+
+    @Before
+    public void setUp() throws IOException {
+        directory = File.createTempFile("sql-runner", "");
+        directory.delete();
+        directory.mkdir();
+        scriptSource = new InMemoryScriptSource();
+        fileReader = new CountingFileReader(scriptSource);
+    }
+
+    @After
+    public void tearDown() {
+        for (File file : directory.listFiles()) {
+            file.delete();
+        }
+        directory.delete();
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void testConstructor_nullFileReader() {
+        new PrecompiledFileReader(null, directory);
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void testConstructor_nullCacheDirectory() {
+        new PrecompiledFileReader(fileReader, null);
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void testReadFile_nullFileName() {
+        new PrecompiledFileReader(fileReader, directory).readFile(null);
+    }
+
+    @Test
+    public void testReadFile() {
+        scriptSource.putScript("test.sql",
+                "--sqlrunner.name: a\n--sqlrunner.failfast: false\n"
+                + "select 'x;' from dual;\n--sqlrunner.parallel: 3\n--sqlrunner.fetchsize: 50\n"
+                + "--sqlrunner.maxrows: 7\n--sqlrunner.cursor: forward-only\n"
+                + "--sqlrunner.commitevery: 10, 20 rows\n"
+                + "select 2 from dual;\n");
+
+        List<SqlRunnerStatement> expected = fileReader.readFile("test.sql");
+        fileReader.readCount = 0;
+
+        List<SqlRunnerStatement> first =
+                new PrecompiledFileReader(fileReader, directory).readFile("test.sql");
+        assertEquals(1, fileReader.readCount);
+        assertEquals(1, directory.listFiles().length);
+
+        List<SqlRunnerStatement> second =
+                new PrecompiledFileReader(fileReader, directory).readFile("test.sql");
+        assertEquals(1, fileReader.readCount);
+
+        assertEquals(expected.size(), first.size());
+        assertEquals(expected.size(), second.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.get(i).getName(), second.get(i).getName());
+            assertEquals(expected.get(i).getSql(), second.get(i).getSql());
+            assertEquals(expected.get(i).getFailFast(), second.get(i).getFailFast());
+            assertEquals(expected.get(i).getParallelBlock(), second.get(i).getParallelBlock());
+            assertEquals(expected.get(i).getParallelism(), second.get(i).getParallelism());
+            assertEquals(expected.get(i).getFetchSize(), second.get(i).getFetchSize());
+            assertEquals(expected.get(i).getMaxRows(), second.get(i).getMaxRows());
+            assertEquals(expected.get(i).getForwardOnly(), second.get(i).getForwardOnly());
+            assertEquals(expected.get(i).getCommitEvery(), second.get(i).getCommitEvery());
+            assertEquals(expected.get(i).getCommitEveryRows(),
+                    second.get(i).getCommitEveryRows());
+            assertEquals(expected.get(i).getAutoCommit(), second.get(i).getAutoCommit());
+        }
+        assertEquals("a", second.get(0).getName());
+        assertFalse(second.get(0).getFailFast());
+        assertNull(second.get(1).getName());
+        assertEquals(3, second.get(1).getParallelism());
+        assertEquals(50, second.get(1).getFetchSize());
+        assertEquals(7, second.get(1).getMaxRows());
+        assertTrue(second.get(1).getForwardOnly());
+        assertEquals(10, second.get(1).getCommitEvery());
+        assertEquals(20, second.get(1).getCommitEveryRows());
+    }
+
+    @Test
+    public void testReadFile_changedFile() {
+        PrecompiledFileReader reader = new PrecompiledFileReader(fileReader, directory);
+
+        scriptSource.putScript("test.sql", "select 1 from dual;\n");
+        assertEquals("select 1 from dual", reader.readFile("test.sql").get(0).getSql());
+
+        scriptSource.putScript("test.sql", "select 2 from dual;\n");
+        assertEquals("select 2 from dual", reader.readFile("test.sql").get(0).getSql());
+        assertEquals(2, fileReader.readCount);
+
+        scriptSource.putScript("test.sql", "select 1 from dual;\n");
+        assertEquals("select 1 from dual", reader.readFile("test.sql").get(0).getSql());
+        assertEquals(3, fileReader.readCount);
+        assertEquals(1, directory.listFiles().length);
+
+        assertEquals("select 1 from dual", reader.readFile("test.sql").get(0).getSql());
+        assertEquals(3, fileReader.readCount);
+    }
+
+    @Test
+    public void testReadFile_hitDoesNotReadFile() throws IOException {
+        File scriptDirectory = new File(directory, "scripts");
+        scriptDirectory.mkdir();
+        File script = new File(scriptDirectory, "test.sql");
+        FileOutputStream out = new FileOutputStream(script);
+        try {
+            out.write("select 1 from dual;\n".getBytes("UTF-8"));
+        } finally {
+            out.close();
+        }
+
+        final int[] openCount = new int[1];
+        SqlRunnerScriptSource countingSource = new FileSystemScriptSource(scriptDirectory) {
+            @Override
+            public Reader openScript(String fileName) throws IOException {
+                openCount[0]++;
+                return super.openScript(fileName);
+            }
+        };
+        File cacheDirectory = new File(directory, "cache");
+        DefaultFileReader countingReader = new DefaultFileReader(countingSource);
+
+        try {
+            new PrecompiledFileReader(countingReader, cacheDirectory).readFile("test.sql");
+            assertTrue(openCount[0] > 0);
+
+            openCount[0] = 0;
+            assertEquals("select 1 from dual", new PrecompiledFileReader(
+                    countingReader, cacheDirectory).readFile("test.sql").get(0).getSql());
+            assertEquals(0, openCount[0]);
+
+            // touching the file means the digest is checked but the file is not parsed again
+            script.setLastModified(script.lastModified() - 60000);
+            assertEquals("select 1 from dual", new PrecompiledFileReader(
+                    countingReader, cacheDirectory).readFile("test.sql").get(0).getSql());
+            assertEquals(1, openCount[0]);
+
+            openCount[0] = 0;
+            new PrecompiledFileReader(countingReader, cacheDirectory).readFile("test.sql");
+            assertEquals(0, openCount[0]);
+
+        } finally {
+            script.delete();
+            scriptDirectory.delete();
+            for (File file : cacheDirectory.listFiles()) {
+                file.delete();
+            }
+            cacheDirectory.delete();
+        }
+    }
+
+    @Test
+    public void testReadFile_corruptCacheEntry() throws IOException {
+        PrecompiledFileReader reader = new PrecompiledFileReader(fileReader, directory);
+        scriptSource.putScript("test.sql", "select 1 from dual;\n");
+        reader.readFile("test.sql");
+
+        FileOutputStream out = new FileOutputStream(directory.listFiles()[0]);
+        try {
+            out.write(new byte[] {1, 2, 3});
+        } finally {
+            out.close();
+        }
+
+        assertEquals("select 1 from dual", reader.readFile("test.sql").get(0).getSql());
+        assertEquals(2, fileReader.readCount);
+        assertEquals(1, directory.listFiles().length);
+    }
+
+    @Test
+    public void testReadFile_cacheDirectoryCreated() {
+        File cacheDirectory = new File(directory, "cache");
+        scriptSource.putScript("test.sql", "select 1 from dual;\n");
+        new PrecompiledFileReader(fileReader, cacheDirectory).readFile("test.sql");
+        assertEquals(1, cacheDirectory.listFiles().length);
+        for (File file : cacheDirectory.listFiles()) {
+            file.delete();
+        }
+        cacheDirectory.delete();
+    }
+
+}
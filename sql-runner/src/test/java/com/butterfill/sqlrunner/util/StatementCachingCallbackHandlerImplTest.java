@@ -0,0 +1,211 @@
+package com.butterfill.sqlrunner.util;
+
+import com.butterfill.sqlrunner.SqlRunnerCallbackHandler;
+import com.butterfill.sqlrunner.SqlRunnerStatement;
+import java.sql.CallableStatement;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+/**
+ *
+ * @author Peter Butterfill
+ */
+public class StatementCachingCallbackHandlerImplTest {
+
+    private Connection connection;
+
+    private StatementCachingCallbackHandlerImpl instance;
+
+    public StatementCachingCallbackHandlerImplTest() {
+    }
+
+    @BeforeClass
+    public static void setUpClass() {
+    }
+
+    @AfterClass
+    public static void tearDownClass() {
+    }
+
+    @Before
+    public void setUp() throws SQLException {
+        connection = mock(Connection.class);
+        when(connection.prepareStatement(anyString())).thenAnswer(
+                new org.mockito.stubbing.Answer<PreparedStatement>() {
+                    public PreparedStatement answer(
+                            final org.mockito.invocation.InvocationOnMock invocation) {
+                        return mock(PreparedStatement.class);
+                    }
+                });
+        instance = new StatementCachingCallbackHandlerImpl(new DefaultCallbackHandlerImpl(), 2);
+    }
+
+    @After
+    public void tearDown() {
+    }
+
+    private PreparedStatement prepare(String sql) throws SQLException {
+        return instance.prepareStatement(connection, new SqlRunnerStatement(null, sql));
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void testConstructor() {
+        System.out.println("constructor");
+        new StatementCachingCallbackHandlerImpl(null);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testConstructor2() {
+        System.out.println("constructor");
+        new StatementCachingCallbackHandlerImpl(new DefaultCallbackHandlerImpl(), 0);
+    }
+
+    @Test
+    public void testPrepareStatement() throws Exception {
+        System.out.println("prepareStatement");
+
+        PreparedStatement first = prepare("select 1 from dual");
+        instance.releaseStatement(first);
+        PreparedStatement second = prepare("select 1 from dual");
+
+        assertSame(first, second);
+        verify(connection, times(1)).prepareStatement("select 1 from dual");
+        verify(first).clearParameters();
+        verify(first, never()).close();
+
+        StatementCacheStats stats = instance.getStats();
+        assertEquals(1L, stats.getHitCount());
+        assertEquals(1L, stats.getMissCount());
+        assertEquals(0.5, stats.getHitRate(), 0.0);
+        assertEquals(1, stats.getStatementCount());
+    }
+
+    @Test
+    public void testPrepareStatementResetsHints() throws Exception {
+        System.out.println("prepareStatement");
+
+        PreparedStatement statement = mock(PreparedStatement.class);
+        when(connection.prepareStatement("select 1 from dual")).thenReturn(statement);
+        when(statement.getFetchSize()).thenReturn(10);
+        when(statement.getMaxRows()).thenReturn(0);
+        when(statement.getFetchDirection()).thenReturn(java.sql.ResultSet.FETCH_FORWARD);
+
+        PreparedStatement first = prepare("select 1 from dual");
+        first.setFetchSize(500);
+        first.setMaxRows(7);
+        first.setFetchDirection(java.sql.ResultSet.FETCH_REVERSE);
+        instance.releaseStatement(first);
+        assertSame(first, prepare("select 1 from dual"));
+
+        verify(statement).setFetchSize(10);
+        verify(statement).setMaxRows(0);
+        verify(statement).setFetchDirection(java.sql.ResultSet.FETCH_FORWARD);
+    }
+
+    @Test
+    public void testPrepareStatementInUse() throws Exception {
+        System.out.println("prepareStatement");
+
+        PreparedStatement first = prepare("select 1 from dual");
+        PreparedStatement second = prepare("select 1 from dual");
+        assertNotSame(first, second);
+
+        // the second statement is not cached, so it is closed when released
+        instance.releaseStatement(second);
+        verify(second).close();
+        instance.releaseStatement(first);
+        verify(first, never()).close();
+        assertSame(first, prepare("select 1 from dual"));
+    }
+
+    @Test
+    public void testPrepareStatementEvicts() throws Exception {
+        System.out.println("prepareStatement");
+
+        PreparedStatement a = prepare("a");
+        instance.releaseStatement(a);
+        PreparedStatement b = prepare("b");
+        instance.releaseStatement(b);
+        // use a, so that b is the least recently used
+        instance.releaseStatement(prepare("a"));
+        PreparedStatement c = prepare("c");
+
+        verify(b).close();
+        verify(a, never()).close();
+        assertEquals(1L, instance.getStats().getEvictionCount());
+        assertEquals(2, instance.getStats().getStatementCount());
+
+        // c is in use when d evicts it - so c is closed when it is released
+        PreparedStatement a2 = prepare("a");
+        instance.releaseStatement(prepare("d"));
+        verify(c, never()).close();
+        instance.releaseStatement(c);
+        verify(c).close();
+        instance.releaseStatement(a2);
+        verify(a, never()).close();
+        assertEquals(2L, instance.getStats().getEvictionCount());
+    }
+
+    @Test
+    public void testPrepareCall() throws Exception {
+        System.out.println("prepareStatement");
+
+        final CallableStatement callableStatement = mock(CallableStatement.class);
+        when(connection.prepareCall("begin null; end;")).thenReturn(callableStatement);
+
+        SqlRunnerCallbackHandler callingHandler = new DefaultCallbackHandlerImpl() {
+            @Override
+            public PreparedStatement prepareStatement(final Connection connection,
+                    final SqlRunnerStatement sqlRunnerStatement) throws SQLException {
+                CallableStatement result = connection.prepareCall(sqlRunnerStatement.getSql());
+                result.registerOutParameter(1, java.sql.Types.VARCHAR);
+                return result;
+            }
+        };
+        instance = new StatementCachingCallbackHandlerImpl(callingHandler);
+
+        instance.releaseStatement(prepare("begin null; end;"));
+        assertSame(callableStatement, prepare("begin null; end;"));
+        verify(connection, times(1)).prepareCall("begin null; end;");
+        // the wrapped handler is called every time
+        verify(callableStatement, times(2)).registerOutParameter(1, java.sql.Types.VARCHAR);
+    }
+
+    @Test
+    public void testReleaseConnection() throws Exception {
+        System.out.println("releaseConnection");
+
+        PreparedStatement first = prepare("select 1 from dual");
+        instance.releaseStatement(first);
+        instance.releaseConnection(connection);
+
+        verify(first).close();
+        assertEquals(0, instance.getStats().getStatementCount());
+        assertNotSame(first, prepare("select 1 from dual"));
+    }
+
+    @Test
+    public void testPrepareStatementClosedConnection() throws Exception {
+        System.out.println("prepareStatement");
+
+        PreparedStatement first = prepare("select 1 from dual");
+        instance.releaseStatement(first);
+        when(connection.isClosed()).thenReturn(true);
+
+        Connection other = mock(Connection.class);
+        when(other.prepareStatement(anyString())).thenReturn(mock(PreparedStatement.class));
+        instance.prepareStatement(other, new SqlRunnerStatement(null, "select 1 from dual"));
+
+        verify(first).close();
+        assertEquals(1, instance.getStats().getStatementCount());
+    }
+
+}
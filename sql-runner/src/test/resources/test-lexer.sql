@@ -0,0 +1,13 @@
+/* a comment that starts and ends on this line */ --sqlrunner.name: ignored
+--sqlrunner.name: semi-colon-in-string
+--sqlrunner.failfast: false
+insert into a (b) values ('x;y''z;');
+
+--sqlrunner.name: comments-in-statement
+select /*+ index(a) */ b -- not the end;
+  from a /* still
+  not the end; */
+ where "c;d" = 1; /* a comment starting
+after a statement; */
+
+select 1 from dual;select 2 from dual ; ;